@@ -0,0 +1,101 @@
+package cn.ting.kafkauser.benchmark;
+
+import cn.ting.kafkauser.entity.User;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.listener.adapter.HandlerAdapter;
+import org.springframework.kafka.listener.adapter.RecordMessagingMessageListenerAdapter;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.messaging.handler.annotation.support.DefaultMessageHandlerMethodFactory;
+import org.springframework.messaging.handler.invocation.InvocableHandlerMethod;
+
+/**
+ * ConsumerRecord 到监听方法参数的转换开销
+ *
+ * 与 KafkaMsg7.listen(User) 走同一条路径：RecordMessagingMessageListenerAdapter
+ * 把 ConsumerRecord 转成 Message，再由 InvocableHandlerMethod 解析出 User 参数并反射调用。
+ * 监听方法换成签名相同、不打日志的 {@link BenchListener}，避免日志开销掩盖转换开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListenerConversionBenchmark {
+
+	private RecordMessagingMessageListenerAdapter<String, User> adapter;
+	private BenchListener listener;
+	private ConsumerRecord<String, User> record;
+	private ConsumerRecord<String, byte[]> rawRecord;
+	private JsonDeserializer<User> deserializer;
+
+	public static class BenchListener {
+		private User last;
+
+		public void listen(User user) {
+			last = user;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws NoSuchMethodException {
+		listener = new BenchListener();
+		Method method = BenchListener.class.getMethod("listen", User.class);
+
+		DefaultMessageHandlerMethodFactory methodFactory = new DefaultMessageHandlerMethodFactory();
+		methodFactory.afterPropertiesSet();
+		InvocableHandlerMethod handlerMethod = methodFactory.createInvocableHandlerMethod(listener, method);
+
+		adapter = new RecordMessagingMessageListenerAdapter<>(listener, method);
+		adapter.setHandlerMethod(new HandlerAdapter(handlerMethod));
+
+		User user = new User("ting", 18);
+		record = new ConsumerRecord<>("user-topic", 0, 0L, null, user);
+
+		JsonSerializer<User> serializer = new JsonSerializer<>();
+		serializer.setAddTypeInfo(false);
+		rawRecord = new ConsumerRecord<>("user-topic", 0, 0L, null, serializer.serialize("user-topic", user));
+
+		deserializer = new JsonDeserializer<>();
+		Map<String, Object> config = new HashMap<>();
+		config.put(JsonDeserializer.TRUSTED_PACKAGES, "cn.ting.kafkauser.entity");
+		config.put(JsonDeserializer.VALUE_DEFAULT_TYPE, User.class);
+		deserializer.configure(config, false);
+	}
+
+	/**
+	 * 只测转换和调用，value 已经反序列化
+	 */
+	@Benchmark
+	public User convertAndInvoke() {
+		adapter.onMessage(record, null, null);
+		return listener.last;
+	}
+
+	/**
+	 * 反序列化加转换调用，即 user-topic 上每条消息的完整解码路径
+	 */
+	@Benchmark
+	public User deserializeConvertAndInvoke() {
+		User user = deserializer.deserialize(rawRecord.topic(), rawRecord.value());
+		adapter.onMessage(new ConsumerRecord<>(rawRecord.topic(), rawRecord.partition(), rawRecord.offset(), null, user),
+				null, null);
+		return listener.last;
+	}
+}
@@ -0,0 +1,97 @@
+package cn.ting.kafkauser.benchmark;
+
+import cn.ting.kafkauser.bytes.JsonFieldExtractor;
+import cn.ting.kafkauser.bytes.RawValue;
+import com.alibaba.fastjson.JSON;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 按 canal 消息的 table 字段过滤时，各种读取方式的吞吐和分配
+ *
+ * 原来的路径是 StringDeserializer 解码整条消息再用 fastjson 解析；字节路径从 ByteArrayDeserializer
+ * 拿到的数组上直接比较前缀或流式查找字段，不解码。配合默认的 -prof gc 看 gc.alloc.rate.norm。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RawConsumptionBenchmark {
+
+	private static final String[] TABLES = {"order", "user"};
+
+	private byte[] message;
+	private byte[] prefix;
+	private StringDeserializer stringDeserializer;
+	private JsonFieldExtractor table;
+	private RawValue value;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		message = ("{\"data\":[{\"id\":\"1\",\"name\":\"ting\",\"age\":\"18\",\"remark\":\"benchmark row padding\"}],"
+				+ "\"database\":\"test\",\"es\":1700000000000,\"id\":1,\"isDdl\":false,"
+				+ "\"mysqlType\":{\"id\":\"int\",\"name\":\"varchar(32)\",\"age\":\"int\",\"remark\":\"varchar(255)\"},"
+				+ "\"old\":[{\"age\":\"17\"}],\"pkNames\":[\"id\"],\"sql\":\"\",\"table\":\"user\","
+				+ "\"ts\":1700000000001,\"type\":\"UPDATE\"}").getBytes(StandardCharsets.UTF_8);
+		prefix = "{\"data\"".getBytes(StandardCharsets.UTF_8);
+		stringDeserializer = new StringDeserializer();
+		table = JsonFieldExtractor.of("table");
+		value = RawValue.of(null);
+	}
+
+	/**
+	 * 解码成字符串再整条解析，即 canal-test 上原来的做法
+	 */
+	@Benchmark
+	public int stringAndFastjson() {
+		String json = stringDeserializer.deserialize("canal-test", message);
+		String name = JSON.parseObject(json).getString("table");
+		return name.equals("order") ? 0 : name.equals("user") ? 1 : -1;
+	}
+
+	/**
+	 * 解码成字符串，只比较前缀
+	 */
+	@Benchmark
+	public boolean stringStartsWith() {
+		return stringDeserializer.deserialize("canal-test", message).startsWith("{\"data\"");
+	}
+
+	/**
+	 * 直接比较字节前缀
+	 */
+	@Benchmark
+	public boolean rawStartsWith() {
+		return value.reset(message).startsWith(prefix);
+	}
+
+	/**
+	 * 流式查找 table 字段并与期望值比较
+	 */
+	@Benchmark
+	public boolean rawFieldMatches() {
+		return table.matches(message, "user");
+	}
+
+	/**
+	 * 流式查找 table 字段并在候选表名中定位，即 CanalTableForwarder 的路由方式
+	 */
+	@Benchmark
+	public int rawFieldIndexOf() {
+		return table.indexOf(message, TABLES);
+	}
+}
@@ -0,0 +1,136 @@
+package cn.ting.kafkauser.benchmark;
+
+import cn.ting.kafkauser.entity.User;
+import cn.ting.kafkauser.serialization.UserBinaryDeserializer;
+import cn.ting.kafkauser.serialization.UserBinarySerializer;
+import com.alibaba.fastjson.JSON;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+/**
+ * User 序列化路径的编解码基准
+ *
+ * scenario 为 编解码:负载 的组合，二进制格式只编码单个 User，因此没有 binary:large。codec：
+ * - spring：KafkaConfig 中 userProducerFactory / userConsumerFactory 实际使用的 JsonSerializer / JsonDeserializer
+ * - jackson：直接使用 ObjectMapper
+ * - fastjson：fastjson 1.2.x
+ * - binary：UserBinarySerializer / UserBinaryDeserializer
+ *
+ * payload：small 为单个 User，large 为包含 100 个 User 的 UserPage。
+ * 每种组合的字节数在 Setup 时打印（bytes/record），分配速率用 -prof gc 查看。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserCodecBenchmark {
+
+	private static final String TOPIC = "user-topic";
+
+	@Param({"spring:small", "spring:large", "jackson:small", "jackson:large", "fastjson:small", "fastjson:large",
+			"binary:small"})
+	public String scenario;
+
+	private String codec;
+	private Object value;
+	private Class<?> type;
+	private byte[] encoded;
+
+	private Serializer<Object> springSerializer;
+	private Deserializer<Object> springDeserializer;
+	private ObjectMapper objectMapper;
+	private UserBinarySerializer binarySerializer;
+	private UserBinaryDeserializer binaryDeserializer;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		String[] parts = scenario.split(":");
+		codec = parts[0];
+		String payload = parts[1];
+		if ("small".equals(payload)) {
+			value = new User("ting", 18);
+			type = User.class;
+		} else {
+			value = UserPage.of(100);
+			type = UserPage.class;
+		}
+
+		springSerializer = new JsonSerializer<>();
+		Map<String, Object> serializerConfig = new HashMap<>();
+		serializerConfig.put(JsonSerializer.ADD_TYPE_INFO_HEADERS, false);
+		springSerializer.configure(serializerConfig, false);
+
+		springDeserializer = new JsonDeserializer<>();
+		Map<String, Object> deserializerConfig = new HashMap<>();
+		deserializerConfig.put(JsonDeserializer.TRUSTED_PACKAGES, "cn.ting.kafkauser.*");
+		deserializerConfig.put(JsonDeserializer.VALUE_DEFAULT_TYPE, type);
+		springDeserializer.configure(deserializerConfig, false);
+
+		objectMapper = new ObjectMapper();
+		binarySerializer = new UserBinarySerializer();
+		binaryDeserializer = new UserBinaryDeserializer();
+		if ("binary".equals(codec) && type != User.class) {
+			throw new IllegalStateException("binary 编解码只支持 User: " + scenario);
+		}
+
+		encoded = encode();
+		System.out.printf("%n[bytes/record] codec=%s payload=%s bytes=%d%n", codec, payload, encoded.length);
+	}
+
+	@Benchmark
+	public byte[] encode() {
+		switch (codec) {
+			case "spring":
+				return springSerializer.serialize(TOPIC, value);
+			case "binary":
+				return binarySerializer.serialize(TOPIC, (User) value);
+			case "jackson":
+				try {
+					return objectMapper.writeValueAsBytes(value);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			default:
+				return JSON.toJSONBytes(value);
+		}
+	}
+
+	@Benchmark
+	public Object decode() {
+		switch (codec) {
+			case "spring":
+				return springDeserializer.deserialize(TOPIC, encoded);
+			case "binary":
+				return binaryDeserializer.deserialize(TOPIC, encoded);
+			case "jackson":
+				try {
+					return objectMapper.readValue(encoded, type);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			default:
+				return JSON.parseObject(encoded, type);
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package cn.ting.kafkauser.benchmark;
+
+import cn.ting.kafkauser.entity.User;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 基准测试用的大消息：一页用户数据
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserPage {
+	private String tableName;
+	private long version;
+	private List<User> users;
+
+	public static UserPage of(int size) {
+		List<User> users = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			users.add(new User("user-" + i + "-名字", 18 + i % 60));
+		}
+		return new UserPage("user-table", System.currentTimeMillis(), users);
+	}
+}
@@ -0,0 +1,59 @@
+package cn.ting.kafkauser.autoscale;
+
+import cn.ting.kafkauser.kafka.KafkaMsg5;
+import cn.ting.kafkauser.manualcommitdemo.ManualCommitConsumerDemo;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaAdmin;
+
+/**
+ * 按积压自动扩缩容，kafka.autoscale.enabled=true 时启用
+ */
+@Configuration
+@ConditionalOnProperty(name = "kafka.autoscale.enabled", havingValue = "true")
+public class AutoscaleConfig {
+
+	@Value("${kafka.autoscale.instance-id:${HOSTNAME:local}}")
+	private String instanceId;
+
+	@Value("${kafka.autoscale.interval-ms:10000}")
+	private long intervalMillis;
+
+	@Value("${kafka.autoscale.scale-up-lag:10000}")
+	private long scaleUpLag;
+
+	@Value("${kafka.autoscale.scale-down-lag:100}")
+	private long scaleDownLag;
+
+	/**
+	 * 手动提交演示：消费线程 1 到分区数，之后工作线程在初始值到 8 倍之间调整；
+	 * sort-2 的 key 有序消费：只调整消费线程数，通道数固定
+	 */
+	@Bean
+	public LagAutoscaler lagAutoscaler(KafkaListenerEndpointRegistry listenerRegistry,
+	                                   KafkaAdmin kafkaAdmin,
+	                                   ManualCommitConsumerDemo manualCommitConsumerDemo) {
+		int workers = manualCommitConsumerDemo.getExecutor().getMaxConcurrency();
+		return new LagAutoscaler(listenerRegistry, kafkaAdmin.getConfigurationProperties(), instanceId, intervalMillis,
+				Arrays.asList(
+						AutoscaleTarget.consumersAndWorkers(ManualCommitConsumerDemo.LISTENER_ID, 1, Integer.MAX_VALUE,
+								manualCommitConsumerDemo::getExecutor, workers, workers * 8, policy())
+								.afterRestart(manualCommitConsumerDemo::onContainerRestarted),
+						AutoscaleTarget.consumers(KafkaMsg5.KEY_ORDERED_LISTENER_ID, 1, Integer.MAX_VALUE, policy())
+				));
+	}
+
+	private ScalingPolicy policy() {
+		return ScalingPolicy.builder()
+				.scaleUpLag(scaleUpLag)
+				.scaleDownLag(scaleDownLag)
+				.targetDrain(1, TimeUnit.MINUTES)
+				.cooldown(2, TimeUnit.MINUTES)
+				.build();
+	}
+}
@@ -0,0 +1,67 @@
+package cn.ting.kafkauser.autoscale;
+
+import cn.ting.kafkauser.executor.RecordExecutor;
+import java.util.function.Supplier;
+import lombok.Getter;
+
+/**
+ * 一个参与自动扩缩容的监听容器
+ *
+ * 消费线程数在 [minConsumers, min(maxConsumers, 分区数)] 之间调整；
+ * 消费线程到达分区数上限后，如果配置了 executor，继续在 [minWorkers, maxWorkers] 之间调整工作线程数。
+ * 调整消费线程数需要重启容器，重启会丢弃容器上的分区暂停请求，由 restartHook 通知持有暂停状态的组件。
+ */
+@Getter
+public class AutoscaleTarget {
+
+	private final String listenerId;
+	private final int minConsumers;
+	private final int maxConsumers;
+	private final Supplier<RecordExecutor> executor;
+	private final int minWorkers;
+	private final int maxWorkers;
+	private final ScalingPolicy policy;
+	private final Runnable restartHook;
+
+	private AutoscaleTarget(String listenerId, int minConsumers, int maxConsumers,
+	                        Supplier<RecordExecutor> executor, int minWorkers, int maxWorkers, ScalingPolicy policy,
+	                        Runnable restartHook) {
+		if (minConsumers <= 0 || maxConsumers < minConsumers || (executor != null && (minWorkers <= 0 || maxWorkers < minWorkers))) {
+			throw new IllegalArgumentException("扩缩容范围不合法: " + listenerId);
+		}
+		this.listenerId = listenerId;
+		this.minConsumers = minConsumers;
+		this.maxConsumers = maxConsumers;
+		this.executor = executor;
+		this.minWorkers = minWorkers;
+		this.maxWorkers = maxWorkers;
+		this.policy = policy;
+		this.restartHook = restartHook;
+	}
+
+	/**
+	 * 只调整消费线程数
+	 */
+	public static AutoscaleTarget consumers(String listenerId, int minConsumers, int maxConsumers, ScalingPolicy policy) {
+		return new AutoscaleTarget(listenerId, minConsumers, maxConsumers, null, 0, 0, policy, null);
+	}
+
+	/**
+	 * 消费线程到达分区数后继续调整工作线程数
+	 *
+	 * @param executor 工作线程执行器，容器启动后才创建的可以延迟获取
+	 */
+	public static AutoscaleTarget consumersAndWorkers(String listenerId, int minConsumers, int maxConsumers,
+	                                                  Supplier<RecordExecutor> executor, int minWorkers, int maxWorkers,
+	                                                  ScalingPolicy policy) {
+		return new AutoscaleTarget(listenerId, minConsumers, maxConsumers, executor, minWorkers, maxWorkers, policy, null);
+	}
+
+	/**
+	 * @param restartHook 容器重启调整消费线程数之后调用，例如让背压控制器清空已失效的暂停状态
+	 */
+	public AutoscaleTarget afterRestart(Runnable restartHook) {
+		return new AutoscaleTarget(listenerId, minConsumers, maxConsumers, executor, minWorkers, maxWorkers, policy,
+				restartHook);
+	}
+}
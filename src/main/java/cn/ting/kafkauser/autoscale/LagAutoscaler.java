@@ -0,0 +1,307 @@
+package cn.ting.kafkauser.autoscale;
+
+import cn.ting.kafkauser.executor.RecordExecutor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.MemberToRemove;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.admin.RemoveMembersFromConsumerGroupOptions;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.CooperativeStickyAssignor;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+/**
+ * 按消费积压自动调整监听容器的消费线程数和工作线程数
+ *
+ * 定时通过 AdminClient 采样每个消费组的积压、提交位移和日志末端位移，算出消费速度和生产速度，
+ * 交给 {@link ScalingPolicy} 决策。扩容先加消费线程直到分区数，再加工作线程；缩容顺序相反。
+ *
+ * 避免重平衡风暴：
+ * - 受管容器在启动前改用 CooperativeStickyAssignor，重平衡只迁移需要移动的分区，其余分区不停止消费
+ * - 同时开启静态成员（group.instance.id = instanceId-listenerId-序号），容器重启调整线程数时，
+ *   原有成员在 session.timeout.ms 内以相同身份重新加入，不触发重平衡；只有新增或移除的成员引起一次增量重平衡
+ * - 缩容时主动把多出的静态成员移出消费组，分区立即重新分配，不用等会话超时
+ * - 决策带滞回和冷却时间，一个冷却周期内最多一次调整；容器一旦重启就开始冷却，即使随后移除成员失败
+ *
+ * 已在运行的消费组从 eager 协议切换到 cooperative 需要先滚动重启一轮，instanceId 必须在每个应用实例间唯一。
+ */
+@Slf4j
+public class LagAutoscaler implements SmartLifecycle {
+
+	private final KafkaListenerEndpointRegistry listenerRegistry;
+	private final Map<String, Object> adminConfig;
+	private final String instanceId;
+	private final long intervalMillis;
+	private final List<AutoscaleTarget> targets;
+	private final Function<Map<String, Object>, Admin> adminFactory;
+	private final Map<String, Sample> lastSamples = new ConcurrentHashMap<>();
+
+	private Admin admin;
+	private ScheduledExecutorService scheduler;
+	private volatile boolean running;
+
+	/**
+	 * @param listenerRegistry 监听容器注册表
+	 * @param adminConfig AdminClient 配置
+	 * @param instanceId 应用实例标识，用于静态成员 ID
+	 * @param intervalMillis 采样间隔
+	 * @param targets 受管容器
+	 */
+	public LagAutoscaler(KafkaListenerEndpointRegistry listenerRegistry, Map<String, Object> adminConfig,
+	                     String instanceId, long intervalMillis, List<AutoscaleTarget> targets) {
+		this(listenerRegistry, adminConfig, instanceId, intervalMillis, targets, Admin::create);
+	}
+
+	/**
+	 * @param adminFactory 按配置创建 AdminClient，测试时替换
+	 */
+	LagAutoscaler(KafkaListenerEndpointRegistry listenerRegistry, Map<String, Object> adminConfig,
+	              String instanceId, long intervalMillis, List<AutoscaleTarget> targets,
+	              Function<Map<String, Object>, Admin> adminFactory) {
+		this.adminFactory = adminFactory;
+		this.listenerRegistry = listenerRegistry;
+		this.adminConfig = adminConfig;
+		this.instanceId = instanceId;
+		this.intervalMillis = intervalMillis;
+		this.targets = new ArrayList<>(targets);
+	}
+
+	/**
+	 * 在监听容器启动之前执行，改写受管容器的消费者配置
+	 */
+	@Override
+	public void start() {
+		for (AutoscaleTarget target : targets) {
+			ConcurrentMessageListenerContainer<?, ?> container = container(target);
+			container.getContainerProperties().getKafkaConsumerProperties()
+					.setProperty(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, CooperativeStickyAssignor.class.getName());
+			container.getContainerProperties().getKafkaConsumerProperties()
+					.setProperty(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG, memberPrefix(target));
+			if (container.getConcurrency() < target.getMinConsumers()) {
+				container.setConcurrency(target.getMinConsumers());
+			}
+		}
+		this.admin = adminFactory.apply(adminConfig);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "lag-autoscaler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::tick, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		running = true;
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+		if (admin != null) {
+			admin.close();
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * 比监听容器（Integer.MAX_VALUE - 100）先启动、后停止
+	 */
+	@Override
+	public int getPhase() {
+		return Integer.MAX_VALUE - 200;
+	}
+
+	void tick() {
+		for (AutoscaleTarget target : targets) {
+			try {
+				evaluate(target);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Exception e) {
+				log.warn("扩缩容采样失败: {}", target.getListenerId(), e);
+			}
+		}
+	}
+
+	private void evaluate(AutoscaleTarget target) throws Exception {
+		ConcurrentMessageListenerContainer<?, ?> container = container(target);
+		if (!container.isRunning()) {
+			return;
+		}
+		Sample sample = sample(container);
+		Sample previous = lastSamples.put(target.getListenerId(), sample);
+		if (previous == null) {
+			return;
+		}
+		double seconds = (sample.timeMillis - previous.timeMillis) / 1000.0;
+		double consumeRate = Math.max(0, sample.committed - previous.committed) / seconds;
+		double produceRate = Math.max(0, sample.end - previous.end) / seconds;
+
+		ScalingPolicy.Decision decision = target.getPolicy()
+				.decide(sample.lag, consumeRate, produceRate, sample.timeMillis);
+		if (decision == ScalingPolicy.Decision.HOLD) {
+			return;
+		}
+		log.info("{} 积压={}, 消费={}/s, 生产={}/s, 决策={}", target.getListenerId(), sample.lag,
+				Math.round(consumeRate), Math.round(produceRate), decision);
+		boolean changed = decision == ScalingPolicy.Decision.UP
+				? scaleUp(target, container, sample.partitions)
+				: scaleDown(target, container);
+		if (changed) {
+			target.getPolicy().changed(System.currentTimeMillis());
+		}
+	}
+
+	private boolean scaleUp(AutoscaleTarget target, ConcurrentMessageListenerContainer<?, ?> container, int partitions) {
+		int consumers = container.getConcurrency();
+		// 消费线程超过分区数只会空闲，到上限后改加工作线程
+		if (consumers < Math.min(target.getMaxConsumers(), partitions)) {
+			restart(target, container, consumers + 1);
+			log.info("{} 消费线程 {} -> {}", target.getListenerId(), consumers, consumers + 1);
+			return true;
+		}
+		RecordExecutor executor = executor(target);
+		if (executor != null && executor.getMaxConcurrency() < target.getMaxWorkers()) {
+			int workers = executor.getMaxConcurrency();
+			executor.setMaxConcurrency(Math.min(target.getMaxWorkers(), workers * 2));
+			log.info("{} 工作线程 {} -> {}", target.getListenerId(), workers, executor.getMaxConcurrency());
+			return true;
+		}
+		return false;
+	}
+
+	private boolean scaleDown(AutoscaleTarget target, ConcurrentMessageListenerContainer<?, ?> container)
+			throws InterruptedException {
+		RecordExecutor executor = executor(target);
+		if (executor != null && executor.getMaxConcurrency() > target.getMinWorkers()) {
+			int workers = executor.getMaxConcurrency();
+			executor.setMaxConcurrency(Math.max(target.getMinWorkers(), workers / 2));
+			log.info("{} 工作线程 {} -> {}", target.getListenerId(), workers, executor.getMaxConcurrency());
+			return true;
+		}
+		int consumers = container.getConcurrency();
+		if (consumers > target.getMinConsumers()) {
+			restart(target, container, consumers - 1);
+			log.info("{} 消费线程 {} -> {}", target.getListenerId(), consumers, consumers - 1);
+			// 被移除的静态成员不会主动离组，立即踢出，分区马上重新分配；
+			// 踢出失败时等会话超时后由协调者移除，拓扑已经变了，仍然算一次调整
+			MemberToRemove member = new MemberToRemove(memberPrefix(target) + "-" + (consumers - 1));
+			try {
+				admin.removeMembersFromConsumerGroup(container.getGroupId(),
+						new RemoveMembersFromConsumerGroupOptions(Arrays.asList(member)))
+						.all().get(30, TimeUnit.SECONDS);
+			} catch (ExecutionException | TimeoutException e) {
+				log.warn("{} 移除静态成员 {} 失败，等待会话超时后重新分配", target.getListenerId(),
+						member.groupInstanceId(), e);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * ConcurrentMessageListenerContainer 的线程数只在启动时生效，停止后修改再启动；
+	 * 静态成员关闭时不发送 LeaveGroup，重启后以相同身份加入，原有分区分配保持不变
+	 *
+	 * 重启后立即开始冷却，并通知 restartHook：子容器重建后之前的分区暂停请求已经丢失
+	 */
+	private void restart(AutoscaleTarget target, ConcurrentMessageListenerContainer<?, ?> container, int concurrency) {
+		restartContainer(container, concurrency);
+		target.getPolicy().changed(System.currentTimeMillis());
+		if (target.getRestartHook() != null) {
+			target.getRestartHook().run();
+		}
+	}
+
+	/**
+	 * 按新的线程数重启容器，测试时替换
+	 */
+	void restartContainer(ConcurrentMessageListenerContainer<?, ?> container, int concurrency) {
+		container.stop();
+		container.setConcurrency(concurrency);
+		container.start();
+	}
+
+	private Sample sample(ConcurrentMessageListenerContainer<?, ?> container) throws Exception {
+		List<String> topics = Arrays.asList(container.getContainerProperties().getTopics());
+		Map<String, TopicDescription> descriptions = admin.describeTopics(topics).allTopicNames().get(30, TimeUnit.SECONDS);
+		Map<TopicPartition, OffsetSpec> request = new HashMap<>();
+		descriptions.values().forEach(description -> description.partitions().forEach(info ->
+				request.put(new TopicPartition(description.name(), info.partition()), OffsetSpec.latest())));
+
+		Map<TopicPartition, OffsetAndMetadata> committed = admin.listConsumerGroupOffsets(container.getGroupId())
+				.partitionsToOffsetAndMetadata().get(30, TimeUnit.SECONDS);
+		Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> ends = admin.listOffsets(request)
+				.all().get(30, TimeUnit.SECONDS);
+
+		long lag = 0;
+		long committedSum = 0;
+		long endSum = 0;
+		for (Map.Entry<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> entry : ends.entrySet()) {
+			long end = entry.getValue().offset();
+			endSum += end;
+			OffsetAndMetadata offset = committed.get(entry.getKey());
+			if (offset != null) {
+				committedSum += offset.offset();
+				lag += Math.max(0, end - offset.offset());
+			}
+		}
+		return new Sample(System.currentTimeMillis(), lag, committedSum, endSum, request.size());
+	}
+
+	private ConcurrentMessageListenerContainer<?, ?> container(AutoscaleTarget target) {
+		MessageListenerContainer container = listenerRegistry.getListenerContainer(target.getListenerId());
+		if (!(container instanceof ConcurrentMessageListenerContainer)) {
+			throw new IllegalStateException("找不到可扩缩容的监听容器: " + target.getListenerId());
+		}
+		return (ConcurrentMessageListenerContainer<?, ?>) container;
+	}
+
+	private static RecordExecutor executor(AutoscaleTarget target) {
+		return target.getExecutor() == null ? null : target.getExecutor().get();
+	}
+
+	private String memberPrefix(AutoscaleTarget target) {
+		return instanceId + "-" + target.getListenerId();
+	}
+
+	private static final class Sample {
+		final long timeMillis;
+		final long lag;
+		final long committed;
+		final long end;
+		final int partitions;
+
+		Sample(long timeMillis, long lag, long committed, long end, int partitions) {
+			this.timeMillis = timeMillis;
+			this.lag = lag;
+			this.committed = committed;
+			this.end = end;
+			this.partitions = partitions;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package cn.ting.kafkauser.autoscale;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 扩缩容决策，带滞回和冷却时间
+ *
+ * - 扩容：积压超过 scaleUpLag，且按当前净消费速度在 targetDrain 内消化不完，连续 upSamples 次采样成立
+ * - 缩容：积压低于 scaleDownLag，连续 downSamples 次采样成立
+ * - 任意一次调整后 cooldown 内不再调整，给重平衡和新线程预热留出时间
+ *
+ * scaleUpLag 远大于 scaleDownLag、缩容需要的连续采样数多于扩容，两个阈值之间的区间保持不动，避免来回抖动。
+ * 非线程安全，由扩缩容控制器的调度线程单线程调用。
+ */
+public class ScalingPolicy {
+
+	public enum Decision {
+		UP, DOWN, HOLD
+	}
+
+	private final long scaleUpLag;
+	private final long scaleDownLag;
+	private final long targetDrainMillis;
+	private final int upSamples;
+	private final int downSamples;
+	private final long cooldownMillis;
+
+	private int upStreak;
+	private int downStreak;
+	private long lastChangeMillis = Long.MIN_VALUE / 2;
+
+	private ScalingPolicy(Builder builder) {
+		this.scaleUpLag = builder.scaleUpLag;
+		this.scaleDownLag = builder.scaleDownLag;
+		this.targetDrainMillis = builder.targetDrainMillis;
+		this.upSamples = builder.upSamples;
+		this.downSamples = builder.downSamples;
+		this.cooldownMillis = builder.cooldownMillis;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @param lag 当前总积压
+	 * @param consumeRate 消费速度（条/秒）
+	 * @param produceRate 生产速度（条/秒）
+	 * @param nowMillis 当前时间
+	 * @return 扩容、缩容或保持
+	 */
+	public Decision decide(long lag, double consumeRate, double produceRate, long nowMillis) {
+		double netRate = consumeRate - produceRate;
+		boolean falling = lag > scaleUpLag
+				&& (netRate <= 0 || lag / netRate * 1000 > targetDrainMillis);
+		boolean idle = lag < scaleDownLag;
+
+		upStreak = falling ? upStreak + 1 : 0;
+		downStreak = idle ? downStreak + 1 : 0;
+
+		if (nowMillis - lastChangeMillis < cooldownMillis) {
+			return Decision.HOLD;
+		}
+		if (upStreak >= upSamples) {
+			return Decision.UP;
+		}
+		if (downStreak >= downSamples) {
+			return Decision.DOWN;
+		}
+		return Decision.HOLD;
+	}
+
+	/**
+	 * 调整实际生效后调用，重置连续计数并开始冷却
+	 *
+	 * @param nowMillis 当前时间
+	 */
+	public void changed(long nowMillis) {
+		lastChangeMillis = nowMillis;
+		upStreak = 0;
+		downStreak = 0;
+	}
+
+	public static class Builder {
+		private long scaleUpLag = 10_000;
+		private long scaleDownLag = 100;
+		private long targetDrainMillis = TimeUnit.MINUTES.toMillis(1);
+		private int upSamples = 3;
+		private int downSamples = 10;
+		private long cooldownMillis = TimeUnit.MINUTES.toMillis(2);
+
+		private Builder() {
+		}
+
+		public Builder scaleUpLag(long scaleUpLag) {
+			this.scaleUpLag = scaleUpLag;
+			return this;
+		}
+
+		public Builder scaleDownLag(long scaleDownLag) {
+			this.scaleDownLag = scaleDownLag;
+			return this;
+		}
+
+		public Builder targetDrain(long duration, TimeUnit unit) {
+			this.targetDrainMillis = unit.toMillis(duration);
+			return this;
+		}
+
+		public Builder upSamples(int upSamples) {
+			this.upSamples = upSamples;
+			return this;
+		}
+
+		public Builder downSamples(int downSamples) {
+			this.downSamples = downSamples;
+			return this;
+		}
+
+		public Builder cooldown(long duration, TimeUnit unit) {
+			this.cooldownMillis = unit.toMillis(duration);
+			return this;
+		}
+
+		public ScalingPolicy build() {
+			if (scaleDownLag < 0 || scaleUpLag <= scaleDownLag || upSamples <= 0 || downSamples <= 0) {
+				throw new IllegalArgumentException("扩缩容参数不合法");
+			}
+			return new ScalingPolicy(this);
+		}
+	}
+}
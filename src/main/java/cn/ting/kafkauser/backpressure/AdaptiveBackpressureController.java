@@ -0,0 +1,219 @@
+package cn.ting.kafkauser.backpressure;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+/**
+ * 自适应背压控制器
+ *
+ * 统一负责分区的暂停与恢复决策，取代固定的队列使用率阈值：
+ * - 在途消息数（已派发未完成）超过当前上限时暂停分区，低于上限的一定比例时恢复
+ * - 上限按 AIMD 调整：每个采样窗口内平均排队时间不超过目标值就加一，超过目标值就乘以衰减系数
+ *
+ * 暂停和恢复都通过 {@link MessageListenerContainer#pausePartition} / {@link MessageListenerContainer#resumePartition}
+ * 提交请求，由容器在消费线程的下一轮 poll 前执行，工作线程从不直接调用 KafkaConsumer。
+ * 控制器本身不阻塞消费线程，消费线程始终按时 poll，不会触发 max.poll.interval.ms 重平衡。
+ */
+@Slf4j
+public class AdaptiveBackpressureController {
+
+	private final Supplier<MessageListenerContainer> containerSupplier;
+	private final int minLimit;
+	private final int maxLimit;
+	private final long targetQueueWaitNanos;
+	private final int sampleWindow;
+	// 在途数量降到上限的这个比例以下才恢复，避免在阈值附近反复暂停/恢复
+	private final double resumeRatio;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final Set<TopicPartition> pausedPartitions = ConcurrentHashMap.newKeySet();
+	// 保证同一分区的暂停请求和恢复请求按决策顺序到达容器
+	private final Object pauseLock = new Object();
+
+	private volatile int limit;
+
+	// 采样窗口，由 synchronized 保护
+	private int samples;
+	private long queueWaitSum;
+
+	private AdaptiveBackpressureController(Builder builder) {
+		this.containerSupplier = builder.containerSupplier;
+		this.minLimit = builder.minLimit;
+		this.maxLimit = builder.maxLimit;
+		this.targetQueueWaitNanos = builder.targetQueueWaitNanos;
+		this.sampleWindow = builder.sampleWindow;
+		this.resumeRatio = builder.resumeRatio;
+		this.limit = Math.max(minLimit, Math.min(maxLimit, builder.initialLimit));
+	}
+
+	public static Builder builder(Supplier<MessageListenerContainer> containerSupplier) {
+		return new Builder(containerSupplier);
+	}
+
+	/**
+	 * 派发一条消息前调用，必须在消费线程上调用
+	 * 在途数量达到上限时请求暂停该分区，当前这批已拉取的消息仍然照常派发
+	 *
+	 * @param partition 消息所在分区
+	 * @return 派发时间戳，传给 {@link #onStart}
+	 */
+	public long onDispatch(TopicPartition partition) {
+		int current = inFlight.incrementAndGet();
+		if (current >= limit && !pausedPartitions.contains(partition)) {
+			synchronized (pauseLock) {
+				if (pausedPartitions.add(partition)) {
+					container().pausePartition(partition);
+					log.info("已请求暂停分区: {} (在途: {}, 上限: {})", partition, current, limit);
+				}
+			}
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * 工作线程开始处理消息时调用，记录排队时间
+	 *
+	 * @param dispatchNanos {@link #onDispatch} 返回的时间戳
+	 */
+	public void onStart(long dispatchNanos) {
+		sample(System.nanoTime() - dispatchNanos);
+	}
+
+	/**
+	 * 工作线程处理完成（无论成功失败）时调用
+	 * 在途数量回落后请求恢复所有被暂停的分区
+	 */
+	public void onComplete() {
+		int current = inFlight.decrementAndGet();
+		if (!pausedPartitions.isEmpty() && current <= limit * resumeRatio) {
+			synchronized (pauseLock) {
+				for (TopicPartition partition : pausedPartitions) {
+					container().resumePartition(partition);
+					log.info("已请求恢复分区: {} (在途: {}, 上限: {})", partition, current, limit);
+				}
+				pausedPartitions.clear();
+			}
+		}
+	}
+
+	/**
+	 * 分区被回收后清理暂停状态
+	 *
+	 * @param partition 分区
+	 */
+	public void forget(TopicPartition partition) {
+		synchronized (pauseLock) {
+			pausedPartitions.remove(partition);
+		}
+	}
+
+	/**
+	 * 容器停止后重新启动时调用：重启丢弃了之前的暂停请求，清空暂停状态，
+	 * 在途数量仍然超过上限时下一次派发会重新暂停分区
+	 */
+	public void reset() {
+		synchronized (pauseLock) {
+			if (!pausedPartitions.isEmpty()) {
+				log.info("容器已重启，清空暂停状态: {}", pausedPartitions);
+				pausedPartitions.clear();
+			}
+		}
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public int getPausedPartitionCount() {
+		return pausedPartitions.size();
+	}
+
+	private synchronized void sample(long queueWaitNanos) {
+		queueWaitSum += queueWaitNanos;
+		if (++samples < sampleWindow) {
+			return;
+		}
+		long avgWait = queueWaitSum / samples;
+		samples = 0;
+		queueWaitSum = 0;
+
+		int current = limit;
+		if (avgWait > targetQueueWaitNanos) {
+			// 排队时间超过目标：乘性减
+			limit = Math.max(minLimit, (int) (current * 0.75));
+		} else if (inFlight.get() >= current * resumeRatio) {
+			// 排队时间达标且上限确实在起作用：加性增
+			limit = Math.min(maxLimit, current + 1);
+		}
+	}
+
+	private MessageListenerContainer container() {
+		MessageListenerContainer container = containerSupplier.get();
+		if (container == null) {
+			throw new IllegalStateException("背压控制器找不到对应的监听容器");
+		}
+		return container;
+	}
+
+	public static class Builder {
+		private final Supplier<MessageListenerContainer> containerSupplier;
+		private int minLimit = 4;
+		private int maxLimit = 1000;
+		private int initialLimit = 32;
+		private long targetQueueWaitNanos = TimeUnit.MILLISECONDS.toNanos(500);
+		private int sampleWindow = 20;
+		private double resumeRatio = 0.7;
+
+		private Builder(Supplier<MessageListenerContainer> containerSupplier) {
+			this.containerSupplier = containerSupplier;
+		}
+
+		public Builder minLimit(int minLimit) {
+			this.minLimit = minLimit;
+			return this;
+		}
+
+		public Builder maxLimit(int maxLimit) {
+			this.maxLimit = maxLimit;
+			return this;
+		}
+
+		public Builder initialLimit(int initialLimit) {
+			this.initialLimit = initialLimit;
+			return this;
+		}
+
+		public Builder targetQueueWait(long duration, TimeUnit unit) {
+			this.targetQueueWaitNanos = unit.toNanos(duration);
+			return this;
+		}
+
+		public Builder sampleWindow(int sampleWindow) {
+			this.sampleWindow = sampleWindow;
+			return this;
+		}
+
+		public Builder resumeRatio(double resumeRatio) {
+			this.resumeRatio = resumeRatio;
+			return this;
+		}
+
+		public AdaptiveBackpressureController build() {
+			if (minLimit <= 0 || maxLimit < minLimit || sampleWindow <= 0
+					|| resumeRatio <= 0 || resumeRatio > 1) {
+				throw new IllegalArgumentException("背压参数不合法");
+			}
+			return new AdaptiveBackpressureController(this);
+		}
+	}
+}
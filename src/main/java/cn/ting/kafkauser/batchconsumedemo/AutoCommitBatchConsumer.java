@@ -2,34 +2,39 @@ package cn.ting.kafkauser.batchconsumedemo;
 
 import java.util.List;
 
+import javax.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Service;
 
 @Slf4j
 @Service
 public class AutoCommitBatchConsumer {
 
+	// 批内并行处理：演示数据不带 key，处理也不依赖先后顺序，每条消息单独并行；
+	// 一批消息通常来自同一个分区，按分区或 key 分组时（无 key 的消息同分区落在一组）会退化成逐条串行
+	private final ParallelBatchProcessor batchProcessor = new ParallelBatchProcessor(
+			Runtime.getRuntime().availableProcessors(),
+			ParallelBatchProcessor.OrderingScope.NONE
+	);
+
 	/**
-	 * 自动提交的批量消费者
+	 * 并行批量消费者
+	 * 一批消息拆到多个线程并行处理，全部完成后才提交这一批的位移
 	 *
-	 * @param messages 批量消息列表
+	 * @param records 批量消息列表
 	 */
 	@KafkaListener(
 			topics = "auto-batch-topic",
-			containerFactory = "autoCommitBatchContainerFactory"
+			containerFactory = "parallelBatchContainerFactory"
 	)
-	public void consumeBatch(
-			@Payload List<String> messages
-	) {
-		log.info(">>>> 收到批量消息: {}条", messages.size());
+	public void consumeBatch(List<ConsumerRecord<String, String>> records) {
+		// 批量大小和整批耗时由 kafka.listener.batch.size / kafka.listener.process 指标统计
+		log.debug(">>>> 收到批量消息: {}条", records.size());
 
-		// 模拟批量处理
-		long startTime = System.currentTimeMillis();
-		for (int i = 0; i < messages.size(); i++) {
-			String message = messages.get(i);
-			log.info("处理消息: {}", message);
+		batchProcessor.process(records, record -> {
+			log.debug("处理消息: {}", record.value());
 
 			// 模拟处理时间 (10-100ms)
 			try {
@@ -37,11 +42,11 @@ public class AutoCommitBatchConsumer {
 			} catch (InterruptedException e) {
 				Thread.currentThread().interrupt();
 			}
-		}
-
-		long duration = System.currentTimeMillis() - startTime;
-		double avgTime = duration / (double) messages.size();
+		});
+	}
 
-		log.info("批量处理完成: 总耗时={}ms, 平均={}ms/条", duration, avgTime);
+	@PreDestroy
+	public void shutdown() {
+		batchProcessor.shutdown();
 	}
 }
@@ -0,0 +1,149 @@
+package cn.ting.kafkauser.batchconsumedemo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+
+/**
+ * 把一批消息拆到 ForkJoin 线程池并行处理
+ *
+ * 按 {@link OrderingScope} 把消息分组，组内顺序处理，组与组之间并行；
+ * 调用线程等待所有组完成后才返回，监听容器随后提交整批位移（AckMode.BATCH），
+ * 因此不会出现自动提交那种"还没处理完就已经提交"的丢消息窗口。
+ *
+ * 某条消息失败时所在组停止处理，其他组照常完成。最终抛出的
+ * {@link BatchListenerFailedException} 指向批内位置最靠前的失败消息：
+ * 它之前的消息一定都已成功，错误处理器会提交这些位移并从失败消息开始重试。
+ */
+public class ParallelBatchProcessor {
+
+	/**
+	 * 批内消息的顺序要求
+	 */
+	public enum OrderingScope {
+		/**
+		 * 不要求顺序，每条消息单独并行
+		 */
+		NONE,
+		/**
+		 * 同一分区的消息按 offset 顺序处理
+		 */
+		PARTITION,
+		/**
+		 * 同一分区内相同 key 的消息按 offset 顺序处理
+		 */
+		KEY
+	}
+
+	private final ForkJoinPool pool;
+	private final OrderingScope scope;
+
+	/**
+	 * @param parallelism 并行度
+	 * @param scope 顺序要求
+	 */
+	public ParallelBatchProcessor(int parallelism, OrderingScope scope) {
+		this.pool = new ForkJoinPool(parallelism);
+		this.scope = scope;
+	}
+
+	/**
+	 * 并行处理一批消息，全部完成后返回
+	 *
+	 * @param records 一次 poll 拉到的消息
+	 * @param handler 单条消息的处理逻辑
+	 * @throws BatchListenerFailedException 有消息处理失败时抛出
+	 */
+	public <K, V> void process(List<ConsumerRecord<K, V>> records, Consumer<ConsumerRecord<K, V>> handler) {
+		FirstFailure firstFailure = new FirstFailure();
+
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		for (List<Integer> group : group(records)) {
+			tasks.add(pool.submit(() -> {
+				for (int index : group) {
+					try {
+						handler.accept(records.get(index));
+					} catch (RuntimeException e) {
+						firstFailure.offer(index, e);
+						return;
+					}
+				}
+			}));
+		}
+		for (ForkJoinTask<?> task : tasks) {
+			task.join();
+		}
+
+		firstFailure.throwIfPresent();
+	}
+
+	/**
+	 * 停止线程池，等待正在处理的任务完成
+	 */
+	public void shutdown() {
+		pool.shutdown();
+		try {
+			if (!pool.awaitTermination(30, TimeUnit.SECONDS)) {
+				pool.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * 记录批内位置最靠前的失败消息
+	 */
+	private static class FirstFailure {
+		private int index = -1;
+		private Throwable cause;
+
+		synchronized void offer(int failedIndex, Throwable e) {
+			if (index < 0 || failedIndex < index) {
+				index = failedIndex;
+				cause = e;
+			}
+		}
+
+		synchronized void throwIfPresent() {
+			if (index >= 0) {
+				throw new BatchListenerFailedException("批量处理失败", cause, index);
+			}
+		}
+	}
+
+	/**
+	 * 按顺序要求分组，组内保存批内下标并保持原有先后顺序
+	 */
+	private <K, V> Iterable<List<Integer>> group(List<ConsumerRecord<K, V>> records) {
+		if (scope == OrderingScope.NONE) {
+			List<List<Integer>> singles = new ArrayList<>(records.size());
+			for (int i = 0; i < records.size(); i++) {
+				List<Integer> single = new ArrayList<>(1);
+				single.add(i);
+				singles.add(single);
+			}
+			return singles;
+		}
+		Map<Object, List<Integer>> groups = new LinkedHashMap<>();
+		for (int i = 0; i < records.size(); i++) {
+			ConsumerRecord<K, V> record = records.get(i);
+			TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+			Object groupKey = scope == OrderingScope.PARTITION
+					? partition
+					: Arrays.asList(partition, record.key());
+			groups.computeIfAbsent(groupKey, k -> new ArrayList<>()).add(i);
+		}
+		return groups.values();
+	}
+}
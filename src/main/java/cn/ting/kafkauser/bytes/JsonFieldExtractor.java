@@ -0,0 +1,168 @@
+package cn.ting.kafkauser.bytes;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+
+/**
+ * 从 JSON 字节中流式读取一个字段，不构造对象树，也不把整个消息体解码成字符串
+ *
+ * 路径用点号分隔，如 "table" 或 "data.id"，只能穿过对象，不能进入数组。
+ * 按 token 顺序扫描：不匹配的字段连同嵌套内容直接跳过，找到目标字段即停止，后面的内容不再读取。
+ * 字段名由 JsonFactory 的符号表规范化，重复出现的字段名不会每次都分配字符串；
+ * {@link #matches} 和 {@link #indexOf} 直接比较解析器缓冲区里的字符，只有 {@link #text} 会为结果分配字符串。
+ *
+ * 实例不可变，线程安全。
+ */
+public final class JsonFieldExtractor {
+
+	private static final JsonFactory FACTORY = new JsonFactory();
+
+	private final String path;
+	private final String[] segments;
+
+	private JsonFieldExtractor(String path) {
+		this.path = path;
+		this.segments = path.split("\\.");
+	}
+
+	/**
+	 * @param path 点号分隔的字段路径
+	 */
+	public static JsonFieldExtractor of(String path) {
+		if (path == null || path.isEmpty() || path.startsWith(".") || path.endsWith(".") || path.contains("..")) {
+			throw new IllegalArgumentException("JSON 字段路径不合法: " + path);
+		}
+		return new JsonFieldExtractor(path);
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return 字段值的文本（字符串原样，数字和布尔值按字面），字段不存在、为 null、是对象或数组时返回 null
+	 */
+	public String text(byte[] json) {
+		return text(json, 0, json == null ? 0 : json.length);
+	}
+
+	public String text(byte[] json, int offset, int length) {
+		if (json == null) {
+			return null;
+		}
+		try (JsonParser parser = FACTORY.createParser(json, offset, length)) {
+			return seek(parser) && parser.currentToken().isScalarValue() && parser.currentToken() != JsonToken.VALUE_NULL
+					? parser.getText()
+					: null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param expected 期望的值，与 {@link #text} 的结果比较
+	 * @return 字段值等于 expected 时返回 true，比较过程不分配字符串
+	 */
+	public boolean matches(byte[] json, String expected) {
+		return matches(json, 0, json == null ? 0 : json.length, expected);
+	}
+
+	public boolean matches(byte[] json, int offset, int length, String expected) {
+		return expected != null && find(json, offset, length, expected, null) == 0;
+	}
+
+	/**
+	 * 一次解析同时和多个候选值比较，用于按字段值路由
+	 *
+	 * @param candidates 候选值
+	 * @return 第一个等于字段值的候选值下标，都不相等或字段不存在时返回 -1
+	 */
+	public int indexOf(byte[] json, String... candidates) {
+		return indexOf(json, 0, json == null ? 0 : json.length, candidates);
+	}
+
+	public int indexOf(byte[] json, int offset, int length, String... candidates) {
+		return find(json, offset, length, null, candidates);
+	}
+
+	/**
+	 * 单个期望值走 expected，避免可变参数为每次调用分配数组
+	 */
+	private int find(byte[] json, int offset, int length, String expected, String[] candidates) {
+		if (json == null) {
+			return -1;
+		}
+		try (JsonParser parser = FACTORY.createParser(json, offset, length)) {
+			if (!seek(parser) || !parser.currentToken().isScalarValue() || parser.currentToken() == JsonToken.VALUE_NULL) {
+				return -1;
+			}
+			char[] chars = parser.getTextCharacters();
+			int start = parser.getTextOffset();
+			int textLength = parser.getTextLength();
+			if (candidates == null) {
+				return regionEquals(chars, start, textLength, expected) ? 0 : -1;
+			}
+			for (int i = 0; i < candidates.length; i++) {
+				if (regionEquals(chars, start, textLength, candidates[i])) {
+					return i;
+				}
+			}
+			return -1;
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	private static boolean regionEquals(char[] chars, int start, int length, String expected) {
+		if (expected == null || expected.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (chars[start + i] != expected.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 把解析器移动到目标字段的值上
+	 *
+	 * @return 是否找到
+	 */
+	private boolean seek(JsonParser parser) throws IOException {
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			return false;
+		}
+		int level = 0;
+		JsonToken token;
+		while ((token = parser.nextToken()) != null) {
+			if (token == JsonToken.END_OBJECT) {
+				// 当前层的对象结束了还没找到
+				return false;
+			}
+			// token 一定是 FIELD_NAME
+			boolean hit = segments[level].equals(parser.getCurrentName());
+			token = parser.nextToken();
+			if (!hit) {
+				parser.skipChildren();
+				continue;
+			}
+			if (level == segments.length - 1) {
+				return true;
+			}
+			if (token != JsonToken.START_OBJECT) {
+				return false;
+			}
+			level++;
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return path;
+	}
+}
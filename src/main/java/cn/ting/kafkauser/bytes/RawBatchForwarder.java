@@ -0,0 +1,98 @@
+package cn.ting.kafkauser.bytes;
+
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.springframework.kafka.core.ProducerFactory;
+
+/**
+ * 按字节过滤并转发一批消息
+ *
+ * key、value 和消息头原样转发，不解码也不复制；整批共用一个 {@link RawValue} 和一个发送回调，
+ * 被过滤掉的消息不产生任何分配，转发的消息只分配 ProducerRecord。
+ * 整批发送完成（flush）后才返回，容器随后提交这一批的位移；有发送失败时抛出异常，由容器的错误处理器重新投递整批，
+ * 已经转发成功的消息会再转发一次（至少一次）。
+ *
+ * 只在消费线程上调用，同一个实例不要给多个消费线程共用。
+ */
+@Slf4j
+public class RawBatchForwarder {
+
+	/**
+	 * 决定一条消息是否转发、转发到哪里
+	 */
+	@FunctionalInterface
+	public interface Router {
+
+		/**
+		 * @param record 原始消息
+		 * @param value 消息体视图，只在本次调用内有效
+		 * @return 目标 topic，null 表示丢弃；建议返回预先构造好的常量，避免每条消息拼接字符串
+		 */
+		String route(ConsumerRecord<byte[], byte[]> record, RawValue value);
+	}
+
+	private final ProducerFactory<byte[], byte[]> producerFactory;
+	private final Router router;
+	private final RawValue value = RawValue.of(null);
+	private final FailureCallback callback = new FailureCallback();
+
+	/**
+	 * @param producerFactory 字节序列化的生产者工厂
+	 * @param router 路由规则
+	 */
+	public RawBatchForwarder(ProducerFactory<byte[], byte[]> producerFactory, Router router) {
+		this.producerFactory = producerFactory;
+		this.router = router;
+	}
+
+	/**
+	 * @return 本批转发的条数
+	 */
+	public int forward(List<ConsumerRecord<byte[], byte[]>> records) {
+		Producer<byte[], byte[]> producer = null;
+		int forwarded = 0;
+		callback.failures = 0;
+		for (int i = 0; i < records.size(); i++) {
+			ConsumerRecord<byte[], byte[]> record = records.get(i);
+			String topic = router.route(record, value.reset(record.value()));
+			if (topic == null) {
+				continue;
+			}
+			if (producer == null) {
+				producer = producerFactory.createProducer();
+			}
+			producer.send(new ProducerRecord<>(topic, null, record.key(), record.value(), record.headers()), callback);
+			forwarded++;
+		}
+		value.reset(null);
+		if (producer != null) {
+			producer.flush();
+			if (callback.failures > 0) {
+				throw new KafkaException("转发失败 " + callback.failures + " 条，最近错误: " + callback.lastError);
+			}
+		}
+		return forwarded;
+	}
+
+	/**
+	 * 所有消息共用的回调，只记录失败；flush 返回前所有回调都已执行
+	 */
+	private static final class FailureCallback implements Callback {
+		private volatile int failures;
+		private volatile Exception lastError;
+
+		@Override
+		public synchronized void onCompletion(RecordMetadata metadata, Exception exception) {
+			if (exception != null) {
+				failures++;
+				lastError = exception;
+			}
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package cn.ting.kafkauser.bytes;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.kafka.common.utils.Bytes;
+
+/**
+ * 按需解码的消息体视图
+ *
+ * 只包装 ByteArrayDeserializer 交给监听器的原始字节，不复制；各种视图和解码结果第一次访问时才创建并缓存。
+ * 只做前缀比较、字段比较或原样转发时不会产生任何字符串。
+ *
+ * 可以用 {@link #reset} 在处理下一条消息时复用同一个实例，批量监听器整批只需要一个；
+ * 复用时之前取得的缓存结果不受影响，但不要再通过旧引用访问这个实例。非线程安全。
+ */
+public final class RawValue {
+
+	private byte[] data;
+	private ByteBuffer buffer;
+	private Bytes bytes;
+	private String text;
+	private Map<JsonFieldExtractor, String> fields;
+
+	private RawValue(byte[] data) {
+		this.data = data;
+	}
+
+	public static RawValue of(byte[] data) {
+		return new RawValue(data);
+	}
+
+	/**
+	 * 换成另一条消息的字节，清空缓存
+	 *
+	 * @return this
+	 */
+	public RawValue reset(byte[] data) {
+		this.data = data;
+		this.buffer = null;
+		this.bytes = null;
+		this.text = null;
+		if (fields != null) {
+			fields.clear();
+		}
+		return this;
+	}
+
+	/**
+	 * @return 消息体是否为 null（墓碑消息）
+	 */
+	public boolean isNull() {
+		return data == null;
+	}
+
+	public int length() {
+		return data == null ? 0 : data.length;
+	}
+
+	/**
+	 * @return 原始字节，不复制，调用方不要修改
+	 */
+	public byte[] array() {
+		return data;
+	}
+
+	/**
+	 * @return 只读的 ByteBuffer 视图，共享原始字节
+	 */
+	public ByteBuffer buffer() {
+		if (buffer == null && data != null) {
+			buffer = ByteBuffer.wrap(data).asReadOnlyBuffer();
+		}
+		return buffer;
+	}
+
+	/**
+	 * @return Kafka 的 Bytes 视图，共享原始字节，可以作为 Map 的键
+	 */
+	public Bytes bytes() {
+		if (bytes == null && data != null) {
+			bytes = Bytes.wrap(data);
+		}
+		return bytes;
+	}
+
+	/**
+	 * @param prefix 前缀字节，建议预先编码好复用
+	 */
+	public boolean startsWith(byte[] prefix) {
+		if (data == null || data.length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (data[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return 按 UTF-8 解码的消息体，第一次调用时解码
+	 */
+	public String asString() {
+		if (text == null && data != null) {
+			text = new String(data, StandardCharsets.UTF_8);
+		}
+		return text;
+	}
+
+	/**
+	 * @return JSON 字段的文本值，同一个字段只解析一次
+	 */
+	public String field(JsonFieldExtractor extractor) {
+		if (fields == null) {
+			fields = new HashMap<>(4);
+		} else if (fields.containsKey(extractor)) {
+			return fields.get(extractor);
+		}
+		String value = extractor.text(data);
+		fields.put(extractor, value);
+		return value;
+	}
+
+	/**
+	 * @return JSON 字段是否等于 expected，不分配字符串；已经通过 {@link #field} 取过时直接比较缓存的值
+	 */
+	public boolean fieldEquals(JsonFieldExtractor extractor, String expected) {
+		if (fields != null && fields.containsKey(extractor)) {
+			return expected != null && expected.equals(fields.get(extractor));
+		}
+		return extractor.matches(data, expected);
+	}
+}
@@ -0,0 +1,101 @@
+package cn.ting.kafkauser.canal;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.otter.canal.protocol.FlatMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 把 Canal 扁平消息（flatMessage=true 时投递到 Kafka 的 JSON）增量应用到 {@link RowCache}
+ *
+ * - INSERT / UPDATE：写入最新行；UPDATE 修改了主键时先删除旧主键对应的行
+ * - DELETE：删除行
+ * - DDL：清空该表的缓存，避免按旧表结构缓存的行继续被读到
+ *
+ * 必须按分区内的顺序单线程调用，Canal 按表或主键哈希分区，同一行的变更总在同一分区内有序。
+ */
+@Slf4j
+public class CanalCacheApplier {
+
+	private final RowCache cache;
+
+	public CanalCacheApplier(RowCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * 解析并应用一条 Canal 扁平消息
+	 *
+	 * @param json 消息内容
+	 */
+	public void apply(String json) {
+		apply(JSON.parseObject(json, FlatMessage.class));
+	}
+
+	public void apply(FlatMessage message) {
+		if (Boolean.TRUE.equals(message.getIsDdl())) {
+			cache.invalidateTable(message.getDatabase(), message.getTable());
+			return;
+		}
+		List<String> pkNames = message.getPkNames();
+		List<Map<String, String>> rows = message.getData();
+		if (pkNames == null || pkNames.isEmpty() || rows == null) {
+			log.debug("跳过没有主键或没有行数据的变更: {}.{} {}", message.getDatabase(), message.getTable(), message.getType());
+			return;
+		}
+
+		String type = message.getType();
+		for (int i = 0; i < rows.size(); i++) {
+			Map<String, String> row = rows.get(i);
+			String key = RowCache.key(message.getDatabase(), message.getTable(), pkValues(pkNames, row));
+			switch (type) {
+				case "INSERT":
+					cache.put(key, row);
+					break;
+				case "UPDATE":
+					Map<String, String> old = message.getOld() != null && i < message.getOld().size()
+							? message.getOld().get(i) : null;
+					if (old != null && changesPrimaryKey(pkNames, old)) {
+						cache.remove(RowCache.key(message.getDatabase(), message.getTable(), oldPkValues(pkNames, row, old)));
+					}
+					cache.put(key, row);
+					break;
+				case "DELETE":
+					cache.remove(key);
+					break;
+				default:
+					log.debug("忽略变更类型: {}", type);
+			}
+		}
+	}
+
+	private static List<String> pkValues(List<String> pkNames, Map<String, String> row) {
+		List<String> values = new ArrayList<>(pkNames.size());
+		for (String pk : pkNames) {
+			values.add(row.get(pk));
+		}
+		return values;
+	}
+
+	/**
+	 * Canal 的 old 只包含被修改的列
+	 */
+	private static boolean changesPrimaryKey(List<String> pkNames, Map<String, String> old) {
+		for (String pk : pkNames) {
+			if (old.containsKey(pk)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static List<String> oldPkValues(List<String> pkNames, Map<String, String> row, Map<String, String> old) {
+		List<String> values = new ArrayList<>(pkNames.size());
+		for (String pk : pkNames) {
+			values.add(old.containsKey(pk) ? old.get(pk) : row.get(pk));
+		}
+		return values;
+	}
+}
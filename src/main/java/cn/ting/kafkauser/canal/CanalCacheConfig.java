@@ -0,0 +1,45 @@
+package cn.ting.kafkauser.canal;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.concurrent.TimeUnit;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * binlog 行缓存配置
+ */
+@Configuration
+public class CanalCacheConfig {
+
+	/**
+	 * 最多缓存 10 万行，写入 30 分钟后过期（兜底 binlog 丢失的情况）
+	 */
+	@Bean
+	public RowCache canalRowCache() {
+		return new RowCache(100_000, 30, TimeUnit.MINUTES);
+	}
+
+	@Bean
+	public CanalCacheApplier canalCacheApplier(RowCache canalRowCache) {
+		return new CanalCacheApplier(canalRowCache);
+	}
+
+	/**
+	 * 行缓存的大小、命中率和淘汰数指标
+	 */
+	@Bean
+	public MeterBinder canalRowCacheMetrics(RowCache canalRowCache) {
+		return registry -> {
+			Gauge.builder("canal.cache.size", canalRowCache, cache -> cache.stats().getSize())
+					.register(registry);
+			Gauge.builder("canal.cache.hit.rate", canalRowCache, cache -> cache.stats().getHitRate())
+					.register(registry);
+			FunctionCounter.builder("canal.cache.evictions", canalRowCache, cache -> cache.stats().getEvictions())
+					.register(registry);
+			FunctionCounter.builder("canal.cache.expirations", canalRowCache, cache -> cache.stats().getExpirations())
+					.register(registry);
+		};
+	}
+}
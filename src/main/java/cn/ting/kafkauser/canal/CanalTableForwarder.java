@@ -0,0 +1,55 @@
+package cn.ting.kafkauser.canal;
+
+import cn.ting.kafkauser.bytes.JsonFieldExtractor;
+import cn.ting.kafkauser.bytes.RawBatchForwarder;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * 把 canal-test 中指定表的变更原样转发到 canal-&lt;表名&gt;
+ *
+ * 按字节消费，只流式读取扁平消息的 table 字段和配置的表名比较，不解析整条 JSON，也不解码成字符串；
+ * 每条消息仍会创建一个 JSON 解析器（不到 1KB 的解析状态），只是不构造对象树，比较表名时也不分配字符串。
+ * 配置 kafka.canal.forward-tables（逗号分隔）后启用。
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "kafka.canal.forward-tables")
+public class CanalTableForwarder {
+
+	private static final JsonFieldExtractor TABLE = JsonFieldExtractor.of("table");
+
+	private final RawBatchForwarder forwarder;
+
+	public CanalTableForwarder(@Qualifier("replayProducerFactory") ProducerFactory<byte[], byte[]> producerFactory,
+	                           @Value("${kafka.canal.forward-tables}") String[] tables) {
+		String[] topics = new String[tables.length];
+		for (int i = 0; i < tables.length; i++) {
+			tables[i] = tables[i].trim();
+			topics[i] = "canal-" + tables[i];
+		}
+		this.forwarder = new RawBatchForwarder(producerFactory, (record, value) -> {
+			int index = TABLE.indexOf(value.array(), tables);
+			return index < 0 ? null : topics[index];
+		});
+		log.info("转发 canal-test 中的表 {}", String.join(",", tables));
+	}
+
+	@KafkaListener(
+			id = "canal-forward",
+			topics = "canal-test",
+			groupId = "canal-forward-group",
+			containerFactory = "rawBatchContainerFactory"
+	)
+	public void forward(List<ConsumerRecord<byte[], byte[]>> records) {
+		int forwarded = forwarder.forward(records);
+		log.debug(">>>> 转发 {}/{} 条 binlog 变更", forwarded, records.size());
+	}
+}
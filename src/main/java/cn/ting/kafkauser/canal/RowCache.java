@@ -0,0 +1,179 @@
+package cn.ting.kafkauser.canal;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 进程内行缓存，按 库.表 + 主键 存放一行数据
+ *
+ * 容量和过期时间双重淘汰：超过容量时淘汰最久未访问的行，超过 TTL 的行在读取时失效。
+ * 为了降低读多写多时的锁竞争，按 key 的哈希分成多个段，每段是一个按访问顺序排列的 LinkedHashMap，
+ * 容量按段均分，因此整体淘汰是近似 LRU。
+ */
+public class RowCache {
+
+	private final Segment[] segments;
+	private final long ttlNanos;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+
+	/**
+	 * @param maxSize 最大行数
+	 * @param ttl 过期时间，0 表示不过期
+	 * @param unit 时间单位
+	 */
+	public RowCache(int maxSize, long ttl, TimeUnit unit) {
+		int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(16, maxSize / 64)));
+		this.segments = new Segment[segmentCount];
+		int perSegment = Math.max(1, maxSize / segmentCount);
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment(perSegment);
+		}
+		this.ttlNanos = unit.toNanos(ttl);
+	}
+
+	/**
+	 * 查询一行数据
+	 *
+	 * @param database 库名
+	 * @param table 表名
+	 * @param pkValues 主键值，多列主键按 pkNames 顺序
+	 * @return 行数据（列名到值），未命中返回 null
+	 */
+	public Map<String, String> get(String database, String table, List<String> pkValues) {
+		return get(key(database, table, pkValues));
+	}
+
+	Map<String, String> get(String key) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			Entry entry = segment.get(key);
+			if (entry == null) {
+				misses.increment();
+				return null;
+			}
+			if (ttlNanos > 0 && System.nanoTime() - entry.writeNanos > ttlNanos) {
+				segment.remove(key);
+				expirations.increment();
+				misses.increment();
+				return null;
+			}
+			hits.increment();
+			return entry.row;
+		}
+	}
+
+	void put(String key, Map<String, String> row) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.put(key, new Entry(row, System.nanoTime()));
+		}
+	}
+
+	void remove(String key) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.remove(key);
+		}
+	}
+
+	/**
+	 * 清空某张表的所有行，表结构变更（DDL）时调用
+	 *
+	 * @param database 库名
+	 * @param table 表名
+	 */
+	public void invalidateTable(String database, String table) {
+		String prefix = database + "." + table + ":";
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				Iterator<String> keys = segment.keySet().iterator();
+				while (keys.hasNext()) {
+					if (keys.next().startsWith(prefix)) {
+						keys.remove();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return 当前统计快照
+	 */
+	public Stats stats() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return new Stats(size, hits.sum(), misses.sum(), evictions.sum(), expirations.sum());
+	}
+
+	static String key(String database, String table, List<String> pkValues) {
+		StringBuilder key = new StringBuilder(database).append('.').append(table).append(':');
+		for (int i = 0; i < pkValues.size(); i++) {
+			if (i > 0) {
+				key.append('|');
+			}
+			key.append(pkValues.get(i));
+		}
+		return key.toString();
+	}
+
+	private Segment segmentFor(String key) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return segments[hash & (segments.length - 1)];
+	}
+
+	@AllArgsConstructor
+	private static final class Entry {
+		private final Map<String, String> row;
+		private final long writeNanos;
+	}
+
+	private final class Segment extends LinkedHashMap<String, Entry> {
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			if (size() > capacity) {
+				evictions.increment();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	@Getter
+	@ToString
+	@AllArgsConstructor
+	public static class Stats {
+		private final int size;
+		private final long hits;
+		private final long misses;
+		private final long evictions;
+		private final long expirations;
+
+		public double getHitRate() {
+			long total = hits + misses;
+			return total == 0 ? 0 : (double) hits / total;
+		}
+	}
+}
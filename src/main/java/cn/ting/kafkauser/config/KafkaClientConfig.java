@@ -0,0 +1,28 @@
+package cn.ting.kafkauser.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.kafka.clients.CommonClientConfigs;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Kafka 客户端基础配置，地址和安全配置统一来自 spring.kafka.*
+ */
+@Configuration
+@EnableConfigurationProperties(KafkaClientProperties.class)
+public class KafkaClientConfig {
+
+	@Bean
+	public KafkaClientFactories kafkaClientFactories(KafkaProperties kafkaProperties,
+	                                                 KafkaClientProperties clientProperties) {
+		Map<String, Object> base = new HashMap<>();
+		base.put(CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG, String.join(",", kafkaProperties.getBootstrapServers()));
+		base.putAll(kafkaProperties.getSecurity().buildProperties());
+		base.putAll(kafkaProperties.getSsl().buildProperties());
+		base.putAll(kafkaProperties.getProperties());
+		return new KafkaClientFactories(base, clientProperties);
+	}
+}
@@ -0,0 +1,94 @@
+package cn.ting.kafkauser.config;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.ProducerFactory;
+
+/**
+ * Kafka 客户端工厂的登记处，所有生产者和消费者工厂共用一份基础配置
+ *
+ * 配置按以下顺序合并，后面的覆盖前面的：
+ * - 基础配置：spring.kafka.bootstrap-servers、安全配置、spring.kafka.properties 和 kafka.clients.common
+ * - 代码里给出的该用途默认值（序列化器、提交方式、拉取条数等）
+ * - kafka.clients.consumer.&lt;用途名&gt; / kafka.clients.producer.&lt;用途名&gt;
+ *
+ * 创建工厂不会连接 broker，连接在第一次创建生产者或启动容器时才建立。
+ * 配置里出现但没有任何工厂使用的用途名会在启动完成时告警，通常是拼写错误。
+ */
+@Slf4j
+public class KafkaClientFactories implements SmartInitializingSingleton {
+
+	private final Map<String, Object> base;
+	private final KafkaClientProperties properties;
+	private final Set<String> usedConsumers = ConcurrentHashMap.newKeySet();
+	private final Set<String> usedProducers = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param base 基础配置，至少包含 bootstrap.servers
+	 * @param properties 按用途的覆盖配置
+	 */
+	public KafkaClientFactories(Map<String, Object> base, KafkaClientProperties properties) {
+		Map<String, Object> merged = new HashMap<>(base);
+		merged.putAll(properties.getCommon());
+		this.base = Collections.unmodifiableMap(merged);
+		this.properties = properties;
+	}
+
+	/**
+	 * @param name 用途名
+	 * @param defaults 该用途的默认配置
+	 * @return 合并后的消费者配置
+	 */
+	public Map<String, Object> consumerConfigs(String name, Map<String, Object> defaults) {
+		usedConsumers.add(name);
+		return merge(defaults, properties.getConsumer().get(name));
+	}
+
+	/**
+	 * @param name 用途名
+	 * @param defaults 该用途的默认配置
+	 * @return 合并后的生产者配置
+	 */
+	public Map<String, Object> producerConfigs(String name, Map<String, Object> defaults) {
+		usedProducers.add(name);
+		return merge(defaults, properties.getProducer().get(name));
+	}
+
+	public <K, V> ConsumerFactory<K, V> consumerFactory(String name, Map<String, Object> defaults) {
+		return new DefaultKafkaConsumerFactory<>(consumerConfigs(name, defaults));
+	}
+
+	public <K, V> ProducerFactory<K, V> producerFactory(String name, Map<String, Object> defaults) {
+		return new DefaultKafkaProducerFactory<>(producerConfigs(name, defaults));
+	}
+
+	private Map<String, Object> merge(Map<String, Object> defaults, Map<String, String> overrides) {
+		Map<String, Object> configs = new HashMap<>(base);
+		configs.putAll(defaults);
+		if (overrides != null) {
+			configs.putAll(overrides);
+		}
+		return configs;
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		Set<String> unused = new TreeSet<>();
+		properties.getConsumer().keySet().stream().filter(name -> !usedConsumers.contains(name))
+				.forEach(name -> unused.add("consumer." + name));
+		properties.getProducer().keySet().stream().filter(name -> !usedProducers.contains(name))
+				.forEach(name -> unused.add("producer." + name));
+		if (!unused.isEmpty()) {
+			log.warn("kafka.clients 中的配置没有被任何工厂使用: {}", unused);
+		}
+	}
+}
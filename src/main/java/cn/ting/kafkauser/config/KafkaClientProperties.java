@@ -0,0 +1,44 @@
+package cn.ting.kafkauser.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 按用途覆盖 Kafka 客户端配置
+ *
+ * <pre>
+ * kafka:
+ *   clients:
+ *     common:
+ *       request.timeout.ms: 15000
+ *     consumer:
+ *       manual-commit:
+ *         max.poll.records: 100
+ *     producer:
+ *       throughput:
+ *         linger.ms: 50
+ * </pre>
+ *
+ * 用途名见 {@link KafkaConfig} 中各工厂调用 {@link KafkaClientFactories} 时传入的名字。
+ */
+@Data
+@ConfigurationProperties(prefix = "kafka.clients")
+public class KafkaClientProperties {
+
+	/**
+	 * 所有生产者和消费者共用的配置
+	 */
+	private Map<String, String> common = new LinkedHashMap<>();
+
+	/**
+	 * 用途名 -> 消费者配置
+	 */
+	private Map<String, Map<String, String>> consumer = new LinkedHashMap<>();
+
+	/**
+	 * 用途名 -> 生产者配置
+	 */
+	private Map<String, Map<String, String>> producer = new LinkedHashMap<>();
+}
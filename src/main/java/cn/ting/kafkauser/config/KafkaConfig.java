@@ -1,51 +1,99 @@
 package cn.ting.kafkauser.config;
 
 import cn.ting.kafkauser.entity.User;
+import cn.ting.kafkauser.offset.DrainingRebalanceListener;
+import cn.ting.kafkauser.offset.OffsetTracker;
+import cn.ting.kafkauser.offset.PartitionDrainer;
+import cn.ting.kafkauser.producer.BatchKafkaSender;
+import cn.ting.kafkauser.serialization.UserBinaryDeserializer;
+import cn.ting.kafkauser.serialization.UserBinarySerializer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.CooperativeStickyAssignor;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.*;
 import org.springframework.kafka.listener.ContainerProperties;
-import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class KafkaConfig {
+
+    /**
+     * user-topic 生产端的 User 编码格式：json 或 binary
+     * 消费端的 UserBinaryDeserializer 两种格式都能读，先升级所有消费者，再把这里切到 binary
+     */
+    @Value("${kafka.user.value-format:json}")
+    private String userValueFormat;
+
+    // 各工厂共用 spring.kafka.* 的地址和安全配置，kafka.clients.* 按用途覆盖
+    private final KafkaClientFactories clients;
+
+    public KafkaConfig(KafkaClientFactories clients) {
+        this.clients = clients;
+    }
+
     @Bean
     public ProducerFactory<String, String> stringProducerFactory() {
         Map<String, Object> configProps = new HashMap<>();
-        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "127.0.0.1:9092");
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringSerializer");
         configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringSerializer");
-        return new DefaultKafkaProducerFactory<>(configProps);
+        return clients.producerFactory("string", configProps);
+    }
+
+    /**
+     * 高吞吐生产者预设
+     * 适当等待凑批、增大批次并压缩，用少量延迟换取 broker 端批量写入
+     */
+    @Bean
+    public ProducerFactory<String, String> throughputProducerFactory() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringSerializer");
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringSerializer");
+
+        // 最多等待 20ms 凑批，单批 64KB，lz4 压缩
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, 20);
+        configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, 64 * 1024);
+        configProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4");
+        configProps.put(ProducerConfig.BUFFER_MEMORY_CONFIG, 64L * 1024 * 1024);
+        // 幂等生产者允许每个连接最多 5 个未确认请求，同时保证分区内顺序
+        configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        configProps.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
+        return clients.producerFactory("throughput", configProps);
     }
 
     @Bean
     public ProducerFactory<String, User> userProducerFactory() {
         Map<String, Object> configProps = new HashMap<>();
-        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "127.0.0.1:9092");
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringSerializer");
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
-        return new DefaultKafkaProducerFactory<>(configProps);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG,
+                "binary".equals(userValueFormat) ? UserBinarySerializer.class : JsonSerializer.class);
+        return clients.producerFactory("user", configProps);
     }
 
     @Bean
     public ConsumerFactory<String, User> userConsumerFactory() {
         Map<String, Object> configProps = new HashMap<>();
-        configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "127.0.0.1:9092");
         configProps.put(ConsumerConfig.GROUP_ID_CONFIG, "user-group");
         configProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringDeserializer");
-        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
-        configProps.put(JsonDeserializer.TRUSTED_PACKAGES, "cn.ting.kafkauser.entity");
-        configProps.put(JsonDeserializer.VALUE_DEFAULT_TYPE, User.class);
-        return new DefaultKafkaConsumerFactory<>(configProps);
+        // 二进制格式直接解码，没有版本标记的旧 JSON 消息自动回退到 JSON 解码
+        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, UserBinaryDeserializer.class);
+        return clients.consumerFactory("user", configProps);
     }
 
     @Bean
@@ -68,7 +116,6 @@ public class KafkaConfig {
     @Bean
     public ConsumerFactory<String, String> consumerFactoryNoAuto() {
         Map<String, Object> props = new HashMap<>();
-        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
         props.put(ConsumerConfig.GROUP_ID_CONFIG, "manual-commit-group");
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG,
                 "org.apache.kafka.common.serialization.StringDeserializer");
@@ -84,7 +131,10 @@ public class KafkaConfig {
         props.put(ConsumerConfig.HEARTBEAT_INTERVAL_MS_CONFIG, 10000);
         props.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, 300000);
 
-        return new DefaultKafkaConsumerFactory<>(props);
+        // 暂停分区的请求在下一轮 poll 前才生效，单次拉取条数决定了在途消息最多超出背压上限多少
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 50);
+
+        return clients.consumerFactory("manual-commit", props);
     }
 
     @Bean("manualCommitContainerFactory")
@@ -103,13 +153,44 @@ public class KafkaConfig {
         // 设置并发消费者数量
         factory.setConcurrency(3);
 
+        // 增量重平衡只回收需要迁移的分区，回收前排空这些分区的在途任务并提交水位线
+        factory.getContainerProperties().getKafkaConsumerProperties().setProperty(
+                ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, CooperativeStickyAssignor.class.getName());
+        factory.getContainerProperties().setConsumerRebalanceListener(
+                new DrainingRebalanceListener(manualCommitPartitionDrainer()));
+
+        return factory;
+    }
+
+    /**
+     * 手动提交演示的分区排空器，它持有的位移追踪器由监听方法共用
+     * 分区回收前最多等待 10 秒，远小于 max.poll.interval.ms
+     */
+    @Bean
+    public PartitionDrainer manualCommitPartitionDrainer() {
+        return new PartitionDrainer(new OffsetTracker(), 10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * key 有序并行消费的容器工厂
+     * 监听方法把消息交给 KeyOrderedDispatcher，位移由派发器按水位线手动提交
+     */
+    @Bean("keyOrderedContainerFactory")
+    public ConcurrentKafkaListenerContainerFactory<String, String>
+    keyOrderedContainerFactory() {
+
+        ConcurrentKafkaListenerContainerFactory<String, String> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactoryNoAuto());
+        factory.getContainerProperties().setAckMode(
+                ContainerProperties.AckMode.MANUAL_IMMEDIATE
+        );
         return factory;
     }
 
     @Bean
     public ConsumerFactory<String, String> consumerFactoryAuto() {
         Map<String, Object> props = new HashMap<>();
-        props.put("bootstrap.servers", "localhost:9092");
         props.put("group.id", "auto-batch-group");
         props.put("auto.offset.reset", "earliest");
         props.put("enable.auto.commit", true);
@@ -117,7 +198,7 @@ public class KafkaConfig {
         props.put("max.poll.records", 100);
         props.put("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
         props.put("value.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
-        return new DefaultKafkaConsumerFactory<>(props);
+        return clients.consumerFactory("auto-batch", props);
     }
 
     @Bean("batchContainerFactory")
@@ -129,4 +210,260 @@ public class KafkaConfig {
         factory.setBatchListener(true);
         return factory;
     }
-} 
\ No newline at end of file
+
+    /**
+     * 批量消费、整批处理完成后再提交位移的消费者工厂
+     */
+    @Bean
+    public ConsumerFactory<String, String> consumerFactoryBatchCommit() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, "auto-batch-group");
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 100);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG,
+                "org.apache.kafka.common.serialization.StringDeserializer");
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG,
+                "org.apache.kafka.common.serialization.StringDeserializer");
+        return clients.consumerFactory("batch-commit", props);
+    }
+
+    /**
+     * 并行批量消费的容器工厂
+     * 监听方法并行处理完整批消息后返回，容器再提交这一批的位移（AckMode.BATCH）
+     */
+    @Bean("parallelBatchContainerFactory")
+    public ConcurrentKafkaListenerContainerFactory<String, String>
+    parallelBatchContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, String> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactoryBatchCommit());
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        return factory;
+    }
+
+    /**
+     * binlog 缓存同步的消费者工厂，消息体是 Canal 扁平消息 JSON，按字符串接收
+     */
+    @Bean
+    public ConsumerFactory<String, String> canalConsumerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, "cache-group");
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG,
+                "org.apache.kafka.common.serialization.StringDeserializer");
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG,
+                "org.apache.kafka.common.serialization.StringDeserializer");
+        return clients.consumerFactory("canal", props);
+    }
+
+    /**
+     * binlog 缓存同步的容器工厂
+     * 每个分区由一个线程按顺序应用变更，处理完一批后再提交位移
+     */
+    @Bean("canalContainerFactory")
+    public ConcurrentKafkaListenerContainerFactory<String, String>
+    canalContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, String> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(canalConsumerFactory());
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        return factory;
+    }
+
+    /**
+     * 批量落库的消费者工厂，一次最多拉取 1000 条
+     */
+    @Bean
+    public ConsumerFactory<String, String> tableSinkConsumerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, "table-sink-group");
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 1000);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG,
+                "org.apache.kafka.common.serialization.StringDeserializer");
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG,
+                "org.apache.kafka.common.serialization.StringDeserializer");
+        return clients.consumerFactory("table-sink", props);
+    }
+
+    /**
+     * 批量落库的容器工厂
+     * 单个消费线程（落库缓存不跨线程共享），批量监听，数据提交到数据库后再手动确认位移；
+     * 1 秒没有新消息时发布空闲事件，把不足阈值的剩余数据刷盘
+     */
+    @Bean("tableSinkContainerFactory")
+    public ConcurrentKafkaListenerContainerFactory<String, String>
+    tableSinkContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, String> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(tableSinkConsumerFactory());
+        factory.setBatchListener(true);
+        factory.setConcurrency(1);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setIdleEventInterval(1000L);
+        return factory;
+    }
+
+    /**
+     * 失败消息转发用的生产者工厂
+     * 各监听方法拿到的 key/value 类型不同，按类型选择序列化器：字符串和字节原样写出，其他对象按 JSON 写出
+     */
+    @Bean
+    public ProducerFactory<Object, Object> failureProducerFactory() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        configProps.put(ProducerConfig.ACKS_CONFIG, "all");
+        return new DefaultKafkaProducerFactory<>(clients.producerConfigs("failure", configProps),
+                byTypeSerializer(), byTypeSerializer());
+    }
+
+    private static DelegatingByTypeSerializer byTypeSerializer() {
+        Map<Class<?>, Serializer> delegates = new LinkedHashMap<>();
+        delegates.put(String.class, new StringSerializer());
+        delegates.put(byte[].class, new ByteArraySerializer());
+        delegates.put(Object.class, new JsonSerializer<>());
+        return new DelegatingByTypeSerializer(delegates, true);
+    }
+
+    @Bean
+    public KafkaTemplate<Object, Object> failureKafkaTemplate() {
+        return new KafkaTemplate<>(failureProducerFactory());
+    }
+
+    /**
+     * 重试层的消费者工厂，消费组由各重试层容器单独指定
+     */
+    @Bean
+    public ConsumerFactory<String, String> retryTierConsumerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 50);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG,
+                "org.apache.kafka.common.serialization.StringDeserializer");
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG,
+                "org.apache.kafka.common.serialization.StringDeserializer");
+        return clients.consumerFactory("retry-tier", props);
+    }
+
+    /**
+     * 重试层的容器工厂，逐条处理并手动确认，等待到期时暂停分区而不阻塞消费线程
+     */
+    @Bean("retryTierContainerFactory")
+    public ConcurrentKafkaListenerContainerFactory<String, String>
+    retryTierContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, String> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(retryTierConsumerFactory());
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        factory.setConcurrency(1);
+        return factory;
+    }
+
+    /**
+     * 按字节原样发送（死信重放、原始字节转发），沿用高吞吐参数
+     */
+    @Bean
+    public ProducerFactory<byte[], byte[]> replayProducerFactory() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, 20);
+        configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, 64 * 1024);
+        configProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4");
+        configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        return clients.producerFactory("replay", configProps);
+    }
+
+    @Bean
+    public BatchKafkaSender<byte[], byte[]> replayKafkaSender() {
+        return new BatchKafkaSender<>(replayProducerFactory(), 10000);
+    }
+
+    /**
+     * 原始字节的消费者工厂
+     * key、value 都由 ByteArrayDeserializer 原样交给监听器，不解码成字符串；消费组由各监听器指定
+     */
+    @Bean
+    public ConsumerFactory<byte[], byte[]> rawConsumerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 1000);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        return clients.consumerFactory("raw", props);
+    }
+
+    /**
+     * 原始字节的批量容器工厂，整批处理完成后提交位移
+     * 监听方法参数为 List&lt;ConsumerRecord&lt;byte[], byte[]&gt;&gt;，配合 RawValue 按需解码
+     */
+    @Bean("rawBatchContainerFactory")
+    public ConcurrentKafkaListenerContainerFactory<byte[], byte[]>
+    rawBatchContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<byte[], byte[]> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(rawConsumerFactory());
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        return factory;
+    }
+
+    /**
+     * 事务管道的生产者工厂
+     * 事务 id 前缀带上实例唯一的后缀：EOS v2 按消费组元数据隔离僵尸实例，不依赖固定的事务 id，
+     * 多个实例用同一个前缀反而会互相隔离（fence）
+     */
+    @Bean
+    public ProducerFactory<String, String> transactionalProducerFactory(
+            @Value("${kafka.transaction.id-prefix:kafka-user-tx-}") String transactionIdPrefix) {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.ACKS_CONFIG, "all");
+        configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+        configProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4");
+        DefaultKafkaProducerFactory<String, String> factory =
+                new DefaultKafkaProducerFactory<>(clients.producerConfigs("transactional", configProps));
+        factory.setTransactionIdPrefix(transactionIdPrefix + UUID.randomUUID() + "-");
+        return factory;
+    }
+
+    /**
+     * 事务管道的消费者工厂
+     * 只读已提交的消息，位移随生产者事务提交，不自动提交
+     */
+    @Bean
+    public ConsumerFactory<String, String> transactionalConsumerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 500);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG,
+                "org.apache.kafka.common.serialization.StringDeserializer");
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG,
+                "org.apache.kafka.common.serialization.StringDeserializer");
+        return clients.consumerFactory("transactional", props);
+    }
+
+    /**
+     * 事务管道的容器工厂，批量监听；消费组、确认方式和空闲事件由各管道设置
+     */
+    @Bean("transactionalContainerFactory")
+    public ConcurrentKafkaListenerContainerFactory<String, String>
+    transactionalContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, String> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(transactionalConsumerFactory());
+        factory.setBatchListener(true);
+        factory.setConcurrency(1);
+        return factory;
+    }
+}
@@ -0,0 +1,60 @@
+package cn.ting.kafkauser.dedupe;
+
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * 手动提交演示的幂等消费层，kafka.dedupe.enabled=true 时启用
+ *
+ * kafka.dedupe.store=jdbc 时在内存窗口之外再用 MySQL 记录更长时间内处理过的 key
+ */
+@Configuration
+@ConditionalOnProperty(name = "kafka.dedupe.enabled", havingValue = "true")
+public class DedupeConfig {
+
+	@Value("${kafka.dedupe.key:OFFSET}")
+	private DedupeKeyStrategy keyStrategy;
+
+	@Value("${kafka.dedupe.window-size:100000}")
+	private int windowSize;
+
+	@Value("${kafka.dedupe.store:none}")
+	private String store;
+
+	@Value("${kafka.dedupe.bloom.expected-insertions:1000000}")
+	private int bloomExpectedInsertions;
+
+	@Value("${kafka.dedupe.bloom.fpp:0.001}")
+	private double bloomFpp;
+
+	@Value("${kafka.dedupe.verify-misses:1000}")
+	private int verifyMisses;
+
+	@Value("${kafka.dedupe.jdbc.table:consumer_dedupe}")
+	private String table;
+
+	@Value("${kafka.dedupe.jdbc.retention-hours:72}")
+	private long retentionHours;
+
+	/**
+	 * 以消费组名作为命名空间，不同消费组共用一张表时互不影响
+	 */
+	@Bean
+	public IdempotencyGuard manualCommitIdempotencyGuard(ObjectProvider<JdbcTemplate> jdbcTemplate) {
+		IdempotencyGuard.Builder builder = IdempotencyGuard.builder(keyStrategy, "manual-commit-group")
+				.windowSize(windowSize)
+				.bloom(bloomExpectedInsertions, bloomFpp, 2)
+				.verifyMisses(verifyMisses);
+		if ("jdbc".equalsIgnoreCase(store)) {
+			JdbcDedupeStore jdbcStore = new JdbcDedupeStore(jdbcTemplate.getObject(), table, retentionHours, TimeUnit.HOURS);
+			jdbcStore.createTableIfMissing();
+			builder.store(jdbcStore);
+		}
+		return builder.build();
+	}
+}
@@ -0,0 +1,35 @@
+package cn.ting.kafkauser.dedupe;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+/**
+ * 去重 key 的取法
+ */
+public enum DedupeKeyStrategy {
+
+	/**
+	 * topic-partition-offset，只识别同一条消息的重复投递（重平衡、崩溃后未提交位移的重放）
+	 */
+	OFFSET {
+		@Override
+		public String keyOf(ConsumerRecord<?, ?> record) {
+			return record.topic() + '-' + record.partition() + '-' + record.offset();
+		}
+	},
+
+	/**
+	 * 消息 key 作为业务主键，生产端重发的同一业务消息也会被去掉；没有 key 的消息不去重
+	 */
+	RECORD_KEY {
+		@Override
+		public String keyOf(ConsumerRecord<?, ?> record) {
+			return record.key() == null ? null : record.key().toString();
+		}
+	};
+
+	/**
+	 * @param record 消息
+	 * @return 去重 key，null 表示这条消息不参与去重
+	 */
+	public abstract String keyOf(ConsumerRecord<?, ?> record);
+}
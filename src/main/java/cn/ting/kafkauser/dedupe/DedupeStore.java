@@ -0,0 +1,30 @@
+package cn.ting.kafkauser.dedupe;
+
+import java.util.Collection;
+
+/**
+ * 去重 key 的持久化存储，用于覆盖内存窗口之外更长的时间范围
+ *
+ * 实现需要线程安全，调用发生在工作线程上。
+ */
+public interface DedupeStore {
+
+	/**
+	 * @param key 去重 key
+	 * @return 是否已处理过
+	 */
+	boolean contains(String key);
+
+	/**
+	 * 批量记录已处理的 key，已存在的 key 忽略
+	 *
+	 * @param keys 去重 key
+	 */
+	void saveAll(Collection<String> keys);
+
+	/**
+	 * 清理超过保留期的 key，由去重层定期调用
+	 */
+	default void expire() {
+	}
+}
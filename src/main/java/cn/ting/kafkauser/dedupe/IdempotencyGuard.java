@@ -0,0 +1,433 @@
+package cn.ting.kafkauser.dedupe;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * 幂等消费层：在处理前识别重复投递的消息
+ *
+ * 三级判断，越往后越贵：
+ * - 精确窗口：最近 windowSize 个 key（含正在处理的），命中即重复，同一 key 并发投递时只有一个能拿到处理权，
+ *   其余的通过 {@link #claim} 等它有结果：成功则是重复，失败释放后再由它们争抢处理权
+ * - 轮换布隆过滤器：只在配置了持久化存储时启用，返回"一定没见过"时不再查库
+ * - 持久化存储：布隆过滤器可能命中，或分区刚分配到本实例时查询
+ *
+ * 分区刚分配时本地的窗口和布隆过滤器里没有前一个消费者处理过的 key，
+ * 因此对新分配的分区总是查库，直到连续 verifyMisses 条消息都不在库里（说明已经越过了重放区间）。
+ *
+ * 处理成功后的 key 先进入内存，再由后台线程批量写入存储；这段时间内崩溃时，
+ * 未提交位移的消息会重新处理一次，与不启用去重时的至少一次语义相同。
+ *
+ * 线程安全。
+ */
+@Slf4j
+public class IdempotencyGuard implements AutoCloseable {
+
+	private final DedupeKeyStrategy keyStrategy;
+	private final String namespace;
+	private final DedupeStore store;
+	private final RotatingBloomFilter bloomFilter;
+	private final int verifyMisses;
+	private final int flushBatchSize;
+	private final int maxPendingWrites;
+
+	// key -> 已处理完成时为 DONE，正在处理时为 InFlight（挂着等待结果的重复投递）
+	private final Map<String, Object> window;
+	private final Map<TopicPartition, AtomicInteger> verifying = new ConcurrentHashMap<>();
+	private final Object pendingLock = new Object();
+	private List<String> pendingWrites = new ArrayList<>();
+	private final ScheduledExecutorService flusher;
+
+	private final LongAdder windowHits = new LongAdder();
+	private final LongAdder storeHits = new LongAdder();
+	private final LongAdder storeLookups = new LongAdder();
+
+	private IdempotencyGuard(Builder builder) {
+		this.keyStrategy = builder.keyStrategy;
+		this.namespace = builder.namespace;
+		this.store = builder.store;
+		this.verifyMisses = builder.verifyMisses;
+		this.flushBatchSize = builder.flushBatchSize;
+		this.maxPendingWrites = builder.flushBatchSize * 20;
+		int windowSize = builder.windowSize;
+		this.window = new LinkedHashMap<String, Object>(windowSize * 4 / 3 + 1) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+				return size() > windowSize;
+			}
+		};
+		if (store == null) {
+			this.bloomFilter = null;
+			this.flusher = null;
+		} else {
+			this.bloomFilter = new RotatingBloomFilter(builder.bloomExpectedInsertions, builder.bloomFpp,
+					builder.bloomGenerations);
+			this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "dedupe-flusher-" + namespace);
+				thread.setDaemon(true);
+				return thread;
+			});
+			flusher.scheduleWithFixedDelay(this::flushQuietly, builder.flushIntervalMillis, builder.flushIntervalMillis,
+					TimeUnit.MILLISECONDS);
+			flusher.scheduleWithFixedDelay(this::expireQuietly, 1, 60, TimeUnit.MINUTES);
+		}
+	}
+
+	public static Builder builder(DedupeKeyStrategy keyStrategy, String namespace) {
+		return new Builder(keyStrategy, namespace);
+	}
+
+	/**
+	 * 尝试取得一条消息的处理权，不等待
+	 *
+	 * @param record 消息
+	 * @return 处理凭证，成功后调用 {@link Claim#commit()}，失败时调用 {@link Claim#release()}；
+	 *         null 表示这条消息已经处理过（或正在被其他线程处理），应直接跳过
+	 */
+	public Claim tryClaim(ConsumerRecord<?, ?> record) {
+		return claim(record, false).join();
+	}
+
+	/**
+	 * 取得一条消息的处理权，同一 key 正在被处理时等它有结果
+	 *
+	 * 对方成功时返回的 future 以 null 完成；对方失败释放时重新争抢，抢到则以处理凭证完成，
+	 * 重新争抢时查询存储失败则以该异常完成。等待结束后的回调在对方调用 commit/release 的线程上执行。
+	 *
+	 * @param record 消息
+	 * @return 处理凭证的 future，以 null 完成表示这条消息已经处理过，应直接跳过
+	 */
+	public CompletableFuture<Claim> claim(ConsumerRecord<?, ?> record) {
+		return claim(record, true);
+	}
+
+	private CompletableFuture<Claim> claim(ConsumerRecord<?, ?> record, boolean wait) {
+		String raw = keyStrategy.keyOf(record);
+		if (raw == null) {
+			return CompletableFuture.completedFuture(Claim.UNTRACKED);
+		}
+		CompletableFuture<Claim> result = new CompletableFuture<>();
+		attempt(record, namespace + ':' + raw, wait, result);
+		return result;
+	}
+
+	/**
+	 * 分区分配到本实例后调用，这些分区的消息在越过重放区间之前都会查询存储
+	 *
+	 * @param partitions 新分配的分区
+	 */
+	public void verify(Collection<TopicPartition> partitions) {
+		if (store == null) {
+			return;
+		}
+		for (TopicPartition partition : partitions) {
+			verifying.put(partition, new AtomicInteger(verifyMisses));
+		}
+	}
+
+	/**
+	 * 把内存中已处理完成的 key 写入存储
+	 */
+	public void flush() {
+		if (store == null) {
+			return;
+		}
+		List<String> batch;
+		synchronized (pendingLock) {
+			if (pendingWrites.isEmpty()) {
+				return;
+			}
+			batch = pendingWrites;
+			pendingWrites = new ArrayList<>();
+		}
+		try {
+			store.saveAll(batch);
+		} catch (RuntimeException e) {
+			synchronized (pendingLock) {
+				// 存储不可用时保留有限的待写 key，超出部分丢弃，只影响更久之后的去重
+				int room = maxPendingWrites - pendingWrites.size();
+				if (room > 0) {
+					pendingWrites.addAll(0, batch.size() <= room ? batch : batch.subList(batch.size() - room, batch.size()));
+				}
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * @return 被精确窗口识别出的重复消息数
+	 */
+	public long getWindowHits() {
+		return windowHits.sum();
+	}
+
+	/**
+	 * @return 被持久化存储识别出的重复消息数
+	 */
+	public long getStoreHits() {
+		return storeHits.sum();
+	}
+
+	/**
+	 * @return 查询持久化存储的次数
+	 */
+	public long getStoreLookups() {
+		return storeLookups.sum();
+	}
+
+	/**
+	 * @return 等待写入存储的 key 数
+	 */
+	public int getPendingWrites() {
+		synchronized (pendingLock) {
+			return pendingWrites.size();
+		}
+	}
+
+	@Override
+	public void close() {
+		if (flusher != null) {
+			flusher.shutdownNow();
+			flushQuietly();
+		}
+	}
+
+	private void attempt(ConsumerRecord<?, ?> record, String key, boolean wait, CompletableFuture<Claim> result) {
+		synchronized (window) {
+			if (settledInWindow(record, key, wait, result)) {
+				return;
+			}
+		}
+		if (store != null && seenInStore(record, key)) {
+			storeHits.increment();
+			result.complete(null);
+			return;
+		}
+		InFlight inFlight = new InFlight();
+		synchronized (window) {
+			if (settledInWindow(record, key, wait, result)) {
+				return;
+			}
+			window.put(key, inFlight);
+		}
+		result.complete(new Claim(this, key, inFlight));
+	}
+
+	/**
+	 * 在窗口里查找 key，已处理完成时以 null 完成；正在处理时挂到等待列表上，不等待时同样以 null 完成。
+	 * 调用方持有 window 锁
+	 *
+	 * @return 是否已经有了结果（或开始等待）
+	 */
+	private boolean settledInWindow(ConsumerRecord<?, ?> record, String key, boolean wait,
+	                                CompletableFuture<Claim> result) {
+		Object state = window.get(key);
+		if (state == null) {
+			return false;
+		}
+		if (state == DONE || !wait) {
+			windowHits.increment();
+			result.complete(null);
+		} else {
+			((InFlight) state).waiters.add(() -> {
+				try {
+					attempt(record, key, true, result);
+				} catch (RuntimeException e) {
+					// 查库失败不能抛给对方的 commit/release
+					result.completeExceptionally(e);
+				}
+			});
+		}
+		return true;
+	}
+
+	private boolean seenInStore(ConsumerRecord<?, ?> record, String key) {
+		AtomicInteger remaining = verifying.get(new TopicPartition(record.topic(), record.partition()));
+		if (remaining == null && !bloomFilter.mightContain(key)) {
+			return false;
+		}
+		storeLookups.increment();
+		boolean seen = store.contains(key);
+		if (remaining != null) {
+			if (seen) {
+				remaining.set(verifyMisses);
+			} else if (remaining.decrementAndGet() <= 0) {
+				verifying.remove(new TopicPartition(record.topic(), record.partition()), remaining);
+			}
+		}
+		return seen;
+	}
+
+	private void committed(String key, InFlight inFlight) {
+		List<Runnable> waiters;
+		synchronized (window) {
+			window.put(key, DONE);
+			waiters = inFlight.drain();
+		}
+		// 等待中的重复投递重新查找窗口，都会命中 DONE
+		waiters.forEach(Runnable::run);
+		if (store == null) {
+			return;
+		}
+		bloomFilter.put(key);
+		boolean full;
+		synchronized (pendingLock) {
+			pendingWrites.add(key);
+			full = pendingWrites.size() >= flushBatchSize;
+		}
+		if (full) {
+			// 写库交给后台线程，不占用处理消息的工作线程
+			try {
+				flusher.execute(this::flushQuietly);
+			} catch (RejectedExecutionException e) {
+				// 已关闭，关闭时会做最后一次写入
+			}
+		}
+	}
+
+	private void released(String key, InFlight inFlight) {
+		List<Runnable> waiters;
+		synchronized (window) {
+			window.remove(key, inFlight);
+			waiters = inFlight.drain();
+		}
+		// 第一个重新争抢的拿到处理权，其余的挂到它的等待列表上
+		waiters.forEach(Runnable::run);
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			log.warn("写入去重存储失败, 待写 {} 条: {}", getPendingWrites(), e.getMessage());
+		}
+	}
+
+	private void expireQuietly() {
+		try {
+			store.expire();
+		} catch (RuntimeException e) {
+			log.warn("清理去重存储失败: {}", e.getMessage());
+		}
+	}
+
+	private static final Object DONE = Boolean.TRUE;
+
+	/**
+	 * 正在处理的 key，被窗口淘汰后仍由处理凭证持有，等待中的重复投递照样能收到结果
+	 */
+	private static final class InFlight {
+		private List<Runnable> waiters = new ArrayList<>();
+
+		private List<Runnable> drain() {
+			List<Runnable> drained = waiters;
+			waiters = new ArrayList<>();
+			return drained;
+		}
+	}
+
+	/**
+	 * 一条消息的处理权
+	 */
+	public static final class Claim {
+
+		// 不参与去重的消息（例如按业务 key 去重但消息没有 key）
+		static final Claim UNTRACKED = new Claim(null, null, null);
+
+		private final IdempotencyGuard guard;
+		private final String key;
+		private final InFlight inFlight;
+
+		private Claim(IdempotencyGuard guard, String key, InFlight inFlight) {
+			this.guard = guard;
+			this.key = key;
+			this.inFlight = inFlight;
+		}
+
+		/**
+		 * 处理成功，之后同一 key 的消息都会被识别为重复；应在提交位移之前调用
+		 */
+		public void commit() {
+			if (guard != null) {
+				guard.committed(key, inFlight);
+			}
+		}
+
+		/**
+		 * 处理失败，放弃处理权，重新投递时可以再次处理
+		 */
+		public void release() {
+			if (guard != null) {
+				guard.released(key, inFlight);
+			}
+		}
+	}
+
+	public static class Builder {
+		private final DedupeKeyStrategy keyStrategy;
+		private final String namespace;
+		private DedupeStore store;
+		private int windowSize = 100_000;
+		private int bloomExpectedInsertions = 1_000_000;
+		private double bloomFpp = 0.001;
+		private int bloomGenerations = 2;
+		private int verifyMisses = 1000;
+		private int flushBatchSize = 500;
+		private long flushIntervalMillis = 1000;
+
+		private Builder(DedupeKeyStrategy keyStrategy, String namespace) {
+			this.keyStrategy = keyStrategy;
+			this.namespace = namespace;
+		}
+
+		public Builder store(DedupeStore store) {
+			this.store = store;
+			return this;
+		}
+
+		public Builder windowSize(int windowSize) {
+			this.windowSize = windowSize;
+			return this;
+		}
+
+		public Builder bloom(int expectedInsertions, double fpp, int generations) {
+			this.bloomExpectedInsertions = expectedInsertions;
+			this.bloomFpp = fpp;
+			this.bloomGenerations = generations;
+			return this;
+		}
+
+		public Builder verifyMisses(int verifyMisses) {
+			this.verifyMisses = verifyMisses;
+			return this;
+		}
+
+		public Builder flush(int batchSize, long interval, TimeUnit unit) {
+			this.flushBatchSize = batchSize;
+			this.flushIntervalMillis = unit.toMillis(interval);
+			return this;
+		}
+
+		public IdempotencyGuard build() {
+			if (keyStrategy == null || namespace == null || windowSize <= 0 || verifyMisses <= 0
+					|| flushBatchSize <= 0 || flushIntervalMillis <= 0) {
+				throw new IllegalArgumentException("去重参数不合法");
+			}
+			return new IdempotencyGuard(this);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package cn.ting.kafkauser.dedupe;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * 基于 MySQL 的去重存储，复用应用已有的数据源
+ *
+ * 表结构见 {@link #createTableIfMissing()}，key 为主键，写入用 INSERT IGNORE 批量提交，
+ * 超过保留期的行按 created_at 分批删除。超过列宽的 key 存其 SHA-256。
+ */
+@Slf4j
+public class JdbcDedupeStore implements DedupeStore {
+
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z0-9_$]{1,64}");
+	private static final int MAX_KEY_LENGTH = 191;
+	private static final int DELETE_CHUNK = 10_000;
+
+	private final JdbcTemplate jdbcTemplate;
+	private final String table;
+	private final long retentionMillis;
+
+	/**
+	 * @param jdbcTemplate JDBC 模板
+	 * @param table 表名
+	 * @param retention 保留时长
+	 * @param unit 时间单位
+	 */
+	public JdbcDedupeStore(JdbcTemplate jdbcTemplate, String table, long retention, TimeUnit unit) {
+		if (!IDENTIFIER.matcher(table).matches()) {
+			throw new IllegalArgumentException("非法表名: " + table);
+		}
+		this.jdbcTemplate = jdbcTemplate;
+		this.table = table;
+		this.retentionMillis = unit.toMillis(retention);
+	}
+
+	/**
+	 * 建表（已存在时不做任何事）
+	 */
+	public void createTableIfMissing() {
+		jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS `" + table + "` ("
+				+ "`dedupe_key` VARCHAR(" + MAX_KEY_LENGTH + ") NOT NULL PRIMARY KEY, "
+				+ "`created_at` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3), "
+				+ "KEY `idx_created_at` (`created_at`))");
+	}
+
+	@Override
+	public boolean contains(String key) {
+		return !jdbcTemplate.queryForList("SELECT 1 FROM `" + table + "` WHERE `dedupe_key` = ? LIMIT 1",
+				Integer.class, storageKey(key)).isEmpty();
+	}
+
+	@Override
+	public void saveAll(Collection<String> keys) {
+		if (keys.isEmpty()) {
+			return;
+		}
+		List<Object[]> args = new ArrayList<>(keys.size());
+		for (String key : keys) {
+			args.add(new Object[]{storageKey(key)});
+		}
+		jdbcTemplate.batchUpdate("INSERT IGNORE INTO `" + table + "` (`dedupe_key`) VALUES (?)", args);
+	}
+
+	@Override
+	public void expire() {
+		Timestamp cutoff = new Timestamp(System.currentTimeMillis() - retentionMillis);
+		int deleted;
+		int total = 0;
+		do {
+			deleted = jdbcTemplate.update("DELETE FROM `" + table + "` WHERE `created_at` < ? LIMIT " + DELETE_CHUNK,
+					cutoff);
+			total += deleted;
+		} while (deleted == DELETE_CHUNK);
+		if (total > 0) {
+			log.info("清理过期去重记录 {} 条, 表 {}", total, table);
+		}
+	}
+
+	static String storageKey(String key) {
+		if (key.length() <= MAX_KEY_LENGTH) {
+			return key;
+		}
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder("sha256:");
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
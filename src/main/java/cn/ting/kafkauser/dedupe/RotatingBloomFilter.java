@@ -0,0 +1,129 @@
+package cn.ting.kafkauser.dedupe;
+
+import java.util.Arrays;
+
+/**
+ * 按代轮换的布隆过滤器
+ *
+ * 每一代容纳 expectedInsertions 个 key，当前代写满后丢弃最老的一代并开一代新的，
+ * 因此内存固定，能记住最近 (generations - 1) * expectedInsertions 到 generations * expectedInsertions 个 key。
+ * 查询检查所有代：返回 false 表示一定没见过，返回 true 表示可能见过（误判率约为 generations * fpp）。
+ *
+ * 线程安全。
+ */
+public class RotatingBloomFilter {
+
+	private final int expectedInsertions;
+	private final int numBits;
+	private final int numHashes;
+
+	// generations[0] 是当前写入的一代，越往后越老
+	private final long[][] generations;
+	private int inserted;
+
+	/**
+	 * @param expectedInsertions 每一代容纳的 key 数
+	 * @param fpp 单代的目标误判率
+	 * @param generations 同时保留的代数，至少 2
+	 */
+	public RotatingBloomFilter(int expectedInsertions, double fpp, int generations) {
+		if (expectedInsertions <= 0) {
+			throw new IllegalArgumentException("expectedInsertions 必须大于 0");
+		}
+		if (fpp <= 0 || fpp >= 1) {
+			throw new IllegalArgumentException("fpp 必须在 (0, 1) 之间");
+		}
+		if (generations < 2) {
+			throw new IllegalArgumentException("generations 至少为 2");
+		}
+		this.expectedInsertions = expectedInsertions;
+		// m = -n * ln(p) / (ln2)^2, k = m / n * ln2
+		long bits = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+		this.numBits = (int) Math.min(Math.max(bits, 64), Integer.MAX_VALUE - 63);
+		this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+		this.generations = new long[generations][];
+		for (int i = 0; i < generations; i++) {
+			this.generations[i] = new long[(numBits + 63) >>> 6];
+		}
+	}
+
+	/**
+	 * 记录一个 key，当前代写满时先轮换
+	 *
+	 * @param key key
+	 */
+	public synchronized void put(String key) {
+		if (inserted >= expectedInsertions) {
+			rotate();
+		}
+		long hash = hash(key);
+		long[] bits = generations[0];
+		long h1 = hash;
+		long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+		for (int i = 0; i < numHashes; i++) {
+			int index = (int) Math.floorMod(h1 + i * h2, (long) numBits);
+			bits[index >>> 6] |= 1L << index;
+		}
+		inserted++;
+	}
+
+	/**
+	 * @param key key
+	 * @return false 表示一定没有记录过，true 表示可能记录过
+	 */
+	public synchronized boolean mightContain(String key) {
+		long hash = hash(key);
+		long h1 = hash;
+		long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+		for (long[] bits : generations) {
+			if (contains(bits, h1, h2)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return 所有代占用的字节数
+	 */
+	public long sizeInBytes() {
+		return (long) generations.length * generations[0].length * Long.BYTES;
+	}
+
+	private boolean contains(long[] bits, long h1, long h2) {
+		for (int i = 0; i < numHashes; i++) {
+			int index = (int) Math.floorMod(h1 + i * h2, (long) numBits);
+			if ((bits[index >>> 6] & (1L << index)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rotate() {
+		long[] oldest = generations[generations.length - 1];
+		System.arraycopy(generations, 0, generations, 1, generations.length - 1);
+		Arrays.fill(oldest, 0L);
+		generations[0] = oldest;
+		inserted = 0;
+	}
+
+	// FNV-1a 之后再做一次 64 位混合，双重哈希派生出 k 个下标
+	private static long hash(String key) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			h ^= key.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return mix(h);
+	}
+
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,189 @@
+package cn.ting.kafkauser.dispatch;
+
+import cn.ting.kafkauser.offset.OffsetTracker;
+import cn.ting.kafkauser.retry.FailureRouter;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.support.Acknowledgment;
+
+/**
+ * 按消息 key 分片的有序并行派发器
+ *
+ * 把消息按 key 的哈希分配到 N 条单线程通道上：同一个 key 永远落在同一条通道，
+ * 因此同 key 消息保持顺序；不同 key 分散在多条通道上并行处理，
+ * 单个分区也能用满多个核，并发度不再受分区数限制。
+ *
+ * 没有 key 的消息按分区选择通道，保持原来的分区内顺序。
+ * 通道队列满时阻塞消费线程等待，而不是交给调用线程执行，否则会打乱同 key 顺序。
+ * 位移通过 {@link OffsetTracker} 只提交连续完成的水位线，需要配合 MANUAL_IMMEDIATE 使用。
+ * 处理失败的消息交给 {@link FailureRouter} 转入重试层或死信主题，broker 确认写入后才标记完成，
+ * 水位线不会停在失败的消息上；转发也失败时水位线停在它之前，重新分配后会再次消费。
+ */
+@Slf4j
+public class KeyOrderedDispatcher {
+
+	private final String name;
+	private final ThreadPoolExecutor[] lanes;
+	private final OffsetTracker offsetTracker = new OffsetTracker();
+	private final FailureRouter failureRouter;
+
+	/**
+	 * @param name 派发器名称，用于线程命名
+	 * @param laneCount 通道数量
+	 * @param laneCapacity 每条通道的队列容量
+	 * @param failureRouter 处理失败的消息转发到这里
+	 */
+	public KeyOrderedDispatcher(String name, int laneCount, int laneCapacity, FailureRouter failureRouter) {
+		if (laneCount <= 0 || laneCapacity <= 0) {
+			throw new IllegalArgumentException("laneCount 和 laneCapacity 必须大于 0");
+		}
+		if (failureRouter == null) {
+			throw new IllegalArgumentException("failureRouter 不能为空");
+		}
+		this.name = name;
+		this.failureRouter = failureRouter;
+		this.lanes = new ThreadPoolExecutor[laneCount];
+		for (int i = 0; i < laneCount; i++) {
+			lanes[i] = new ThreadPoolExecutor(
+					1, 1,
+					0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(laneCapacity),
+					new LaneThreadFactory(name, i),
+					new BlockingPutPolicy()
+			);
+		}
+	}
+
+	/**
+	 * 派发一条消息，必须在消费线程上按拉取顺序调用
+	 *
+	 * @param record 消息记录
+	 * @param acknowledgment 用于提交位移的确认对象
+	 * @param handler 业务处理逻辑
+	 */
+	public <K, V> void dispatch(ConsumerRecord<K, V> record,
+	                            Acknowledgment acknowledgment,
+	                            Consumer<ConsumerRecord<K, V>> handler) {
+		OffsetTracker.Ticket ticket = offsetTracker.register(record, acknowledgment);
+		lanes[laneOf(record)].execute(() -> {
+			try {
+				handler.accept(record);
+				ticket.complete();
+			} catch (Exception e) {
+				log.error("[{}] 处理消息失败: partition={}, offset={}", name, record.partition(), record.offset(), e);
+				failureRouter.route(record, e).whenComplete((result, sendError) -> {
+					if (sendError == null) {
+						ticket.complete();
+					} else {
+						log.error("[{}] 转发失败消息失败，位移停在 {}-{}@{}", name, record.topic(), record.partition(),
+								record.offset(), sendError);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * 分区分配变化时丢弃旧的位移追踪状态
+	 *
+	 * @param partitions 发生变化的分区
+	 */
+	public void resetPartitions(Collection<TopicPartition> partitions) {
+		offsetTracker.reset(partitions);
+	}
+
+	/**
+	 * @return 每条通道当前排队中的消息数量，下标即通道编号
+	 */
+	public int[] laneDepths() {
+		int[] depths = new int[lanes.length];
+		for (int i = 0; i < lanes.length; i++) {
+			depths[i] = lanes[i].getQueue().size();
+		}
+		return depths;
+	}
+
+	/**
+	 * @return 通道数量
+	 */
+	public int laneCount() {
+		return lanes.length;
+	}
+
+	/**
+	 * 停止接收新消息并等待已排队的消息处理完成
+	 *
+	 * @param timeout 最长等待时间
+	 * @param unit 时间单位
+	 */
+	public void shutdown(long timeout, TimeUnit unit) {
+		for (ThreadPoolExecutor lane : lanes) {
+			lane.shutdown();
+		}
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		try {
+			for (ThreadPoolExecutor lane : lanes) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0 || !lane.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+					lane.shutdownNow();
+				}
+			}
+		} catch (InterruptedException e) {
+			for (ThreadPoolExecutor lane : lanes) {
+				lane.shutdownNow();
+			}
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private int laneOf(ConsumerRecord<?, ?> record) {
+		int hash = record.key() != null ? record.key().hashCode() : record.partition();
+		// 打散低位，避免连续整数 key 集中在少数通道
+		hash ^= (hash >>> 16);
+		return (hash & Integer.MAX_VALUE) % lanes.length;
+	}
+
+	/**
+	 * 通道队列满时阻塞提交线程，保证同 key 消息不会被调用线程抢先执行
+	 */
+	private static class BlockingPutPolicy implements RejectedExecutionHandler {
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				throw new RejectedExecutionException("通道已关闭");
+			}
+			try {
+				executor.getQueue().put(r);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("等待通道空位时被中断", e);
+			}
+		}
+	}
+
+	private static class LaneThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger counter = new AtomicInteger();
+
+		LaneThreadFactory(String name, int lane) {
+			this.prefix = name + "-lane-" + lane;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
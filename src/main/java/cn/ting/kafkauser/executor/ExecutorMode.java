@@ -0,0 +1,18 @@
+package cn.ting.kafkauser.executor;
+
+/**
+ * 消息处理执行方式
+ */
+public enum ExecutorMode {
+
+	/**
+	 * 固定大小的平台线程池，适合 CPU 密集的处理逻辑
+	 */
+	PLATFORM,
+
+	/**
+	 * 每条消息一个虚拟线程，并发数由信号量限制，适合阻塞在数据库、HTTP 上的处理逻辑
+	 * 需要使用 jdk21 profile 构建并运行在 JDK 21 上
+	 */
+	VIRTUAL
+}
@@ -0,0 +1,80 @@
+package cn.ting.kafkauser.executor;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于平台线程池的执行器
+ * 队列不设上限，在途任务数由调用方（背压控制器）约束
+ */
+public class PlatformRecordExecutor implements RecordExecutor {
+
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * @param poolSize 线程数
+	 * @param name 线程名前缀
+	 */
+	public PlatformRecordExecutor(int poolSize, String name) {
+		AtomicInteger counter = new AtomicInteger();
+		ThreadFactory threadFactory = r -> new Thread(r, name + "-" + counter.incrementAndGet());
+		this.executor = new ThreadPoolExecutor(
+				poolSize,
+				poolSize,
+				60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(),
+				threadFactory
+		);
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		executor.execute(task);
+	}
+
+	@Override
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	@Override
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+
+	@Override
+	public int getMaxConcurrency() {
+		return executor.getMaximumPoolSize();
+	}
+
+	@Override
+	public synchronized void setMaxConcurrency(int maxConcurrency) {
+		if (maxConcurrency <= 0) {
+			throw new IllegalArgumentException("线程数必须大于 0: " + maxConcurrency);
+		}
+		// 核心线程数不能大于最大线程数，扩容先调最大值，缩容先调核心值
+		if (maxConcurrency > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(maxConcurrency);
+			executor.setCorePoolSize(maxConcurrency);
+		} else {
+			executor.setCorePoolSize(maxConcurrency);
+			executor.setMaximumPoolSize(maxConcurrency);
+		}
+	}
+
+	@Override
+	public void shutdown(long timeout, TimeUnit unit) {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(timeout, unit)) {
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,351 @@
+package cn.ting.kafkauser.executor;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * 按优先级分道排队的执行器，包装平台线程池或虚拟线程执行器
+ *
+ * 任务先按优先级进入各自的队列（道），再由工作任务从各道取出执行，委托执行器里同时最多只有 maxConcurrency 个工作任务，
+ * 它自己的队列始终为空，执行顺序完全由这里决定：
+ * - 各道按权重做平滑加权轮询（smooth weighted round-robin），只在有任务的道之间分配，
+ *   积压时每道至少分到 权重/总权重 的执行机会，低优先级不会被饿死
+ * - 优先级由消息头决定，没有消息头或值不认识时进入默认道
+ * - 每道的排队时间以 kafka.executor.priority.wait 上报（按 priority 标签区分），队列长度以 kafka.executor.priority.queue 上报
+ *
+ * 高优先级的到达速率低于它分到的处理能力时，它的排队时间与其他道积压多少无关。
+ */
+@Slf4j
+public class PriorityRecordExecutor implements RecordExecutor {
+
+	private final RecordExecutor delegate;
+	private final String header;
+	private final Lane[] lanes;
+	private final Lane defaultLane;
+	private final Object lock = new Object();
+
+	// 以下字段都在 lock 内修改
+	private int workers;
+	private volatile int queued;
+	private volatile int active;
+	private boolean shutdown;
+
+	private PriorityRecordExecutor(Builder builder) {
+		this.delegate = builder.delegate;
+		this.header = builder.header;
+		this.lanes = builder.lanes.toArray(new Lane[0]);
+		Lane fallback = lanes[0];
+		for (Lane lane : lanes) {
+			if (lane.name.equals(builder.defaultLane)) {
+				fallback = lane;
+			}
+		}
+		this.defaultLane = fallback;
+		if (builder.meterRegistry != null) {
+			for (Lane lane : lanes) {
+				lane.waitTimer = Timer.builder("kafka.executor.priority.wait")
+						.tag("name", builder.metricName).tag("priority", lane.name).register(builder.meterRegistry);
+				Gauge.builder("kafka.executor.priority.queue", lane, l -> l.size)
+						.tag("name", builder.metricName).tag("priority", lane.name).register(builder.meterRegistry);
+			}
+		}
+	}
+
+	/**
+	 * @param delegate 实际执行任务的执行器，并发上限沿用它的 maxConcurrency
+	 */
+	public static Builder builder(RecordExecutor delegate) {
+		return new Builder(delegate);
+	}
+
+	/**
+	 * 按消息头里的优先级提交任务
+	 *
+	 * @param headers 消息头，取最后一个优先级消息头
+	 * @param task 处理任务
+	 */
+	public void execute(Headers headers, Runnable task) {
+		Header priority = headers == null ? null : headers.lastHeader(header);
+		enqueue(priority == null ? defaultLane : laneOf(priority.value()), task);
+	}
+
+	/**
+	 * @param priority 优先级名称，null 或不认识时进入默认道
+	 * @param task 处理任务
+	 */
+	public void execute(String priority, Runnable task) {
+		enqueue(priority == null ? defaultLane : laneOf(priority.getBytes(StandardCharsets.UTF_8)), task);
+	}
+
+	/**
+	 * 进入默认道
+	 */
+	@Override
+	public void execute(Runnable task) {
+		enqueue(defaultLane, task);
+	}
+
+	@Override
+	public int getActiveCount() {
+		return active;
+	}
+
+	@Override
+	public int getQueueSize() {
+		return queued + delegate.getQueueSize();
+	}
+
+	/**
+	 * @param priority 优先级名称
+	 * @return 该道排队中的任务数，不存在的道返回 0
+	 */
+	public int getQueueSize(String priority) {
+		for (Lane lane : lanes) {
+			if (lane.name.equals(priority)) {
+				return lane.size;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public int getMaxConcurrency() {
+		return delegate.getMaxConcurrency();
+	}
+
+	/**
+	 * 扩容时立即为积压的任务补充工作任务；缩容时多出的工作任务在执行完手上的任务后退出
+	 */
+	@Override
+	public void setMaxConcurrency(int maxConcurrency) {
+		delegate.setMaxConcurrency(maxConcurrency);
+		int added;
+		synchronized (lock) {
+			added = Math.max(0, Math.min(maxConcurrency - workers, queued));
+			workers += added;
+		}
+		for (int i = 0; i < added; i++) {
+			delegate.execute(this::drain);
+		}
+	}
+
+	/**
+	 * 不再接收新任务，已经排队的任务由工作任务执行完
+	 */
+	@Override
+	public void shutdown(long timeout, TimeUnit unit) {
+		synchronized (lock) {
+			shutdown = true;
+		}
+		delegate.shutdown(timeout, unit);
+	}
+
+	private void enqueue(Lane lane, Runnable task) {
+		boolean startWorker;
+		Node node = new Node(task, System.nanoTime());
+		synchronized (lock) {
+			if (shutdown) {
+				throw new RejectedExecutionException("优先级执行器已关闭");
+			}
+			lane.tasks.addLast(node);
+			lane.size++;
+			queued++;
+			startWorker = workers < delegate.getMaxConcurrency();
+			if (startWorker) {
+				workers++;
+			}
+		}
+		if (startWorker) {
+			try {
+				delegate.execute(this::drain);
+			} catch (RuntimeException e) {
+				// 调用方收到异常会自己处理这条消息，任务不能再留在道里被别的工作任务执行一次
+				synchronized (lock) {
+					workers--;
+					if (lane.tasks.removeLastOccurrence(node)) {
+						lane.size--;
+						queued--;
+					}
+				}
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * 工作任务：反复按权重取出任务执行，没有任务或超出并发上限时退出
+	 * 只要还有任务在排队，就至少有一个工作任务在运行；任务抛出 Error 时例外，直到下一次提交
+	 */
+	private void drain() {
+		while (true) {
+			Lane lane;
+			Node node;
+			synchronized (lock) {
+				lane = queued == 0 || workers > delegate.getMaxConcurrency() ? null : next();
+				if (lane == null) {
+					workers--;
+					return;
+				}
+				node = lane.tasks.pollFirst();
+				lane.size--;
+				queued--;
+				active++;
+			}
+			long startNanos = System.nanoTime();
+			if (lane.waitTimer != null) {
+				lane.waitTimer.record(startNanos - node.enqueueNanos, TimeUnit.NANOSECONDS);
+			}
+			try {
+				node.task.run();
+			} catch (RuntimeException e) {
+				log.error("优先级 {} 的任务执行失败", lane.name, e);
+			} catch (Error e) {
+				// Error 不吞掉，工作任务退出前归还名额，排队的任务由下一次提交启动的工作任务执行
+				synchronized (lock) {
+					workers--;
+				}
+				throw e;
+			} finally {
+				synchronized (lock) {
+					active--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 平滑加权轮询：每个非空道的当前值加上自己的权重，选当前值最大的道，再减去本轮参与的总权重
+	 */
+	private Lane next() {
+		Lane selected = null;
+		int total = 0;
+		for (Lane lane : lanes) {
+			if (lane.tasks.isEmpty()) {
+				continue;
+			}
+			lane.current += lane.weight;
+			total += lane.weight;
+			if (selected == null || lane.current > selected.current) {
+				selected = lane;
+			}
+		}
+		if (selected != null) {
+			selected.current -= total;
+		}
+		return selected;
+	}
+
+	private Lane laneOf(byte[] priority) {
+		for (Lane lane : lanes) {
+			if (Arrays.equals(lane.bytes, priority)) {
+				return lane;
+			}
+		}
+		return defaultLane;
+	}
+
+	private static final class Node {
+		private final Runnable task;
+		private final long enqueueNanos;
+
+		private Node(Runnable task, long enqueueNanos) {
+			this.task = task;
+			this.enqueueNanos = enqueueNanos;
+		}
+	}
+
+	private static final class Lane {
+		private final String name;
+		private final byte[] bytes;
+		private final int weight;
+		private final ArrayDeque<Node> tasks = new ArrayDeque<>();
+		private volatile int size;
+		private int current;
+		private Timer waitTimer;
+
+		private Lane(String name, int weight) {
+			this.name = name;
+			this.bytes = name.getBytes(StandardCharsets.UTF_8);
+			this.weight = weight;
+		}
+	}
+
+	public static class Builder {
+		private final RecordExecutor delegate;
+		private final List<Lane> lanes = new ArrayList<>();
+		private String header = "priority";
+		private String defaultLane;
+		private MeterRegistry meterRegistry;
+		private String metricName;
+
+		private Builder(RecordExecutor delegate) {
+			this.delegate = delegate;
+		}
+
+		/**
+		 * @param header 存放优先级的消息头名称，默认 priority
+		 */
+		public Builder header(String header) {
+			this.header = header;
+			return this;
+		}
+
+		/**
+		 * @param name 优先级名称，与消息头的值比较
+		 * @param weight 积压时分到的执行机会的相对比例
+		 */
+		public Builder lane(String name, int weight) {
+			if (name == null || weight < 1) {
+				throw new IllegalArgumentException("优先级执行器参数不合法");
+			}
+			this.lanes.add(new Lane(name, weight));
+			return this;
+		}
+
+		/**
+		 * @param defaultLane 没有优先级消息头或值不认识时进入的道，默认为第一个道
+		 */
+		public Builder defaultLane(String defaultLane) {
+			this.defaultLane = defaultLane;
+			return this;
+		}
+
+		/**
+		 * @param name 指标的 name 标签
+		 */
+		public Builder meterRegistry(MeterRegistry meterRegistry, String name) {
+			this.meterRegistry = meterRegistry;
+			this.metricName = name;
+			return this;
+		}
+
+		public PriorityRecordExecutor build() {
+			boolean defaultExists = defaultLane == null;
+			for (int i = 0; i < lanes.size(); i++) {
+				String name = lanes.get(i).name;
+				defaultExists |= name.equals(defaultLane);
+				for (int j = 0; j < i; j++) {
+					if (lanes.get(j).name.equals(name)) {
+						throw new IllegalArgumentException("优先级执行器参数不合法");
+					}
+				}
+			}
+			if (delegate == null || header == null || lanes.isEmpty() || !defaultExists
+					|| (meterRegistry != null && metricName == null)) {
+				throw new IllegalArgumentException("优先级执行器参数不合法");
+			}
+			return new PriorityRecordExecutor(this);
+		}
+	}
+}
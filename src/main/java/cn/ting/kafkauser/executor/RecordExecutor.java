@@ -0,0 +1,49 @@
+package cn.ting.kafkauser.executor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息处理执行器
+ *
+ * 屏蔽平台线程池和虚拟线程两种执行方式的差异，
+ * 监听方法只负责把消息处理任务交给执行器，不关心由什么线程来跑。
+ */
+public interface RecordExecutor {
+
+	/**
+	 * 提交一个消息处理任务，不能阻塞调用线程（通常是消费线程）
+	 *
+	 * @param task 处理任务
+	 */
+	void execute(Runnable task);
+
+	/**
+	 * @return 正在执行的任务数
+	 */
+	int getActiveCount();
+
+	/**
+	 * @return 已提交但还在等待执行的任务数
+	 */
+	int getQueueSize();
+
+	/**
+	 * @return 最大并发执行数
+	 */
+	int getMaxConcurrency();
+
+	/**
+	 * 运行时调整最大并发执行数，已在执行的任务不受影响
+	 *
+	 * @param maxConcurrency 新的最大并发执行数
+	 */
+	void setMaxConcurrency(int maxConcurrency);
+
+	/**
+	 * 停止接收新任务并等待已提交的任务完成，超时后强制中断
+	 *
+	 * @param timeout 最长等待时间
+	 * @param unit 时间单位
+	 */
+	void shutdown(long timeout, TimeUnit unit);
+}
@@ -0,0 +1,38 @@
+package cn.ting.kafkauser.executor;
+
+/**
+ * 执行器工厂
+ *
+ * 虚拟线程实现只在 jdk21 profile 下编译（src/main/java21），
+ * 这里通过类名加载，Java 8 构建不会引用到 JDK 21 的 API。
+ */
+public final class RecordExecutors {
+
+	private static final String VIRTUAL_EXECUTOR_CLASS = "cn.ting.kafkauser.executor.VirtualThreadRecordExecutor";
+
+	private RecordExecutors() {
+	}
+
+	/**
+	 * 创建执行器
+	 *
+	 * @param mode 执行方式
+	 * @param concurrency 平台线程数，或虚拟线程的最大并发数
+	 * @param name 线程名前缀
+	 * @return 执行器
+	 */
+	public static RecordExecutor create(ExecutorMode mode, int concurrency, String name) {
+		if (mode == ExecutorMode.PLATFORM) {
+			return new PlatformRecordExecutor(concurrency, name);
+		}
+		try {
+			return (RecordExecutor) Class.forName(VIRTUAL_EXECUTOR_CLASS)
+					.getConstructor(int.class, String.class)
+					.newInstance(concurrency, name);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("虚拟线程执行器不可用，请使用 -Pjdk21 构建并运行在 JDK 21 上", e);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("创建虚拟线程执行器失败", e);
+		}
+	}
+}
@@ -1,20 +1,36 @@
 package cn.ting.kafkauser.kafka;
 
+import cn.ting.kafkauser.canal.CanalCacheApplier;
+import cn.ting.kafkauser.tap.RecordTap;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
 /**
  * 测试 binlog 监听
+ * 把 Canal 投递的行变更按分区顺序同步到本地行缓存
  */
+@Slf4j
 @Service
 public class KafkaMsg {
-    @KafkaListener(topics = "canal-test", groupId = "cache-group")
-    public void handleMessage(ConsumerRecord<?, ?> cus) {
+
+    private final CanalCacheApplier canalCacheApplier;
+    private final RecordTap recordTap;
+
+    public KafkaMsg(CanalCacheApplier canalCacheApplier, RecordTap recordTap) {
+        this.canalCacheApplier = canalCacheApplier;
+        this.recordTap = recordTap;
+    }
+
+    @KafkaListener(topics = "canal-test", groupId = "cache-group", containerFactory = "canalContainerFactory")
+    public void handleMessage(ConsumerRecord<String, String> cus) {
+        recordTap.record("KafkaMsg", cus);
         try {
-            System.out.println(cus);
+            canalCacheApplier.apply(cus.value());
         } catch (Exception e) {
-            e.printStackTrace();
+            // 解析失败的消息跳过，缓存里可能残留旧值，最长在 TTL 到期后失效
+            log.error("应用 binlog 变更失败: partition={}, offset={}", cus.partition(), cus.offset(), e);
         }
     }
 
@@ -1,7 +1,8 @@
 package cn.ting.kafkauser.kafka;
 
+import cn.ting.kafkauser.multiplex.MultiplexedListener;
+import cn.ting.kafkauser.tap.RecordTap;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
 /**
@@ -11,12 +12,15 @@ import org.springframework.stereotype.Service;
  **/
 @Service
 public class KafkaMsg1 {
-	@KafkaListener(topics = "test-1", groupId = "cache-group")
+
+	private final RecordTap recordTap;
+
+	public KafkaMsg1(RecordTap recordTap) {
+		this.recordTap = recordTap;
+	}
+
+	@MultiplexedListener(topics = "test-1", groupId = "cache-group")
 	public void handleMessage(ConsumerRecord<?, ?> cus) {
-		try {
-			System.out.println(cus);
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+		recordTap.record("KafkaMsg1", cus);
 	}
 }
@@ -1,7 +1,8 @@
 package cn.ting.kafkauser.kafka;
 
+import cn.ting.kafkauser.multiplex.MultiplexedListener;
+import cn.ting.kafkauser.tap.RecordTap;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
 /**
@@ -11,12 +12,14 @@ import org.springframework.stereotype.Service;
 @Service
 public class KafkaMsg2 {
 
-	@KafkaListener(topics = "topic-1", groupId = "group-1")
+	private final RecordTap recordTap;
+
+	public KafkaMsg2(RecordTap recordTap) {
+		this.recordTap = recordTap;
+	}
+
+	@MultiplexedListener(topics = "topic-1", groupId = "group-1")
 	public void handleMessage(ConsumerRecord<?, ?> cus) {
-		try {
-			System.out.println("同一主题，不同消费组，消息分别进入消费组。group-1："+cus.value());
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+		recordTap.record("KafkaMsg2[group-1]", cus);
 	}
 }
@@ -1,7 +1,8 @@
 package cn.ting.kafkauser.kafka;
 
+import cn.ting.kafkauser.multiplex.MultiplexedListener;
+import cn.ting.kafkauser.tap.RecordTap;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
 /**
@@ -11,12 +12,15 @@ import org.springframework.stereotype.Service;
 @Service
 public class KafkaMsg3 {
 
-	@KafkaListener(topics = "topic-1", groupId = "group-2")
+	private final RecordTap recordTap;
+
+	public KafkaMsg3(RecordTap recordTap) {
+		this.recordTap = recordTap;
+	}
+
+	// 与 KafkaMsg4 同组监听同一个 topic，演示组内分区分配，各自需要独立的消费者
+	@MultiplexedListener(topics = "topic-1", groupId = "group-2", isolated = true)
 	public void handleMessage(ConsumerRecord<?, ?> cus) {
-		try {
-			System.out.println("同一主题，不同消费组，消息分别进入消费组。group-2："+cus.value());
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+		recordTap.record("KafkaMsg3[group-2]", cus);
 	}
 }
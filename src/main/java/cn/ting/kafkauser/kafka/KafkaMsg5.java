@@ -1,7 +1,22 @@
 package cn.ting.kafkauser.kafka;
 
+import cn.ting.kafkauser.dispatch.KeyOrderedDispatcher;
+import cn.ting.kafkauser.multiplex.MultiplexedListener;
+import cn.ting.kafkauser.retry.FailureRouter;
+import cn.ting.kafkauser.tap.RecordTap;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
 
 /**
@@ -9,23 +24,75 @@ import org.springframework.stereotype.Service;
  * @date : 2025-05-02
  **/
 @Service
-public class KafkaMsg5 {
+public class KafkaMsg5 implements ConsumerSeekAware {
 
-	@KafkaListener(topics = "sort-1", groupId = "group-sort",concurrency = "1")
+	// sort-2 监听容器ID，自动扩缩容通过它调整消费线程数
+	public static final String KEY_ORDERED_LISTENER_ID = "key-ordered-consumer";
+
+	// key 有序派发的通道数量与每条通道的队列容量
+	private final int laneCount = Runtime.getRuntime().availableProcessors();
+	private final int laneCapacity = 100;
+
+	private final RecordTap recordTap;
+
+	private final MeterRegistry meterRegistry;
+
+	// 处理失败的消息转入死信主题，水位线继续推进
+	private final FailureRouter failureRouter;
+
+	private KeyOrderedDispatcher keyOrderedDispatcher;
+
+	public KafkaMsg5(RecordTap recordTap, MeterRegistry meterRegistry, FailureRouter failureRouter) {
+		this.recordTap = recordTap;
+		this.meterRegistry = meterRegistry;
+		this.failureRouter = failureRouter;
+	}
+
+	@PostConstruct
+	public void init() {
+		this.keyOrderedDispatcher = new KeyOrderedDispatcher("sort-2", laneCount, laneCapacity, failureRouter);
+		// 通道队列总深度和最深的一条，后者偏高说明 key 分布不均
+		Gauge.builder("kafka.dispatcher.queue", keyOrderedDispatcher, d -> Arrays.stream(d.laneDepths()).sum())
+				.tag("name", "sort-2").register(meterRegistry);
+		Gauge.builder("kafka.dispatcher.queue.max", keyOrderedDispatcher, d -> Arrays.stream(d.laneDepths()).max().orElse(0))
+				.tag("name", "sort-2").register(meterRegistry);
+	}
+
+	// 共用容器只有一个消费线程，分区内顺序不变
+	@MultiplexedListener(topics = "sort-1", groupId = "group-sort")
 	public void handleMessage(ConsumerRecord<?, ?> cus) {
-		try {
-			System.out.println("顺序消费"+cus.value());
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-	}
-
-	@KafkaListener(topics = "sort-2", groupId = "group-sort",concurrency = "2")
-	public void handleMessage1(ConsumerRecord<?, ?> cus) {
-		try {
-			System.out.println("不顺序消费"+cus.value());
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+		recordTap.record("KafkaMsg5[顺序消费]", cus);
+	}
+
+	/**
+	 * 同 key 顺序消费：按 key 分到多条通道并行处理，同一个 key 的消息保持顺序
+	 */
+	@KafkaListener(id = KEY_ORDERED_LISTENER_ID, topics = "sort-2", groupId = "group-sort",concurrency = "2",
+			containerFactory = "keyOrderedContainerFactory")
+	public void handleMessage1(ConsumerRecord<String, String> cus, Acknowledgment acknowledgment) {
+		keyOrderedDispatcher.dispatch(cus, acknowledgment,
+				record -> recordTap.record("KafkaMsg5[同key顺序消费]", record));
+	}
+
+	/**
+	 * @return key 有序派发器，用于查看各通道队列深度
+	 */
+	public KeyOrderedDispatcher getKeyOrderedDispatcher() {
+		return keyOrderedDispatcher;
+	}
+
+	@Override
+	public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+		keyOrderedDispatcher.resetPartitions(assignments.keySet());
+	}
+
+	@Override
+	public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+		keyOrderedDispatcher.resetPartitions(partitions);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		keyOrderedDispatcher.shutdown(30, TimeUnit.SECONDS);
 	}
 }
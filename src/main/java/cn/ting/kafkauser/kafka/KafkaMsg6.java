@@ -1,31 +1,39 @@
 package cn.ting.kafkauser.kafka;
 
+import cn.ting.kafkauser.multiplex.MultiplexedListener;
+import cn.ting.kafkauser.routing.HeaderRouter;
+import cn.ting.kafkauser.routing.TableRecordHandler;
+import java.util.List;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.messaging.MessageHeaders;
-import org.springframework.messaging.handler.annotation.Header;
-import org.springframework.messaging.handler.annotation.Headers;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.stereotype.Service;
 
+/**
+ * 按 tableName 消息头把同一个 topic 上多张表的数据分发给各自的处理器
+ *
+ * 不再让 Spring 为每条消息构造完整的 MessageHeaders：路由只读 tableName 头的原始字节，
+ * 在预先构建的路由表里按字节匹配，其余消息头由处理器按需解码。
+ */
 @Service
 @Slf4j
 public class KafkaMsg6 {
 
-	@KafkaListener(topics = "your-topic")
-	public void listen(
-			String payload,
-			@Headers MessageHeaders headers,
-			@Header(value = "tableName", required = false) String tableName
-	) {
-		log.info("Received message with payload: {}", payload);
-		log.info("All headers: {}", headers);
-		log.info("tableName header value: {}", tableName);
-		
-		if (tableName == null) {
-			log.warn("Received message without tableName header. Payload: {}", payload);
-			tableName = "unknown_table";
-		}
-		log.info("Processing data from table: {}", tableName);
-		// 业务逻辑...
+	private final HeaderRouter<Object, Object> router;
+
+	public KafkaMsg6(List<TableRecordHandler> handlers) {
+		HeaderRouter.Builder<Object, Object> builder = HeaderRouter.<Object, Object>builder("tableName")
+				.onMissing((record, headers) -> log.warn("Received message without tableName header: partition={}, offset={}",
+						record.partition(), record.offset()))
+				// 同一个 topic 上还有其他服务消费的表，没有注册处理器的直接忽略
+				.onUnmatched((record, headers) -> log.debug("No handler for table: {}", headers.get("tableName")));
+		handlers.forEach(handler -> builder.route(handler.tableName(), handler));
+		this.router = builder.build();
+		log.info("Registered {} table handlers", router.size());
+	}
+
+	// 与 KafkaMsg1 同在 cache-group，共用一个消费者
+	@MultiplexedListener(topics = "your-topic", groupId = "cache-group")
+	public void listen(ConsumerRecord<Object, Object> record) {
+		router.route(record);
 	}
 }
@@ -0,0 +1,28 @@
+package cn.ting.kafkauser.kafka;
+
+import cn.ting.kafkauser.routing.LazyHeaders;
+import cn.ting.kafkauser.routing.TableRecordHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.stereotype.Component;
+
+/**
+ * your-topic 上 user-table 的数据，由 {@link KafkaMsg6} 按 tableName 消息头路由过来
+ */
+@Component
+@Slf4j
+public class UserTableHandler implements TableRecordHandler {
+
+	@Override
+	public String tableName() {
+		return "user-table";
+	}
+
+	@Override
+	public void handle(ConsumerRecord<Object, Object> record, LazyHeaders headers) {
+		// 其余消息头只在这里用到时才解码
+		log.info("Processing data from table: {}, source: {}, payload: {}", tableName(), headers.get("source"),
+				record.value());
+		// 业务逻辑...
+	}
+}
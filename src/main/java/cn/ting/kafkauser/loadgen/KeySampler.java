@@ -0,0 +1,54 @@
+package cn.ting.kafkauser.loadgen;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 消息 key 的取值分布，key 形如 key-&lt;序号&gt;，序号在 [0, cardinality) 内
+ *
+ * Zipf 分布下序号越小越热：exponent 为 1 时最热的 1% 的 key 大约占一半以上的消息，
+ * 用来复现热点分区和按 key 保序时的排队。
+ */
+public interface KeySampler {
+
+	/**
+	 * @param random 调用线程的随机数
+	 * @return 下一条消息的 key，null 表示不带 key
+	 */
+	String next(Random random);
+
+	/**
+	 * 不带 key，由生产者在分区间轮换
+	 */
+	static KeySampler none() {
+		return random -> null;
+	}
+
+	static KeySampler uniform(int cardinality) {
+		if (cardinality <= 0) {
+			throw new IllegalArgumentException("key 分布参数不合法");
+		}
+		return random -> "key-" + random.nextInt(cardinality);
+	}
+
+	/**
+	 * 序号为 i（从 0 开始）的概率与 1 / (i + 1)^exponent 成正比
+	 */
+	static KeySampler zipf(int cardinality, double exponent) {
+		if (cardinality <= 0 || exponent <= 0) {
+			throw new IllegalArgumentException("key 分布参数不合法");
+		}
+		// 累积分布表，按均匀随机数二分查找，每次取样 O(log n) 且不分配对象
+		double[] cdf = new double[cardinality];
+		double sum = 0;
+		for (int i = 0; i < cardinality; i++) {
+			sum += 1 / Math.pow(i + 1, exponent);
+			cdf[i] = sum;
+		}
+		double total = sum;
+		return random -> {
+			int index = Arrays.binarySearch(cdf, random.nextDouble() * total);
+			return "key-" + Math.min(index < 0 ? -index - 1 : index, cardinality - 1);
+		};
+	}
+}
@@ -0,0 +1,23 @@
+package cn.ting.kafkauser.loadgen;
+
+import cn.ting.kafkauser.tap.RecordTap;
+import java.util.Map;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.ProducerFactory;
+
+/**
+ * 压测发生器，取代原先按固定间隔发送的演示生产者
+ */
+@Configuration
+@EnableConfigurationProperties(LoadGenProperties.class)
+public class LoadGenConfig {
+
+	@Bean
+	public LoadGeneratorManager loadGeneratorManager(LoadGenProperties properties,
+	                                                 Map<String, ProducerFactory<String, String>> producerFactories,
+	                                                 RecordTap recordTap) {
+		return new LoadGeneratorManager(properties, producerFactories, recordTap);
+	}
+}
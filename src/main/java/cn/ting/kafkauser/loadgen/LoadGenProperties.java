@@ -0,0 +1,141 @@
+package cn.ting.kafkauser.loadgen;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 压测配置，每个 profile 对应一个 {@link LoadGenerator}
+ */
+@Data
+@ConfigurationProperties(prefix = "kafka.loadgen")
+public class LoadGenProperties {
+
+	/**
+	 * 运行中的压测每隔多久打印一次进度
+	 */
+	private long reportIntervalSeconds = 10;
+
+	/**
+	 * 压测名称 -> 负载配置
+	 */
+	private Map<String, Profile> profiles = new LinkedHashMap<>();
+
+	@Data
+	public static class Profile {
+
+		private String topic;
+
+		/**
+		 * 使用的 ProducerFactory bean 名称，决定 linger.ms、压缩等发送参数
+		 */
+		private String producerFactory = "throughputProducerFactory";
+
+		/**
+		 * 目标速率（条/秒）
+		 */
+		private double rate = 100;
+
+		private int threads = 1;
+
+		/**
+		 * 持续时间，0 表示一直运行到手动停止
+		 */
+		private long durationSeconds = 0;
+
+		/**
+		 * 应用就绪后自动启动
+		 */
+		private boolean autoStart = false;
+
+		private Payload payload = new Payload();
+
+		private Keys keys = new Keys();
+
+		/**
+		 * 消息头组合，每条消息随机取一组
+		 */
+		private List<Map<String, String>> headers = new ArrayList<>();
+
+		public LoadProfile toLoadProfile() {
+			LoadProfile.Builder builder = LoadProfile.builder(topic)
+					.ratePerSecond(rate)
+					.threads(threads)
+					.duration(durationSeconds, TimeUnit.SECONDS)
+					.payloadSizes(payload.toPayloadSizes())
+					.keys(keys.toKeySampler());
+			headers.forEach(builder::headerSet);
+			return builder.build();
+		}
+	}
+
+	@Data
+	public static class Payload {
+
+		private Distribution distribution = Distribution.FIXED;
+
+		/**
+		 * FIXED 的大小，LOG_NORMAL 的中位数
+		 */
+		private int size = 100;
+
+		private int min = 0;
+
+		private int max = 1024;
+
+		/**
+		 * LOG_NORMAL 的对数标准差
+		 */
+		private double sigma = 1.0;
+
+		public PayloadSizes toPayloadSizes() {
+			switch (distribution) {
+				case UNIFORM:
+					return PayloadSizes.uniform(min, max);
+				case LOG_NORMAL:
+					return PayloadSizes.logNormal(size, sigma, min, max);
+				default:
+					return PayloadSizes.fixed(size);
+			}
+		}
+
+		public enum Distribution {
+			FIXED, UNIFORM, LOG_NORMAL
+		}
+	}
+
+	@Data
+	public static class Keys {
+
+		private Distribution distribution = Distribution.NONE;
+
+		/**
+		 * 不同 key 的个数
+		 */
+		private int cardinality = 1000;
+
+		/**
+		 * ZIPF 的指数，越大越集中
+		 */
+		private double exponent = 1.0;
+
+		public KeySampler toKeySampler() {
+			switch (distribution) {
+				case UNIFORM:
+					return KeySampler.uniform(cardinality);
+				case ZIPF:
+					return KeySampler.zipf(cardinality, exponent);
+				default:
+					return KeySampler.none();
+			}
+		}
+
+		public enum Distribution {
+			NONE, UNIFORM, ZIPF
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package cn.ting.kafkauser.loadgen;
+
+import cn.ting.kafkauser.tap.RecordTap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.springframework.kafka.core.ProducerFactory;
+
+/**
+ * 开环压测发生器
+ *
+ * 发送时刻事先排好：第 k 条消息的计划时刻是 start + k / rate，k 按线程交错分配，
+ * 第 i 个线程负责 k = i, i + threads, i + 2 * threads ...
+ * 线程只等到计划时刻再发送，不等上一条确认；落后时立刻补发，不顺延后面的计划。
+ * 这样 broker 变慢时压力不会跟着降下来，延迟从计划时刻算起，包含发送端排队的时间。
+ *
+ * 所有线程共用工厂创建的同一个 Producer，结束时 flush 等待在途消息确认后给出最终报告。
+ */
+@Slf4j
+public class LoadGenerator {
+
+	private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(5);
+	// 单次休眠上限，保证 stop 之后能及时退出
+	private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final char[] ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+
+	private final String name;
+	private final LoadProfile profile;
+	private final ProducerFactory<String, String> producerFactory;
+	private final RecordTap tap;
+	private final char[] payloadSource;
+
+	private final Histogram latency = new ConcurrentHistogram(HIGHEST_TRACKABLE_NANOS, 3);
+	private final Histogram serviceTime = new ConcurrentHistogram(HIGHEST_TRACKABLE_NANOS, 3);
+	private final LongAdder sent = new LongAdder();
+	private final LongAdder acked = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final AtomicLong maxLagNanos = new AtomicLong();
+
+	private volatile long startNanos;
+	private volatile long stopNanos;
+	private volatile boolean stopping;
+	private volatile String lastError;
+	private CompletableFuture<LoadReport> completion;
+
+	/**
+	 * @param name 压测名称，用于线程名和报告
+	 * @param profile 负载描述
+	 * @param producerFactory 生产者工厂，决定序列化和 linger、压缩等发送参数
+	 * @param tap 消息旁路观测，可以为 null
+	 */
+	public LoadGenerator(String name, LoadProfile profile, ProducerFactory<String, String> producerFactory,
+	                     RecordTap tap) {
+		this.name = name;
+		this.profile = profile;
+		this.producerFactory = producerFactory;
+		this.tap = tap;
+		this.payloadSource = new char[profile.getPayloadSizes().max() + 1024];
+		Random random = new Random();
+		for (int i = 0; i < payloadSource.length; i++) {
+			payloadSource[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+		}
+	}
+
+	/**
+	 * 启动发送线程，一个实例只能启动一次
+	 *
+	 * @return 到达持续时间或调用 {@link #stop} 后，在途消息全部确认时完成的最终报告
+	 */
+	public synchronized CompletableFuture<LoadReport> start() {
+		if (completion != null) {
+			throw new IllegalStateException("压测已经启动过: " + name);
+		}
+		int threads = profile.getThreads();
+		Producer<String, String> producer = producerFactory.createProducer();
+		AtomicInteger counter = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "loadgen-" + name + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		startNanos = System.nanoTime();
+		CompletableFuture<?>[] workers = new CompletableFuture<?>[threads];
+		for (int i = 0; i < threads; i++) {
+			int index = i;
+			workers[i] = CompletableFuture.runAsync(() -> run(index, producer), pool);
+		}
+		completion = CompletableFuture.allOf(workers).handle((ignored, e) -> {
+			stopNanos = System.nanoTime();
+			if (e != null) {
+				log.error("压测 {} 的发送线程异常退出", name, e);
+			}
+			producer.flush();
+			pool.shutdown();
+			return report();
+		});
+		log.info("压测 {} 已启动: topic {}, 目标 {}/s, {} 个线程", name, profile.getTopic(),
+				profile.getRatePerSecond(), threads);
+		return completion;
+	}
+
+	/**
+	 * 停止发送，已发送的消息继续等待确认
+	 *
+	 * @return 最终报告，未启动时为 null
+	 */
+	public synchronized CompletableFuture<LoadReport> stop() {
+		stopping = true;
+		return completion;
+	}
+
+	public synchronized boolean isRunning() {
+		return completion != null && !completion.isDone();
+	}
+
+	/**
+	 * @return 当前进度，运行中也可以调用
+	 */
+	public LoadReport report() {
+		long start = startNanos;
+		long end = stopNanos != 0 ? stopNanos : System.nanoTime();
+		long elapsed = start == 0 ? 0 : end - start;
+		double periodNanos = 1e9 / profile.getRatePerSecond();
+		long due = start == 0 ? 0 : (long) (elapsed / periodNanos) + 1;
+		if (profile.getDurationNanos() > 0) {
+			due = Math.min(due, (long) Math.ceil(profile.getDurationNanos() / periodNanos));
+		}
+		long sentCount = sent.sum();
+		double achievedRate = elapsed == 0 ? 0 : sentCount * 1e9 / elapsed;
+		double shortfall = due == 0 ? 0 : Math.max(0, 1 - (double) sentCount / due);
+		Histogram latencySnapshot = latency.copy();
+		Histogram serviceSnapshot = serviceTime.copy();
+		return new LoadReport(name, profile.getRatePerSecond(), TimeUnit.NANOSECONDS.toMillis(elapsed), due,
+				sentCount, acked.sum(), failed.sum(), achievedRate, shortfall, millis(maxLagNanos.get()),
+				millis(latencySnapshot.getValueAtPercentile(50)), millis(latencySnapshot.getValueAtPercentile(99)),
+				millis(latencySnapshot.getValueAtPercentile(99.9)), millis(latencySnapshot.getMaxValue()),
+				millis(serviceSnapshot.getValueAtPercentile(50)), millis(serviceSnapshot.getValueAtPercentile(99)),
+				lastError);
+	}
+
+	private void run(int index, Producer<String, String> producer) {
+		Random random = ThreadLocalRandom.current();
+		double periodNanos = 1e9 / profile.getRatePerSecond();
+		int threads = profile.getThreads();
+		long duration = profile.getDurationNanos();
+		for (long n = 0; ; n++) {
+			long offset = (long) ((n * threads + index) * periodNanos);
+			if (duration > 0 && offset >= duration) {
+				return;
+			}
+			long intended = startNanos + offset;
+			if (!awaitUntil(intended)) {
+				return;
+			}
+			send(producer, random, intended);
+		}
+	}
+
+	/**
+	 * @return false 表示已停止
+	 */
+	private boolean awaitUntil(long deadline) {
+		while (!stopping) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return true;
+			}
+			LockSupport.parkNanos(Math.min(remaining, MAX_PARK_NANOS));
+		}
+		return false;
+	}
+
+	private void send(Producer<String, String> producer, Random random, long intendedNanos) {
+		long sendNanos = System.nanoTime();
+		maxLagNanos.accumulateAndGet(sendNanos - intendedNanos, Math::max);
+		String topic = profile.getTopic();
+		String key = profile.getKeys().next(random);
+		String value = payload(random);
+		List<Header[]> headerSets = profile.getHeaderSets();
+		RecordHeaders headers = headerSets.isEmpty()
+				? null
+				: new RecordHeaders(headerSets.get(random.nextInt(headerSets.size())));
+		try {
+			producer.send(new ProducerRecord<>(topic, null, key, value, headers), (metadata, exception) -> {
+				long now = System.nanoTime();
+				if (exception == null) {
+					acked.increment();
+					latency.recordValue(Math.min(now - intendedNanos, HIGHEST_TRACKABLE_NANOS));
+					serviceTime.recordValue(Math.min(now - sendNanos, HIGHEST_TRACKABLE_NANOS));
+				} else {
+					failed.increment();
+					lastError = exception.toString();
+				}
+			});
+			sent.increment();
+		} catch (RuntimeException e) {
+			// 序列化失败、缓冲区等待超时等同步异常不会触发回调
+			failed.increment();
+			lastError = e.toString();
+		}
+		if (tap != null) {
+			tap.sent("loadgen-" + name, topic, key, value);
+		}
+	}
+
+	private String payload(Random random) {
+		int size = profile.getPayloadSizes().next(random);
+		return new String(payloadSource, random.nextInt(payloadSource.length - size + 1), size);
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+}
@@ -0,0 +1,129 @@
+package cn.ting.kafkauser.loadgen;
+
+import cn.ting.kafkauser.tap.RecordTap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.kafka.core.ProducerFactory;
+
+/**
+ * 按 kafka.loadgen.profiles 启停压测
+ *
+ * auto-start 的压测在应用就绪后启动，其余通过 JMX（kafkaUser:name=loadGenerator）的 start/stop 操作启停；
+ * 运行中每隔 report-interval-seconds 打印一次进度，结束时打印最终报告。
+ */
+@Slf4j
+@ManagedResource(objectName = "kafkaUser:name=loadGenerator", description = "压测发生器")
+public class LoadGeneratorManager implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+
+	private final LoadGenProperties properties;
+	private final Map<String, ProducerFactory<String, String>> producerFactories;
+	private final RecordTap tap;
+	private final Map<String, LoadGenerator> generators = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "loadgen-report");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * @param properties 压测配置
+	 * @param producerFactories ProducerFactory bean 名称 -> 实例
+	 * @param tap 消息旁路观测，可以为 null
+	 */
+	public LoadGeneratorManager(LoadGenProperties properties,
+	                            Map<String, ProducerFactory<String, String>> producerFactories,
+	                            RecordTap tap) {
+		this.properties = properties;
+		this.producerFactories = producerFactories;
+		this.tap = tap;
+	}
+
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		properties.getProfiles().forEach((name, profile) -> {
+			if (profile.isAutoStart()) {
+				log.info(start(name));
+			}
+		});
+		long interval = properties.getReportIntervalSeconds();
+		if (interval > 0) {
+			reporter.scheduleAtFixedRate(this::logProgress, interval, interval, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * @param name kafka.loadgen.profiles 中的名称
+	 * @return 启动结果
+	 */
+	@ManagedOperation(description = "启动指定的压测")
+	public synchronized String start(String name) {
+		LoadGenProperties.Profile profile = properties.getProfiles().get(name);
+		if (profile == null) {
+			return "没有压测配置 " + name;
+		}
+		LoadGenerator running = generators.get(name);
+		if (running != null && running.isRunning()) {
+			return name + " 已在运行";
+		}
+		ProducerFactory<String, String> producerFactory = producerFactories.get(profile.getProducerFactory());
+		if (producerFactory == null) {
+			return "没有 ProducerFactory " + profile.getProducerFactory();
+		}
+		LoadGenerator generator = new LoadGenerator(name, profile.toLoadProfile(), producerFactory, tap);
+		generators.put(name, generator);
+		generator.start().whenComplete((report, e) -> {
+			if (e != null) {
+				log.error("压测 {} 异常结束", name, e);
+			} else {
+				log.info("压测结束 {}", report);
+			}
+		});
+		return name + " 已启动";
+	}
+
+	/**
+	 * @return 停止前的进度
+	 */
+	@ManagedOperation(description = "停止指定的压测")
+	public synchronized String stop(String name) {
+		LoadGenerator generator = generators.get(name);
+		if (generator == null || !generator.isRunning()) {
+			return name + " 没有在运行";
+		}
+		generator.stop();
+		return generator.report().toString();
+	}
+
+	/**
+	 * @return 所有压测的进度，包括已结束的
+	 */
+	@ManagedAttribute(description = "压测进度")
+	public String getReports() {
+		StringJoiner joiner = new StringJoiner("\n");
+		generators.values().forEach(generator -> joiner.add(generator.report().toString()));
+		return joiner.toString();
+	}
+
+	@Override
+	public void destroy() {
+		reporter.shutdownNow();
+		generators.values().forEach(LoadGenerator::stop);
+	}
+
+	private void logProgress() {
+		generators.values().stream()
+				.filter(LoadGenerator::isRunning)
+				.forEach(generator -> log.info("压测进度 {}", generator.report()));
+	}
+}
@@ -0,0 +1,138 @@
+package cn.ting.kafkauser.loadgen;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
+
+/**
+ * 一次压测的负载描述：目标速率、线程数、持续时间、消息体大小、key 分布和消息头
+ */
+public class LoadProfile {
+
+	private final String topic;
+	private final double ratePerSecond;
+	private final int threads;
+	private final long durationNanos;
+	private final PayloadSizes payloadSizes;
+	private final KeySampler keys;
+	private final List<Header[]> headerSets;
+
+	private LoadProfile(Builder builder) {
+		this.topic = builder.topic;
+		this.ratePerSecond = builder.ratePerSecond;
+		this.threads = builder.threads;
+		this.durationNanos = builder.durationNanos;
+		this.payloadSizes = builder.payloadSizes;
+		this.keys = builder.keys;
+		this.headerSets = Collections.unmodifiableList(new ArrayList<>(builder.headerSets));
+	}
+
+	public static Builder builder(String topic) {
+		return new Builder(topic);
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public double getRatePerSecond() {
+		return ratePerSecond;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return 持续时间，0 表示一直运行到手动停止
+	 */
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	public PayloadSizes getPayloadSizes() {
+		return payloadSizes;
+	}
+
+	public KeySampler getKeys() {
+		return keys;
+	}
+
+	/**
+	 * @return 可选的消息头组合，每条消息随机取一组；为空时不带消息头
+	 */
+	public List<Header[]> getHeaderSets() {
+		return headerSets;
+	}
+
+	public static class Builder {
+		private final String topic;
+		private double ratePerSecond = 100;
+		private int threads = 1;
+		private long durationNanos;
+		private PayloadSizes payloadSizes = PayloadSizes.fixed(100);
+		private KeySampler keys = KeySampler.none();
+		private final List<Header[]> headerSets = new ArrayList<>();
+
+		private Builder(String topic) {
+			this.topic = topic;
+		}
+
+		/**
+		 * @param ratePerSecond 所有线程合计的目标速率
+		 */
+		public Builder ratePerSecond(double ratePerSecond) {
+			this.ratePerSecond = ratePerSecond;
+			return this;
+		}
+
+		/**
+		 * @param threads 发送线程数，单线程跟不上目标速率时增加
+		 */
+		public Builder threads(int threads) {
+			this.threads = threads;
+			return this;
+		}
+
+		public Builder duration(long duration, TimeUnit unit) {
+			this.durationNanos = unit.toNanos(duration);
+			return this;
+		}
+
+		public Builder payloadSizes(PayloadSizes payloadSizes) {
+			this.payloadSizes = payloadSizes;
+			return this;
+		}
+
+		public Builder keys(KeySampler keys) {
+			this.keys = keys;
+			return this;
+		}
+
+		/**
+		 * 增加一组消息头，值按 UTF-8 编码，同一组的 Header 实例在消息之间共用
+		 */
+		public Builder headerSet(Map<String, String> headers) {
+			Header[] set = new Header[headers.size()];
+			int i = 0;
+			for (Map.Entry<String, String> entry : headers.entrySet()) {
+				set[i++] = new RecordHeader(entry.getKey(), entry.getValue().getBytes(StandardCharsets.UTF_8));
+			}
+			headerSets.add(set);
+			return this;
+		}
+
+		public LoadProfile build() {
+			if (topic == null || topic.isEmpty() || !(ratePerSecond > 0) || threads < 1 || durationNanos < 0
+					|| payloadSizes == null || keys == null) {
+				throw new IllegalArgumentException("负载参数不合法");
+			}
+			return new LoadProfile(this);
+		}
+	}
+}
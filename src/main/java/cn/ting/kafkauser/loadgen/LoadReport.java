@@ -0,0 +1,51 @@
+package cn.ting.kafkauser.loadgen;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 压测进度快照
+ *
+ * 延迟从计划发送时刻算起：发送线程落后于计划时，落后的时间也算进延迟，不会因为发得慢而显得延迟低（coordinated omission）。
+ * 服务时间从实际调用 send 算起，两者差距大说明瓶颈在发送端（线程不够、send 阻塞在缓冲区或元数据上）。
+ */
+@Getter
+@AllArgsConstructor
+public class LoadReport {
+
+	private final String name;
+	private final double targetRate;
+	private final long elapsedMillis;
+	/**
+	 * 按计划到目前为止应发送的条数
+	 */
+	private final long due;
+	private final long sent;
+	private final long acked;
+	private final long failed;
+	private final double achievedRate;
+	/**
+	 * 实际发送条数比计划少的比例，0 表示完全跟上
+	 */
+	private final double shortfall;
+	/**
+	 * 实际发送时刻相对计划时刻的最大落后
+	 */
+	private final double maxScheduleLagMillis;
+	private final double latencyP50Millis;
+	private final double latencyP99Millis;
+	private final double latencyP999Millis;
+	private final double latencyMaxMillis;
+	private final double serviceP50Millis;
+	private final double serviceP99Millis;
+	private final String lastError;
+
+	@Override
+	public String toString() {
+		return String.format("%s: 目标 %.1f/s, 实际 %.1f/s, 缺口 %.1f%% (应发 %d, 已发 %d, 确认 %d, 失败 %d), 耗时 %dms, "
+						+ "最大落后 %.1fms, 延迟 p50=%.2fms p99=%.2fms p999=%.2fms max=%.2fms, 服务时间 p50=%.2fms p99=%.2fms%s",
+				name, targetRate, achievedRate, shortfall * 100, due, sent, acked, failed, elapsedMillis,
+				maxScheduleLagMillis, latencyP50Millis, latencyP99Millis, latencyP999Millis, latencyMaxMillis,
+				serviceP50Millis, serviceP99Millis, lastError == null ? "" : ", 最近错误: " + lastError);
+	}
+}
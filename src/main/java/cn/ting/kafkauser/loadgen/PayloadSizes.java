@@ -0,0 +1,82 @@
+package cn.ting.kafkauser.loadgen;
+
+import java.util.Random;
+
+/**
+ * 消息体大小分布，单位为字节（消息体只含 ASCII 字符，字符数等于字节数）
+ */
+public interface PayloadSizes {
+
+	/**
+	 * @param random 调用线程的随机数
+	 * @return 下一条消息的大小
+	 */
+	int next(Random random);
+
+	/**
+	 * @return 可能出现的最大值
+	 */
+	int max();
+
+	static PayloadSizes fixed(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("消息大小参数不合法");
+		}
+		return new PayloadSizes() {
+			@Override
+			public int next(Random random) {
+				return size;
+			}
+
+			@Override
+			public int max() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * [min, max] 内均匀分布
+	 */
+	static PayloadSizes uniform(int min, int max) {
+		if (min < 0 || max < min) {
+			throw new IllegalArgumentException("消息大小参数不合法");
+		}
+		return new PayloadSizes() {
+			@Override
+			public int next(Random random) {
+				return min + random.nextInt(max - min + 1);
+			}
+
+			@Override
+			public int max() {
+				return max;
+			}
+		};
+	}
+
+	/**
+	 * 对数正态分布，大多数消息接近中位数，少量大消息形成长尾，截断到 [min, max]
+	 *
+	 * @param median 中位数
+	 * @param sigma 对数标准差，越大尾部越长，1 左右时 p99 约为中位数的 10 倍
+	 */
+	static PayloadSizes logNormal(int median, double sigma, int min, int max) {
+		if (median <= 0 || sigma < 0 || min < 0 || max < min) {
+			throw new IllegalArgumentException("消息大小参数不合法");
+		}
+		double mu = Math.log(median);
+		return new PayloadSizes() {
+			@Override
+			public int next(Random random) {
+				long size = Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+				return (int) Math.max(min, Math.min(max, size));
+			}
+
+			@Override
+			public int max() {
+				return max;
+			}
+		};
+	}
+}
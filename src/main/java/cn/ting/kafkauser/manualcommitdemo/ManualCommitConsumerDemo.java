@@ -1,19 +1,36 @@
 package cn.ting.kafkauser.manualcommitdemo;
 
 
-import java.util.Collections;
-import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ThreadPoolExecutor;
+import cn.ting.kafkauser.backpressure.AdaptiveBackpressureController;
+import cn.ting.kafkauser.dedupe.IdempotencyGuard;
+import cn.ting.kafkauser.executor.ExecutorMode;
+import cn.ting.kafkauser.executor.PriorityRecordExecutor;
+import cn.ting.kafkauser.executor.RecordExecutor;
+import cn.ting.kafkauser.executor.RecordExecutors;
+import cn.ting.kafkauser.offset.OffsetTracker;
+import cn.ting.kafkauser.offset.PartitionDrainer;
+import cn.ting.kafkauser.retry.FailureHeaders;
+import cn.ting.kafkauser.retry.FailureRouter;
+import cn.ting.kafkauser.tap.RecordTap;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import org.apache.kafka.clients.consumer.Consumer;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
 import org.springframework.kafka.listener.ConsumerSeekAware;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Component;
@@ -26,27 +43,86 @@ import org.springframework.stereotype.Component;
  * 来控制消费速率，防止消息积压或系统过载。
  *
  * 主要功能包括：
- * - 使用线程池异步处理消息
- * - 根据线程池队列使用情况动态暂停/恢复分区消费
+ * - 使用线程池异步处理消息，I/O 密集时可切换为虚拟线程（kafka.manual-commit.executor-mode=VIRTUAL，需 jdk21 profile）
+ * - 按 priority 消息头分道排队（high/normal/low），加权轮询取任务，批量消息积压时高优先级消息不用排在它们后面
+ * - 由自适应背压控制器根据在途消息数和排队时间动态暂停/恢复分区消费
  * - 手动提交消费位移确保消息处理完成后才更新消费进度
+ * - 通过位移水位线追踪，只提交连续处理完成的最大位移，避免乱序完成导致丢消息
+ * - 增量重平衡回收分区前停止派发、排空在途任务并同步提交水位线，新消费者不会重复处理已完成的消息
+ * - 可选的幂等消费层（kafka.dedupe.enabled=true），跳过重平衡或崩溃后重复投递的消息
+ * - 处理失败的消息转入重试层（manual-commit-demo-topic-retry-N），写入成功后才推进水位线，不阻塞后续消息的提交
+ * - 执行器队列、活跃线程、在途上限和处理耗时以 kafka.executor.* / kafka.backpressure.* 指标上报，排队时间按优先级分别上报
  * - 优雅关闭消费者和线程池
  */
+@Slf4j
 @Component
 public class ManualCommitConsumerDemo implements ConsumerSeekAware {
 
-	// 线程池核心配置参数
-	private final int corePoolSize = 4;
-	private final int maxPoolSize = 8;
-	private final int queueCapacity = 100;
+	// 监听容器ID，背压控制器通过它找到容器来暂停/恢复分区，自动扩缩容通过它调整消费线程数
+	public static final String LISTENER_ID = "manual-commit-consumer";
+
+	// 平台线程池大小；队列不设上限，在途消息数由背压控制器约束
+	private final int poolSize = 8;
+
+	// 虚拟线程模式下同时阻塞在 I/O 上的最大消息数
+	private final int virtualConcurrency = 500;
+
+	// 各优先级积压时分到的执行机会之比 high:normal:low，没有 priority 消息头的消息按 normal 处理
+	private final int highWeight = 8;
+	private final int normalWeight = 3;
+	private final int lowWeight = 1;
 
 	// 关闭标志位，用于优雅关闭
 	private final AtomicBoolean shuttingDown = new AtomicBoolean(false);
 
-	// 记录当前被暂停的分区集合
-	private final Set<TopicPartition> pausedPartitions = ConcurrentHashMap.newKeySet();
+	// 按分区追踪乱序完成的消息，只提交连续完成的水位线
+	private final OffsetTracker offsetTracker;
+
+	// 分区回收前排空在途任务并提交水位线，由 manualCommitContainerFactory 接到容器的重平衡回调上
+	private final PartitionDrainer partitionDrainer;
+
+	private final KafkaListenerEndpointRegistry listenerRegistry;
+
+	// 采样输出处理过的消息，代替每条消息打印到控制台
+	private final RecordTap recordTap;
+
+	private final MeterRegistry meterRegistry;
+
+	// 消息处理执行方式
+	private final ExecutorMode executorMode;
+
+	// 幂等消费层，未启用时为 null
+	private final IdempotencyGuard idempotencyGuard;
+
+	// 处理失败的消息转入重试层或死信主题
+	private final FailureRouter failureRouter;
 
-	// 消息处理线程池
-	private ThreadPoolExecutor executorService;
+	// 消息处理执行器，按优先级分道排队
+	private PriorityRecordExecutor executorService;
+
+	// 背压控制器，负责分区的暂停与恢复
+	private AdaptiveBackpressureController backpressure;
+
+	// 派发到开始处理的排队时间、工作线程上的处理耗时
+	private Timer queueWaitTimer;
+	private Timer processTimer;
+
+	public ManualCommitConsumerDemo(KafkaListenerEndpointRegistry listenerRegistry,
+	                                RecordTap recordTap,
+	                                MeterRegistry meterRegistry,
+	                                @Value("${kafka.manual-commit.executor-mode:PLATFORM}") ExecutorMode executorMode,
+	                                ObjectProvider<IdempotencyGuard> idempotencyGuard,
+	                                PartitionDrainer manualCommitPartitionDrainer,
+	                                FailureRouter failureRouter) {
+		this.listenerRegistry = listenerRegistry;
+		this.recordTap = recordTap;
+		this.meterRegistry = meterRegistry;
+		this.executorMode = executorMode;
+		this.idempotencyGuard = idempotencyGuard.getIfAvailable();
+		this.partitionDrainer = manualCommitPartitionDrainer;
+		this.offsetTracker = manualCommitPartitionDrainer.getOffsetTracker();
+		this.failureRouter = failureRouter;
+	}
 
 	/**
 	 * 用于模拟实际的消息处理逻辑
@@ -54,7 +130,6 @@ public class ManualCommitConsumerDemo implements ConsumerSeekAware {
 	 */
 	private static class MessageProcessor {
 		public void process(String message) {
-			System.out.println("处理消息: " + message);
 			// 模拟处理时间
 			try {
 				Thread.sleep((long) (Math.random() * 1000));
@@ -65,35 +140,78 @@ public class ManualCommitConsumerDemo implements ConsumerSeekAware {
 	}
 
 	/**
-	 * 初始化线程池
+	 * 初始化执行器和背压控制器
 	 * 在Spring容器初始化完成后自动调用
 	 */
 	@PostConstruct
 	public void init() {
-		this.executorService = new ThreadPoolExecutor(
-				corePoolSize,
-				maxPoolSize,
-				60, TimeUnit.SECONDS,
-				new ArrayBlockingQueue<>(queueCapacity),
-				new ThreadPoolExecutor.CallerRunsPolicy()
-		);
+		int concurrency = executorMode == ExecutorMode.VIRTUAL ? virtualConcurrency : poolSize;
+		this.executorService = PriorityRecordExecutor
+				.builder(RecordExecutors.create(executorMode, concurrency, "manual-commit-worker"))
+				.header("priority")
+				.lane("high", highWeight)
+				.lane("normal", normalWeight)
+				.lane("low", lowWeight)
+				.defaultLane("normal")
+				.meterRegistry(meterRegistry, "manual-commit-worker")
+				.build();
+		this.backpressure = AdaptiveBackpressureController
+				.builder(() -> listenerRegistry.getListenerContainer(LISTENER_ID))
+				.initialLimit(concurrency * 4)
+				.minLimit(concurrency)
+				.maxLimit(concurrency * 16)
+				.targetQueueWait(2, TimeUnit.SECONDS)
+				.build();
+		registerMetrics();
+	}
+
+	/**
+	 * 注册执行器和背压相关指标，取代每条消息打印一次线程池状态
+	 */
+	private void registerMetrics() {
+		String name = "manual-commit-worker";
+		Gauge.builder("kafka.executor.active", executorService, RecordExecutor::getActiveCount)
+				.tag("name", name).register(meterRegistry);
+		Gauge.builder("kafka.executor.queue", executorService, RecordExecutor::getQueueSize)
+				.tag("name", name).register(meterRegistry);
+		Gauge.builder("kafka.executor.max", executorService, RecordExecutor::getMaxConcurrency)
+				.tag("name", name).register(meterRegistry);
+		Gauge.builder("kafka.backpressure.inflight", backpressure, AdaptiveBackpressureController::getInFlight)
+				.tag("name", name).register(meterRegistry);
+		Gauge.builder("kafka.backpressure.limit", backpressure, AdaptiveBackpressureController::getLimit)
+				.tag("name", name).register(meterRegistry);
+		Gauge.builder("kafka.backpressure.paused", backpressure, AdaptiveBackpressureController::getPausedPartitionCount)
+				.tag("name", name).register(meterRegistry);
+		Gauge.builder("kafka.offset.pending", offsetTracker, OffsetTracker::pendingCount)
+				.tag("name", name).register(meterRegistry);
+		this.queueWaitTimer = Timer.builder("kafka.executor.queue.wait").tag("name", name).register(meterRegistry);
+		this.processTimer = Timer.builder("kafka.executor.process").tag("name", name).register(meterRegistry);
+		if (idempotencyGuard != null) {
+			FunctionCounter.builder("kafka.dedupe.duplicates", idempotencyGuard, IdempotencyGuard::getWindowHits)
+					.tag("name", name).tag("source", "window").register(meterRegistry);
+			FunctionCounter.builder("kafka.dedupe.duplicates", idempotencyGuard, IdempotencyGuard::getStoreHits)
+					.tag("name", name).tag("source", "store").register(meterRegistry);
+			FunctionCounter.builder("kafka.dedupe.store.lookups", idempotencyGuard, IdempotencyGuard::getStoreLookups)
+					.tag("name", name).register(meterRegistry);
+			Gauge.builder("kafka.dedupe.store.pending", idempotencyGuard, IdempotencyGuard::getPendingWrites)
+					.tag("name", name).register(meterRegistry);
+		}
 	}
 
 	/**
 	 * Kafka消息监听方法
 	 * 监听"manual-commit-demo-topic"主题，使用手动提交位移模式
 	 *
-	 * @param consumer Kafka消费者实例
 	 * @param record 接收到的消息记录
 	 * @param acknowledgment 用于手动提交位移的对象
 	 */
 	@KafkaListener(
+			id = LISTENER_ID,
 			topics = "manual-commit-demo-topic",
 			groupId = "manual-commit-group",
 			containerFactory = "manualCommitContainerFactory"
 	)
-	public void consume(Consumer<String, String> consumer,
-	                    ConsumerRecord<String, String> record,
+	public void consume(ConsumerRecord<String, String> record,
 	                    Acknowledgment acknowledgment) {
 
 		if (shuttingDown.get()) {
@@ -102,94 +220,227 @@ public class ManualCommitConsumerDemo implements ConsumerSeekAware {
 
 		TopicPartition partition = new TopicPartition(record.topic(), record.partition());
 
-		// 1. 检查队列容量，必要时暂停分区
-		checkAndPausePartition(consumer, partition);
+		// 分区正在回收时不再派发，由新的消费者从提交点继续
+		PartitionDrainer.Lease lease = partitionDrainer.acquire(partition);
+		if (lease == null) {
+			return;
+		}
 
-		// 2. 提交任务到线程池
-		executorService.submit(() -> {
-			try {
-				// 消息处理
-				processMessage(record.value());
+		// 1. 交给背压控制器计数，在途过多时由容器在下一轮 poll 前暂停分区
+		long dispatchNanos = backpressure.onDispatch(partition);
+
+		// 2. 登记位移后按 priority 消息头提交到对应的优先级队列
+		OffsetTracker.Ticket ticket = offsetTracker.register(record, acknowledgment);
+		try {
+			submit(record, ticket, lease, dispatchNanos);
+		} catch (RejectedExecutionException e) {
+			// 执行器已关闭或拒绝任务：撤销在途计数并释放租约，否则分区一直暂停、回收时要等到排空超时；
+			// 凭证不标记完成，水位线停在这条消息之前
+			release(lease);
+			throw e;
+		}
+	}
 
-				// 3. 手动提交位移
-				acknowledgment.acknowledge();
-				System.out.println("已提交位移: " + record.offset());
+	/**
+	 * 提交到优先级执行器，在工作线程上处理消息、标记完成并释放在途计数和租约
+	 */
+	private void submit(ConsumerRecord<String, String> record, OffsetTracker.Ticket ticket,
+	                    PartitionDrainer.Lease lease, long dispatchNanos) {
+		executorService.execute(record.headers(), () -> {
+			long startNanos = System.nanoTime();
+			backpressure.onStart(dispatchNanos);
+			queueWaitTimer.record(startNanos - dispatchNanos, TimeUnit.NANOSECONDS);
+			boolean holding = false;
+			try {
+				// 排队期间分区被回收，跳过处理，不标记完成
+				if (lease.isRevoked()) {
+					return;
+				}
+				if (idempotencyGuard == null) {
+					holding = process(record, ticket, lease, null);
+					return;
+				}
 
-			} catch (Exception e) {
-				System.err.println("处理消息失败: " + record.value() + ", 错误: " + e.getMessage());
+				CompletableFuture<IdempotencyGuard.Claim> claimed = idempotencyGuard.claim(record);
+				if (!claimed.isDone()) {
+					// 同一条消息正在被另一个任务处理：持有凭证和租约，等它有结果后再决定
+					holding = true;
+					claimed.whenComplete((claim, error) -> afterWaiting(record, ticket, lease, claim, error));
+					return;
+				}
+				IdempotencyGuard.Claim claim = claimed.join();
+				if (claim == null) {
+					// 已处理过的消息直接标记完成，不再重复产生副作用
+					ticket.complete();
+					return;
+				}
+				holding = process(record, ticket, lease, claim);
 			} finally {
-				// 4. 尝试恢复分区消费
-				tryResumePartition(consumer, partition);
-
-				// 打印线程池状态
-				printThreadPoolStatus();
+				processTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+				// 4. 在途数量回落后由背压控制器请求恢复分区；转发中、等待中的消息在有结果时再释放
+				if (!holding) {
+					release(lease);
+				}
 			}
 		});
 	}
 
 	/**
-	 * 处理具体消息内容
-	 * @param message 消息内容
+	 * 处理一条已取得处理权的消息
+	 *
+	 * @param claim 去重层的处理凭证，未启用去重时为 null
+	 * @return 是否正在转发失败消息，是则在途计数和租约在转发完成时释放
 	 */
-	private void processMessage(String message) {
-		new MessageProcessor().process(message);
+	private boolean process(ConsumerRecord<String, String> record, OffsetTracker.Ticket ticket,
+	                        PartitionDrainer.Lease lease, IdempotencyGuard.Claim claim) {
+		try {
+			processMessage(record.value());
+
+			// 3. 先记下已处理，再标记完成，连续完成的水位线推进时才真正提交位移
+			if (claim != null) {
+				claim.commit();
+			}
+			ticket.complete();
+			recordTap.record("ManualCommitConsumerDemo", record);
+			return false;
+		} catch (Exception e) {
+			// 失败的消息转入重试层，broker 确认写入后才标记完成；转发也失败时水位线停在它之前，重启后会重新消费
+			if (claim != null) {
+				claim.release();
+			}
+			// 转发完成前一直持有租约，分区回收时排空等待会等到转发结果，不会提前交出分区
+			CompletableFuture<?> forwarded = failureRouter.route(record, e);
+			forwarded.whenComplete((result, sendError) -> {
+				try {
+					if (sendError == null) {
+						ticket.complete();
+					} else {
+						log.error("转发失败消息失败，位移停在 {}-{}@{}", record.topic(), record.partition(),
+								record.offset(), sendError);
+					}
+				} finally {
+					release(lease);
+				}
+			});
+			return true;
+		}
 	}
 
 	/**
-	 * 检查并根据线程池队列使用情况决定是否暂停分区消费
-	 * 当队列使用率超过90%时暂停消费以防止内存溢出
-	 *
-	 * @param consumer Kafka消费者实例
-	 * @param partition 当前分区
+	 * 等到同一条消息的另一个任务有结果：对方成功则是重复，标记完成；
+	 * 对方失败放弃了处理权、这条消息抢到时，回到执行器上重新处理，不占用对方的线程
 	 */
-	private void checkAndPausePartition(Consumer<String, String> consumer,
-	                                    TopicPartition partition) {
-		// 当队列剩余容量小于10%时暂停分区消费
-		int remainingCapacity = executorService.getQueue().remainingCapacity();
-		int totalCapacity = executorService.getQueue().size() + remainingCapacity;
-		double usedRatio = (double) executorService.getQueue().size() / totalCapacity;
-
-		if (usedRatio > 0.2 && !pausedPartitions.contains(partition)) {
-			pausedPartitions.add(partition);
-			consumer.pause(Collections.singletonList(partition));
-			System.out.println("已暂停分区: " + partition + " (队列使用率: " + (int)(usedRatio*100) + "%)");
+	private void afterWaiting(ConsumerRecord<String, String> record, OffsetTracker.Ticket ticket,
+	                          PartitionDrainer.Lease lease, IdempotencyGuard.Claim claim, Throwable error) {
+		if (error != null) {
+			// 查询去重存储失败，不标记完成，水位线停在它之前
+			log.error("去重检查失败，位移停在 {}-{}@{}", record.topic(), record.partition(), record.offset(), error);
+			release(lease);
+			return;
+		}
+		if (claim == null) {
+			ticket.complete();
+			release(lease);
+			return;
 		}
+		if (lease.isRevoked()) {
+			claim.release();
+			release(lease);
+			return;
+		}
+		try {
+			executorService.execute(record.headers(), () -> {
+				boolean forwarding = false;
+				try {
+					forwarding = process(record, ticket, lease, claim);
+				} finally {
+					if (!forwarding) {
+						release(lease);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			claim.release();
+			release(lease);
+		}
+	}
+
+	private void release(PartitionDrainer.Lease lease) {
+		backpressure.onComplete();
+		lease.release();
 	}
 
 	/**
-	 * 尝试恢复之前暂停的分区消费
-	 * 当队列使用率低于70%时恢复消费
+	 * 重试层到期后重新处理一条消息，抛出异常表示仍然失败，由重试层转入下一层
+	 *
+	 * 按第一次失败时的位置去重：原主题上的同一条消息已经处理成功时跳过，正在处理时等它有结果
 	 *
-	 * @param consumer Kafka消费者实例
-	 * @param partition 当前分区
+	 * @param record 重试层中的消息
 	 */
-	private void tryResumePartition(Consumer<String, String> consumer,
-	                                TopicPartition partition) {
-		if (pausedPartitions.contains(partition)) {
-			int remainingCapacity = executorService.getQueue().remainingCapacity();
-			int totalCapacity = executorService.getQueue().size() + remainingCapacity;
-			double usedRatio = (double) executorService.getQueue().size() / totalCapacity;
-
-			if (usedRatio < 0.7) {
-				pausedPartitions.remove(partition);
-				consumer.resume(Collections.singletonList(partition));
-				System.out.println("已恢复分区: " + partition + " (队列使用率: " + (int)(usedRatio*100) + "%)");
+	public void reprocess(ConsumerRecord<String, String> record) throws Exception {
+		IdempotencyGuard.Claim claim = null;
+		if (idempotencyGuard != null) {
+			claim = idempotencyGuard.claim(FailureHeaders.original(record)).get(30, TimeUnit.SECONDS);
+			if (claim == null) {
+				return;
+			}
+		}
+		try {
+			processMessage(record.value());
+		} catch (Exception e) {
+			if (claim != null) {
+				claim.release();
 			}
+			throw e;
 		}
+		if (claim != null) {
+			claim.commit();
+		}
+		recordTap.record("ManualCommitConsumerDemo[retry]", record);
 	}
 
+	/**
+	 * 自动扩缩容重启容器后调用，重启丢弃了容器上的暂停请求，背压控制器的暂停状态随之作废
+	 */
+	public void onContainerRestarted() {
+		backpressure.reset();
+	}
 
 	/**
-	 * 打印线程池当前状态信息
-	 * 包括活跃线程数、队列使用情况和暂停分区数量
+	 * @return 消息处理执行器，自动扩缩容通过它调整工作线程数
 	 */
-	private void printThreadPoolStatus() {
-		System.out.printf("线程池状态: [活跃线程: %d/%d, 队列: %d/%d, 暂停分区: %d]%n",
-				executorService.getActiveCount(),
-				executorService.getMaximumPoolSize(),
-				executorService.getQueue().size(),
-				executorService.getQueue().size() + executorService.getQueue().remainingCapacity(),
-				pausedPartitions.size());
+	public RecordExecutor getExecutor() {
+		return executorService;
+	}
+
+	/**
+	 * 分区分配后丢弃旧的追踪状态，之前派发的任务完成时不再提交位移；
+	 * 去重层对新分配的分区先查库，识别前一个消费者已处理但未提交位移的消息
+	 */
+	@Override
+	public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+		offsetTracker.reset(assignments.keySet());
+		if (idempotencyGuard != null) {
+			idempotencyGuard.verify(assignments.keySet());
+		}
+	}
+
+	/**
+	 * 分区被回收后丢弃追踪状态，避免对不再拥有的分区提交位移
+	 * 此时 PartitionDrainer 已经排空在途任务并提交了水位线
+	 */
+	@Override
+	public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+		offsetTracker.reset(partitions);
+		partitions.forEach(backpressure::forget);
+	}
+
+	/**
+	 * 处理具体消息内容
+	 * @param message 消息内容
+	 */
+	private void processMessage(String message) {
+		new MessageProcessor().process(message);
 	}
 
 	/**
@@ -199,15 +450,7 @@ public class ManualCommitConsumerDemo implements ConsumerSeekAware {
 	@PreDestroy
 	public void shutdown() {
 		shuttingDown.set(true);
-		executorService.shutdown();
-		try {
-			if (!executorService.awaitTermination(30, TimeUnit.SECONDS)) {
-				executorService.shutdownNow();
-			}
-		} catch (InterruptedException e) {
-			executorService.shutdownNow();
-			Thread.currentThread().interrupt();
-		}
-		System.out.println("消费者已优雅关闭");
+		executorService.shutdown(30, TimeUnit.SECONDS);
+		log.info("消费者已优雅关闭");
 	}
 }
@@ -0,0 +1,101 @@
+package cn.ting.kafkauser.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ConsumerPartitionPausedEvent;
+import org.springframework.kafka.event.ConsumerPausedEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * 监听器指标
+ *
+ * 按消费组和 topic 缓存 Meter，热路径上只做一次 Map 查找和计时。
+ * 分位数（p50/p99/p999）由 application.yml 里的 management.metrics.distribution 配置，
+ * Micrometer 用基于 HdrHistogram 的滑动窗口直方图计算，记录一次的开销是常数级。
+ *
+ * 指标：
+ * - kafka.listener.records：处理的消息数，按 result 区分成功失败，速率即 records/s
+ * - kafka.listener.process：同步处理耗时（批量监听时为整批耗时）
+ * - kafka.listener.poll.delay：poll 返回到开始处理的延迟
+ * - kafka.listener.record.age：消息时间戳到开始处理的延迟
+ * - kafka.listener.batch.size：批量监听每批条数
+ * - kafka.listener.pauses：分区/容器暂停次数
+ * 分区积压来自 Kafka 客户端自身的 kafka.consumer.fetch.manager.records.lag
+ */
+@Component
+public class ListenerMetrics {
+
+	private final MeterRegistry registry;
+	private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+	public ListenerMetrics(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	public MeterRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * @param group 消费组
+	 * @param topic topic
+	 * @return 该消费组和 topic 对应的一组 Meter
+	 */
+	Meters meters(String group, String topic) {
+		Meters cached = meters.get(group + '|' + topic);
+		return cached != null ? cached : meters.computeIfAbsent(group + '|' + topic, k -> new Meters(group, topic));
+	}
+
+	@EventListener
+	public void onPartitionPaused(ConsumerPartitionPausedEvent event) {
+		TopicPartition partition = event.getPartitions();
+		registry.counter("kafka.listener.pauses", "topic", partition.topic(), "scope", "partition").increment();
+	}
+
+	@EventListener
+	public void onConsumerPaused(ConsumerPausedEvent event) {
+		event.getPartitions().forEach(partition ->
+				registry.counter("kafka.listener.pauses", "topic", partition.topic(), "scope", "container").increment());
+	}
+
+	final class Meters {
+		final Counter succeeded;
+		final Counter failed;
+		final Timer process;
+		final Timer pollDelay;
+		final Timer recordAge;
+		final DistributionSummary batchSize;
+
+		private Meters(String group, String topic) {
+			this.succeeded = Counter.builder("kafka.listener.records").tag("group", group).tag("topic", topic)
+					.tag("result", "success").register(registry);
+			this.failed = Counter.builder("kafka.listener.records").tag("group", group).tag("topic", topic)
+					.tag("result", "failure").register(registry);
+			this.process = Timer.builder("kafka.listener.process").tag("group", group).tag("topic", topic)
+					.register(registry);
+			this.pollDelay = Timer.builder("kafka.listener.poll.delay").tag("group", group).tag("topic", topic)
+					.register(registry);
+			this.recordAge = Timer.builder("kafka.listener.record.age").tag("group", group).tag("topic", topic)
+					.register(registry);
+			this.batchSize = DistributionSummary.builder("kafka.listener.batch.size").tag("group", group)
+					.tag("topic", topic).register(registry);
+		}
+
+		void recordStart(long nowNanos, long timestampMillis) {
+			long polled = PollTimestampInterceptor.lastPollNanos();
+			if (polled > 0) {
+				pollDelay.record(nowNanos - polled, TimeUnit.NANOSECONDS);
+			}
+			if (timestampMillis > 0) {
+				recordAge.record(Math.max(0, System.currentTimeMillis() - timestampMillis), TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+}
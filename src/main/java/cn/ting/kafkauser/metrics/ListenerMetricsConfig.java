@@ -0,0 +1,22 @@
+package cn.ting.kafkauser.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 监听器指标配置
+ */
+@Configuration
+public class ListenerMetricsConfig {
+
+	/**
+	 * BeanPostProcessor 必须用静态方法声明，避免提前实例化配置类
+	 */
+	@Bean
+	public static ListenerMetricsPostProcessor listenerMetricsPostProcessor(ObjectProvider<ListenerMetrics> metrics,
+	                                                                        ObjectProvider<MeterRegistry> registry) {
+		return new ListenerMetricsPostProcessor(metrics, registry);
+	}
+}
@@ -0,0 +1,115 @@
+package cn.ting.kafkauser.metrics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.errors.InvalidGroupIdException;
+import org.springframework.kafka.listener.BatchInterceptor;
+import org.springframework.kafka.listener.RecordInterceptor;
+
+/**
+ * 统计监听器处理耗时的拦截器，单条监听和批量监听共用
+ *
+ * 拦截器的 intercept 和 success/failure 都在消费线程上调用，开始时间放在 ThreadLocal 里。
+ * 对于把消息交给线程池异步处理的监听器，这里统计的只是派发耗时，真正的处理耗时由监听器自己上报。
+ * 消费者只在自己的消费线程上使用，消费组同样按线程缓存，换了消费者才重新读取。
+ */
+public class ListenerMetricsInterceptor implements RecordInterceptor<Object, Object>, BatchInterceptor<Object, Object> {
+
+	private final ListenerMetrics metrics;
+	private final ThreadLocal<long[]> startNanos = ThreadLocal.withInitial(() -> new long[1]);
+	private final ThreadLocal<GroupOf> groups = ThreadLocal.withInitial(GroupOf::new);
+
+	public ListenerMetricsInterceptor(ListenerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public ConsumerRecord<Object, Object> intercept(ConsumerRecord<Object, Object> record) {
+		return record;
+	}
+
+	@Override
+	public ConsumerRecord<Object, Object> intercept(ConsumerRecord<Object, Object> record, Consumer<Object, Object> consumer) {
+		long now = System.nanoTime();
+		startNanos.get()[0] = now;
+		metrics.meters(group(consumer), record.topic()).recordStart(now, record.timestamp());
+		return record;
+	}
+
+	@Override
+	public void success(ConsumerRecord<Object, Object> record, Consumer<Object, Object> consumer) {
+		ListenerMetrics.Meters meters = metrics.meters(group(consumer), record.topic());
+		meters.process.record(System.nanoTime() - startNanos.get()[0], TimeUnit.NANOSECONDS);
+		meters.succeeded.increment();
+	}
+
+	@Override
+	public void failure(ConsumerRecord<Object, Object> record, Exception exception, Consumer<Object, Object> consumer) {
+		ListenerMetrics.Meters meters = metrics.meters(group(consumer), record.topic());
+		meters.process.record(System.nanoTime() - startNanos.get()[0], TimeUnit.NANOSECONDS);
+		meters.failed.increment();
+	}
+
+	@Override
+	public ConsumerRecords<Object, Object> intercept(ConsumerRecords<Object, Object> records, Consumer<Object, Object> consumer) {
+		long now = System.nanoTime();
+		startNanos.get()[0] = now;
+		String group = group(consumer);
+		records.partitions().forEach(partition -> {
+			ListenerMetrics.Meters meters = metrics.meters(group, partition.topic());
+			List<ConsumerRecord<Object, Object>> partitionRecords = records.records(partition);
+			meters.batchSize.record(partitionRecords.size());
+			meters.recordStart(now, partitionRecords.get(0).timestamp());
+		});
+		return records;
+	}
+
+	@Override
+	public void success(ConsumerRecords<Object, Object> records, Consumer<Object, Object> consumer) {
+		recordBatch(records, consumer, true);
+	}
+
+	@Override
+	public void failure(ConsumerRecords<Object, Object> records, Exception exception, Consumer<Object, Object> consumer) {
+		recordBatch(records, consumer, false);
+	}
+
+	private void recordBatch(ConsumerRecords<Object, Object> records, Consumer<Object, Object> consumer, boolean succeeded) {
+		long elapsed = System.nanoTime() - startNanos.get()[0];
+		String group = group(consumer);
+		records.partitions().forEach(partition -> {
+			ListenerMetrics.Meters meters = metrics.meters(group, partition.topic());
+			meters.process.record(elapsed, TimeUnit.NANOSECONDS);
+			(succeeded ? meters.succeeded : meters.failed).increment(records.records(partition).size());
+		});
+	}
+
+	private String group(Consumer<?, ?> consumer) {
+		if (consumer == null) {
+			return "unknown";
+		}
+		GroupOf cached = groups.get();
+		if (cached.consumer != consumer) {
+			cached.consumer = consumer;
+			cached.group = groupId(consumer);
+		}
+		return cached.group;
+	}
+
+	private static String groupId(Consumer<?, ?> consumer) {
+		try {
+			return consumer.groupMetadata().groupId();
+		} catch (InvalidGroupIdException e) {
+			// 没有配置 group.id 的消费者（assign 手动分配分区）没有消费组
+			return "none";
+		}
+	}
+
+	private static final class GroupOf {
+		private Consumer<?, ?> consumer;
+		private String group;
+	}
+}
@@ -0,0 +1,76 @@
+package cn.ting.kafkauser.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.kafka.config.AbstractKafkaListenerContainerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.MicrometerConsumerListener;
+
+/**
+ * 给所有监听容器工厂和消费者工厂挂上指标采集
+ *
+ * - 容器工厂：按是否批量监听设置 {@link ListenerMetricsInterceptor}
+ * - 消费者工厂：注册 {@link PollTimestampInterceptor}，并绑定 Kafka 客户端自带的指标（包含分区积压）
+ *
+ * 依赖通过 ObjectProvider 在处理普通 Bean 时才获取，避免 MeterRegistry 在其他 BeanPostProcessor 之前被创建。
+ */
+public class ListenerMetricsPostProcessor implements BeanPostProcessor {
+
+	private final ObjectProvider<ListenerMetrics> metrics;
+	private final ObjectProvider<MeterRegistry> registry;
+
+	public ListenerMetricsPostProcessor(ObjectProvider<ListenerMetrics> metrics, ObjectProvider<MeterRegistry> registry) {
+		this.metrics = metrics;
+		this.registry = registry;
+	}
+
+	@Override
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public Object postProcessAfterInitialization(Object bean, String beanName) {
+		if (bean instanceof AbstractKafkaListenerContainerFactory) {
+			AbstractKafkaListenerContainerFactory factory = (AbstractKafkaListenerContainerFactory) bean;
+			ListenerMetricsInterceptor interceptor = new ListenerMetricsInterceptor(metrics.getObject());
+			if (Boolean.TRUE.equals(factory.isBatchListener())) {
+				factory.setBatchInterceptor(interceptor);
+			} else {
+				factory.setRecordInterceptor(interceptor);
+			}
+		} else if (bean instanceof DefaultKafkaConsumerFactory) {
+			DefaultKafkaConsumerFactory<Object, Object> factory = (DefaultKafkaConsumerFactory<Object, Object>) bean;
+			addPollTimestampInterceptor(factory);
+			// Spring Boot 自动配置的消费者工厂已经绑定过客户端指标
+			if (factory.getListeners().stream().noneMatch(MicrometerConsumerListener.class::isInstance)) {
+				factory.addListener(new MicrometerConsumerListener<>(registry.getObject()));
+			}
+		}
+		return bean;
+	}
+
+	private static void addPollTimestampInterceptor(DefaultKafkaConsumerFactory<?, ?> factory) {
+		Object existing = factory.getConfigurationProperties().get(ConsumerConfig.INTERCEPTOR_CLASSES_CONFIG);
+		List<Object> classes = new ArrayList<>();
+		if (existing instanceof Collection) {
+			classes.addAll((Collection<?>) existing);
+		} else if (existing != null) {
+			for (String name : existing.toString().split(",")) {
+				if (!name.trim().isEmpty()) {
+					classes.add(name.trim());
+				}
+			}
+		}
+		if (classes.contains(PollTimestampInterceptor.class) || classes.contains(PollTimestampInterceptor.class.getName())) {
+			return;
+		}
+		classes.add(PollTimestampInterceptor.class);
+		Map<String, Object> update = new HashMap<>();
+		update.put(ConsumerConfig.INTERCEPTOR_CLASSES_CONFIG, classes);
+		factory.updateConfigs(update);
+	}
+}
@@ -0,0 +1,44 @@
+package cn.ting.kafkauser.metrics;
+
+import java.util.Map;
+import org.apache.kafka.clients.consumer.ConsumerInterceptor;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * 记录每个消费线程最近一次 poll 返回的时间，用于计算 poll 到处理开始之间的延迟
+ *
+ * onConsume 在 poll 返回前由消费线程调用，监听器也在同一个线程上执行，所以用 ThreadLocal 传递即可。
+ */
+public class PollTimestampInterceptor implements ConsumerInterceptor<Object, Object> {
+
+	private static final ThreadLocal<long[]> LAST_POLL = ThreadLocal.withInitial(() -> new long[1]);
+
+	/**
+	 * @return 当前线程最近一次 poll 返回的 {@link System#nanoTime()}，没有 poll 过时返回 0
+	 */
+	public static long lastPollNanos() {
+		return LAST_POLL.get()[0];
+	}
+
+	@Override
+	public ConsumerRecords<Object, Object> onConsume(ConsumerRecords<Object, Object> records) {
+		if (!records.isEmpty()) {
+			LAST_POLL.get()[0] = System.nanoTime();
+		}
+		return records;
+	}
+
+	@Override
+	public void onCommit(Map<TopicPartition, OffsetAndMetadata> offsets) {
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public void configure(Map<String, ?> configs) {
+	}
+}
@@ -0,0 +1,21 @@
+package cn.ting.kafkauser.multiplex;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 轻量监听方法共用消费者的配置
+ */
+@Configuration
+public class MultiplexConfig {
+
+	/**
+	 * BeanPostProcessor 必须用静态方法声明，避免提前实例化配置类
+	 */
+	@Bean
+	public static MultiplexedListenerRegistrar multiplexedListenerRegistrar(
+			@Value("${kafka.multiplex.enabled:true}") boolean enabled) {
+		return new MultiplexedListenerRegistrar(enabled);
+	}
+}
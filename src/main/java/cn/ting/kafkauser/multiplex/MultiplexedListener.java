@@ -0,0 +1,45 @@
+package cn.ting.kafkauser.multiplex;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 共用消费者的轻量监听方法
+ *
+ * 同一个容器工厂、同一个消费组下的所有 {@code @MultiplexedListener} 共用一个容器：
+ * 一个 KafkaConsumer、一个 poll 线程、一组 broker 连接，拉到的消息按 topic 分发给各自的方法。
+ * 适合消息量小的 topic；处理慢的监听方法会拖慢同组其他 topic，这种情况设置 {@link #isolated()}
+ * 或直接改用 {@code @KafkaListener}。
+ *
+ * 方法只能有一个 ConsumerRecord 参数，抛出的异常交给容器工厂的错误处理器，与 {@code @KafkaListener} 相同。
+ *
+ * @see MultiplexedListenerRegistrar
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface MultiplexedListener {
+
+	/**
+	 * @return 监听的 topic，同组共用容器时不能与其他监听方法重复
+	 */
+	String[] topics();
+
+	/**
+	 * @return 消费组
+	 */
+	String groupId();
+
+	/**
+	 * @return 创建容器的工厂 bean 名称，默认是 Spring Boot 的默认容器工厂
+	 */
+	String containerFactory() default "kafkaListenerContainerFactory";
+
+	/**
+	 * @return 为 true 时不与其他监听方法共用，单独创建容器
+	 */
+	boolean isolated() default false;
+}
@@ -0,0 +1,195 @@
+package cn.ting.kafkauser.multiplex;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.SingletonBeanRegistry;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * 收集 {@link MultiplexedListener} 方法，按容器工厂和消费组合并成共用容器
+ *
+ * Bean 初始化时只记录监听方法，启动时再创建容器：
+ * - 同一工厂、同一消费组、未设置 isolated 的方法合并成一个容器，订阅它们全部的 topic，由 {@link TopicDispatcher} 分发
+ * - isolated 的方法各自一个容器，效果与 {@code @KafkaListener} 相同
+ * - kafka.multiplex.enabled=false 时全部按 isolated 处理，用于排查共用带来的互相影响
+ *
+ * 容器由工厂的 createContainer 创建，工厂上的错误处理器、拦截器和指标都照常生效。
+ * 容器以自己的名称注册为单例 bean，KafkaListenerEndpointRegistry.getAllListenerContainers 能找到它们；
+ * 工厂关闭了自动启动时（见 kafka.startup.mode）只创建不启动，由启动协调器统一启动。
+ */
+@Slf4j
+public class MultiplexedListenerRegistrar implements BeanPostProcessor, BeanFactoryAware, SmartLifecycle {
+
+	private final boolean enabled;
+	private final List<Endpoint> endpoints = new ArrayList<>();
+	private final List<ConcurrentMessageListenerContainer<?, ?>> containers = new ArrayList<>();
+
+	private BeanFactory beanFactory;
+	private volatile boolean running;
+
+	/**
+	 * @param enabled 为 false 时每个监听方法单独一个容器
+	 */
+	public MultiplexedListenerRegistrar(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) {
+		Class<?> targetClass = AopUtils.getTargetClass(bean);
+		Map<Method, MultiplexedListener> annotated = MethodIntrospector.selectMethods(targetClass,
+				(MethodIntrospector.MetadataLookup<MultiplexedListener>) method ->
+						AnnotatedElementUtils.findMergedAnnotation(method, MultiplexedListener.class));
+		annotated.forEach((method, annotation) -> {
+			Class<?>[] parameterTypes = method.getParameterTypes();
+			if (parameterTypes.length != 1 || !ConsumerRecord.class.isAssignableFrom(parameterTypes[0])) {
+				throw new IllegalStateException("@MultiplexedListener 方法只能有一个 ConsumerRecord 参数: " + method);
+			}
+			Method invocable = AopUtils.selectInvocableMethod(method, bean.getClass());
+			ReflectionUtils.makeAccessible(invocable);
+			synchronized (endpoints) {
+				endpoints.add(new Endpoint(bean, beanName, invocable, annotation));
+			}
+		});
+		return bean;
+	}
+
+	/**
+	 * @return 已创建的容器
+	 */
+	public List<ConcurrentMessageListenerContainer<?, ?>> getContainers() {
+		return Collections.unmodifiableList(containers);
+	}
+
+	@Override
+	public void start() {
+		if (containers.isEmpty()) {
+			createContainers();
+		}
+		for (ConcurrentMessageListenerContainer<?, ?> container : containers) {
+			if (container.isAutoStartup()) {
+				container.start();
+			}
+		}
+		this.running = true;
+	}
+
+	@Override
+	public void stop() {
+		for (int i = containers.size() - 1; i >= 0; i--) {
+			containers.get(i).stop();
+		}
+		this.running = false;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	void createContainers() {
+		Map<String, Group> shared = new LinkedHashMap<>();
+		List<Group> isolated = new ArrayList<>();
+		synchronized (endpoints) {
+			for (Endpoint endpoint : endpoints) {
+				MultiplexedListener annotation = endpoint.annotation;
+				Group group;
+				if (annotation.isolated() || !enabled) {
+					group = new Group(annotation.containerFactory(), annotation.groupId(),
+							endpoint.beanName + "." + endpoint.method.getName());
+					isolated.add(group);
+				} else {
+					group = shared.computeIfAbsent(annotation.containerFactory() + '|' + annotation.groupId(),
+							key -> new Group(annotation.containerFactory(), annotation.groupId(),
+									sharedName(annotation.containerFactory(), annotation.groupId())));
+				}
+				for (String topic : annotation.topics()) {
+					group.dispatcher.route(topic, endpoint::invoke);
+				}
+			}
+		}
+		shared.values().forEach(this::createContainer);
+		isolated.forEach(this::createContainer);
+	}
+
+	private static String sharedName(String containerFactory, String groupId) {
+		return "kafkaListenerContainerFactory".equals(containerFactory)
+				? "multiplex-" + groupId
+				: "multiplex-" + groupId + "-" + containerFactory;
+	}
+
+	private void createContainer(Group group) {
+		ConcurrentKafkaListenerContainerFactory<?, ?> factory =
+				beanFactory.getBean(group.containerFactory, ConcurrentKafkaListenerContainerFactory.class);
+		TopicDispatcher dispatcher = group.dispatcher.build();
+		String[] topics = dispatcher.topics().toArray(new String[0]);
+		ConcurrentMessageListenerContainer<?, ?> container = factory.createContainer(topics);
+		container.getContainerProperties().setGroupId(group.groupId);
+		container.getContainerProperties().setClientId(group.name);
+		container.getContainerProperties().setMessageListener(dispatcher);
+		container.setBeanName(group.name);
+		containers.add(container);
+		if (beanFactory instanceof SingletonBeanRegistry) {
+			((SingletonBeanRegistry) beanFactory).registerSingleton(group.name, container);
+		}
+		log.info("监听容器 {}: 消费组 {}, topic {}", group.name, group.groupId, String.join(",", topics));
+	}
+
+	private static final class Endpoint {
+		private final Object bean;
+		private final String beanName;
+		private final Method method;
+		private final MultiplexedListener annotation;
+
+		private Endpoint(Object bean, String beanName, Method method, MultiplexedListener annotation) {
+			this.bean = bean;
+			this.beanName = beanName;
+			this.method = method;
+			this.annotation = annotation;
+		}
+
+		private void invoke(ConsumerRecord<Object, Object> record) {
+			try {
+				method.invoke(bean, record);
+			} catch (InvocationTargetException e) {
+				ReflectionUtils.rethrowRuntimeException(e.getTargetException());
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	private static final class Group {
+		private final String containerFactory;
+		private final String groupId;
+		private final String name;
+		private final TopicDispatcher.Builder dispatcher = TopicDispatcher.builder();
+
+		private Group(String containerFactory, String groupId, String name) {
+			this.containerFactory = containerFactory;
+			this.groupId = groupId;
+			this.name = name;
+		}
+	}
+}
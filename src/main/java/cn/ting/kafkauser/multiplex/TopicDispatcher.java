@@ -0,0 +1,77 @@
+package cn.ting.kafkauser.multiplex;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.listener.MessageListener;
+
+/**
+ * 共用容器的消息监听器，按 topic 把消息交给对应的处理方法
+ *
+ * 分发表在构建后只读，每条消息只做一次 HashMap 查找。处理方法抛出的异常原样抛给容器，
+ * 由容器工厂的错误处理器重试或转入死信主题。
+ */
+@Slf4j
+public class TopicDispatcher implements MessageListener<Object, Object> {
+
+	/**
+	 * 一个 topic 的处理方法
+	 */
+	@FunctionalInterface
+	public interface Handler {
+		void handle(ConsumerRecord<Object, Object> record);
+	}
+
+	private final Map<String, Handler> handlers;
+
+	private TopicDispatcher(Builder builder) {
+		this.handlers = new HashMap<>(builder.handlers);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return 需要订阅的 topic
+	 */
+	public Set<String> topics() {
+		return handlers.keySet();
+	}
+
+	@Override
+	public void onMessage(ConsumerRecord<Object, Object> record) {
+		Handler handler = handlers.get(record.topic());
+		if (handler == null) {
+			log.warn("没有处理方法的 topic: {}-{}@{}", record.topic(), record.partition(), record.offset());
+			return;
+		}
+		handler.handle(record);
+	}
+
+	public static class Builder {
+		private final Map<String, Handler> handlers = new HashMap<>();
+
+		private Builder() {
+		}
+
+		/**
+		 * @throws IllegalStateException topic 已经有处理方法
+		 */
+		public Builder route(String topic, Handler handler) {
+			if (handlers.putIfAbsent(topic, handler) != null) {
+				throw new IllegalStateException("topic " + topic + " 在同一个共用容器中重复监听");
+			}
+			return this;
+		}
+
+		public TopicDispatcher build() {
+			if (handlers.isEmpty()) {
+				throw new IllegalArgumentException("共用容器没有监听任何 topic");
+			}
+			return new TopicDispatcher(this);
+		}
+	}
+}
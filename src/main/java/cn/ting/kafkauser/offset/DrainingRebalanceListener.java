@@ -0,0 +1,36 @@
+package cn.ting.kafkauser.offset;
+
+import java.util.Collection;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+
+/**
+ * 把容器的重平衡回调转交给 {@link PartitionDrainer}
+ *
+ * 只在需要排空的容器工厂里创建并注册，不要声明为 bean：
+ * Spring Boot 会把唯一的 ConsumerAwareRebalanceListener bean 套到默认容器工厂的所有监听方法上。
+ */
+public class DrainingRebalanceListener implements ConsumerAwareRebalanceListener {
+
+	private final PartitionDrainer drainer;
+
+	public DrainingRebalanceListener(PartitionDrainer drainer) {
+		this.drainer = drainer;
+	}
+
+	@Override
+	public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+		drainer.drain(consumer, partitions);
+	}
+
+	@Override
+	public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+		drainer.lost(partitions);
+	}
+
+	@Override
+	public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+		drainer.assigned(partitions);
+	}
+}
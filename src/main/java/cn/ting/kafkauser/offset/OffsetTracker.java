@@ -0,0 +1,115 @@
+package cn.ting.kafkauser.offset;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.support.Acknowledgment;
+
+/**
+ * 按 TopicPartition 维护连续完成水位线的位移追踪器
+ *
+ * 配合 MANUAL_IMMEDIATE 使用：消费线程在派发消息前调用 {@link #register}，
+ * 工作线程处理完成后调用 {@link Ticket#complete()}。
+ * 只有当某条消息之前的所有消息都已完成时才会提交它的位移，
+ * 因此多线程乱序完成不会让提交点越过仍在处理中的消息。
+ */
+public class OffsetTracker {
+
+	private final Map<TopicPartition, PartitionOffsetTracker> partitions = new ConcurrentHashMap<>();
+
+	/**
+	 * 登记一条即将异步处理的消息，必须在消费线程上按拉取顺序调用
+	 *
+	 * @param record 消息记录
+	 * @param acknowledgment 该消息对应的确认对象
+	 * @return 处理完成后用于标记完成的凭证
+	 */
+	public Ticket register(ConsumerRecord<?, ?> record, Acknowledgment acknowledgment) {
+		TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+		PartitionOffsetTracker tracker = partitions.computeIfAbsent(partition, p -> new PartitionOffsetTracker());
+		return new Ticket(tracker, tracker.register(record.offset(), acknowledgment));
+	}
+
+	/**
+	 * 丢弃指定分区的追踪状态，分区重新分配或被回收时调用
+	 * 之前派发的任务完成后不会再提交位移
+	 *
+	 * @param topicPartitions 分区集合
+	 */
+	public void reset(Collection<TopicPartition> topicPartitions) {
+		for (TopicPartition partition : topicPartitions) {
+			PartitionOffsetTracker tracker = partitions.remove(partition);
+			if (tracker != null) {
+				tracker.discardPending();
+			}
+		}
+	}
+
+	/**
+	 * @return 各分区当前可提交的位移，只包含已有连续完成消息的分区
+	 */
+	public Map<TopicPartition, OffsetAndMetadata> committableOffsets() {
+		Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+		partitions.forEach((partition, tracker) -> {
+			long offset = tracker.committableOffset();
+			if (offset >= 0) {
+				offsets.put(partition, new OffsetAndMetadata(offset));
+			}
+		});
+		return offsets;
+	}
+
+	/**
+	 * @param topicPartitions 分区集合
+	 * @return 指定分区当前可提交的位移，只包含已有连续完成消息的分区
+	 */
+	public Map<TopicPartition, OffsetAndMetadata> committableOffsets(Collection<TopicPartition> topicPartitions) {
+		Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+		for (TopicPartition partition : topicPartitions) {
+			PartitionOffsetTracker tracker = partitions.get(partition);
+			long offset = tracker == null ? -1 : tracker.committableOffset();
+			if (offset >= 0) {
+				offsets.put(partition, new OffsetAndMetadata(offset));
+			}
+		}
+		return offsets;
+	}
+
+	/**
+	 * @return 所有分区已派发但尚未提交的消息总数
+	 */
+	public int pendingCount() {
+		int pending = 0;
+		for (PartitionOffsetTracker tracker : partitions.values()) {
+			pending += tracker.pendingCount();
+		}
+		return pending;
+	}
+
+	/**
+	 * 单条消息的完成凭证
+	 */
+	public static final class Ticket {
+
+		private final PartitionOffsetTracker tracker;
+		private final long seq;
+
+		private Ticket(PartitionOffsetTracker tracker, long seq) {
+			this.tracker = tracker;
+			this.seq = seq;
+		}
+
+		/**
+		 * 标记消息处理完成
+		 *
+		 * @return 分区水位线是否因此推进（推进时已经提交了位移）
+		 */
+		public boolean complete() {
+			return tracker.complete(seq);
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package cn.ting.kafkauser.offset;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * 分区被回收前排空在途任务并提交水位线
+ *
+ * 消息交给线程池异步处理时，重平衡回收分区的那一刻还有任务在排队或执行，
+ * 如果直接放手，这些任务稍后完成时已经无法提交，新的消费者会从旧的提交点重新处理它们。
+ * 回收时按以下顺序处理被回收的分区：
+ * - 停止派发：消费线程不再登记这些分区的消息，还在队列里没开始执行的任务直接跳过
+ * - 有界等待：等正在执行的任务完成，最多等待 drainTimeout
+ * - 同步提交：把 {@link OffsetTracker} 中这些分区连续完成的水位线 commitSync 后再交出分区
+ *
+ * 配合 CooperativeStickyAssignor 使用时只有被迁移的分区会经过这里，其余分区的消费不受影响。
+ * 分区丢失（会话超时等）时已不再拥有分区，不等待也不提交。
+ *
+ * 重平衡回调在消费线程上执行，等待时间计入 max.poll.interval.ms，drainTimeout 应远小于它。
+ *
+ * 由 {@link DrainingRebalanceListener} 接到容器的重平衡回调上。本类不实现监听器接口，
+ * 注册为 bean 时不会被 Spring Boot 当作默认容器工厂的重平衡监听器套到其他监听方法上。
+ */
+@Slf4j
+public class PartitionDrainer {
+
+	private final OffsetTracker offsetTracker;
+	private final long drainTimeoutNanos;
+
+	private final Map<TopicPartition, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+	private final Set<TopicPartition> revoked = ConcurrentHashMap.newKeySet();
+	private final Set<TopicPartition> lost = ConcurrentHashMap.newKeySet();
+	private final Object drained = new Object();
+
+	/**
+	 * @param offsetTracker 与监听方法共用的位移追踪器
+	 * @param drainTimeout 等待在途任务的最长时间
+	 * @param unit 时间单位
+	 */
+	public PartitionDrainer(OffsetTracker offsetTracker, long drainTimeout, TimeUnit unit) {
+		this.offsetTracker = offsetTracker;
+		this.drainTimeoutNanos = unit.toNanos(drainTimeout);
+	}
+
+	/**
+	 * @return 与监听方法共用的位移追踪器
+	 */
+	public OffsetTracker getOffsetTracker() {
+		return offsetTracker;
+	}
+
+	/**
+	 * 派发一条消息前调用，必须在消费线程上调用
+	 *
+	 * @param partition 消息所在分区
+	 * @return 在途凭证，任务结束时调用 {@link Lease#release()}；分区正在回收时返回 null，不应再派发
+	 */
+	public Lease acquire(TopicPartition partition) {
+		if (revoked.contains(partition)) {
+			return null;
+		}
+		AtomicInteger counter = inFlight.computeIfAbsent(partition, p -> new AtomicInteger());
+		counter.incrementAndGet();
+		return new Lease(this, partition, counter);
+	}
+
+	/**
+	 * 分区回收、位移提交之前在消费线程上调用：停止派发，有界等待在途任务，提交水位线
+	 */
+	public void drain(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+		revoked.addAll(partitions);
+		Set<TopicPartition> owned = new HashSet<>(partitions);
+		owned.removeAll(lost);
+		lost.removeAll(partitions);
+		if (owned.isEmpty()) {
+			partitions.forEach(inFlight::remove);
+			return;
+		}
+
+		long start = System.nanoTime();
+		int remaining = awaitDrained(owned, start + drainTimeoutNanos);
+		Map<TopicPartition, OffsetAndMetadata> offsets = offsetTracker.committableOffsets(owned);
+		if (!offsets.isEmpty()) {
+			try {
+				consumer.commitSync(offsets);
+			} catch (KafkaException e) {
+				log.warn("分区回收前提交位移失败 {}: {}", offsets, e.getMessage());
+			}
+		}
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		if (remaining > 0) {
+			log.warn("分区 {} 回收前等待 {}ms 仍有 {} 个任务未完成，已提交 {}，未完成部分将由新消费者重新处理",
+					owned, elapsedMillis, remaining, offsets);
+		} else {
+			log.info("分区 {} 已排空并提交 {}，耗时 {}ms", owned, offsets, elapsedMillis);
+		}
+		partitions.forEach(inFlight::remove);
+	}
+
+	/**
+	 * 分区丢失时调用
+	 */
+	public void lost(Collection<TopicPartition> partitions) {
+		// 容器随后会以同样的分区调用 onPartitionsRevokedBeforeCommit，此时已不再拥有分区，跳过等待和提交
+		lost.addAll(partitions);
+		revoked.addAll(partitions);
+	}
+
+	/**
+	 * 分区重新分配后恢复派发
+	 */
+	public void assigned(Collection<TopicPartition> partitions) {
+		revoked.removeAll(partitions);
+	}
+
+	private int awaitDrained(Collection<TopicPartition> partitions, long deadlineNanos) {
+		synchronized (drained) {
+			int remaining = count(partitions);
+			while (remaining > 0) {
+				long waitNanos = deadlineNanos - System.nanoTime();
+				if (waitNanos <= 0) {
+					break;
+				}
+				try {
+					TimeUnit.NANOSECONDS.timedWait(drained, waitNanos);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				remaining = count(partitions);
+			}
+			return remaining;
+		}
+	}
+
+	private int count(Collection<TopicPartition> partitions) {
+		int count = 0;
+		for (TopicPartition partition : partitions) {
+			AtomicInteger counter = inFlight.get(partition);
+			if (counter != null) {
+				count += counter.get();
+			}
+		}
+		return count;
+	}
+
+	private void released(TopicPartition partition, AtomicInteger counter) {
+		if (counter.decrementAndGet() == 0 && revoked.contains(partition)) {
+			synchronized (drained) {
+				drained.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * 一条已派发消息的在途凭证
+	 */
+	public static final class Lease {
+
+		private final PartitionDrainer drainer;
+		private final TopicPartition partition;
+		private final AtomicInteger counter;
+
+		private Lease(PartitionDrainer drainer, TopicPartition partition, AtomicInteger counter) {
+			this.drainer = drainer;
+			this.partition = partition;
+			this.counter = counter;
+		}
+
+		/**
+		 * @return 分区是否已被回收，工作线程开始处理前检查，已回收时跳过处理
+		 */
+		public boolean isRevoked() {
+			return drainer.revoked.contains(partition);
+		}
+
+		/**
+		 * 任务结束（完成、失败或跳过）时调用
+		 */
+		public void release() {
+			drainer.released(partition, counter);
+		}
+	}
+}
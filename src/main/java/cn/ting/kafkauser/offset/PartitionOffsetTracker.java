@@ -0,0 +1,148 @@
+package cn.ting.kafkauser.offset;
+
+import org.springframework.kafka.support.Acknowledgment;
+
+/**
+ * 单个分区的位移水位线追踪器
+ *
+ * 按派发顺序为每条消息分配一个递增序号，序号映射到环形数组的槽位，
+ * 完成状态保存在位图中。只有从最早未提交的消息开始连续完成的部分才会推进水位线，
+ * 推进时提交水位线上最后一条消息的 {@link Acknowledgment}。
+ *
+ * 之所以按序号而不是按 offset 建索引，是因为压缩主题和事务标记会让 offset 出现空洞，
+ * 按 offset 计算连续性会让水位线永远停在空洞前面。
+ */
+class PartitionOffsetTracker {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private long[] offsets;
+	private Acknowledgment[] acks;
+	private long[] doneBits;
+	private int mask;
+
+	// 最早一条未提交消息的序号
+	private long head;
+	// 下一条消息将要使用的序号
+	private long tail;
+	// 最近一次登记的 offset，用来识别 seek 回退后的重复投递
+	private long lastRegisteredOffset = -1;
+	// 已提交的最大 offset（不含 +1），-1 表示尚未提交
+	private long committedOffset = -1;
+
+	PartitionOffsetTracker() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * 登记一条即将派发给工作线程的消息
+	 *
+	 * @param offset 消息 offset
+	 * @param acknowledgment 该消息对应的确认对象
+	 * @return 派发序号，完成时传给 {@link #complete(long)}
+	 */
+	synchronized long register(long offset, Acknowledgment acknowledgment) {
+		if (offset <= lastRegisteredOffset) {
+			// offset 回退说明发生了 seek（错误处理或重平衡），之前的在途消息会被重新投递，直接丢弃
+			head = tail;
+		}
+		if (tail - head == offsets.length) {
+			grow();
+		}
+		long seq = tail++;
+		int slot = (int) (seq & mask);
+		offsets[slot] = offset;
+		acks[slot] = acknowledgment;
+		clearDone(slot);
+		lastRegisteredOffset = offset;
+		return seq;
+	}
+
+	/**
+	 * 标记一条消息处理完成，并在连续完成的前缀增长时提交新的水位线
+	 *
+	 * 提交动作在锁内执行，保证同一分区的确认按 offset 递增的顺序到达容器。
+	 *
+	 * @param seq {@link #register} 返回的序号
+	 * @return 水位线是否推进
+	 */
+	synchronized boolean complete(long seq) {
+		if (seq < head || seq >= tail) {
+			// 重置之前派发的过期任务
+			return false;
+		}
+		markDone((int) (seq & mask));
+
+		Acknowledgment last = null;
+		while (head < tail && isDone((int) (head & mask))) {
+			int slot = (int) (head & mask);
+			last = acks[slot];
+			committedOffset = offsets[slot];
+			acks[slot] = null;
+			head++;
+		}
+		if (last == null) {
+			return false;
+		}
+		last.acknowledge();
+		return true;
+	}
+
+	/**
+	 * 丢弃所有在途消息，之后这些消息完成时不会再提交位移
+	 */
+	synchronized void discardPending() {
+		head = tail;
+	}
+
+	/**
+	 * @return 下一次应当提交的 offset（最后一条连续完成的 offset + 1），尚无可提交内容时返回 -1
+	 */
+	synchronized long committableOffset() {
+		return committedOffset < 0 ? -1 : committedOffset + 1;
+	}
+
+	/**
+	 * @return 已派发但尚未进入水位线的消息数量
+	 */
+	synchronized int pendingCount() {
+		return (int) (tail - head);
+	}
+
+	private void grow() {
+		long[] oldOffsets = offsets;
+		Acknowledgment[] oldAcks = acks;
+		long[] oldDone = doneBits;
+		int oldMask = mask;
+
+		allocate(oldOffsets.length << 1);
+		for (long seq = head; seq < tail; seq++) {
+			int from = (int) (seq & oldMask);
+			int to = (int) (seq & mask);
+			offsets[to] = oldOffsets[from];
+			acks[to] = oldAcks[from];
+			if ((oldDone[from >>> 6] & (1L << from)) != 0) {
+				markDone(to);
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		offsets = new long[capacity];
+		acks = new Acknowledgment[capacity];
+		doneBits = new long[Math.max(1, capacity >>> 6)];
+		mask = capacity - 1;
+	}
+
+	private boolean isDone(int slot) {
+		return (doneBits[slot >>> 6] & (1L << slot)) != 0;
+	}
+
+	private void markDone(int slot) {
+		doneBits[slot >>> 6] |= 1L << slot;
+	}
+
+	private void clearDone(int slot) {
+		doneBits[slot >>> 6] &= ~(1L << slot);
+	}
+}
@@ -0,0 +1,137 @@
+package cn.ting.kafkauser.producer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.kafka.core.ProducerFactory;
+
+/**
+ * 批量异步发送器
+ *
+ * 与逐条调用 KafkaTemplate.send 相比：
+ * - 直接使用 Producer 的回调，不为每条消息创建 ListenableFuture
+ * - 整批消息只有一个 CompletableFuture，在最后一条消息确认后汇总成功数和失败明细
+ * - 用信号量限制未确认的消息总数，生产速度超过 broker 时阻塞调用方，而不是把内存撑满
+ *
+ * 真正的吞吐提升来自 broker 端批量，需要配合 linger.ms、batch.size、compression.type 等参数，
+ * 见 KafkaConfig#throughputProducerFactory。
+ */
+public class BatchKafkaSender<K, V> {
+
+	private final ProducerFactory<K, V> producerFactory;
+	private final int maxInFlightRecords;
+	private final Semaphore inFlightPermits;
+
+	/**
+	 * @param producerFactory 生产者工厂，非事务工厂下所有批次共用一个 Producer
+	 * @param maxInFlightRecords 已发送未确认的最大消息数
+	 */
+	public BatchKafkaSender(ProducerFactory<K, V> producerFactory, int maxInFlightRecords) {
+		this.producerFactory = producerFactory;
+		this.maxInFlightRecords = maxInFlightRecords;
+		this.inFlightPermits = new Semaphore(maxInFlightRecords);
+	}
+
+	/**
+	 * 发送一批消息
+	 *
+	 * @param records 消息集合
+	 * @return 整批完成（全部成功或失败）后完成的结果；结果在 Producer 的 I/O 线程上完成，后续回调不要做耗时操作
+	 */
+	public CompletableFuture<BatchSendResult<K, V>> sendBatch(Collection<ProducerRecord<K, V>> records) {
+		CompletableFuture<BatchSendResult<K, V>> future = new CompletableFuture<>();
+		if (records.isEmpty()) {
+			future.complete(new BatchSendResult<>(0, 0, Collections.emptyList(), 0));
+			return future;
+		}
+
+		BatchAggregator aggregator = new BatchAggregator(records.size(), future);
+		Producer<K, V> producer = producerFactory.createProducer();
+		for (ProducerRecord<K, V> record : records) {
+			try {
+				inFlightPermits.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				aggregator.onFailure(record, e);
+				continue;
+			}
+			try {
+				producer.send(record, (metadata, exception) -> {
+					inFlightPermits.release();
+					if (exception == null) {
+						aggregator.onSuccess();
+					} else {
+						aggregator.onFailure(record, exception);
+					}
+				});
+			} catch (Exception e) {
+				// 序列化失败、缓冲区等待超时等同步异常不会触发回调
+				inFlightPermits.release();
+				aggregator.onFailure(record, e);
+			}
+		}
+		return future;
+	}
+
+	/**
+	 * 把一组消息体发送到同一个主题，不指定 key
+	 *
+	 * @param topic 主题
+	 * @param values 消息体
+	 * @return 整批完成后完成的结果
+	 */
+	public CompletableFuture<BatchSendResult<K, V>> sendValues(String topic, Collection<V> values) {
+		List<ProducerRecord<K, V>> records = new ArrayList<>(values.size());
+		for (V value : values) {
+			records.add(new ProducerRecord<>(topic, value));
+		}
+		return sendBatch(records);
+	}
+
+	/**
+	 * @return 当前已发送未确认的消息数
+	 */
+	public int getInFlightCount() {
+		return maxInFlightRecords - inFlightPermits.availablePermits();
+	}
+
+	private class BatchAggregator {
+		private final int total;
+		private final CompletableFuture<BatchSendResult<K, V>> future;
+		private final long startNanos = System.nanoTime();
+		private final AtomicInteger remaining;
+		private final AtomicInteger succeeded = new AtomicInteger();
+		private final Queue<BatchSendResult.Failure<K, V>> failures = new ConcurrentLinkedQueue<>();
+
+		BatchAggregator(int total, CompletableFuture<BatchSendResult<K, V>> future) {
+			this.total = total;
+			this.future = future;
+			this.remaining = new AtomicInteger(total);
+		}
+
+		void onSuccess() {
+			succeeded.incrementAndGet();
+			countDown();
+		}
+
+		void onFailure(ProducerRecord<K, V> record, Exception exception) {
+			failures.add(new BatchSendResult.Failure<>(record, exception));
+			countDown();
+		}
+
+		private void countDown() {
+			if (remaining.decrementAndGet() == 0) {
+				long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+				future.complete(new BatchSendResult<>(total, succeeded.get(), new ArrayList<>(failures), elapsedMillis));
+			}
+		}
+	}
+}
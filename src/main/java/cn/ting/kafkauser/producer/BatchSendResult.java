@@ -0,0 +1,33 @@
+package cn.ting.kafkauser.producer;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+/**
+ * 一批消息的发送结果，成功只计数，失败保留原始消息和异常便于重试
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class BatchSendResult<K, V> {
+
+	private final int total;
+	private final int succeeded;
+	private final List<Failure<K, V>> failures;
+	private final long elapsedMillis;
+
+	public boolean isAllSucceeded() {
+		return failures.isEmpty();
+	}
+
+	@Getter
+	@ToString
+	@AllArgsConstructor
+	public static class Failure<K, V> {
+		private final ProducerRecord<K, V> record;
+		private final Exception exception;
+	}
+}
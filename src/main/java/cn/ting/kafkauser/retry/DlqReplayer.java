@@ -0,0 +1,180 @@
+package cn.ting.kafkauser.retry;
+
+import cn.ting.kafkauser.producer.BatchKafkaSender;
+import cn.ting.kafkauser.producer.BatchSendResult;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedOperationParameters;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * 把死信主题里的消息批量重新投递回原主题
+ *
+ * 按字节原样读写 key、value，不经过业务反序列化；去掉失败信息头，加上 {@link FailureHeaders#REPLAYED_FROM}。
+ * 读取进度保存在消费组 dlq-replay-<死信主题> 中，每批发送全部成功后才提交，
+ * 因此重复执行只会继续处理上次之后新进入死信主题的消息；某批发送失败时停止，下次从该批开始。
+ * 只处理开始时已经存在的消息，重放过程中新进入死信主题的消息留到下一次。
+ *
+ * 通过 JMX 调用：kafkaUser:name=dlqReplayer 的 replay 操作。
+ */
+@Slf4j
+@ManagedResource(objectName = "kafkaUser:name=dlqReplayer", description = "死信消息重放")
+public class DlqReplayer {
+
+	private final Map<String, Object> consumerConfigs;
+	private final BatchKafkaSender<byte[], byte[]> sender;
+	private final int batchSize;
+
+	/**
+	 * @param consumerConfigs 连接 broker 的基础配置，至少包含 bootstrap.servers
+	 * @param sender 字节消息的批量发送器
+	 * @param batchSize 每批发送的消息数
+	 */
+	public DlqReplayer(Map<String, Object> consumerConfigs, BatchKafkaSender<byte[], byte[]> sender, int batchSize) {
+		this.consumerConfigs = new HashMap<>(consumerConfigs);
+		this.sender = sender;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * JMX 入口，目标主题为空时投递回消息头记录的原主题
+	 */
+	@ManagedOperation(description = "把死信主题中的消息重新投递")
+	@ManagedOperationParameters({
+			@ManagedOperationParameter(name = "dlqTopic", description = "死信主题"),
+			@ManagedOperationParameter(name = "targetTopic", description = "目标主题，空表示原主题"),
+			@ManagedOperationParameter(name = "maxRecords", description = "最多重放的消息数")
+	})
+	public String replay(String dlqTopic, String targetTopic, int maxRecords) {
+		return replay(dlqTopic, targetTopic == null || targetTopic.isEmpty() ? null : targetTopic, (long) maxRecords)
+				.toString();
+	}
+
+	/**
+	 * @param dlqTopic 死信主题
+	 * @param targetTopic 目标主题，null 表示投递回消息头记录的原主题
+	 * @param maxRecords 最多重放的消息数
+	 * @return 重放结果
+	 */
+	public ReplayResult replay(String dlqTopic, String targetTopic, long maxRecords) {
+		long start = System.currentTimeMillis();
+		long replayed = 0;
+		long skipped = 0;
+		Map<String, Object> props = new HashMap<>(consumerConfigs);
+		props.put(ConsumerConfig.GROUP_ID_CONFIG, "dlq-replay-" + dlqTopic);
+		props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+		props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+		props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+		props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+		props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, batchSize);
+
+		try (KafkaConsumer<byte[], byte[]> consumer = new KafkaConsumer<>(props)) {
+			List<TopicPartition> partitions = new ArrayList<>();
+			for (PartitionInfo info : consumer.partitionsFor(dlqTopic)) {
+				partitions.add(new TopicPartition(info.topic(), info.partition()));
+			}
+			consumer.assign(partitions);
+			Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+
+			while (replayed + skipped < maxRecords && !caughtUp(consumer, endOffsets)) {
+				ConsumerRecords<byte[], byte[]> records = consumer.poll(Duration.ofSeconds(1));
+				List<ProducerRecord<byte[], byte[]>> batch = new ArrayList<>(records.count());
+				Map<TopicPartition, OffsetAndMetadata> nextOffsets = new HashMap<>();
+				long batchSkipped = 0;
+				for (ConsumerRecord<byte[], byte[]> record : records) {
+					TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+					if (record.offset() >= endOffsets.get(partition)
+							|| replayed + skipped + batch.size() + batchSkipped >= maxRecords) {
+						continue;
+					}
+					nextOffsets.put(partition, new OffsetAndMetadata(record.offset() + 1));
+					String target = targetTopic != null ? targetTopic
+							: FailureHeaders.text(record.headers(), FailureHeaders.ORIGINAL_TOPIC);
+					if (target == null) {
+						batchSkipped++;
+						continue;
+					}
+					batch.add(toReplay(dlqTopic, target, record));
+				}
+
+				BatchSendResult<byte[], byte[]> result = sender.sendBatch(batch).get();
+				if (!result.isAllSucceeded()) {
+					log.warn("重放 {} 时 {} 条发送失败，停止并保留进度，首个错误: {}", dlqTopic,
+							result.getFailures().size(), result.getFailures().get(0).getException().toString());
+					return new ReplayResult(replayed, skipped, result.getFailures().size(),
+							System.currentTimeMillis() - start);
+				}
+				if (!nextOffsets.isEmpty()) {
+					consumer.commitSync(nextOffsets);
+				}
+				replayed += batch.size();
+				skipped += batchSkipped;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			log.warn("重放 {} 失败: {}", dlqTopic, e.getCause().toString());
+		}
+		ReplayResult result = new ReplayResult(replayed, skipped, 0, System.currentTimeMillis() - start);
+		log.info("重放 {} 完成: {}", dlqTopic, result);
+		return result;
+	}
+
+	private static ProducerRecord<byte[], byte[]> toReplay(String dlqTopic, String target,
+	                                                       ConsumerRecord<byte[], byte[]> record) {
+		RecordHeaders headers = new RecordHeaders();
+		for (Header header : record.headers()) {
+			if (!FailureHeaders.isFailureHeader(header.key())) {
+				headers.add(header);
+			}
+		}
+		FailureHeaders.put(headers, FailureHeaders.REPLAYED_FROM, dlqTopic);
+		return new ProducerRecord<>(target, null, record.key(), record.value(), headers);
+	}
+
+	private static boolean caughtUp(KafkaConsumer<?, ?> consumer, Map<TopicPartition, Long> endOffsets) {
+		for (Map.Entry<TopicPartition, Long> entry : endOffsets.entrySet()) {
+			if (consumer.position(entry.getKey()) < entry.getValue()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 一次重放的结果
+	 */
+	@Getter
+	@ToString
+	@AllArgsConstructor
+	public static class ReplayResult {
+		// 已重新投递的消息数
+		private final long replayed;
+		// 缺少原主题信息、无法投递而跳过的消息数
+		private final long skipped;
+		// 最后一批中发送失败的消息数
+		private final long failed;
+		private final long elapsedMillis;
+	}
+}
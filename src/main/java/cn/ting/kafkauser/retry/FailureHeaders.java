@@ -0,0 +1,96 @@
+package cn.ting.kafkauser.retry;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * 重试层和死信主题消息上携带的失败信息消息头，值均为 UTF-8 文本，便于用命令行工具直接查看
+ */
+public final class FailureHeaders {
+
+	// 第一次失败时消息所在的位置，之后每一层都原样保留
+	public static final String ORIGINAL_TOPIC = "x-failure-original-topic";
+	public static final String ORIGINAL_PARTITION = "x-failure-original-partition";
+	public static final String ORIGINAL_OFFSET = "x-failure-original-offset";
+	public static final String ORIGINAL_TIMESTAMP = "x-failure-original-timestamp";
+
+	// 最近一次失败的信息
+	public static final String EXCEPTION = "x-failure-exception";
+	public static final String MESSAGE = "x-failure-message";
+	public static final String STACKTRACE = "x-failure-stacktrace";
+	public static final String FAILED_AT = "x-failure-time";
+
+	// 已经进入过的重试层数，0 表示来自原主题
+	public static final String ATTEMPT = "x-failure-attempt";
+
+	// 该层消息最早可以处理的时间（epoch 毫秒）
+	public static final String DUE_AT = "x-retry-due";
+
+	// 从死信主题重放时记录来源
+	public static final String REPLAYED_FROM = "x-replayed-from";
+
+	private FailureHeaders() {
+	}
+
+	/**
+	 * @return 是否是本类定义的失败信息头，转发和重放时据此替换旧值
+	 */
+	public static boolean isFailureHeader(String key) {
+		return key.startsWith("x-failure-") || key.startsWith("x-retry-") || key.equals(REPLAYED_FROM);
+	}
+
+	/**
+	 * @return 已经进入过的重试层数，来自原主题的消息为 0
+	 */
+	public static int attempt(Headers headers) {
+		String value = text(headers, ATTEMPT);
+		return value == null ? 0 : Integer.parseInt(value);
+	}
+
+	/**
+	 * @return 最早可以处理的时间，没有该头时返回 0（立即处理）
+	 */
+	public static long dueAt(Headers headers) {
+		String value = text(headers, DUE_AT);
+		return value == null ? 0 : Long.parseLong(value);
+	}
+
+	/**
+	 * @return 消息第一次失败时所在的主题，来自原主题的消息返回它自己的主题
+	 */
+	public static String originalTopic(ConsumerRecord<?, ?> record) {
+		String value = text(record.headers(), ORIGINAL_TOPIC);
+		return value == null ? record.topic() : value;
+	}
+
+	/**
+	 * 还原到消息第一次失败时的位置，按 topic-partition-offset 去重时重试层的消息与原消息得到同一个 key
+	 *
+	 * @return 位置取自原始位置消息头、其余内容不变的消息；来自原主题的消息原样返回
+	 */
+	public static <K, V> ConsumerRecord<K, V> original(ConsumerRecord<K, V> record) {
+		String topic = text(record.headers(), ORIGINAL_TOPIC);
+		String partition = text(record.headers(), ORIGINAL_PARTITION);
+		String offset = text(record.headers(), ORIGINAL_OFFSET);
+		if (topic == null || partition == null || offset == null) {
+			return record;
+		}
+		return new ConsumerRecord<>(topic, Integer.parseInt(partition), Long.parseLong(offset), record.timestamp(),
+				record.timestampType(), ConsumerRecord.NULL_SIZE, ConsumerRecord.NULL_SIZE, record.key(), record.value(),
+				record.headers(), record.leaderEpoch());
+	}
+
+	static String text(Headers headers, String key) {
+		Header header = headers.lastHeader(key);
+		return header == null || header.value() == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+	}
+
+	static void put(Headers headers, String key, Object value) {
+		headers.remove(key);
+		if (value != null) {
+			headers.add(key, String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package cn.ting.kafkauser.retry;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.listener.ListenerExecutionFailedException;
+import org.springframework.kafka.support.SendResult;
+
+/**
+ * 把处理失败的消息转入下一层重试主题或死信主题
+ *
+ * 按消息第一次失败时所在的主题查找 {@link RetryTopology}，没有登记的主题直接进入死信主题。
+ * 转发时保留 key、value 和业务消息头，替换失败信息头（见 {@link FailureHeaders}），
+ * 原主题的分区因此可以继续前进，失败消息在重试层里等待、重新处理。
+ *
+ * 同时实现 {@link ConsumerRecordRecoverer}，可以直接作为 DefaultErrorHandler 的恢复器，
+ * 供同步处理的监听方法使用；异步处理的场景调用 {@link #route} 拿到发送结果后再提交位移。
+ */
+@Slf4j
+public class FailureRouter implements ConsumerRecordRecoverer {
+
+	// 堆栈只保留前 4KB，避免大消息头拖慢 broker
+	private static final int MAX_STACKTRACE_LENGTH = 4096;
+
+	private final KafkaOperations<Object, Object> template;
+	private final Map<String, RetryTopology> topologies;
+	private final RetryTopology defaultTopology;
+	private final long sendTimeoutMillis;
+
+	private FailureRouter(Builder builder) {
+		this.template = builder.template;
+		this.topologies = new HashMap<>(builder.topologies);
+		this.defaultTopology = builder.defaultTopology;
+		this.sendTimeoutMillis = builder.sendTimeoutMillis;
+	}
+
+	public static Builder builder(KafkaOperations<Object, Object> template) {
+		return new Builder(template);
+	}
+
+	/**
+	 * @param baseTopic 原主题
+	 * @return 该主题的重试分层
+	 */
+	public RetryTopology topology(String baseTopic) {
+		return topologies.getOrDefault(baseTopic, defaultTopology);
+	}
+
+	/**
+	 * 异步转发一条失败消息
+	 *
+	 * @param record 失败的消息，可以来自原主题或某一层重试主题
+	 * @param cause 失败原因
+	 * @return broker 确认写入后完成；失败时调用方不应提交该消息的位移
+	 */
+	public CompletableFuture<SendResult<Object, Object>> route(ConsumerRecord<?, ?> record, Throwable cause) {
+		String baseTopic = FailureHeaders.originalTopic(record);
+		RetryTopology topology = topology(baseTopic);
+		int attempt = FailureHeaders.attempt(record.headers()) + 1;
+		long now = System.currentTimeMillis();
+
+		Headers headers = copyHeaders(record);
+		FailureHeaders.put(headers, FailureHeaders.EXCEPTION, cause.getClass().getName());
+		FailureHeaders.put(headers, FailureHeaders.MESSAGE, cause.getMessage());
+		FailureHeaders.put(headers, FailureHeaders.STACKTRACE, stackTrace(cause));
+		FailureHeaders.put(headers, FailureHeaders.FAILED_AT, now);
+
+		String target;
+		if (attempt <= topology.getAttempts()) {
+			target = topology.tierTopic(baseTopic, attempt);
+			FailureHeaders.put(headers, FailureHeaders.ATTEMPT, attempt);
+			FailureHeaders.put(headers, FailureHeaders.DUE_AT, now + topology.delayMillis(attempt));
+		} else {
+			target = topology.dltTopic(baseTopic);
+			FailureHeaders.put(headers, FailureHeaders.ATTEMPT, attempt - 1);
+		}
+		log.warn("消息处理失败转入 {}: {}-{}@{}, 原因: {}", target, record.topic(), record.partition(), record.offset(),
+				cause.toString());
+
+		ProducerRecord<Object, Object> out = new ProducerRecord<>(target, null, record.key(), record.value(), headers);
+		return template.send(out).completable();
+	}
+
+	/**
+	 * 同步转发，供 DefaultErrorHandler 在消费线程上调用，发送失败时抛出异常让错误处理器稍后重试
+	 */
+	@Override
+	public void accept(ConsumerRecord<?, ?> record, Exception exception) {
+		try {
+			route(record, unwrap(exception)).get(sendTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new KafkaException("转发失败消息被中断", e);
+		} catch (ExecutionException | TimeoutException e) {
+			throw new KafkaException("转发失败消息失败: " + record.topic() + "-" + record.partition() + "@" + record.offset(), e);
+		}
+	}
+
+	private static Headers copyHeaders(ConsumerRecord<?, ?> record) {
+		RecordHeaders headers = new RecordHeaders();
+		for (Header header : record.headers()) {
+			if (!FailureHeaders.isFailureHeader(header.key())) {
+				headers.add(header);
+			}
+		}
+		// 第一次失败时记下原始位置，之后各层沿用
+		Headers source = record.headers();
+		if (source.lastHeader(FailureHeaders.ORIGINAL_TOPIC) == null) {
+			FailureHeaders.put(headers, FailureHeaders.ORIGINAL_TOPIC, record.topic());
+			FailureHeaders.put(headers, FailureHeaders.ORIGINAL_PARTITION, record.partition());
+			FailureHeaders.put(headers, FailureHeaders.ORIGINAL_OFFSET, record.offset());
+			FailureHeaders.put(headers, FailureHeaders.ORIGINAL_TIMESTAMP, record.timestamp());
+		} else {
+			for (String key : new String[]{FailureHeaders.ORIGINAL_TOPIC, FailureHeaders.ORIGINAL_PARTITION,
+					FailureHeaders.ORIGINAL_OFFSET, FailureHeaders.ORIGINAL_TIMESTAMP}) {
+				Header header = source.lastHeader(key);
+				if (header != null) {
+					headers.add(header);
+				}
+			}
+		}
+		return headers;
+	}
+
+	// 监听方法抛出的异常会被容器包装成 ListenerExecutionFailedException，记录真正的原因
+	private static Throwable unwrap(Exception exception) {
+		Throwable cause = exception;
+		while (cause.getCause() != null && cause instanceof ListenerExecutionFailedException) {
+			cause = cause.getCause();
+		}
+		return cause;
+	}
+
+	private static String stackTrace(Throwable cause) {
+		StringWriter writer = new StringWriter();
+		cause.printStackTrace(new PrintWriter(writer));
+		String trace = writer.toString();
+		return trace.length() <= MAX_STACKTRACE_LENGTH ? trace : trace.substring(0, MAX_STACKTRACE_LENGTH);
+	}
+
+	public static class Builder {
+		private final KafkaOperations<Object, Object> template;
+		private final Map<String, RetryTopology> topologies = new HashMap<>();
+		private RetryTopology defaultTopology = RetryTopology.deadLetterOnly();
+		private long sendTimeoutMillis = 30_000;
+
+		private Builder(KafkaOperations<Object, Object> template) {
+			this.template = template;
+		}
+
+		/**
+		 * 为一个原主题登记重试分层
+		 */
+		public Builder topology(String baseTopic, RetryTopology topology) {
+			this.topologies.put(baseTopic, topology);
+			return this;
+		}
+
+		/**
+		 * 未登记主题使用的分层，默认直接进入死信主题
+		 */
+		public Builder defaultTopology(RetryTopology topology) {
+			this.defaultTopology = topology;
+			return this;
+		}
+
+		public Builder sendTimeout(long timeout, TimeUnit unit) {
+			this.sendTimeoutMillis = unit.toMillis(timeout);
+			return this;
+		}
+
+		public FailureRouter build() {
+			return new FailureRouter(this);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package cn.ting.kafkauser.retry;
+
+import cn.ting.kafkauser.manualcommitdemo.ManualCommitConsumerDemo;
+import cn.ting.kafkauser.producer.BatchKafkaSender;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.CommonErrorHandler;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.util.backoff.FixedBackOff;
+
+/**
+ * 失败消息的重试分层、死信路由和死信重放
+ *
+ * - manual-commit-demo-topic 失败的消息进入 kafka.retry.* 配置的重试层，重试用完后进入死信主题
+ * - 其他主题失败的消息在消费线程上原地重试 2 次后直接进入死信主题，不阻塞分区
+ */
+@Configuration
+public class RetryConfig {
+
+	private static final String MANUAL_COMMIT_TOPIC = "manual-commit-demo-topic";
+
+	@Value("${kafka.retry.attempts:3}")
+	private int attempts;
+
+	@Value("${kafka.retry.initial-delay-ms:1000}")
+	private long initialDelayMillis;
+
+	@Value("${kafka.retry.multiplier:5}")
+	private double multiplier;
+
+	@Value("${kafka.retry.max-delay-ms:300000}")
+	private long maxDelayMillis;
+
+	@Bean
+	public FailureRouter failureRouter(KafkaTemplate<Object, Object> failureKafkaTemplate) {
+		RetryTopology manualCommit = RetryTopology.builder()
+				.attempts(attempts)
+				.initialDelay(initialDelayMillis, TimeUnit.MILLISECONDS)
+				.multiplier(multiplier)
+				.maxDelay(maxDelayMillis, TimeUnit.MILLISECONDS)
+				.build();
+		return FailureRouter.builder(failureKafkaTemplate)
+				.topology(MANUAL_COMMIT_TOPIC, manualCommit)
+				.build();
+	}
+
+	/**
+	 * Spring Boot 默认容器工厂会使用唯一的 CommonErrorHandler，KafkaMsg1~6 的监听方法因此共用这个错误处理器：
+	 * 间隔 500ms 原地重试 2 次，仍失败时转发到死信主题并提交位移
+	 */
+	@Bean
+	public CommonErrorHandler deadLetterErrorHandler(FailureRouter failureRouter) {
+		return new DefaultErrorHandler(failureRouter, new FixedBackOff(500L, 2L));
+	}
+
+	/**
+	 * 手动提交演示的重试层消费者，重新处理时走与原主题相同的处理逻辑
+	 */
+	@Bean
+	public RetryTierListener<String, String> manualCommitRetryListener(
+			@Qualifier("retryTierContainerFactory")
+			ConcurrentKafkaListenerContainerFactory<String, String> retryTierContainerFactory,
+			FailureRouter failureRouter,
+			ManualCommitConsumerDemo manualCommitConsumerDemo) {
+		return new RetryTierListener<>(retryTierContainerFactory, MANUAL_COMMIT_TOPIC, "manual-commit-retry-group",
+				manualCommitConsumerDemo::reprocess, failureRouter);
+	}
+
+	@Bean
+	public DlqReplayer dlqReplayer(KafkaAdmin kafkaAdmin, BatchKafkaSender<byte[], byte[]> replayKafkaSender) {
+		return new DlqReplayer(kafkaAdmin.getConfigurationProperties(), replayKafkaSender, 500);
+	}
+}
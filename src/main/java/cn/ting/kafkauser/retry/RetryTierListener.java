@@ -0,0 +1,215 @@
+package cn.ting.kafkauser.retry;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.SingletonBeanRegistry;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.listener.AcknowledgingConsumerAwareMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.Acknowledgment;
+
+/**
+ * 消费一个原主题的所有重试层，到期后重新处理，再次失败时交给 {@link FailureRouter} 转入下一层
+ *
+ * 等待不阻塞消费线程：遇到未到期的消息时把分区 seek 回这条消息并暂停，到期后恢复，
+ * 同一批里该分区后面的消息直接跳过，恢复后会重新拉取。每层延迟相同，分区内到期时间单调不减，
+ * 所以暂停到第一条未到期消息的时间就够了。分区被回收或重新分配时清除它的等待状态并取消恢复任务，
+ * 重新分到后从提交位移开始，不会按旧的 seek 位移丢弃消息。
+ *
+ * 位移逐条确认，只有处理成功或已转入下一层的消息才会提交。
+ * 容器以 retry-&lt;原主题&gt; 注册为单例 bean，工厂关闭了自动启动时只创建不启动，由启动协调器统一启动。
+ */
+@Slf4j
+public class RetryTierListener<K, V> implements SmartLifecycle, BeanFactoryAware,
+		AcknowledgingConsumerAwareMessageListener<K, V> {
+
+	/**
+	 * 重试时的处理逻辑，抛出异常表示本次仍然失败
+	 */
+	@FunctionalInterface
+	public interface Handler<K, V> {
+		void handle(ConsumerRecord<K, V> record) throws Exception;
+	}
+
+	private final ConcurrentKafkaListenerContainerFactory<K, V> containerFactory;
+	private final String baseTopic;
+	private final String groupId;
+	private final Handler<K, V> handler;
+	private final FailureRouter failureRouter;
+
+	// 正在等待到期的分区 -> seek 回去的位移和到期恢复任务
+	private final Map<TopicPartition, Backoff> backingOff = new ConcurrentHashMap<>();
+
+	private volatile ConcurrentMessageListenerContainer<K, V> container;
+	private ScheduledExecutorService scheduler;
+	private BeanFactory beanFactory;
+	private volatile boolean running;
+
+	/**
+	 * @param containerFactory 创建重试层容器的工厂
+	 * @param baseTopic 原主题，重试层主题由 FailureRouter 中登记的分层决定
+	 * @param groupId 重试层使用的消费组
+	 * @param handler 处理逻辑
+	 * @param failureRouter 失败转发器
+	 */
+	public RetryTierListener(ConcurrentKafkaListenerContainerFactory<K, V> containerFactory, String baseTopic,
+	                         String groupId, Handler<K, V> handler, FailureRouter failureRouter) {
+		this.containerFactory = containerFactory;
+		this.baseTopic = baseTopic;
+		this.groupId = groupId;
+		this.handler = handler;
+		this.failureRouter = failureRouter;
+	}
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+	}
+
+	@Override
+	public void onMessage(ConsumerRecord<K, V> record, Acknowledgment acknowledgment, Consumer<?, ?> consumer) {
+		TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+		Backoff backoff = backingOff.get(partition);
+		if (backoff != null) {
+			if (record.offset() > backoff.offset) {
+				// 暂停前已经拉取到的消息，恢复后会从 seekOffset 重新拉取
+				return;
+			}
+			backingOff.remove(partition);
+		}
+
+		long waitMillis = FailureHeaders.dueAt(record.headers()) - System.currentTimeMillis();
+		if (waitMillis > 0) {
+			consumer.seek(partition, record.offset());
+			container.pausePartition(partition);
+			ScheduledFuture<?> resume = scheduler.schedule(() -> container.resumePartition(partition), waitMillis,
+					TimeUnit.MILLISECONDS);
+			backingOff.put(partition, new Backoff(record.offset(), resume));
+			return;
+		}
+
+		try {
+			handler.handle(record);
+		} catch (Exception e) {
+			try {
+				failureRouter.route(record, e).get(30, TimeUnit.SECONDS);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new KafkaException("转发失败消息被中断", ie);
+			} catch (ExecutionException | TimeoutException se) {
+				// 转发失败时不确认，交给容器的错误处理器重新投递
+				throw new KafkaException("转发失败消息失败", se);
+			}
+		}
+		acknowledgment.acknowledge();
+	}
+
+	@Override
+	public void start() {
+		String[] topics = failureRouter.topology(baseTopic).retryTopics(baseTopic);
+		if (topics.length == 0) {
+			return;
+		}
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "retry-resume-" + baseTopic);
+			thread.setDaemon(true);
+			return thread;
+		});
+		ConcurrentMessageListenerContainer<K, V> created = containerFactory.createContainer(topics);
+		created.getContainerProperties().setGroupId(groupId);
+		created.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+		created.getContainerProperties().setMessageListener(this);
+		created.getContainerProperties().setConsumerRebalanceListener(new RebalanceListener());
+		created.setBeanName("retry-" + baseTopic);
+		this.container = created;
+		if (beanFactory instanceof SingletonBeanRegistry) {
+			((SingletonBeanRegistry) beanFactory).registerSingleton(created.getBeanName(), created);
+		}
+		this.running = true;
+		if (created.isAutoStartup()) {
+			created.start();
+			log.info("重试层消费已启动: {}, 消费组 {}", String.join(",", topics), groupId);
+		}
+	}
+
+	@Override
+	public void stop() {
+		if (container != null) {
+			container.stop();
+		}
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+		this.running = false;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * 清除分区的等待状态，取消还没执行的恢复任务
+	 */
+	private void forget(Collection<TopicPartition> partitions) {
+		for (TopicPartition partition : partitions) {
+			Backoff backoff = backingOff.remove(partition);
+			if (backoff != null) {
+				backoff.resume.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * 回收时清除等待状态；重新分到时再清一次，并撤销遗留的暂停请求，分区从提交位移开始重新判断是否到期
+	 */
+	private final class RebalanceListener implements ConsumerAwareRebalanceListener {
+
+		@Override
+		public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+			forget(partitions);
+		}
+
+		@Override
+		public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+			forget(partitions);
+		}
+
+		@Override
+		public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+			forget(partitions);
+			for (TopicPartition partition : partitions) {
+				if (container.isPartitionPauseRequested(partition)) {
+					container.resumePartition(partition);
+				}
+			}
+		}
+	}
+
+	private static final class Backoff {
+		final long offset;
+		final ScheduledFuture<?> resume;
+
+		Backoff(long offset, ScheduledFuture<?> resume) {
+			this.offset = offset;
+			this.resume = resume;
+		}
+	}
+}
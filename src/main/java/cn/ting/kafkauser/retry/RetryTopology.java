@@ -0,0 +1,123 @@
+package cn.ting.kafkauser.retry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 失败消息的重试分层
+ *
+ * 第 n 次重试的消息发往 {@code <原主题>-retry-<n>}，在该层等待 delay(n) 之后再处理，
+ * delay 从 initialDelay 开始按 multiplier 指数增长，不超过 maxDelay；
+ * 重试 attempts 次仍失败的消息发往 {@code <原主题>-dlt}。
+ *
+ * 每一层主题里的消息等待时间相同，因此同一分区内到期时间单调不减，
+ * 消费者遇到一条未到期的消息时整个分区都可以暂停到它的到期时间，不需要逐条判断。
+ */
+public class RetryTopology {
+
+	private static final RetryTopology DEAD_LETTER_ONLY = new RetryTopology(0, 0, 1, 0);
+
+	private final int attempts;
+	private final long initialDelayMillis;
+	private final double multiplier;
+	private final long maxDelayMillis;
+
+	private RetryTopology(int attempts, long initialDelayMillis, double multiplier, long maxDelayMillis) {
+		this.attempts = attempts;
+		this.initialDelayMillis = initialDelayMillis;
+		this.multiplier = multiplier;
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	/**
+	 * @return 不经过重试层、直接进入死信主题的分层
+	 */
+	public static RetryTopology deadLetterOnly() {
+		return DEAD_LETTER_ONLY;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return 重试次数（重试层数）
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * @param attempt 第几次重试，从 1 开始
+	 * @return 该次重试前的等待时间
+	 */
+	public long delayMillis(int attempt) {
+		double delay = initialDelayMillis * Math.pow(multiplier, attempt - 1);
+		return (long) Math.min(delay, maxDelayMillis);
+	}
+
+	/**
+	 * @param baseTopic 原主题
+	 * @param attempt 第几次重试，从 1 开始
+	 * @return 重试层主题
+	 */
+	public String tierTopic(String baseTopic, int attempt) {
+		return baseTopic + "-retry-" + attempt;
+	}
+
+	/**
+	 * @param baseTopic 原主题
+	 * @return 死信主题
+	 */
+	public String dltTopic(String baseTopic) {
+		return baseTopic + "-dlt";
+	}
+
+	/**
+	 * @param baseTopic 原主题
+	 * @return 所有重试层主题
+	 */
+	public String[] retryTopics(String baseTopic) {
+		String[] topics = new String[attempts];
+		for (int i = 0; i < attempts; i++) {
+			topics[i] = tierTopic(baseTopic, i + 1);
+		}
+		return topics;
+	}
+
+	public static class Builder {
+		private int attempts = 3;
+		private long initialDelayMillis = 1000;
+		private double multiplier = 5;
+		private long maxDelayMillis = TimeUnit.MINUTES.toMillis(5);
+
+		private Builder() {
+		}
+
+		public Builder attempts(int attempts) {
+			this.attempts = attempts;
+			return this;
+		}
+
+		public Builder initialDelay(long delay, TimeUnit unit) {
+			this.initialDelayMillis = unit.toMillis(delay);
+			return this;
+		}
+
+		public Builder multiplier(double multiplier) {
+			this.multiplier = multiplier;
+			return this;
+		}
+
+		public Builder maxDelay(long delay, TimeUnit unit) {
+			this.maxDelayMillis = unit.toMillis(delay);
+			return this;
+		}
+
+		public RetryTopology build() {
+			if (attempts < 0 || initialDelayMillis < 0 || multiplier < 1 || maxDelayMillis < initialDelayMillis) {
+				throw new IllegalArgumentException("重试分层参数不合法");
+			}
+			return new RetryTopology(attempts, initialDelayMillis, multiplier, maxDelayMillis);
+		}
+	}
+}
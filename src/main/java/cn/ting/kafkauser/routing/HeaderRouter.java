@@ -0,0 +1,156 @@
+package cn.ting.kafkauser.routing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+
+/**
+ * 按消息头路由的分发器
+ *
+ * 构建时把所有路由值编码成 UTF-8 字节放进开放寻址哈希表；分发时只取路由头的原始字节，
+ * 直接对字节计算哈希、逐字节比较，不把头解码成 String，也不构造消息头 Map。
+ * 构建后只读，可以在多个消费线程间共享。
+ *
+ * @param <K> key 类型
+ * @param <V> value 类型
+ */
+public final class HeaderRouter<K, V> {
+
+	private final String headerName;
+	private final byte[][] keys;
+	private final RecordHandler<K, V>[] handlers;
+	private final int mask;
+	private final RecordHandler<K, V> missingHandler;
+	private final RecordHandler<K, V> unmatchedHandler;
+
+	@SuppressWarnings("unchecked")
+	private HeaderRouter(Builder<K, V> builder) {
+		this.headerName = builder.headerName;
+		this.missingHandler = builder.missingHandler;
+		this.unmatchedHandler = builder.unmatchedHandler;
+		// 负载因子不超过 0.5，线性探测的平均探测次数接近 1
+		int capacity = Integer.highestOneBit(Math.max(1, builder.routes.size()) * 4 - 1);
+		this.keys = new byte[capacity][];
+		this.handlers = new RecordHandler[capacity];
+		this.mask = capacity - 1;
+		builder.routes.forEach((value, handler) -> {
+			byte[] key = value.getBytes(StandardCharsets.UTF_8);
+			int slot = hash(key) & mask;
+			while (keys[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			handlers[slot] = handler;
+		});
+	}
+
+	/**
+	 * @param headerName 路由头名称，例如 tableName
+	 */
+	public static <K, V> Builder<K, V> builder(String headerName) {
+		return new Builder<>(headerName);
+	}
+
+	/**
+	 * 把消息交给路由头对应的处理器
+	 *
+	 * @param record 消息
+	 * @return 是否命中了注册的路由
+	 */
+	public boolean route(ConsumerRecord<K, V> record) {
+		Header header = record.headers().lastHeader(headerName);
+		LazyHeaders headers = new LazyHeaders(record.headers());
+		if (header == null || header.value() == null) {
+			missingHandler.handle(record, headers);
+			return false;
+		}
+		RecordHandler<K, V> handler = lookup(header.value());
+		if (handler == null) {
+			unmatchedHandler.handle(record, headers);
+			return false;
+		}
+		handler.handle(record, headers);
+		return true;
+	}
+
+	/**
+	 * @return 注册的路由数
+	 */
+	public int size() {
+		int size = 0;
+		for (byte[] key : keys) {
+			if (key != null) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	RecordHandler<K, V> lookup(byte[] value) {
+		int slot = hash(value) & mask;
+		byte[] key;
+		while ((key = keys[slot]) != null) {
+			if (Arrays.equals(key, value)) {
+				return handlers[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+
+	private static int hash(byte[] bytes) {
+		// FNV-1a，再打散高位，避免表名前缀相同时低位聚集
+		int h = 0x811c9dc5;
+		for (byte b : bytes) {
+			h ^= b;
+			h *= 0x01000193;
+		}
+		return h ^ (h >>> 16);
+	}
+
+	public static final class Builder<K, V> {
+		private final String headerName;
+		private final Map<String, RecordHandler<K, V>> routes = new LinkedHashMap<>();
+		private RecordHandler<K, V> missingHandler = (record, headers) -> { };
+		private RecordHandler<K, V> unmatchedHandler = (record, headers) -> { };
+
+		private Builder(String headerName) {
+			this.headerName = headerName;
+		}
+
+		/**
+		 * 注册一个路由值
+		 *
+		 * @throws IllegalArgumentException 同一个值重复注册
+		 */
+		public Builder<K, V> route(String value, RecordHandler<K, V> handler) {
+			if (routes.putIfAbsent(value, handler) != null) {
+				throw new IllegalArgumentException("重复的路由: " + value);
+			}
+			return this;
+		}
+
+		/**
+		 * 缺少路由头时的处理器，默认忽略
+		 */
+		public Builder<K, V> onMissing(RecordHandler<K, V> handler) {
+			this.missingHandler = handler;
+			return this;
+		}
+
+		/**
+		 * 路由头没有对应处理器时的处理器，默认忽略
+		 */
+		public Builder<K, V> onUnmatched(RecordHandler<K, V> handler) {
+			this.unmatchedHandler = handler;
+			return this;
+		}
+
+		public HeaderRouter<K, V> build() {
+			return new HeaderRouter<>(this);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package cn.ting.kafkauser.routing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * 按需解码的消息头视图
+ *
+ * 只包装原始 {@link Headers}，不预先转换任何头；第一次读取某个头时才按 UTF-8 解码并缓存。
+ * 处理器不读消息头时，这个对象是唯一的额外分配。非线程安全，只在处理这条消息的线程上使用。
+ */
+public final class LazyHeaders {
+
+	private final Headers headers;
+	private Map<String, String> decoded;
+
+	LazyHeaders(Headers headers) {
+		this.headers = headers;
+	}
+
+	/**
+	 * @param key 头名称
+	 * @return 最后一个同名头按 UTF-8 解码后的值，不存在时返回 null
+	 */
+	public String get(String key) {
+		if (decoded != null && decoded.containsKey(key)) {
+			return decoded.get(key);
+		}
+		byte[] raw = raw(key);
+		String value = raw == null ? null : new String(raw, StandardCharsets.UTF_8);
+		if (decoded == null) {
+			decoded = new HashMap<>(4);
+		}
+		decoded.put(key, value);
+		return value;
+	}
+
+	/**
+	 * @param key 头名称
+	 * @return 最后一个同名头的原始字节，不存在时返回 null
+	 */
+	public byte[] raw(String key) {
+		Header header = headers.lastHeader(key);
+		return header == null ? null : header.value();
+	}
+
+	/**
+	 * @return 原始消息头
+	 */
+	public Headers unwrap() {
+		return headers;
+	}
+}
@@ -0,0 +1,19 @@
+package cn.ting.kafkauser.routing;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+/**
+ * 路由到的消息处理器
+ *
+ * @param <K> key 类型
+ * @param <V> value 类型
+ */
+@FunctionalInterface
+public interface RecordHandler<K, V> {
+
+	/**
+	 * @param record 消息
+	 * @param headers 按需解码的消息头，路由头以外的头只有在这里读取时才解码
+	 */
+	void handle(ConsumerRecord<K, V> record, LazyHeaders headers);
+}
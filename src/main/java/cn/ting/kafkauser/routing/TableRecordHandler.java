@@ -0,0 +1,12 @@
+package cn.ting.kafkauser.routing;
+
+/**
+ * 按 tableName 消息头路由的处理器，注册为 Spring Bean 后由 {@link cn.ting.kafkauser.kafka.KafkaMsg6} 自动收集
+ */
+public interface TableRecordHandler extends RecordHandler<Object, Object> {
+
+	/**
+	 * @return 处理的表名，与 tableName 消息头的值完全一致
+	 */
+	String tableName();
+}
@@ -0,0 +1,94 @@
+package cn.ting.kafkauser.serialization;
+
+import cn.ting.kafkauser.entity.User;
+import java.nio.charset.StandardCharsets;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+/**
+ * User 二进制反序列化器，格式见 {@link UserBinaryFormat}
+ *
+ * 以魔数开头的消息按二进制解码，其余按 JSON 解码，
+ * 因此可以先把所有消费者切到这个反序列化器，再逐步切换生产者，实现滚动迁移。
+ */
+public class UserBinaryDeserializer implements Deserializer<User> {
+
+	// 目标类型固定为 User，忽略生产者写入的类型头
+	private final JsonDeserializer<User> jsonFallback = new JsonDeserializer<>(User.class, false);
+
+	@Override
+	public User deserialize(String topic, byte[] data) {
+		if (data == null) {
+			return null;
+		}
+		if (data.length < UserBinaryFormat.HEADER_SIZE || data[0] != UserBinaryFormat.MAGIC) {
+			return jsonFallback.deserialize(topic, data);
+		}
+		byte version = data[1];
+		if (version < UserBinaryFormat.VERSION_1) {
+			throw new SerializationException("不支持的 User 二进制版本: " + version);
+		}
+		// 更高版本只会在末尾追加字段，这里读完版本 1 的字段即可
+		Reader reader = new Reader(data, UserBinaryFormat.HEADER_SIZE);
+		User user = new User();
+		user.setName(reader.readString());
+		user.setAge(reader.readNullableInt());
+		return user;
+	}
+
+	@Override
+	public void close() {
+		jsonFallback.close();
+	}
+
+	private static final class Reader {
+		private final byte[] data;
+		private int pos;
+
+		Reader(byte[] data, int pos) {
+			this.data = data;
+			this.pos = pos;
+		}
+
+		String readString() {
+			int length = readVarint();
+			if (length == 0) {
+				return null;
+			}
+			length--;
+			if (length > data.length - pos) {
+				throw new SerializationException("User 二进制数据被截断");
+			}
+			String value = new String(data, pos, length, StandardCharsets.UTF_8);
+			pos += length;
+			return value;
+		}
+
+		Integer readNullableInt() {
+			if (pos >= data.length) {
+				throw new SerializationException("User 二进制数据被截断");
+			}
+			if (data[pos++] == 0) {
+				return null;
+			}
+			int zigzag = readVarint();
+			return (zigzag >>> 1) ^ -(zigzag & 1);
+		}
+
+		int readVarint() {
+			int value = 0;
+			for (int shift = 0; shift < 32; shift += 7) {
+				if (pos >= data.length) {
+					throw new SerializationException("User 二进制数据被截断");
+				}
+				byte b = data[pos++];
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new SerializationException("varint 过长");
+		}
+	}
+}
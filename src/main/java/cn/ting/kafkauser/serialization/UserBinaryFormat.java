@@ -0,0 +1,31 @@
+package cn.ting.kafkauser.serialization;
+
+/**
+ * User 二进制格式定义
+ *
+ * <pre>
+ * [0x00 魔数][版本号 1 字节][字段...]
+ * </pre>
+ *
+ * JSON 文本不可能以 0x00 开头，因此没有魔数的消息一律按 JSON 处理，新旧格式可以在同一主题里混跑。
+ *
+ * 字段按版本顺序排列，新版本只允许在末尾追加字段：旧消费者读完自己认识的字段后忽略剩余字节，
+ * 新消费者读到旧版本消息时，缺失的字段保持默认值。
+ *
+ * 版本 1：
+ * - name：varint(UTF-8 字节长度 + 1)，0 表示 null，随后是 UTF-8 字节
+ * - age：1 字节标记（0 表示 null），非 null 时随后是 varint(zigzag(age))
+ */
+final class UserBinaryFormat {
+
+	static final byte MAGIC = 0x00;
+
+	static final byte VERSION_1 = 1;
+
+	static final byte CURRENT_VERSION = VERSION_1;
+
+	static final int HEADER_SIZE = 2;
+
+	private UserBinaryFormat() {
+	}
+}
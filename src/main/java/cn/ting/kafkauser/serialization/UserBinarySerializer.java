@@ -0,0 +1,112 @@
+package cn.ting.kafkauser.serialization;
+
+import cn.ting.kafkauser.entity.User;
+import java.util.Arrays;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * User 二进制序列化器，格式见 {@link UserBinaryFormat}
+ *
+ * 不经过反射和类型解析，字段直接写入线程私有的可复用缓冲区，
+ * 只在最后按实际长度复制一次（Kafka 会持有返回的数组，不能直接返回缓冲区）。
+ */
+public class UserBinarySerializer implements Serializer<User> {
+
+	private static final int INITIAL_BUFFER_SIZE = 256;
+
+	private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[INITIAL_BUFFER_SIZE]);
+
+	@Override
+	public byte[] serialize(String topic, User user) {
+		if (user == null) {
+			return null;
+		}
+		String name = user.getName();
+		// 每个 char 最多 3 个 UTF-8 字节，再加长度 varint、age 标记位和 age varint 的上限
+		int maxSize = UserBinaryFormat.HEADER_SIZE + 5 + (name == null ? 0 : name.length() * 3) + 1 + 5;
+		byte[] buf = buffers.get();
+		if (buf.length < maxSize) {
+			buf = new byte[Math.max(maxSize, buf.length * 2)];
+			buffers.set(buf);
+		}
+
+		int pos = 0;
+		buf[pos++] = UserBinaryFormat.MAGIC;
+		buf[pos++] = UserBinaryFormat.CURRENT_VERSION;
+		pos = writeString(buf, pos, name);
+		pos = writeNullableInt(buf, pos, user.getAge());
+		return Arrays.copyOf(buf, pos);
+	}
+
+	private static int writeString(byte[] buf, int pos, String value) {
+		if (value == null) {
+			return writeVarint(buf, pos, 0);
+		}
+		int utf8Length = utf8Length(value);
+		pos = writeVarint(buf, pos, utf8Length + 1);
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				buf[pos++] = (byte) c;
+			} else if (c < 0x800) {
+				buf[pos++] = (byte) (0xC0 | (c >> 6));
+				buf[pos++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, value.charAt(++i));
+				buf[pos++] = (byte) (0xF0 | (cp >> 18));
+				buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				// 不成对的代理字符按 String.getBytes 的习惯替换为 '?'
+				buf[pos++] = '?';
+			} else {
+				buf[pos++] = (byte) (0xE0 | (c >> 12));
+				buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buf[pos++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return pos;
+	}
+
+	private static int utf8Length(String value) {
+		int length = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				length++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	private static int writeNullableInt(byte[] buf, int pos, Integer value) {
+		if (value == null) {
+			buf[pos++] = 0;
+			return pos;
+		}
+		buf[pos++] = 1;
+		int v = value;
+		return writeVarint(buf, pos, (v << 1) ^ (v >> 31));
+	}
+
+	private static int writeVarint(byte[] buf, int pos, int value) {
+		while ((value & ~0x7F) != 0) {
+			buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buf[pos++] = (byte) value;
+		return pos;
+	}
+}
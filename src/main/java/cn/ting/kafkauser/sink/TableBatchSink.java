@@ -0,0 +1,194 @@
+package cn.ting.kafkauser.sink;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 按表分组、批量 upsert 写入 MySQL 的落库阶段
+ *
+ * 消息先按表缓存在内存里，达到行数阈值或最早一行等待超过时间阈值时统一刷盘：
+ * 每张表、每种列组合生成一条 INSERT ... ON DUPLICATE KEY UPDATE，用 JDBC batch 提交，
+ * 配合连接串上的 rewriteBatchedStatements=true，驱动会把整批改写成多行 VALUES 一次发送。
+ * 所有表在同一个事务里提交，事务成功后才确认这些消息的位移。
+ *
+ * 非线程安全，只能在一个消费线程上使用。
+ */
+@Slf4j
+public class TableBatchSink {
+
+	// 表名、列名只允许这些字符，拼进 SQL 前统一校验，防止通过消息头注入
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z0-9_$\\-]{1,64}");
+
+	private final JdbcTemplate jdbcTemplate;
+	private final TransactionTemplate transactionTemplate;
+	private final int maxRows;
+	private final long maxDelayMillis;
+	private final int chunkSize;
+
+	private final Map<String, List<Map<String, Object>>> rowsByTable = new LinkedHashMap<>();
+	private final List<Acknowledgment> pendingAcks = new ArrayList<>();
+	private final Map<TopicPartition, Long> firstPendingOffsets = new HashMap<>();
+	private final Map<String, String> sqlCache = new HashMap<>();
+	private int pendingRows;
+	private long firstPendingMillis;
+
+	/**
+	 * @param jdbcTemplate JDBC 模板
+	 * @param transactionTemplate 事务模板
+	 * @param maxRows 缓存行数达到该值时刷盘
+	 * @param maxDelayMillis 最早一行等待超过该时间时刷盘
+	 * @param chunkSize 每次 JDBC batch 的最大行数
+	 */
+	public TableBatchSink(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+	                      int maxRows, long maxDelayMillis, int chunkSize) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = transactionTemplate;
+		this.maxRows = maxRows;
+		this.maxDelayMillis = maxDelayMillis;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * 缓存一行数据
+	 *
+	 * @param record 数据来源消息，用于刷盘失败时回退位移
+	 * @param table 目标表
+	 * @param row 列名到值
+	 * @throws IllegalArgumentException 表名或列名不合法
+	 */
+	public void add(ConsumerRecord<?, ?> record, String table, Map<String, Object> row) {
+		checkIdentifier(table);
+		row.keySet().forEach(TableBatchSink::checkIdentifier);
+		if (row.isEmpty()) {
+			throw new IllegalArgumentException("行数据为空");
+		}
+		rowsByTable.computeIfAbsent(table, t -> new ArrayList<>()).add(row);
+		track(record);
+		pendingRows++;
+	}
+
+	/**
+	 * 登记一条不需要落库的消息（例如缺少表名被跳过），它同样要等前面的数据落库后才能确认
+	 *
+	 * @param record 消息
+	 */
+	public void skip(ConsumerRecord<?, ?> record) {
+		track(record);
+	}
+
+	/**
+	 * 登记一批消息的确认对象，刷盘成功后按登记顺序确认
+	 *
+	 * @param acknowledgment 确认对象
+	 */
+	public void addAck(Acknowledgment acknowledgment) {
+		pendingAcks.add(acknowledgment);
+	}
+
+	/**
+	 * @return 是否达到刷盘条件
+	 */
+	public boolean shouldFlush() {
+		return pendingRows >= maxRows
+				|| (!pendingAcks.isEmpty() && System.currentTimeMillis() - firstPendingMillis >= maxDelayMillis);
+	}
+
+	/**
+	 * @return 是否有尚未刷盘确认的数据
+	 */
+	public boolean hasPending() {
+		return !pendingAcks.isEmpty();
+	}
+
+	/**
+	 * 在一个事务里写入所有缓存的行，成功后确认位移并清空缓存
+	 * 失败时抛出异常，缓存保持不变，由调用方决定丢弃并回退位移
+	 */
+	public void flush() {
+		if (pendingRows > 0) {
+			long start = System.currentTimeMillis();
+			transactionTemplate.executeWithoutResult(status -> rowsByTable.forEach(this::upsert));
+			log.info("批量落库完成: {}张表, {}行, 耗时={}ms",
+					rowsByTable.size(), pendingRows, System.currentTimeMillis() - start);
+		}
+		for (Acknowledgment acknowledgment : pendingAcks) {
+			acknowledgment.acknowledge();
+		}
+		clear();
+	}
+
+	/**
+	 * 丢弃所有缓存的数据和确认对象
+	 *
+	 * @return 每个分区最早一条未落库消息的位移，调用方 seek 到这里重新消费
+	 */
+	public Map<TopicPartition, Long> discard() {
+		Map<TopicPartition, Long> offsets = new HashMap<>(firstPendingOffsets);
+		clear();
+		return offsets;
+	}
+
+	private void upsert(String table, List<Map<String, Object>> rows) {
+		// 同一张表里列集合不同的行分开写，每种列集合一条 SQL
+		Map<List<String>, List<Object[]>> byColumns = new LinkedHashMap<>();
+		for (Map<String, Object> row : rows) {
+			List<String> columns = new ArrayList<>(row.keySet());
+			byColumns.computeIfAbsent(columns, c -> new ArrayList<>()).add(row.values().toArray());
+		}
+		byColumns.forEach((columns, args) -> {
+			String sql = sqlCache.computeIfAbsent(table + "|" + String.join(",", columns), k -> upsertSql(table, columns));
+			for (int from = 0; from < args.size(); from += chunkSize) {
+				jdbcTemplate.batchUpdate(sql, args.subList(from, Math.min(args.size(), from + chunkSize)));
+			}
+		});
+	}
+
+	private static String upsertSql(String table, List<String> columns) {
+		StringBuilder sql = new StringBuilder("INSERT INTO `").append(table).append("` (");
+		StringBuilder placeholders = new StringBuilder();
+		StringBuilder updates = new StringBuilder();
+		for (int i = 0; i < columns.size(); i++) {
+			String column = columns.get(i);
+			if (i > 0) {
+				sql.append(',');
+				placeholders.append(',');
+				updates.append(',');
+			}
+			sql.append('`').append(column).append('`');
+			placeholders.append('?');
+			updates.append('`').append(column).append("`=VALUES(`").append(column).append("`)");
+		}
+		return sql.append(") VALUES (").append(placeholders)
+				.append(") ON DUPLICATE KEY UPDATE ").append(updates).toString();
+	}
+
+	private void track(ConsumerRecord<?, ?> record) {
+		if (pendingAcks.isEmpty() && firstPendingOffsets.isEmpty()) {
+			firstPendingMillis = System.currentTimeMillis();
+		}
+		firstPendingOffsets.putIfAbsent(new TopicPartition(record.topic(), record.partition()), record.offset());
+	}
+
+	private void clear() {
+		rowsByTable.clear();
+		pendingAcks.clear();
+		firstPendingOffsets.clear();
+		pendingRows = 0;
+	}
+
+	private static void checkIdentifier(String name) {
+		if (name == null || !IDENTIFIER.matcher(name).matches()) {
+			throw new IllegalArgumentException("非法的表名或列名: " + name);
+		}
+	}
+}
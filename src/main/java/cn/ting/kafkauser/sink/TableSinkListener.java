@@ -0,0 +1,108 @@
+package cn.ting.kafkauser.sink;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 按 tableName 消息头把消息批量落库
+ *
+ * 消息体是一行数据的 JSON（列名到值），按 tableName 消息头路由到对应的表。
+ * 只有在数据随事务提交后才确认位移；刷盘失败时丢弃缓存，把各分区 seek 回最早未落库的位置重新消费，
+ * upsert 是幂等的，重复写入不影响结果。
+ *
+ * 刷盘只发生在消费线程上：收到一批消息后检查阈值，没有新消息时由容器空闲事件触发。
+ */
+@Slf4j
+@Service
+public class TableSinkListener {
+
+	static final String LISTENER_ID = "table-sink";
+
+	// 缓存 5000 行或最早一行等待 1 秒后刷盘，每个 JDBC batch 最多 1000 行
+	private final int maxRows = 5000;
+	private final long maxDelayMillis = 1000;
+	private final int chunkSize = 1000;
+
+	// 刷盘失败后的退避时间上限，必须远小于 max.poll.interval.ms
+	private final long maxBackoffMillis = 5000;
+
+	private final TableBatchSink sink;
+	private long backoffMillis;
+
+	public TableSinkListener(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+		this.sink = new TableBatchSink(jdbcTemplate, transactionTemplate, maxRows, maxDelayMillis, chunkSize);
+	}
+
+	@KafkaListener(
+			id = LISTENER_ID,
+			topics = "your-topic",
+			groupId = "table-sink-group",
+			containerFactory = "tableSinkContainerFactory"
+	)
+	public void onBatch(List<ConsumerRecord<String, String>> records,
+	                    Acknowledgment acknowledgment,
+	                    Consumer<?, ?> consumer) {
+		for (ConsumerRecord<String, String> record : records) {
+			Header header = record.headers().lastHeader("tableName");
+			if (header == null || record.value() == null) {
+				log.warn("跳过缺少 tableName 或消息体的消息: partition={}, offset={}", record.partition(), record.offset());
+				sink.skip(record);
+				continue;
+			}
+			try {
+				JSONObject row = JSON.parseObject(record.value());
+				sink.add(record, new String(header.value(), StandardCharsets.UTF_8), row);
+			} catch (RuntimeException e) {
+				// 无法解析或表名非法的消息重试也不会成功，跳过以免阻塞整个分区
+				log.error("跳过无法落库的消息: partition={}, offset={}", record.partition(), record.offset(), e);
+				sink.skip(record);
+			}
+		}
+		sink.addAck(acknowledgment);
+		if (sink.shouldFlush()) {
+			flush(consumer);
+		}
+	}
+
+	/**
+	 * 一段时间没有新消息时把剩余数据刷盘，空闲事件在消费线程上发布
+	 */
+	@EventListener(condition = "event.listenerId.startsWith('" + LISTENER_ID + "')")
+	public void onIdle(ListenerContainerIdleEvent event) {
+		if (sink.hasPending()) {
+			flush(event.getConsumer());
+		}
+	}
+
+	private void flush(Consumer<?, ?> consumer) {
+		try {
+			sink.flush();
+			backoffMillis = 0;
+		} catch (RuntimeException e) {
+			Map<TopicPartition, Long> offsets = sink.discard();
+			offsets.forEach(consumer::seek);
+			backoffMillis = backoffMillis == 0 ? 100 : Math.min(maxBackoffMillis, backoffMillis * 2);
+			log.error("批量落库失败，回退位移 {} 后 {}ms 重试", offsets, backoffMillis, e);
+			try {
+				Thread.sleep(backoffMillis);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package cn.ting.kafkauser.startup;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.kafka.config.AbstractKafkaListenerContainerFactory;
+
+/**
+ * 非 EAGER 模式下关闭所有容器工厂的自动启动，容器改由 {@link ListenerStartupCoordinator} 启动
+ */
+public class DeferredStartupPostProcessor implements BeanPostProcessor {
+
+	private final StartupMode mode;
+
+	public DeferredStartupPostProcessor(StartupMode mode) {
+		this.mode = mode;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) {
+		if (mode != StartupMode.EAGER && bean instanceof AbstractKafkaListenerContainerFactory) {
+			((AbstractKafkaListenerContainerFactory<?, ?, ?>) bean).setAutoStartup(false);
+		}
+		return bean;
+	}
+}
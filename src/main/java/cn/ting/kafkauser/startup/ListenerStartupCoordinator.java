@@ -0,0 +1,347 @@
+package cn.ting.kafkauser.startup;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.common.KafkaFuture;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.TopicPartitionOffset;
+
+/**
+ * 应用就绪后在后台预热元数据、分批启动监听容器，并记录各阶段耗时
+ *
+ * 就绪之前不再等待消费者加入消费组，各阶段：
+ * - context：JVM 启动到应用就绪
+ * - prewarm：并行查询监听 topic 的元数据（提前发现不存在的 topic），并让配置的 KafkaTemplate 预先拉取发送 topic 的元数据
+ * - wave-N：启动第 N 批容器到它们全部分到分区
+ * - listeners：应用就绪到最后一批分到分区
+ * 耗时写入日志和 kafka.startup.phase 指标，也可以通过 JMX 的 Report 属性查看。
+ *
+ * 每批等上一批分到分区后再启动，同一实例的多个消费组不会同时触发重平衡；
+ * jitterMs 让滚动发布时各实例错开加入消费组。LAZY 模式和 lazyListeners 中的容器通过 JMX 的 startListener 启动。
+ */
+@Slf4j
+@ManagedResource(objectName = "kafkaUser:name=listenerStartup", description = "监听容器启动")
+public class ListenerStartupCoordinator implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+
+	private static final long ASSIGNMENT_POLL_MILLIS = 50;
+
+	private final Supplier<Collection<MessageListenerContainer>> containers;
+	private final Map<String, ? extends KafkaOperations<?, ?>> templates;
+	private final Map<String, Object> adminConfigs;
+	private final StartupProperties properties;
+	private final MeterRegistry meterRegistry;
+
+	private final Map<String, Long> phases = new LinkedHashMap<>();
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(daemon("listener-startup"));
+
+	/**
+	 * @param containers 所有监听容器
+	 * @param templates KafkaTemplate bean 名称 -> 实例，用于预热发送 topic 的元数据
+	 * @param adminConfigs AdminClient 配置，为空时不查询监听 topic 的元数据
+	 * @param properties 启动配置
+	 * @param meterRegistry 上报各阶段耗时
+	 */
+	public ListenerStartupCoordinator(Supplier<Collection<MessageListenerContainer>> containers,
+	                                  Map<String, ? extends KafkaOperations<?, ?>> templates,
+	                                  Map<String, Object> adminConfigs,
+	                                  StartupProperties properties,
+	                                  MeterRegistry meterRegistry) {
+		this.containers = containers;
+		this.templates = templates;
+		this.adminConfigs = adminConfigs;
+		this.properties = properties;
+		this.meterRegistry = meterRegistry;
+	}
+
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent event) {
+		recordPhase("context", ManagementFactory.getRuntimeMXBean().getUptime());
+		executor.execute(this::startUp);
+	}
+
+	void startUp() {
+		long start = System.nanoTime();
+		Collection<MessageListenerContainer> all = containers.get();
+		prewarm(topics(all));
+		if (properties.getMode() != StartupMode.EAGER) {
+			List<MessageListenerContainer> pending = all.stream()
+					.filter(container -> !container.isRunning() && !isLazy(container))
+					.collect(Collectors.toList());
+			if (!pending.isEmpty() && sleepJitter()) {
+				startInWaves(pending);
+			}
+		}
+		recordPhase("listeners", elapsedMillis(start));
+		log.info("启动耗时: {}", getReport());
+	}
+
+	/**
+	 * 启动一个 LAZY 的监听容器，等待它分到分区
+	 *
+	 * @param listenerId 容器 id（@KafkaListener 的 id 或共用容器的名称）
+	 * @return 启动结果
+	 */
+	@ManagedOperation(description = "启动指定的监听容器并等待分到分区")
+	public String startListener(String listenerId) {
+		MessageListenerContainer container = containers.get().stream()
+				.filter(candidate -> listenerId.equals(candidate.getListenerId()))
+				.findFirst()
+				.orElse(null);
+		if (container == null) {
+			return "没有监听容器 " + listenerId;
+		}
+		if (container.isRunning()) {
+			return listenerId + " 已在运行";
+		}
+		long start = System.nanoTime();
+		container.start();
+		List<String> unassigned = awaitAssignment(Collections.singletonList(container));
+		long elapsed = elapsedMillis(start);
+		recordPhase("start-" + listenerId, elapsed);
+		return listenerId + (unassigned.isEmpty() ? " 已分到分区" : " 已启动，尚未分到分区") + "，耗时 " + elapsed + "ms";
+	}
+
+	/**
+	 * 在后台分批启动所有未运行的容器，包括 LAZY 的容器
+	 */
+	@ManagedOperation(description = "分批启动所有未运行的监听容器")
+	public String startAll() {
+		List<MessageListenerContainer> pending = containers.get().stream()
+				.filter(container -> !container.isRunning())
+				.collect(Collectors.toList());
+		executor.execute(() -> startInWaves(pending));
+		return "已提交 " + pending.size() + " 个容器";
+	}
+
+	/**
+	 * @return 各阶段耗时
+	 */
+	@ManagedAttribute(description = "各启动阶段耗时")
+	public String getReport() {
+		StringJoiner joiner = new StringJoiner(", ");
+		synchronized (phases) {
+			phases.forEach((phase, millis) -> joiner.add(phase + "=" + millis + "ms"));
+		}
+		return joiner.toString();
+	}
+
+	@Override
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+	private boolean isLazy(MessageListenerContainer container) {
+		return properties.getMode() == StartupMode.LAZY
+				|| properties.getLazyListeners().contains(container.getListenerId());
+	}
+
+	private void startInWaves(List<MessageListenerContainer> pending) {
+		int waveSize = Math.max(1, properties.getWaveSize());
+		int wave = 0;
+		for (int from = 0; from < pending.size(); from += waveSize) {
+			if (from > 0 && !sleep(properties.getWaveIntervalMs())) {
+				return;
+			}
+			wave++;
+			List<MessageListenerContainer> batch = pending.subList(from, Math.min(from + waveSize, pending.size()));
+			long start = System.nanoTime();
+			for (MessageListenerContainer container : batch) {
+				try {
+					container.start();
+				} catch (RuntimeException e) {
+					log.error("监听容器 {} 启动失败", container.getListenerId(), e);
+				}
+			}
+			List<String> unassigned = awaitAssignment(batch);
+			long elapsed = elapsedMillis(start);
+			recordPhase("wave-" + wave, elapsed);
+			List<String> ids = batch.stream().map(MessageListenerContainer::getListenerId).collect(Collectors.toList());
+			if (unassigned.isEmpty()) {
+				log.info("第 {} 批监听容器 {} 已分到分区，耗时 {}ms", wave, ids, elapsed);
+			} else {
+				log.warn("第 {} 批监听容器 {} 中 {} 在 {}ms 内没有分到分区，继续启动下一批",
+						wave, ids, unassigned, properties.getWaveTimeoutMs());
+			}
+		}
+	}
+
+	/**
+	 * @return 超时仍没有分到分区的容器 id
+	 */
+	private List<String> awaitAssignment(List<MessageListenerContainer> batch) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getWaveTimeoutMs());
+		List<MessageListenerContainer> waiting = new ArrayList<>(batch);
+		while (true) {
+			waiting.removeIf(container -> !container.isRunning() || hasAssignment(container));
+			if (waiting.isEmpty() || System.nanoTime() >= deadline || !sleep(ASSIGNMENT_POLL_MILLIS)) {
+				return waiting.stream().map(MessageListenerContainer::getListenerId).collect(Collectors.toList());
+			}
+		}
+	}
+
+	private static boolean hasAssignment(MessageListenerContainer container) {
+		Collection<?> assigned = container.getAssignedPartitions();
+		return assigned != null && !assigned.isEmpty();
+	}
+
+	private void prewarm(Set<String> listenerTopics) {
+		List<Task> tasks = new ArrayList<>();
+		if (!listenerTopics.isEmpty() && !adminConfigs.isEmpty()) {
+			tasks.add(() -> describeTopics(listenerTopics));
+		}
+		properties.getPrewarmTopics().forEach((templateName, topics) -> {
+			KafkaOperations<?, ?> template = templates.get(templateName);
+			if (template == null) {
+				log.warn("kafka.startup.prewarm-topics 中的 KafkaTemplate 不存在: {}", templateName);
+				return;
+			}
+			topics.forEach(topic -> tasks.add(() -> template.partitionsFor(topic)));
+		});
+		if (tasks.isEmpty()) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(
+				Math.max(1, Math.min(tasks.size(), properties.getPrewarmParallelism())), daemon("startup-prewarm"));
+		try {
+			CompletableFuture<?>[] futures = tasks.stream()
+					.map(task -> CompletableFuture.runAsync(() -> {
+						try {
+							task.run();
+						} catch (Exception e) {
+							throw new CompletionException(e);
+						}
+					}, pool).exceptionally(e -> {
+						log.warn("元数据预热失败: {}", e.getCause() != null ? e.getCause().toString() : e.toString());
+						return null;
+					}))
+					.toArray(CompletableFuture[]::new);
+			CompletableFuture.allOf(futures).get(properties.getPrewarmTimeoutMs(), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			log.warn("元数据预热 {}ms 内没有全部完成，继续启动", properties.getPrewarmTimeoutMs());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			log.warn("元数据预热失败", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		recordPhase("prewarm", elapsedMillis(start));
+	}
+
+	private void describeTopics(Set<String> topics) throws InterruptedException {
+		Admin admin = Admin.create(adminConfigs);
+		try {
+			Map<String, KafkaFuture<TopicDescription>> descriptions = admin.describeTopics(topics).topicNameValues();
+			int partitions = 0;
+			List<String> missing = new ArrayList<>();
+			for (Map.Entry<String, KafkaFuture<TopicDescription>> entry : descriptions.entrySet()) {
+				try {
+					partitions += entry.getValue().get(properties.getPrewarmTimeoutMs(), TimeUnit.MILLISECONDS)
+							.partitions().size();
+				} catch (ExecutionException | TimeoutException e) {
+					missing.add(entry.getKey());
+				}
+			}
+			if (missing.isEmpty()) {
+				log.info("监听的 {} 个 topic 共 {} 个分区", topics.size(), partitions);
+			} else {
+				log.warn("监听的 topic 中 {} 不存在或无法访问", missing);
+			}
+		} finally {
+			admin.close(Duration.ofSeconds(1));
+		}
+	}
+
+	private static Set<String> topics(Collection<MessageListenerContainer> containers) {
+		Set<String> topics = new LinkedHashSet<>();
+		for (MessageListenerContainer container : containers) {
+			ContainerProperties containerProperties = container.getContainerProperties();
+			if (containerProperties.getTopics() != null) {
+				Collections.addAll(topics, containerProperties.getTopics());
+			}
+			if (containerProperties.getTopicPartitions() != null) {
+				for (TopicPartitionOffset partition : containerProperties.getTopicPartitions()) {
+					topics.add(partition.getTopic());
+				}
+			}
+		}
+		return topics;
+	}
+
+	private boolean sleepJitter() {
+		long jitter = properties.getJitterMs();
+		return jitter <= 0 || sleep(ThreadLocalRandom.current().nextLong(jitter + 1));
+	}
+
+	private static boolean sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private void recordPhase(String phase, long millis) {
+		synchronized (phases) {
+			phases.put(phase, millis);
+		}
+		Timer.builder("kafka.startup.phase").tag("phase", phase).register(meterRegistry)
+				.record(millis, TimeUnit.MILLISECONDS);
+	}
+
+	private static long elapsedMillis(long startNanos) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+	}
+
+	private static ThreadFactory daemon(String prefix) {
+		AtomicInteger counter = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	@FunctionalInterface
+	private interface Task {
+		void run() throws Exception;
+	}
+}
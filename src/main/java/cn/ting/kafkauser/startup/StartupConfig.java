@@ -0,0 +1,41 @@
+package cn.ting.kafkauser.startup;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+
+/**
+ * 监听容器启动方式，kafka.startup.mode 为 STAGGERED 或 LAZY 时容器不随上下文刷新启动
+ */
+@Configuration
+@EnableConfigurationProperties(StartupProperties.class)
+public class StartupConfig {
+
+	/**
+	 * BeanPostProcessor 必须用静态方法声明，避免提前实例化配置类
+	 */
+	@Bean
+	public static DeferredStartupPostProcessor deferredStartupPostProcessor(
+			@Value("${kafka.startup.mode:EAGER}") StartupMode mode) {
+		return new DeferredStartupPostProcessor(mode);
+	}
+
+	/**
+	 * 容器包括 @KafkaListener 创建的容器和注册为 bean 的容器（共用容器、重试层容器）
+	 */
+	@Bean
+	public ListenerStartupCoordinator listenerStartupCoordinator(KafkaListenerEndpointRegistry listenerRegistry,
+	                                                             Map<String, KafkaTemplate<?, ?>> templates,
+	                                                             KafkaAdmin kafkaAdmin,
+	                                                             StartupProperties properties,
+	                                                             MeterRegistry meterRegistry) {
+		return new ListenerStartupCoordinator(listenerRegistry::getAllListenerContainers, templates,
+				kafkaAdmin.getConfigurationProperties(), properties, meterRegistry);
+	}
+}
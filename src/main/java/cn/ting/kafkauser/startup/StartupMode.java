@@ -0,0 +1,22 @@
+package cn.ting.kafkauser.startup;
+
+/**
+ * 监听容器的启动方式
+ */
+public enum StartupMode {
+
+	/**
+	 * 上下文刷新时全部启动，与 Spring Kafka 默认行为相同
+	 */
+	EAGER,
+
+	/**
+	 * 应用就绪后在后台分批启动，每批分到分区后再启动下一批，避免同时加入消费组引起的重平衡风暴
+	 */
+	STAGGERED,
+
+	/**
+	 * 不自动启动，通过 JMX 按需启动
+	 */
+	LAZY
+}
@@ -0,0 +1,54 @@
+package cn.ting.kafkauser.startup;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 监听容器启动配置
+ */
+@Data
+@ConfigurationProperties(prefix = "kafka.startup")
+public class StartupProperties {
+
+	private StartupMode mode = StartupMode.EAGER;
+
+	/**
+	 * 每批启动的容器数
+	 */
+	private int waveSize = 2;
+
+	/**
+	 * 一批分到分区后到下一批开始的间隔
+	 */
+	private long waveIntervalMs = 1000;
+
+	/**
+	 * 每批等待分到分区的最长时间，超时后继续启动下一批
+	 */
+	private long waveTimeoutMs = 30000;
+
+	/**
+	 * 第一批开始前的随机延迟上限，滚动发布时错开各实例加入消费组的时间
+	 */
+	private long jitterMs = 0;
+
+	/**
+	 * STAGGERED 模式下不自动启动的监听容器 id，通过 JMX 按需启动
+	 */
+	private List<String> lazyListeners = new ArrayList<>();
+
+	/**
+	 * KafkaTemplate bean 名称 -> 需要预热元数据的 topic，第一次发送时不再阻塞在拉取元数据上
+	 */
+	private Map<String, List<String>> prewarmTopics = new LinkedHashMap<>();
+
+	/**
+	 * 预热的并发数和最长等待时间
+	 */
+	private int prewarmParallelism = 8;
+	private long prewarmTimeoutMs = 10000;
+}
@@ -0,0 +1,393 @@
+package cn.ting.kafkauser.store;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.SingletonBeanRegistry;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.BatchMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties;
+
+/**
+ * 把压缩主题（compacted topic）物化成本地的 key → 最新值 表，支持按 key 查询和变更回调
+ *
+ * 数据存放在 {@link MappedStateStore} 中，按原始字节保存，查询时才反序列化：
+ * - 每条消息按 key 覆盖旧值，墓碑消息（value 为 null）删除 key
+ * - 消息没有 key 时用 keyExtractor 从值里取 key（例如 User::getName），没有配置或取不到时忽略；没有 key 的墓碑消息无法定位，也忽略
+ * - 每写入 checkpointRecords 条变化或距上次检查点超过 checkpointInterval 时保存检查点（连同已消费的位移），停止时也保存一次
+ * - 启动时先从检查点恢复，分到分区后 seek 到检查点位移，只重新消费检查点之后的消息；没有检查点的分区从头消费
+ *
+ * 每个实例都需要完整的数据，所以消费组 id 按实例唯一生成（不提交位移，AckMode.MANUAL 且从不确认），
+ * 组内只有自己一个成员，总能分到主题的全部分区。容器并发固定为 1，存储只有一个写线程。
+ *
+ * 容器以 store-&lt;名称&gt; 注册为单例 bean，工厂关闭了自动启动时只创建不启动，由启动协调器统一启动；
+ * 在此之前查询返回的是检查点时的数据。
+ */
+@Slf4j
+public class CompactedTopicStore<K, V> implements SmartLifecycle, BeanFactoryAware,
+		ApplicationListener<ListenerContainerIdleEvent>, BatchMessageListener<byte[], byte[]> {
+
+	private final String name;
+	private final String topic;
+	private final ConcurrentKafkaListenerContainerFactory<byte[], byte[]> containerFactory;
+	private final Path directory;
+	private final Serializer<K> keySerializer;
+	private final Deserializer<K> keyDeserializer;
+	private final Deserializer<V> valueDeserializer;
+	private final Function<V, K> keyExtractor;
+	private final List<StoreChangeListener<K, V>> listeners;
+	private final int checkpointRecords;
+	private final long checkpointIntervalNanos;
+	private final Timer checkpointTimer;
+
+	// 只在消费线程上读写；停止时容器已经停止，由停止线程接手
+	private final Map<TopicPartition, Long> positions = new HashMap<>();
+	private int changesSinceCheckpoint;
+	private long lastCheckpointNanos;
+	private boolean dirty;
+
+	private volatile MappedStateStore store;
+	private volatile ConcurrentMessageListenerContainer<byte[], byte[]> container;
+	private BeanFactory beanFactory;
+	private volatile boolean running;
+
+	private CompactedTopicStore(Builder<K, V> builder) {
+		this.name = builder.name;
+		this.topic = builder.topic;
+		this.containerFactory = builder.containerFactory;
+		this.directory = builder.directory;
+		this.keySerializer = builder.keySerializer;
+		this.keyDeserializer = builder.keyDeserializer;
+		this.valueDeserializer = builder.valueDeserializer;
+		this.keyExtractor = builder.keyExtractor;
+		this.listeners = Collections.unmodifiableList(new ArrayList<>(builder.listeners));
+		this.checkpointRecords = builder.checkpointRecords;
+		this.checkpointIntervalNanos = builder.checkpointIntervalNanos;
+		MeterRegistry registry = builder.meterRegistry;
+		if (registry != null) {
+			this.checkpointTimer = Timer.builder("kafka.store.checkpoint").tag("store", name).register(registry);
+			Gauge.builder("kafka.store.size", this, s -> s.store == null ? 0 : s.store.size())
+					.tag("store", name).register(registry);
+		} else {
+			this.checkpointTimer = null;
+		}
+	}
+
+	/**
+	 * @param name 存储名称，用于容器名称和指标
+	 * @param topic 压缩主题
+	 * @param containerFactory 原始字节的容器工厂，消费者应关闭自动提交
+	 * @param directory 存储目录，每个存储独占一个目录
+	 * @param keySerializer 查询时把 key 编码成消息里的字节
+	 * @param keyDeserializer 变更回调时解码 key
+	 * @param valueDeserializer 解码值
+	 */
+	public static <K, V> Builder<K, V> builder(String name, String topic,
+	                                           ConcurrentKafkaListenerContainerFactory<byte[], byte[]> containerFactory,
+	                                           Path directory, Serializer<K> keySerializer,
+	                                           Deserializer<K> keyDeserializer, Deserializer<V> valueDeserializer) {
+		return new Builder<>(name, topic, containerFactory, directory, keySerializer, keyDeserializer, valueDeserializer);
+	}
+
+	/**
+	 * @return key 的最新值，不存在或已删除时返回 null
+	 */
+	public V get(K key) {
+		byte[] value = openStore().get(keySerializer.serialize(topic, key));
+		return value == null ? null : valueDeserializer.deserialize(topic, value);
+	}
+
+	/**
+	 * @return 存活的 key 数量
+	 */
+	public int size() {
+		return openStore().size();
+	}
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+	}
+
+	@Override
+	public void onMessage(List<ConsumerRecord<byte[], byte[]>> records) {
+		MappedStateStore target = store;
+		for (int i = 0; i < records.size(); i++) {
+			ConsumerRecord<byte[], byte[]> record = records.get(i);
+			positions.put(new TopicPartition(record.topic(), record.partition()), record.offset() + 1);
+			dirty = true;
+			byte[] key = record.key() != null ? record.key() : extractKey(record);
+			if (key == null) {
+				continue;
+			}
+			byte[] previous = listeners.isEmpty() ? null : target.get(key);
+			if (target.put(key, record.value())) {
+				changesSinceCheckpoint++;
+				if (!listeners.isEmpty()) {
+					notifyListeners(record, key, previous);
+				}
+			}
+		}
+		if (changesSinceCheckpoint >= checkpointRecords
+				|| System.nanoTime() - lastCheckpointNanos >= checkpointIntervalNanos) {
+			checkpoint();
+		}
+	}
+
+	/**
+	 * 一段时间没有新消息时保存检查点，空闲事件在消费线程上发布
+	 */
+	@Override
+	public void onApplicationEvent(ListenerContainerIdleEvent event) {
+		if (isOwnContainer(event.getListenerId()) && dirty) {
+			checkpoint();
+		}
+	}
+
+	@Override
+	public void start() {
+		this.store = MappedStateStore.open(directory);
+		positions.clear();
+		positions.putAll(store.offsets());
+		this.lastCheckpointNanos = System.nanoTime();
+
+		if (container == null) {
+			this.container = createContainer();
+		}
+		this.running = true;
+		if (container.isAutoStartup()) {
+			container.start();
+		}
+		log.info("状态存储 {} 已打开: {}, {} 个 key, 检查点位移 {}", name, topic, store.size(), store.offsets());
+	}
+
+	@Override
+	public void stop() {
+		if (container != null) {
+			container.stop();
+		}
+		MappedStateStore current = store;
+		if (current != null) {
+			if (dirty) {
+				checkpoint();
+			}
+			current.close();
+			this.store = null;
+		}
+		this.running = false;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	private ConcurrentMessageListenerContainer<byte[], byte[]> createContainer() {
+		ConcurrentMessageListenerContainer<byte[], byte[]> created = containerFactory.createContainer(topic);
+		created.setConcurrency(1);
+		ContainerProperties properties = created.getContainerProperties();
+		properties.setGroupId(containerName() + "-" + UUID.randomUUID());
+		properties.setAckMode(ContainerProperties.AckMode.MANUAL);
+		properties.setMessageListener(this);
+		properties.setConsumerRebalanceListener(new RebalanceListener());
+		properties.setIdleEventInterval(Math.max(1, TimeUnit.NANOSECONDS.toMillis(checkpointIntervalNanos)));
+		created.setBeanName(containerName());
+		if (beanFactory instanceof SingletonBeanRegistry) {
+			((SingletonBeanRegistry) beanFactory).registerSingleton(created.getBeanName(), created);
+		}
+		return created;
+	}
+
+	private String containerName() {
+		return "store-" + name;
+	}
+
+	/**
+	 * 子容器的 id 是 容器名称-序号
+	 */
+	private boolean isOwnContainer(String listenerId) {
+		String prefix = containerName();
+		if (listenerId == null || !listenerId.startsWith(prefix)) {
+			return false;
+		}
+		String suffix = listenerId.substring(prefix.length());
+		return suffix.isEmpty() || suffix.matches("-\\d+");
+	}
+
+	private MappedStateStore openStore() {
+		MappedStateStore current = store;
+		if (current == null) {
+			throw new IllegalStateException("状态存储 " + name + " 未启动");
+		}
+		return current;
+	}
+
+	private void checkpoint() {
+		long start = System.nanoTime();
+		store.checkpoint(positions);
+		changesSinceCheckpoint = 0;
+		lastCheckpointNanos = System.nanoTime();
+		dirty = false;
+		if (checkpointTimer != null) {
+			checkpointTimer.record(lastCheckpointNanos - start, TimeUnit.NANOSECONDS);
+		}
+		log.debug("状态存储 {} 已保存检查点: {} 个 key, 位移 {}", name, store.size(), positions);
+	}
+
+	/**
+	 * 没有 key 的消息用 keyExtractor 从值里取 key，取不到时返回 null
+	 */
+	private byte[] extractKey(ConsumerRecord<byte[], byte[]> record) {
+		if (keyExtractor == null || record.value() == null) {
+			return null;
+		}
+		try {
+			K key = keyExtractor.apply(valueDeserializer.deserialize(topic, record.value()));
+			return key == null ? null : keySerializer.serialize(topic, key);
+		} catch (RuntimeException e) {
+			log.error("状态存储 {} 无法从值中取出 key，跳过: {}-{}@{}", name, record.topic(), record.partition(),
+					record.offset(), e);
+			return null;
+		}
+	}
+
+	private void notifyListeners(ConsumerRecord<byte[], byte[]> record, byte[] keyBytes, byte[] previous) {
+		K key;
+		V oldValue;
+		V newValue;
+		try {
+			key = keyDeserializer.deserialize(topic, keyBytes);
+			oldValue = previous == null ? null : valueDeserializer.deserialize(topic, previous);
+			newValue = record.value() == null ? null : valueDeserializer.deserialize(topic, record.value());
+		} catch (RuntimeException e) {
+			log.error("状态存储 {} 无法解码变更，跳过回调: {}-{}@{}", name, record.topic(), record.partition(),
+					record.offset(), e);
+			return;
+		}
+		for (StoreChangeListener<K, V> listener : listeners) {
+			try {
+				listener.onChange(key, oldValue, newValue);
+			} catch (RuntimeException e) {
+				log.error("状态存储 {} 的变更回调失败: {}-{}@{}", name, record.topic(), record.partition(),
+						record.offset(), e);
+			}
+		}
+	}
+
+	/**
+	 * 分到分区时 seek 到检查点位移，检查点里没有的分区从头消费
+	 */
+	private final class RebalanceListener implements ConsumerAwareRebalanceListener {
+
+		@Override
+		public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+			List<TopicPartition> fromBeginning = new ArrayList<>();
+			for (TopicPartition partition : partitions) {
+				Long offset = positions.get(partition);
+				if (offset != null) {
+					consumer.seek(partition, offset);
+				} else {
+					fromBeginning.add(partition);
+				}
+			}
+			if (!fromBeginning.isEmpty()) {
+				consumer.seekToBeginning(fromBeginning);
+			}
+			log.info("状态存储 {} 分到分区 {}，从检查点恢复 {} 个，从头消费 {} 个", name, partitions,
+					partitions.size() - fromBeginning.size(), fromBeginning.size());
+		}
+	}
+
+	public static class Builder<K, V> {
+		private final String name;
+		private final String topic;
+		private final ConcurrentKafkaListenerContainerFactory<byte[], byte[]> containerFactory;
+		private final Path directory;
+		private final Serializer<K> keySerializer;
+		private final Deserializer<K> keyDeserializer;
+		private final Deserializer<V> valueDeserializer;
+		private final List<StoreChangeListener<K, V>> listeners = new ArrayList<>();
+		private Function<V, K> keyExtractor;
+		private int checkpointRecords = 10_000;
+		private long checkpointIntervalNanos = TimeUnit.SECONDS.toNanos(30);
+		private MeterRegistry meterRegistry;
+
+		private Builder(String name, String topic, ConcurrentKafkaListenerContainerFactory<byte[], byte[]> containerFactory,
+		                Path directory, Serializer<K> keySerializer, Deserializer<K> keyDeserializer,
+		                Deserializer<V> valueDeserializer) {
+			this.name = name;
+			this.topic = topic;
+			this.containerFactory = containerFactory;
+			this.directory = directory;
+			this.keySerializer = keySerializer;
+			this.keyDeserializer = keyDeserializer;
+			this.valueDeserializer = valueDeserializer;
+		}
+
+		/**
+		 * @param keyExtractor 消息没有 key 时从值里取 key，返回 null 表示忽略这条消息
+		 */
+		public Builder<K, V> keyExtractor(Function<V, K> keyExtractor) {
+			this.keyExtractor = keyExtractor;
+			return this;
+		}
+
+		public Builder<K, V> listener(StoreChangeListener<K, V> listener) {
+			this.listeners.add(listener);
+			return this;
+		}
+
+		/**
+		 * @param checkpointRecords 累计多少条变化后保存检查点，越小重启时需要重新消费的消息越少
+		 */
+		public Builder<K, V> checkpointRecords(int checkpointRecords) {
+			this.checkpointRecords = checkpointRecords;
+			return this;
+		}
+
+		/**
+		 * @param checkpointInterval 有未保存的变化时，最长多久保存一次检查点
+		 */
+		public Builder<K, V> checkpointInterval(long checkpointInterval, TimeUnit unit) {
+			this.checkpointIntervalNanos = unit.toNanos(checkpointInterval);
+			return this;
+		}
+
+		public Builder<K, V> meterRegistry(MeterRegistry meterRegistry) {
+			this.meterRegistry = meterRegistry;
+			return this;
+		}
+
+		public CompactedTopicStore<K, V> build() {
+			if (name == null || topic == null || containerFactory == null || directory == null || keySerializer == null
+					|| keyDeserializer == null || valueDeserializer == null || listeners.contains(null)
+					|| checkpointRecords < 1 || checkpointIntervalNanos <= 0) {
+				throw new IllegalArgumentException("状态存储参数不合法");
+			}
+			return new CompactedTopicStore<>(this);
+		}
+	}
+}
@@ -0,0 +1,550 @@
+package cn.ting.kafkauser.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * 基于内存映射文件的键值表，数据和索引都在堆外，适合物化压缩主题（compacted topic）的最新状态
+ *
+ * 目录下的文件：
+ * - data-&lt;代&gt;：只追加的数据文件，每条记录为 [key 长度 int][value 长度 int，-1 表示删除][key][value]
+ * - index：开放寻址（线性探测）的哈希索引，每个槽 16 字节 [记录位置 + 1 long][key 哈希 int][保留 int]，0 表示空槽
+ * - index-&lt;序号&gt;.snap：检查点时刻的索引副本
+ * - checkpoint：检查点清单，记录数据文件的代和有效长度、索引副本、各分区的下一个位移，写临时文件后原子改名
+ *
+ * 数据文件只追加，截断到检查点记录的长度即可回到检查点时的状态；索引在原地修改，所以检查点时另存一份副本。
+ * 打开时截断数据文件、复制索引副本，再从检查点位移继续消费，启动耗时取决于索引大小和检查点之后的消息数，与主题历史长度无关。
+ *
+ * 覆盖写和删除会在数据文件里留下旧记录，检查点时如果有效数据不足一半，先把存活的记录重写到新一代数据文件再保存检查点。
+ * 删除的 key 在索引中保留槽位（指向删除记录），同样在重写时清理。
+ *
+ * 单线程写入、多线程读取，读写之间用读写锁隔离（扩容和重写会替换映射）。
+ * 单个数据文件不超过 2GB（一个 MappedByteBuffer 的上限）。
+ */
+@Slf4j
+public class MappedStateStore implements Closeable {
+
+	static final String CHECKPOINT_FILE = "checkpoint";
+	static final String INDEX_FILE = "index";
+
+	private static final int SLOT_SIZE = 16;
+	private static final int ENTRY_HEADER = 8;
+	private static final int MIN_INDEX_SLOTS = 1024;
+	private static final long MIN_DATA_SIZE = 1 << 20;
+	private static final long MAX_DATA_SIZE = Integer.MAX_VALUE;
+	// 数据文件小于这个大小时不重写，避免频繁重写小文件
+	private static final long MIN_COMPACT_SIZE = 4 << 20;
+
+	private final Path directory;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private FileChannel dataChannel;
+	private MappedByteBuffer data;
+	private FileChannel indexChannel;
+	private MappedByteBuffer index;
+
+	private long generation;
+	private long checkpointSequence;
+	private int dataLength;
+	private int slotMask;
+	private int usedSlots;
+	private int liveEntries;
+	private long liveBytes;
+	private Map<TopicPartition, Long> offsets;
+
+	private MappedStateStore(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * 打开目录下的存储，有检查点时恢复到检查点的状态，否则创建空存储
+	 *
+	 * @param directory 存储目录，不存在时创建
+	 */
+	public static MappedStateStore open(Path directory) {
+		MappedStateStore store = new MappedStateStore(directory);
+		try {
+			Files.createDirectories(directory);
+			if (!store.restore()) {
+				store.reset();
+			}
+		} catch (IOException e) {
+			store.close();
+			throw new UncheckedIOException("打开状态存储失败: " + directory, e);
+		}
+		return store;
+	}
+
+	/**
+	 * @return 检查点记录的各分区下一个待消费位移，没有检查点时为空
+	 */
+	public Map<TopicPartition, Long> offsets() {
+		return offsets;
+	}
+
+	/**
+	 * @return 存活的 key 数量
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return liveEntries;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return key 对应的值（复制到堆上），不存在或已删除时返回 null
+	 */
+	public byte[] get(byte[] key) {
+		int hash = hash(key);
+		lock.readLock().lock();
+		try {
+			int slot = findSlot(key, hash);
+			long ref = index.getLong(slot * SLOT_SIZE);
+			if (ref == 0) {
+				return null;
+			}
+			int position = (int) (ref - 1);
+			int valueLength = data.getInt(position + 4);
+			if (valueLength < 0) {
+				return null;
+			}
+			byte[] value = new byte[valueLength];
+			ByteBuffer view = data.duplicate();
+			view.position(position + ENTRY_HEADER + key.length);
+			view.get(value);
+			return value;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * 写入或删除一个 key，只能由一个线程调用
+	 *
+	 * @param value 新值，null 表示删除
+	 * @return 值是否有变化，与当前值相同或删除不存在的 key 时返回 false 且不写入
+	 */
+	public boolean put(byte[] key, byte[] value) {
+		int hash = hash(key);
+		lock.writeLock().lock();
+		try {
+			int slot = findSlot(key, hash);
+			int slotOffset = slot * SLOT_SIZE;
+			long ref = index.getLong(slotOffset);
+			int oldSize = -1;
+			if (ref != 0) {
+				int position = (int) (ref - 1);
+				int oldValueLength = data.getInt(position + 4);
+				if (oldValueLength >= 0) {
+					if (value != null && valueEquals(position + ENTRY_HEADER + key.length, oldValueLength, value)) {
+						return false;
+					}
+					oldSize = ENTRY_HEADER + key.length + oldValueLength;
+				} else if (value == null) {
+					return false;
+				}
+			} else if (value == null) {
+				return false;
+			}
+
+			int position = append(key, value);
+			index.putLong(slotOffset, position + 1L);
+			index.putInt(slotOffset + 8, hash);
+			if (oldSize >= 0) {
+				liveBytes -= oldSize;
+				liveEntries--;
+			}
+			if (value != null) {
+				liveBytes += ENTRY_HEADER + key.length + value.length;
+				liveEntries++;
+			}
+			if (ref == 0 && ++usedSlots * 2 > slotMask + 1) {
+				resizeIndex((slotMask + 1) * 2);
+			}
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException("写入状态存储失败: " + directory, e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 保存检查点：有效数据不足一半时先重写数据文件，再落盘数据、保存索引副本，最后原子替换检查点清单
+	 *
+	 * @param offsets 已写入存储的消息之后的下一个位移，恢复后从这里继续消费
+	 */
+	public void checkpoint(Map<TopicPartition, Long> offsets) {
+		lock.writeLock().lock();
+		try {
+			if (dataLength > MIN_COMPACT_SIZE && liveBytes * 2 < dataLength) {
+				compact();
+			}
+			data.force();
+			String snapshot = INDEX_FILE + "-" + (++checkpointSequence) + ".snap";
+			writeSnapshot(directory.resolve(snapshot));
+
+			Properties manifest = new Properties();
+			manifest.setProperty("generation", Long.toString(generation));
+			manifest.setProperty("sequence", Long.toString(checkpointSequence));
+			manifest.setProperty("dataLength", Integer.toString(dataLength));
+			manifest.setProperty("indexSnapshot", snapshot);
+			manifest.setProperty("indexSlots", Integer.toString(slotMask + 1));
+			manifest.setProperty("usedSlots", Integer.toString(usedSlots));
+			manifest.setProperty("liveEntries", Integer.toString(liveEntries));
+			manifest.setProperty("liveBytes", Long.toString(liveBytes));
+			offsets.forEach((partition, offset) ->
+					manifest.setProperty("offset." + partition.topic() + "." + partition.partition(), offset.toString()));
+			Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			     OutputStream out = Channels.newOutputStream(channel)) {
+				manifest.store(out, null);
+				out.flush();
+				channel.force(true);
+			}
+			Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			this.offsets = Collections.unmodifiableMap(new HashMap<>(offsets));
+			deleteStale(snapshot);
+		} catch (IOException e) {
+			throw new UncheckedIOException("保存状态存储检查点失败: " + directory, e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 关闭文件通道，未保存检查点的写入在下次打开时丢弃并从检查点位移重新消费
+	 */
+	@Override
+	public void close() {
+		lock.writeLock().lock();
+		try {
+			closeQuietly(dataChannel);
+			closeQuietly(indexChannel);
+			dataChannel = null;
+			indexChannel = null;
+			data = null;
+			index = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private boolean restore() throws IOException {
+		Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+		if (!Files.exists(checkpoint)) {
+			return false;
+		}
+		Properties manifest = new Properties();
+		try (InputStream in = Files.newInputStream(checkpoint)) {
+			manifest.load(in);
+		}
+		long restoredGeneration;
+		Path snapshot;
+		int restoredLength;
+		int slots;
+		try {
+			restoredGeneration = Long.parseLong(manifest.getProperty("generation"));
+			snapshot = directory.resolve(manifest.getProperty("indexSnapshot"));
+			restoredLength = Integer.parseInt(manifest.getProperty("dataLength"));
+			slots = Integer.parseInt(manifest.getProperty("indexSlots"));
+		} catch (RuntimeException e) {
+			log.warn("状态存储 {} 的检查点无法解析，丢弃后重新消费全部数据", directory, e);
+			return false;
+		}
+		Path dataFile = dataFile(restoredGeneration);
+		if (!Files.exists(dataFile) || Files.size(dataFile) < restoredLength
+				|| !Files.exists(snapshot) || Files.size(snapshot) != (long) slots * SLOT_SIZE) {
+			log.warn("状态存储 {} 的检查点文件不完整，丢弃后重新消费全部数据", directory);
+			return false;
+		}
+
+		this.generation = restoredGeneration;
+		this.checkpointSequence = Long.parseLong(manifest.getProperty("sequence"));
+		this.dataLength = restoredLength;
+		this.slotMask = slots - 1;
+		this.usedSlots = Integer.parseInt(manifest.getProperty("usedSlots"));
+		this.liveEntries = Integer.parseInt(manifest.getProperty("liveEntries"));
+		this.liveBytes = Long.parseLong(manifest.getProperty("liveBytes"));
+		Map<TopicPartition, Long> restoredOffsets = new HashMap<>();
+		for (String name : manifest.stringPropertyNames()) {
+			if (name.startsWith("offset.")) {
+				int dot = name.lastIndexOf('.');
+				restoredOffsets.put(new TopicPartition(name.substring("offset.".length(), dot),
+						Integer.parseInt(name.substring(dot + 1))), Long.parseLong(manifest.getProperty(name)));
+			}
+		}
+		this.offsets = Collections.unmodifiableMap(restoredOffsets);
+
+		// 丢弃检查点之后追加的记录，索引换回检查点时的副本
+		this.dataChannel = FileChannel.open(dataFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		dataChannel.truncate(restoredLength);
+		this.data = dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(MIN_DATA_SIZE, capacityFor(restoredLength)));
+		Files.copy(snapshot, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING);
+		this.indexChannel = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		this.index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) slots * SLOT_SIZE);
+		log.info("状态存储 {} 从检查点恢复: {} 个 key, 数据 {} 字节, 位移 {}", directory, liveEntries, dataLength, offsets);
+		return true;
+	}
+
+	private void reset() throws IOException {
+		close();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				if (isStoreFile(file.getFileName().toString())) {
+					Files.delete(file);
+				}
+			}
+		}
+		this.generation = 0;
+		this.checkpointSequence = 0;
+		this.dataLength = 0;
+		this.usedSlots = 0;
+		this.liveEntries = 0;
+		this.liveBytes = 0;
+		this.offsets = Collections.emptyMap();
+		this.dataChannel = FileChannel.open(dataFile(generation), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		this.data = dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, MIN_DATA_SIZE);
+		Path indexFile = directory.resolve(INDEX_FILE);
+		this.indexChannel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		this.index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) MIN_INDEX_SLOTS * SLOT_SIZE);
+		this.slotMask = MIN_INDEX_SLOTS - 1;
+	}
+
+	/**
+	 * @return key 所在的槽，不存在时返回应插入的空槽
+	 */
+	private int findSlot(byte[] key, int hash) {
+		int slot = hash & slotMask;
+		while (true) {
+			int slotOffset = slot * SLOT_SIZE;
+			long ref = index.getLong(slotOffset);
+			if (ref == 0 || (index.getInt(slotOffset + 8) == hash && keyEquals((int) (ref - 1), key))) {
+				return slot;
+			}
+			slot = (slot + 1) & slotMask;
+		}
+	}
+
+	private boolean keyEquals(int position, byte[] key) {
+		if (data.getInt(position) != key.length) {
+			return false;
+		}
+		int start = position + ENTRY_HEADER;
+		for (int i = 0; i < key.length; i++) {
+			if (data.get(start + i) != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean valueEquals(int start, int length, byte[] value) {
+		if (length != value.length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (data.get(start + i) != value[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int append(byte[] key, byte[] value) throws IOException {
+		long size = (long) ENTRY_HEADER + key.length + (value == null ? 0 : value.length);
+		if (dataLength + size > data.capacity()) {
+			if (dataLength + size > MAX_DATA_SIZE) {
+				throw new IllegalStateException("状态存储数据文件超过 2GB: " + directory);
+			}
+			data = dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacityFor(dataLength + size));
+		}
+		int position = dataLength;
+		data.position(position);
+		data.putInt(key.length);
+		data.putInt(value == null ? -1 : value.length);
+		data.put(key);
+		if (value != null) {
+			data.put(value);
+		}
+		dataLength = data.position();
+		return position;
+	}
+
+	private static long capacityFor(long length) {
+		long capacity = MIN_DATA_SIZE;
+		while (capacity < length) {
+			capacity *= 2;
+		}
+		return Math.min(capacity, MAX_DATA_SIZE);
+	}
+
+	private void resizeIndex(int slots) throws IOException {
+		Path temp = directory.resolve(INDEX_FILE + ".tmp");
+		FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		MappedByteBuffer resized = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) slots * SLOT_SIZE);
+		int mask = slots - 1;
+		for (int slot = 0; slot <= slotMask; slot++) {
+			long ref = index.getLong(slot * SLOT_SIZE);
+			if (ref != 0) {
+				int hash = index.getInt(slot * SLOT_SIZE + 8);
+				int target = hash & mask;
+				while (resized.getLong(target * SLOT_SIZE) != 0) {
+					target = (target + 1) & mask;
+				}
+				resized.putLong(target * SLOT_SIZE, ref);
+				resized.putInt(target * SLOT_SIZE + 8, hash);
+			}
+		}
+		closeQuietly(indexChannel);
+		Files.move(temp, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING);
+		this.indexChannel = channel;
+		this.index = resized;
+		this.slotMask = mask;
+	}
+
+	/**
+	 * 把存活的记录重写到下一代数据文件，同时重建索引；旧数据文件在新检查点保存后删除
+	 */
+	private void compact() throws IOException {
+		long nextGeneration = generation + 1;
+		FileChannel channel = FileChannel.open(dataFile(nextGeneration), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		MappedByteBuffer compacted = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacityFor(liveBytes));
+		int slots = MIN_INDEX_SLOTS;
+		while (slots < liveEntries * 2L + 2) {
+			slots *= 2;
+		}
+		Path indexTemp = directory.resolve(INDEX_FILE + ".tmp");
+		FileChannel newIndexChannel = FileChannel.open(indexTemp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		MappedByteBuffer newIndex = newIndexChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) slots * SLOT_SIZE);
+		int mask = slots - 1;
+		ByteBuffer source = data.duplicate();
+		for (int slot = 0; slot <= slotMask; slot++) {
+			long ref = index.getLong(slot * SLOT_SIZE);
+			if (ref == 0) {
+				continue;
+			}
+			int position = (int) (ref - 1);
+			int valueLength = data.getInt(position + 4);
+			if (valueLength < 0) {
+				continue;
+			}
+			int size = ENTRY_HEADER + data.getInt(position) + valueLength;
+			int target = compacted.position();
+			source.limit(position + size).position(position);
+			compacted.put(source);
+			source.limit(source.capacity());
+			int hash = index.getInt(slot * SLOT_SIZE + 8);
+			int targetSlot = hash & mask;
+			while (newIndex.getLong(targetSlot * SLOT_SIZE) != 0) {
+				targetSlot = (targetSlot + 1) & mask;
+			}
+			newIndex.putLong(targetSlot * SLOT_SIZE, target + 1L);
+			newIndex.putInt(targetSlot * SLOT_SIZE + 8, hash);
+		}
+		log.info("状态存储 {} 重写数据文件: {} -> {} 字节", directory, dataLength, compacted.position());
+
+		closeQuietly(dataChannel);
+		closeQuietly(indexChannel);
+		Files.move(indexTemp, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING);
+		this.dataChannel = channel;
+		this.data = compacted;
+		this.dataLength = compacted.position();
+		this.indexChannel = newIndexChannel;
+		this.index = newIndex;
+		this.slotMask = mask;
+		this.usedSlots = liveEntries;
+		this.generation = nextGeneration;
+	}
+
+	private void writeSnapshot(Path snapshot) throws IOException {
+		Path temp = directory.resolve(snapshot.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer source = index.duplicate();
+			source.clear();
+			while (source.hasRemaining()) {
+				channel.write(source);
+			}
+			channel.force(true);
+		}
+		Files.move(temp, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * 删除不再被检查点引用的索引副本和旧数据文件
+	 */
+	private void deleteStale(String snapshot) throws IOException {
+		String currentData = dataFile(generation).getFileName().toString();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				if (isStoreFile(name) && !name.equals(snapshot) && !name.equals(currentData)
+						&& !name.equals(CHECKPOINT_FILE) && !name.equals(INDEX_FILE)) {
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+	}
+
+	private static boolean isStoreFile(String name) {
+		return name.equals(CHECKPOINT_FILE) || name.startsWith(INDEX_FILE) || name.startsWith("data-")
+				|| name.endsWith(".tmp");
+	}
+
+	private Path dataFile(long generation) {
+		return directory.resolve("data-" + generation);
+	}
+
+	static int hash(byte[] key) {
+		int h = 1;
+		for (byte b : key) {
+			h = 31 * h + b;
+		}
+		// 低位参与取模，先把高位扩散下来
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		return h;
+	}
+
+	private static void closeQuietly(FileChannel channel) {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				log.warn("关闭状态存储文件失败", e);
+			}
+		}
+	}
+}
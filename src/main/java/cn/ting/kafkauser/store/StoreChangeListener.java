@@ -0,0 +1,18 @@
+package cn.ting.kafkauser.store;
+
+/**
+ * 状态存储中某个 key 的值发生变化时回调
+ *
+ * 在消费线程上调用，写入存储之后、保存检查点之前；重启后从检查点位移重新消费的消息会再次回调，处理逻辑需要幂等。
+ * 值没有变化（与当前值相同）的消息不回调。
+ */
+@FunctionalInterface
+public interface StoreChangeListener<K, V> {
+
+	/**
+	 * @param key 变化的 key
+	 * @param oldValue 旧值，新增时为 null
+	 * @param newValue 新值，删除（墓碑消息）时为 null
+	 */
+	void onChange(K key, V oldValue, V newValue);
+}
@@ -0,0 +1,47 @@
+package cn.ting.kafkauser.store;
+
+import cn.ting.kafkauser.entity.User;
+import cn.ting.kafkauser.serialization.UserBinaryDeserializer;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+
+/**
+ * 本地状态存储
+ *
+ * - user-topic 物化为 用户名 → 最新 User 的本地表，存放在 kafka.store.dir/user 下；生产者不带 key 发送时按 User 的 name 取 key
+ * - 每 kafka.store.checkpoint-records 条变化或 kafka.store.checkpoint-interval-ms 毫秒保存一次检查点
+ */
+@Configuration
+public class StoreConfig {
+
+	@Value("${kafka.store.dir:data/store}")
+	private String directory;
+
+	@Value("${kafka.store.checkpoint-records:10000}")
+	private int checkpointRecords;
+
+	@Value("${kafka.store.checkpoint-interval-ms:30000}")
+	private long checkpointIntervalMillis;
+
+	@Bean
+	public CompactedTopicStore<String, User> userStateStore(
+			@Qualifier("rawBatchContainerFactory")
+			ConcurrentKafkaListenerContainerFactory<byte[], byte[]> rawBatchContainerFactory,
+			MeterRegistry meterRegistry) {
+		return CompactedTopicStore.builder("user", "user-topic", rawBatchContainerFactory, Paths.get(directory, "user"),
+						new StringSerializer(), new StringDeserializer(), new UserBinaryDeserializer())
+				.keyExtractor(User::getName)
+				.checkpointRecords(checkpointRecords)
+				.checkpointInterval(checkpointIntervalMillis, TimeUnit.MILLISECONDS)
+				.meterRegistry(meterRegistry)
+				.build();
+	}
+}
@@ -0,0 +1,221 @@
+package cn.ting.kafkauser.tap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * 消息旁路观测
+ *
+ * 监听器和生产者在热路径上只做采样判断和一次无锁入队，不做任何控制台 I/O；
+ * 后台线程从环形缓冲区取出记录，截断消息体后统一写到名为 record-tap 的 logger。缓冲区满时丢弃并计数，不阻塞业务线程。
+ *
+ * 采样率、topic 过滤和消息体截断长度都可以在运行时修改：通过 setter，
+ * 或在 spring.jmx.enabled=true 时通过 JMX（kafkaUser:name=recordTap）。
+ */
+@Slf4j(topic = "record-tap")
+@Component
+@ManagedResource(objectName = "kafkaUser:name=recordTap")
+public class RecordTap {
+
+	private final TapRingBuffer buffer;
+
+	private volatile double sampleRate;
+	// 为空时不过滤
+	private volatile Set<String> topics;
+	private volatile int maxPayloadLength;
+
+	private volatile boolean running = true;
+	private Thread drainer;
+	private long reportedDropped;
+	private long lastDropReportMillis;
+
+	public RecordTap(@Value("${kafka.tap.buffer-size:8192}") int bufferSize,
+	                 @Value("${kafka.tap.sample-rate:1.0}") double sampleRate,
+	                 @Value("${kafka.tap.topics:}") List<String> topics,
+	                 @Value("${kafka.tap.max-payload-length:256}") int maxPayloadLength) {
+		this.buffer = new TapRingBuffer(bufferSize);
+		setSampleRate(sampleRate);
+		setTopics(topics);
+		setMaxPayloadLength(maxPayloadLength);
+	}
+
+	@PostConstruct
+	public void start() {
+		drainer = new Thread(this::drainLoop, "record-tap");
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+
+	/**
+	 * 记录一条消费到的消息
+	 *
+	 * @param source 来源，一般是监听器名称
+	 * @param record 消息
+	 */
+	public void record(String source, ConsumerRecord<?, ?> record) {
+		if (sampled(record.topic())) {
+			buffer.offer(new TapEvent(source, record.topic(), record.partition(), record.offset(),
+					record.key(), record.value()));
+		}
+	}
+
+	/**
+	 * 记录一条发送的消息，分区和位移未知
+	 *
+	 * @param source 来源，一般是生产者名称
+	 * @param topic 目标 topic
+	 * @param key 消息 key
+	 * @param value 消息体
+	 */
+	public void sent(String source, String topic, Object key, Object value) {
+		if (sampled(topic)) {
+			buffer.offer(new TapEvent(source, topic, -1, -1, key, value));
+		}
+	}
+
+	private boolean sampled(String topic) {
+		double rate = sampleRate;
+		if (rate <= 0) {
+			return false;
+		}
+		Set<String> filter = topics;
+		if (!filter.isEmpty() && !filter.contains(topic)) {
+			return false;
+		}
+		return rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate;
+	}
+
+	private void drainLoop() {
+		while (running) {
+			if (drainOnce() == 0) {
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+			}
+		}
+		drainOnce();
+	}
+
+	/**
+	 * 取出缓冲区里当前的所有记录并写日志
+	 *
+	 * @return 取出的条数
+	 */
+	int drainOnce() {
+		int count = 0;
+		TapEvent event;
+		while ((event = buffer.poll()) != null) {
+			write(event);
+			count++;
+		}
+		long dropped = buffer.dropped();
+		// 丢弃告警最多每秒输出一次
+		if (dropped > reportedDropped && System.currentTimeMillis() - lastDropReportMillis >= 1000) {
+			log.warn("缓冲区已满，累计丢弃 {} 条采样记录", dropped);
+			reportedDropped = dropped;
+			lastDropReportMillis = System.currentTimeMillis();
+		}
+		return count;
+	}
+
+	private void write(TapEvent event) {
+		if (event.offset < 0) {
+			log.info("[{}] 发送 {} key={} value={}", event.source, event.topic, event.key, truncate(event.value));
+		} else {
+			log.info("[{}] {}-{}@{} key={} value={}", event.source, event.topic, event.partition, event.offset,
+					event.key, truncate(event.value));
+		}
+	}
+
+	private String truncate(Object value) {
+		if (value == null) {
+			return null;
+		}
+		String text = value instanceof byte[] ? "byte[" + ((byte[]) value).length + "]" : value.toString();
+		int max = maxPayloadLength;
+		return text.length() <= max ? text : text.substring(0, max) + "...(" + text.length() + ")";
+	}
+
+	@ManagedAttribute(description = "采样率，0 关闭，1 全部记录")
+	public double getSampleRate() {
+		return sampleRate;
+	}
+
+	@ManagedAttribute
+	public void setSampleRate(double sampleRate) {
+		if (sampleRate < 0 || sampleRate > 1) {
+			throw new IllegalArgumentException("采样率必须在 0 到 1 之间: " + sampleRate);
+		}
+		this.sampleRate = sampleRate;
+	}
+
+	@ManagedAttribute(description = "只记录这些 topic，逗号分隔，为空时记录全部")
+	public String getTopicFilter() {
+		return String.join(",", topics);
+	}
+
+	@ManagedAttribute
+	public void setTopicFilter(String topics) {
+		setTopics(topics == null || topics.trim().isEmpty()
+				? Collections.emptyList() : Arrays.asList(topics.split(",")));
+	}
+
+	public void setTopics(List<String> topics) {
+		Set<String> filter = new HashSet<>();
+		for (String topic : topics) {
+			if (!topic.trim().isEmpty()) {
+				filter.add(topic.trim());
+			}
+		}
+		this.topics = Collections.unmodifiableSet(filter);
+	}
+
+	@ManagedAttribute(description = "消息体最多输出的字符数")
+	public int getMaxPayloadLength() {
+		return maxPayloadLength;
+	}
+
+	@ManagedAttribute
+	public void setMaxPayloadLength(int maxPayloadLength) {
+		if (maxPayloadLength <= 0) {
+			throw new IllegalArgumentException("截断长度必须大于 0: " + maxPayloadLength);
+		}
+		this.maxPayloadLength = maxPayloadLength;
+	}
+
+	@ManagedAttribute(description = "缓冲区满时累计丢弃的记录数")
+	public long getDroppedCount() {
+		return buffer.dropped();
+	}
+
+	@ManagedAttribute(description = "缓冲区里待输出的记录数")
+	public int getPendingCount() {
+		return buffer.size();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		running = false;
+		if (drainer != null) {
+			LockSupport.unpark(drainer);
+			try {
+				drainer.join(TimeUnit.SECONDS.toMillis(5));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		log.info("record-tap 已关闭，累计丢弃 {} 条", buffer.dropped());
+	}
+}
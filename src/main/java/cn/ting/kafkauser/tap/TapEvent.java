@@ -0,0 +1,25 @@
+package cn.ting.kafkauser.tap;
+
+/**
+ * 放进环形缓冲区的一条采样记录，只保存引用，格式化和截断在后台线程完成
+ */
+final class TapEvent {
+
+	final String source;
+	final String topic;
+	final int partition;
+	final long offset;
+	final Object key;
+	final Object value;
+	final long timestamp;
+
+	TapEvent(String source, String topic, int partition, long offset, Object key, Object value) {
+		this.source = source;
+		this.topic = topic;
+		this.partition = partition;
+		this.offset = offset;
+		this.key = key;
+		this.value = value;
+		this.timestamp = System.currentTimeMillis();
+	}
+}
@@ -0,0 +1,76 @@
+package cn.ting.kafkauser.tap;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 多生产者、单消费者的无锁环形缓冲区
+ *
+ * 生产者用 CAS 占位后写入槽位，缓冲区满时直接丢弃并计数，从不阻塞调用线程；
+ * 消费者只有后台线程一个，先清空槽位再推进读位置，生产者据此判断槽位是否可以复用。
+ */
+final class TapRingBuffer {
+
+	private final AtomicReferenceArray<TapEvent> slots;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	// 只由消费线程写入
+	private volatile long head;
+
+	/**
+	 * @param capacity 容量，向上取整为 2 的幂
+	 */
+	TapRingBuffer(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+		this.slots = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+	}
+
+	/**
+	 * @return 是否写入成功，缓冲区满时返回 false
+	 */
+	boolean offer(TapEvent event) {
+		while (true) {
+			long t = tail.get();
+			if (t - head >= slots.length()) {
+				dropped.incrementAndGet();
+				return false;
+			}
+			if (tail.compareAndSet(t, t + 1)) {
+				slots.lazySet((int) (t & mask), event);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * 只能由消费线程调用
+	 *
+	 * @return 下一条记录，没有已发布的记录时返回 null
+	 */
+	TapEvent poll() {
+		long h = head;
+		int slot = (int) (h & mask);
+		TapEvent event = slots.get(slot);
+		if (event == null) {
+			// 为空，或者生产者已占位但还没写入
+			return null;
+		}
+		slots.lazySet(slot, null);
+		head = h + 1;
+		return event;
+	}
+
+	int size() {
+		return (int) Math.max(0, tail.get() - head);
+	}
+
+	int capacity() {
+		return slots.length();
+	}
+
+	long dropped() {
+		return dropped.get();
+	}
+}
@@ -0,0 +1,29 @@
+package cn.ting.kafkauser.transaction;
+
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * 事务管道的下游
+ *
+ * 必须以 read_committed 消费：只能看到已提交事务里的消息，被中止的事务和还没提交的事务都不可见，
+ * 因此每条输入消息在这里恰好出现一次。事务未提交前分区的读取停在最早未完成事务的位置（LSO），
+ * 端到端延迟至少包含管道的 max-delay-ms。
+ */
+@Slf4j
+@Service
+public class EnrichedConsumerDemo {
+
+	@KafkaListener(
+			topics = TransactionConfig.ENRICHED_TOPIC,
+			groupId = "auto-batch-enriched-group",
+			containerFactory = "batchContainerFactory",
+			properties = "isolation.level=read_committed"
+	)
+	public void consumeBatch(List<ConsumerRecord<String, String>> records) {
+		log.debug(">>>> 收到已提交的消息: {}条", records.size());
+	}
+}
@@ -0,0 +1,17 @@
+package cn.ting.kafkauser.transaction;
+
+import java.util.Collection;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+/**
+ * 把一条输入消息转换成零到多条输出消息
+ *
+ * 只做计算，不要自己发送或提交；输出由 {@link TransactionalPipeline} 和输入位移放在同一个事务里提交。
+ * 抛出异常表示这条消息无法转换，重试也不会成功，会被跳过。
+ */
+@FunctionalInterface
+public interface RecordTransformer<K, V, OK, OV> {
+
+	Collection<ProducerRecord<OK, OV>> transform(ConsumerRecord<K, V> record) throws Exception;
+}
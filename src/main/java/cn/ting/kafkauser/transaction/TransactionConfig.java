@@ -0,0 +1,60 @@
+package cn.ting.kafkauser.transaction;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ProducerFactory;
+
+/**
+ * 事务管道
+ *
+ * - auto-batch-topic 加上来源位置消息头后转发到 auto-batch-enriched，每 kafka.transaction.max-records 条
+ *   或 kafka.transaction.max-delay-ms 毫秒提交一个事务
+ * - 下游 {@link EnrichedConsumerDemo} 以 read_committed 消费
+ */
+@Configuration
+public class TransactionConfig {
+
+	static final String ENRICHED_TOPIC = "auto-batch-enriched";
+
+	@Value("${kafka.transaction.max-records:500}")
+	private int maxRecords;
+
+	@Value("${kafka.transaction.max-delay-ms:100}")
+	private long maxDelayMillis;
+
+	@Bean
+	public TransactionalPipeline<String, String, String, String> autoBatchEnrichPipeline(
+			@Qualifier("transactionalContainerFactory")
+			ConcurrentKafkaListenerContainerFactory<String, String> transactionalContainerFactory,
+			@Qualifier("transactionalProducerFactory") ProducerFactory<String, String> transactionalProducerFactory,
+			MeterRegistry meterRegistry) {
+		return TransactionalPipeline.builder("auto-batch-enrich", transactionalContainerFactory,
+						transactionalProducerFactory, TransactionConfig::enrich)
+				.topics("auto-batch-topic")
+				.groupId("auto-batch-enrich-group")
+				.maxRecords(maxRecords)
+				.maxDelay(maxDelayMillis, TimeUnit.MILLISECONDS)
+				.meterRegistry(meterRegistry)
+				.build();
+	}
+
+	static Collection<ProducerRecord<String, String>> enrich(ConsumerRecord<String, String> record) {
+		RecordHeaders headers = new RecordHeaders(record.headers().toArray());
+		headers.add("sourceTopic", record.topic().getBytes(StandardCharsets.UTF_8));
+		headers.add("sourcePartition", Integer.toString(record.partition()).getBytes(StandardCharsets.UTF_8));
+		headers.add("sourceOffset", Long.toString(record.offset()).getBytes(StandardCharsets.UTF_8));
+		return Collections.singletonList(
+				new ProducerRecord<>(ENRICHED_TOPIC, null, record.key(), record.value(), headers));
+	}
+}
@@ -0,0 +1,429 @@
+package cn.ting.kafkauser.transaction;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.SingletonBeanRegistry;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.BatchConsumerAwareMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties;
+
+/**
+ * 事务性的消费-转换-生产管道，输出消息和输入位移在同一个 Kafka 事务里提交（exactly-once）
+ *
+ * 每个事务包含多条输入消息，分摊事务协调器的开销：
+ * - 事务在第一条消息到达时开始，累计 maxRecords 条或开始后超过 maxDelay 时提交，可以跨多次 poll
+ * - 输入位移通过 sendOffsetsToTransaction 随事务提交，容器本身从不提交位移（AckMode.MANUAL 且从不确认）
+ * - 没有新消息时由容器空闲事件触发提交，空闲事件和 poll 都在消费线程上，事务状态按消费线程保存
+ * - 分区被回收前先提交当前事务；分区丢失时只能中止，由新的消费者从上次提交的位置重新处理
+ *
+ * 转换失败的消息跳过（位移照常提交）；发送或提交失败时中止事务，把涉及的分区 seek 回事务开始的位置，退避后重新处理。
+ * 下游必须以 isolation.level=read_committed 消费，否则会读到被中止事务里的消息。
+ *
+ * 容器以 tx-&lt;名称&gt; 注册为单例 bean，工厂关闭了自动启动时只创建不启动，由启动协调器统一启动。
+ */
+@Slf4j
+public class TransactionalPipeline<K, V, OK, OV> implements SmartLifecycle, BeanFactoryAware,
+		ApplicationListener<ListenerContainerIdleEvent>, BatchConsumerAwareMessageListener<K, V> {
+
+	// 失败后的退避时间上限，必须远小于 max.poll.interval.ms
+	private static final long MAX_BACKOFF_MILLIS = 5000;
+
+	private final String name;
+	private final ConcurrentKafkaListenerContainerFactory<K, V> containerFactory;
+	private final ProducerFactory<OK, OV> producerFactory;
+	private final RecordTransformer<K, V, OK, OV> transformer;
+	private final String[] topics;
+	private final String groupId;
+	private final int maxRecords;
+	private final long maxDelayNanos;
+
+	private final Timer commitTimer;
+	private final DistributionSummary recordsPerTransaction;
+	private final Counter aborts;
+
+	// 每个消费线程当前打开的事务
+	private final ThreadLocal<Group> current = new ThreadLocal<>();
+	private final ThreadLocal<Long> backoffMillis = ThreadLocal.withInitial(() -> 0L);
+
+	private volatile ConcurrentMessageListenerContainer<K, V> container;
+	private BeanFactory beanFactory;
+	private volatile boolean running;
+
+	private TransactionalPipeline(Builder<K, V, OK, OV> builder) {
+		this.name = builder.name;
+		this.containerFactory = builder.containerFactory;
+		this.producerFactory = builder.producerFactory;
+		this.transformer = builder.transformer;
+		this.topics = builder.topics;
+		this.groupId = builder.groupId;
+		this.maxRecords = builder.maxRecords;
+		this.maxDelayNanos = builder.maxDelayNanos;
+		MeterRegistry registry = builder.meterRegistry;
+		if (registry != null) {
+			this.commitTimer = Timer.builder("kafka.transaction.commit").tag("pipeline", name).register(registry);
+			this.recordsPerTransaction = DistributionSummary.builder("kafka.transaction.records")
+					.tag("pipeline", name).register(registry);
+			this.aborts = Counter.builder("kafka.transaction.aborts").tag("pipeline", name).register(registry);
+		} else {
+			this.commitTimer = null;
+			this.recordsPerTransaction = null;
+			this.aborts = null;
+		}
+	}
+
+	/**
+	 * @param name 管道名称，用于容器名称和指标
+	 * @param containerFactory 创建输入容器的工厂，消费者应为 read_committed 且关闭自动提交
+	 * @param producerFactory 设置了 transactionIdPrefix 的生产者工厂
+	 * @param transformer 转换逻辑
+	 */
+	public static <K, V, OK, OV> Builder<K, V, OK, OV> builder(String name,
+	                                                           ConcurrentKafkaListenerContainerFactory<K, V> containerFactory,
+	                                                           ProducerFactory<OK, OV> producerFactory,
+	                                                           RecordTransformer<K, V, OK, OV> transformer) {
+		return new Builder<>(name, containerFactory, producerFactory, transformer);
+	}
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+	}
+
+	@Override
+	public void onMessage(List<ConsumerRecord<K, V>> records, Consumer<?, ?> consumer) {
+		for (int i = 0; i < records.size(); i++) {
+			ConsumerRecord<K, V> record = records.get(i);
+			Group group = current.get();
+			if (group == null) {
+				group = begin();
+				if (group == null) {
+					rewind(consumer, Collections.emptyMap(), records.subList(i, records.size()));
+					return;
+				}
+			}
+			group.track(record);
+			Collection<ProducerRecord<OK, OV>> outputs;
+			try {
+				outputs = transformer.transform(record);
+			} catch (Exception e) {
+				log.error("管道 {} 跳过无法转换的消息: {}-{}@{}", name, record.topic(), record.partition(), record.offset(), e);
+				outputs = null;
+			}
+			try {
+				if (outputs != null) {
+					for (ProducerRecord<OK, OV> output : outputs) {
+						group.producer.send(output);
+					}
+				}
+			} catch (RuntimeException e) {
+				abort(consumer, group, records.subList(i + 1, records.size()), e);
+				return;
+			}
+			if (group.records >= maxRecords && !commit(consumer, records.subList(i + 1, records.size()))) {
+				return;
+			}
+		}
+		Group group = current.get();
+		if (group != null && group.expired()) {
+			commit(consumer, null);
+		}
+	}
+
+	/**
+	 * 一段时间没有新消息时提交未满的事务，空闲事件在消费线程上发布
+	 */
+	@Override
+	public void onApplicationEvent(ListenerContainerIdleEvent event) {
+		if (!isOwnContainer(event.getListenerId())) {
+			return;
+		}
+		if (current.get() != null) {
+			commit(event.getConsumer(), null);
+		}
+	}
+
+	@Override
+	public void start() {
+		ConcurrentMessageListenerContainer<K, V> created = containerFactory.createContainer(topics);
+		ContainerProperties properties = created.getContainerProperties();
+		properties.setGroupId(groupId);
+		properties.setAckMode(ContainerProperties.AckMode.MANUAL);
+		properties.setMessageListener(this);
+		properties.setConsumerRebalanceListener(new RebalanceListener());
+		long maxDelayMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(maxDelayNanos));
+		properties.setIdleEventInterval(maxDelayMillis);
+		properties.setPollTimeout(Math.min(properties.getPollTimeout(), maxDelayMillis));
+		created.setBeanName(containerName());
+		this.container = created;
+		if (beanFactory instanceof SingletonBeanRegistry) {
+			((SingletonBeanRegistry) beanFactory).registerSingleton(created.getBeanName(), created);
+		}
+		this.running = true;
+		if (created.isAutoStartup()) {
+			created.start();
+			log.info("事务管道 {} 已启动: {}, 消费组 {}, 每个事务最多 {} 条或 {}ms", name, String.join(",", topics),
+					groupId, maxRecords, maxDelayMillis);
+		}
+	}
+
+	@Override
+	public void stop() {
+		if (container != null) {
+			container.stop();
+		}
+		this.running = false;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	private String containerName() {
+		return "tx-" + name;
+	}
+
+	/**
+	 * 子容器的 id 是 容器名称-序号
+	 */
+	private boolean isOwnContainer(String listenerId) {
+		String prefix = containerName();
+		if (listenerId == null || !listenerId.startsWith(prefix)) {
+			return false;
+		}
+		String suffix = listenerId.substring(prefix.length());
+		return suffix.isEmpty() || suffix.matches("-\\d+");
+	}
+
+	/**
+	 * @return 新事务，开始失败时返回 null
+	 */
+	private Group begin() {
+		Producer<OK, OV> producer = producerFactory.createProducer();
+		try {
+			producer.beginTransaction();
+		} catch (RuntimeException e) {
+			log.error("管道 {} 开始事务失败", name, e);
+			closeQuietly(producer);
+			sleep(nextBackoff());
+			return null;
+		}
+		Group group = new Group(producer);
+		current.set(group);
+		return group;
+	}
+
+	/**
+	 * @param remaining 本批中还没处理的消息，提交失败时一起回退；为 null 表示本批已经处理完
+	 * @return 是否提交成功
+	 */
+	private boolean commit(Consumer<?, ?> consumer, List<ConsumerRecord<K, V>> remaining) {
+		Group group = current.get();
+		long start = System.nanoTime();
+		try {
+			group.producer.sendOffsetsToTransaction(group.nextOffsets, consumer.groupMetadata());
+			group.producer.commitTransaction();
+		} catch (RuntimeException e) {
+			abort(consumer, group, remaining, e);
+			return false;
+		}
+		current.remove();
+		closeQuietly(group.producer);
+		backoffMillis.set(0L);
+		if (commitTimer != null) {
+			commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			recordsPerTransaction.record(group.records);
+		}
+		return true;
+	}
+
+	private void abort(Consumer<?, ?> consumer, Group group, List<ConsumerRecord<K, V>> remaining, Exception cause) {
+		current.remove();
+		try {
+			group.producer.abortTransaction();
+		} catch (RuntimeException e) {
+			// 被隔离（fenced）的生产者不能中止，关闭后由工厂重新创建
+			log.warn("管道 {} 中止事务失败: {}", name, e.toString());
+		}
+		closeQuietly(group.producer);
+		if (aborts != null) {
+			aborts.increment();
+		}
+		Map<TopicPartition, Long> offsets = rewind(consumer, group.firstOffsets, remaining);
+		long delay = nextBackoff();
+		log.error("管道 {} 事务失败，已中止 {} 条消息，回退位移 {} 后 {}ms 重试", name, group.records, offsets, delay, cause);
+		sleep(delay);
+	}
+
+	/**
+	 * 把事务涉及的分区和本批剩余消息所在的分区 seek 回第一条未提交的消息
+	 */
+	private Map<TopicPartition, Long> rewind(Consumer<?, ?> consumer, Map<TopicPartition, Long> firstOffsets,
+	                                         List<ConsumerRecord<K, V>> remaining) {
+		Map<TopicPartition, Long> offsets = new HashMap<>(firstOffsets);
+		if (remaining != null) {
+			for (ConsumerRecord<K, V> record : remaining) {
+				offsets.putIfAbsent(new TopicPartition(record.topic(), record.partition()), record.offset());
+			}
+		}
+		offsets.forEach(consumer::seek);
+		return offsets;
+	}
+
+	private long nextBackoff() {
+		long next = backoffMillis.get() == 0 ? 100 : Math.min(MAX_BACKOFF_MILLIS, backoffMillis.get() * 2);
+		backoffMillis.set(next);
+		return next;
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void closeQuietly(Producer<OK, OV> producer) {
+		try {
+			producer.close(Duration.ZERO);
+		} catch (RuntimeException e) {
+			log.debug("关闭事务生产者失败", e);
+		}
+	}
+
+	private final class RebalanceListener implements ConsumerAwareRebalanceListener {
+
+		@Override
+		public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+			if (current.get() != null) {
+				commit(consumer, null);
+			}
+		}
+
+		@Override
+		public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+			Group group = current.get();
+			if (group == null) {
+				return;
+			}
+			current.remove();
+			try {
+				group.producer.abortTransaction();
+			} catch (RuntimeException e) {
+				log.warn("管道 {} 中止事务失败: {}", name, e.toString());
+			}
+			closeQuietly(group.producer);
+			log.warn("管道 {} 分区丢失，已中止未提交的 {} 条消息，由新的消费者重新处理", name, group.records);
+		}
+	}
+
+	private final class Group {
+		private final Producer<OK, OV> producer;
+		private final long startNanos = System.nanoTime();
+		private final Map<TopicPartition, Long> firstOffsets = new HashMap<>();
+		private final Map<TopicPartition, OffsetAndMetadata> nextOffsets = new HashMap<>();
+		private int records;
+
+		private Group(Producer<OK, OV> producer) {
+			this.producer = producer;
+		}
+
+		private void track(ConsumerRecord<?, ?> record) {
+			TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+			firstOffsets.putIfAbsent(partition, record.offset());
+			nextOffsets.put(partition, new OffsetAndMetadata(record.offset() + 1));
+			records++;
+		}
+
+		private boolean expired() {
+			return System.nanoTime() - startNanos >= maxDelayNanos;
+		}
+	}
+
+	public static class Builder<K, V, OK, OV> {
+		private final String name;
+		private final ConcurrentKafkaListenerContainerFactory<K, V> containerFactory;
+		private final ProducerFactory<OK, OV> producerFactory;
+		private final RecordTransformer<K, V, OK, OV> transformer;
+		private String[] topics;
+		private String groupId;
+		private int maxRecords = 500;
+		private long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(100);
+		private MeterRegistry meterRegistry;
+
+		private Builder(String name, ConcurrentKafkaListenerContainerFactory<K, V> containerFactory,
+		                ProducerFactory<OK, OV> producerFactory, RecordTransformer<K, V, OK, OV> transformer) {
+			this.name = name;
+			this.containerFactory = containerFactory;
+			this.producerFactory = producerFactory;
+			this.transformer = transformer;
+		}
+
+		public Builder<K, V, OK, OV> topics(String... topics) {
+			this.topics = topics;
+			return this;
+		}
+
+		public Builder<K, V, OK, OV> groupId(String groupId) {
+			this.groupId = groupId;
+			return this;
+		}
+
+		/**
+		 * @param maxRecords 一个事务最多包含的输入消息数
+		 */
+		public Builder<K, V, OK, OV> maxRecords(int maxRecords) {
+			this.maxRecords = maxRecords;
+			return this;
+		}
+
+		/**
+		 * @param maxDelay 事务开始后最长多久提交，也是下游能看到输出的最大额外延迟
+		 */
+		public Builder<K, V, OK, OV> maxDelay(long maxDelay, TimeUnit unit) {
+			this.maxDelayNanos = unit.toNanos(maxDelay);
+			return this;
+		}
+
+		public Builder<K, V, OK, OV> meterRegistry(MeterRegistry meterRegistry) {
+			this.meterRegistry = meterRegistry;
+			return this;
+		}
+
+		public TransactionalPipeline<K, V, OK, OV> build() {
+			if (name == null || containerFactory == null || producerFactory == null || transformer == null
+					|| topics == null || topics.length == 0 || groupId == null || maxRecords < 1 || maxDelayNanos <= 0) {
+				throw new IllegalArgumentException("事务管道参数不合法");
+			}
+			if (!producerFactory.transactionCapable()) {
+				throw new IllegalArgumentException("事务管道的生产者工厂必须设置 transactionIdPrefix");
+			}
+			return new TransactionalPipeline<>(this);
+		}
+	}
+}
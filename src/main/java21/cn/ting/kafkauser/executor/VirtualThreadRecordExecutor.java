@@ -0,0 +1,108 @@
+package cn.ting.kafkauser.executor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于虚拟线程的执行器，仅在 jdk21 profile 下编译
+ *
+ * 每条消息启动一个虚拟线程，阻塞在 I/O 上时不占用平台线程。
+ * 并发上限由信号量控制：许可在虚拟线程内部获取，消费线程提交任务时从不阻塞，
+ * 拿不到许可的虚拟线程只是挂起等待，开销很小。
+ */
+public class VirtualThreadRecordExecutor implements RecordExecutor {
+
+	private final ExecutorService executor;
+	private final ResizableSemaphore permits;
+	private int maxConcurrency;
+	private final AtomicInteger active = new AtomicInteger();
+
+	/**
+	 * @param maxConcurrency 同时执行的最大任务数
+	 * @param name 线程名前缀
+	 */
+	public VirtualThreadRecordExecutor(int maxConcurrency, String name) {
+		this.maxConcurrency = maxConcurrency;
+		this.permits = new ResizableSemaphore(maxConcurrency);
+		this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		executor.execute(() -> {
+			try {
+				permits.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			active.incrementAndGet();
+			try {
+				task.run();
+			} finally {
+				active.decrementAndGet();
+				permits.release();
+			}
+		});
+	}
+
+	@Override
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	@Override
+	public int getQueueSize() {
+		return permits.getQueueLength();
+	}
+
+	@Override
+	public synchronized int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	@Override
+	public synchronized void setMaxConcurrency(int maxConcurrency) {
+		if (maxConcurrency <= 0) {
+			throw new IllegalArgumentException("并发数必须大于 0: " + maxConcurrency);
+		}
+		int delta = maxConcurrency - this.maxConcurrency;
+		if (delta > 0) {
+			permits.release(delta);
+		} else if (delta < 0) {
+			// 正在执行的任务归还许可后才真正降下来
+			permits.reducePermits(-delta);
+		}
+		this.maxConcurrency = maxConcurrency;
+	}
+
+	@Override
+	public void shutdown(long timeout, TimeUnit unit) {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(timeout, unit)) {
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * 暴露 reducePermits，用于运行时缩小并发上限
+	 */
+	private static final class ResizableSemaphore extends Semaphore {
+		ResizableSemaphore(int permits) {
+			super(permits);
+		}
+
+		@Override
+		protected void reducePermits(int reduction) {
+			super.reducePermits(reduction);
+		}
+	}
+}
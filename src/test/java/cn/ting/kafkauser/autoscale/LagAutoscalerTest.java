@@ -0,0 +1,216 @@
+package cn.ting.kafkauser.autoscale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import cn.ting.kafkauser.backpressure.AdaptiveBackpressureController;
+import cn.ting.kafkauser.executor.PlatformRecordExecutor;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.DescribeTopicsResult;
+import org.apache.kafka.clients.admin.ListConsumerGroupOffsetsResult;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.MemberToRemove;
+import org.apache.kafka.clients.admin.RemoveMembersFromConsumerGroupOptions;
+import org.apache.kafka.clients.admin.RemoveMembersFromConsumerGroupResult;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.apache.kafka.common.internals.KafkaFutureImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+class LagAutoscalerTest {
+
+	private static final String LISTENER_ID = "manual-commit";
+	private static final String TOPIC = "manual-commit-demo-topic";
+	private static final int PARTITIONS = 2;
+
+	private final Admin admin = mock(Admin.class);
+	private final ScalingPolicy policy = mock(ScalingPolicy.class);
+	private final AtomicInteger concurrency = new AtomicInteger();
+	private final AtomicInteger restarts = new AtomicInteger();
+	private final AtomicInteger containerRestarts = new AtomicInteger();
+	private ConcurrentMessageListenerContainer<?, ?> container;
+	private PlatformRecordExecutor executor;
+	private AdaptiveBackpressureController backpressure;
+	private LagAutoscaler autoscaler;
+
+	@BeforeEach
+	public void setUp() {
+		container = mock(ConcurrentMessageListenerContainer.class);
+		when(container.getContainerProperties()).thenReturn(new ContainerProperties(TOPIC));
+		when(container.isRunning()).thenReturn(true);
+		when(container.getGroupId()).thenReturn("manual-commit-group");
+		when(container.getConcurrency()).thenAnswer(invocation -> concurrency.get());
+		doAnswer(invocation -> {
+			concurrency.set(invocation.getArgument(0));
+			return null;
+		}).when(container).setConcurrency(anyInt());
+		KafkaListenerEndpointRegistry registry = mock(KafkaListenerEndpointRegistry.class);
+		doAnswer(invocation -> container).when(registry).getListenerContainer(LISTENER_ID);
+
+		stubSample();
+		RemoveMembersFromConsumerGroupResult removed = mock(RemoveMembersFromConsumerGroupResult.class);
+		when(removed.all()).thenReturn(KafkaFuture.completedFuture(null));
+		when(admin.removeMembersFromConsumerGroup(anyString(), any(RemoveMembersFromConsumerGroupOptions.class)))
+				.thenReturn(removed);
+
+		executor = new PlatformRecordExecutor(2, "autoscale-test");
+		AutoscaleTarget target = AutoscaleTarget.consumersAndWorkers(LISTENER_ID, 1, 8, () -> executor, 2, 8, policy)
+				.afterRestart(() -> {
+					restarts.incrementAndGet();
+					backpressure.reset();
+				});
+		backpressure = AdaptiveBackpressureController.builder(() -> mock(MessageListenerContainer.class))
+				.minLimit(1)
+				.initialLimit(1)
+				.build();
+		// 容器的 start/stop 是 final 方法，不能 mock，重启只记录新的线程数
+		autoscaler = new LagAutoscaler(registry, Collections.emptyMap(), "inst", TimeUnit.HOURS.toMillis(1),
+				Collections.singletonList(target), config -> admin) {
+			@Override
+			void restartContainer(ConcurrentMessageListenerContainer<?, ?> restarted, int newConcurrency) {
+				containerRestarts.incrementAndGet();
+				restarted.setConcurrency(newConcurrency);
+			}
+		};
+	}
+
+	@AfterEach
+	public void tearDown() {
+		autoscaler.stop();
+		executor.shutdown(1, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * 扩容先加消费线程直到分区数，每次重启后通过 restartHook 重置背压暂停状态；到分区数后改为工作线程翻倍，不再重启
+	 */
+	@Test
+	public void scalesUpConsumersToPartitionCountThenWorkers() {
+		concurrency.set(1);
+		autoscaler.start();
+		decide(ScalingPolicy.Decision.UP);
+		backpressure.onDispatch(new TopicPartition(TOPIC, 0));
+		assertEquals(1, backpressure.getPausedPartitionCount());
+
+		autoscaler.tick();
+		autoscaler.tick();
+		assertEquals(2, concurrency.get());
+		assertEquals(1, restarts.get());
+		// 重启丢弃了容器上的暂停请求，背压控制器的暂停状态随之清空
+		assertEquals(0, backpressure.getPausedPartitionCount());
+		assertEquals(1, containerRestarts.get());
+		verify(policy, atLeastOnce()).changed(anyLong());
+
+		autoscaler.tick();
+		assertEquals(PARTITIONS, concurrency.get());
+		assertEquals(4, executor.getMaxConcurrency());
+		assertEquals(1, containerRestarts.get());
+		assertEquals(1, restarts.get());
+		verify(admin, never()).removeMembersFromConsumerGroup(anyString(), any(RemoveMembersFromConsumerGroupOptions.class));
+	}
+
+	/**
+	 * 缩容先把工作线程减半到下限，再减少消费线程并把多出的静态成员移出消费组
+	 */
+	@Test
+	public void scalesDownWorkersThenConsumersAndRemovesMember() {
+		concurrency.set(2);
+		executor.setMaxConcurrency(4);
+		autoscaler.start();
+		decide(ScalingPolicy.Decision.DOWN);
+
+		autoscaler.tick();
+		autoscaler.tick();
+		assertEquals(2, executor.getMaxConcurrency());
+		assertEquals(2, concurrency.get());
+		assertEquals(0, restarts.get());
+
+		autoscaler.tick();
+		assertEquals(1, concurrency.get());
+		assertEquals(1, restarts.get());
+		ArgumentCaptor<RemoveMembersFromConsumerGroupOptions> options =
+				ArgumentCaptor.forClass(RemoveMembersFromConsumerGroupOptions.class);
+		verify(admin).removeMembersFromConsumerGroup(eq("manual-commit-group"), options.capture());
+		assertEquals(Collections.singleton(new MemberToRemove("inst-" + LISTENER_ID + "-1")), options.getValue().members());
+	}
+
+	/**
+	 * 移除静态成员失败时仍然算一次调整：重启已经发生，开始冷却并通知 restartHook
+	 */
+	@Test
+	public void startsCooldownWhenMemberRemovalFails() {
+		concurrency.set(2);
+		autoscaler.start();
+		decide(ScalingPolicy.Decision.DOWN);
+		KafkaFutureImpl<Void> failed = new KafkaFutureImpl<>();
+		failed.completeExceptionally(new IllegalStateException("coordinator unavailable"));
+		RemoveMembersFromConsumerGroupResult removal = mock(RemoveMembersFromConsumerGroupResult.class);
+		when(removal.all()).thenReturn(failed);
+		when(admin.removeMembersFromConsumerGroup(anyString(), any(RemoveMembersFromConsumerGroupOptions.class)))
+				.thenReturn(removal);
+
+		autoscaler.tick();
+		autoscaler.tick();
+		assertEquals(1, concurrency.get());
+		assertEquals(1, restarts.get());
+		verify(policy, atLeastOnce()).changed(anyLong());
+	}
+
+	private void decide(ScalingPolicy.Decision decision) {
+		when(policy.decide(anyLong(), anyDouble(), anyDouble(), anyLong())).thenReturn(decision);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void stubSample() {
+		List<TopicPartitionInfo> infos = Arrays.asList(
+				new TopicPartitionInfo(0, null, Collections.emptyList(), Collections.emptyList()),
+				new TopicPartitionInfo(1, null, Collections.emptyList(), Collections.emptyList()));
+		DescribeTopicsResult described = mock(DescribeTopicsResult.class);
+		when(described.allTopicNames()).thenReturn(KafkaFuture.completedFuture(
+				Collections.singletonMap(TOPIC, new TopicDescription(TOPIC, false, infos))));
+		when(admin.describeTopics(any(Collection.class))).thenReturn(described);
+
+		Map<TopicPartition, OffsetAndMetadata> committed = new HashMap<>();
+		Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> ends = new HashMap<>();
+		for (int partition = 0; partition < PARTITIONS; partition++) {
+			committed.put(new TopicPartition(TOPIC, partition), new OffsetAndMetadata(100));
+			ends.put(new TopicPartition(TOPIC, partition), new ListOffsetsResult.ListOffsetsResultInfo(200, -1, Optional.empty()));
+		}
+		ListConsumerGroupOffsetsResult offsets = mock(ListConsumerGroupOffsetsResult.class);
+		when(offsets.partitionsToOffsetAndMetadata()).thenReturn(KafkaFuture.completedFuture(committed));
+		when(admin.listConsumerGroupOffsets(anyString())).thenReturn(offsets);
+		ListOffsetsResult listed = mock(ListOffsetsResult.class);
+		when(listed.all()).thenReturn(KafkaFuture.completedFuture(ends));
+		when(admin.listOffsets(anyMap())).thenReturn(listed);
+	}
+}
@@ -0,0 +1,63 @@
+package cn.ting.kafkauser.autoscale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class ScalingPolicyTest {
+
+	private final ScalingPolicy policy = ScalingPolicy.builder()
+			.scaleUpLag(1000)
+			.scaleDownLag(10)
+			.targetDrain(60, TimeUnit.SECONDS)
+			.upSamples(3)
+			.downSamples(5)
+			.cooldown(100, TimeUnit.SECONDS)
+			.build();
+
+	/**
+	 * 积压持续增长时连续三次采样后扩容，扩容后冷却期内保持
+	 */
+	@Test
+	public void scalesUpAfterConsecutiveSamplesThenCoolsDown() {
+		long now = 1_000_000;
+		assertEquals(ScalingPolicy.Decision.HOLD, policy.decide(5000, 100, 200, now));
+		assertEquals(ScalingPolicy.Decision.HOLD, policy.decide(6000, 100, 200, now += 10_000));
+		assertEquals(ScalingPolicy.Decision.UP, policy.decide(7000, 100, 200, now += 10_000));
+		policy.changed(now);
+
+		for (int i = 0; i < 9; i++) {
+			assertEquals(ScalingPolicy.Decision.HOLD, policy.decide(8000, 100, 200, now += 10_000));
+		}
+		assertEquals(ScalingPolicy.Decision.UP, policy.decide(8000, 100, 200, now += 10_000));
+	}
+
+	/**
+	 * 积压很大但能在目标时间内消化完时不扩容
+	 */
+	@Test
+	public void holdsWhenBacklogDrainsInTime() {
+		long now = 1_000_000;
+		for (int i = 0; i < 10; i++) {
+			// 净消费 100 条/秒，5000 条 50 秒消化完
+			assertEquals(ScalingPolicy.Decision.HOLD, policy.decide(5000, 300, 200, now += 10_000));
+		}
+	}
+
+	/**
+	 * 两个阈值之间既不扩容也不缩容，一次波动会打断连续计数
+	 */
+	@Test
+	public void hysteresisBandAndStreakReset() {
+		long now = 1_000_000;
+		for (int i = 0; i < 4; i++) {
+			policy.decide(0, 100, 100, now += 10_000);
+		}
+		assertEquals(ScalingPolicy.Decision.HOLD, policy.decide(500, 100, 100, now += 10_000));
+		for (int i = 0; i < 4; i++) {
+			assertEquals(ScalingPolicy.Decision.HOLD, policy.decide(0, 100, 100, now += 10_000));
+		}
+		assertEquals(ScalingPolicy.Decision.DOWN, policy.decide(0, 100, 100, now += 10_000));
+	}
+}
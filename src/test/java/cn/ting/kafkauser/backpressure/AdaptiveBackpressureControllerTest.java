@@ -0,0 +1,92 @@
+package cn.ting.kafkauser.backpressure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+class AdaptiveBackpressureControllerTest {
+
+	private final TopicPartition partition = new TopicPartition("manual-commit-demo-topic", 0);
+
+	/**
+	 * 在途达到上限时请求暂停，回落到恢复比例以下时请求恢复，且只请求一次
+	 */
+	@Test
+	public void pausesAtLimitAndResumesBelowRatio() {
+		MessageListenerContainer container = mock(MessageListenerContainer.class);
+		AdaptiveBackpressureController controller = AdaptiveBackpressureController.builder(() -> container)
+				.initialLimit(10)
+				.minLimit(10)
+				.resumeRatio(0.5)
+				.build();
+
+		for (int i = 0; i < 12; i++) {
+			controller.onDispatch(partition);
+		}
+		verify(container, times(1)).pausePartition(partition);
+
+		for (int i = 0; i < 6; i++) {
+			controller.onComplete();
+		}
+		verify(container, times(0)).resumePartition(partition);
+
+		controller.onComplete();
+		verify(container, times(1)).resumePartition(partition);
+		assertEquals(0, controller.getPausedPartitionCount());
+	}
+
+	/**
+	 * 容器重启丢弃了暂停请求，重置后在途仍超过上限时下一次派发重新请求暂停
+	 */
+	@Test
+	public void repausesAfterContainerRestart() {
+		MessageListenerContainer container = mock(MessageListenerContainer.class);
+		AdaptiveBackpressureController controller = AdaptiveBackpressureController.builder(() -> container)
+				.initialLimit(10)
+				.minLimit(10)
+				.build();
+
+		for (int i = 0; i < 10; i++) {
+			controller.onDispatch(partition);
+		}
+		verify(container, times(1)).pausePartition(partition);
+
+		controller.reset();
+		assertEquals(0, controller.getPausedPartitionCount());
+		controller.onDispatch(partition);
+		verify(container, times(2)).pausePartition(partition);
+		assertEquals(1, controller.getPausedPartitionCount());
+	}
+
+	/**
+	 * 排队时间超过目标时上限乘性下降
+	 */
+	@Test
+	public void shrinksLimitWhenQueueWaitExceedsTarget() {
+		AdaptiveBackpressureController controller = AdaptiveBackpressureController
+				.builder(() -> mock(MessageListenerContainer.class))
+				.initialLimit(100)
+				.minLimit(4)
+				.sampleWindow(5)
+				.targetQueueWait(1, TimeUnit.MILLISECONDS)
+				.build();
+
+		long longAgo = System.nanoTime() - TimeUnit.SECONDS.toNanos(1);
+		for (int i = 0; i < 5; i++) {
+			controller.onStart(longAgo);
+		}
+		assertEquals(75, controller.getLimit());
+
+		for (int i = 0; i < 50; i++) {
+			controller.onStart(longAgo);
+		}
+		assertTrue(controller.getLimit() >= 4 && controller.getLimit() < 75);
+	}
+}
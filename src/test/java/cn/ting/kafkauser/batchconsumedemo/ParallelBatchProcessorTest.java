@@ -0,0 +1,130 @@
+package cn.ting.kafkauser.batchconsumedemo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+
+class ParallelBatchProcessorTest {
+
+	/**
+	 * 按分区分组：同一分区的消息在同一个线程上按 offset 顺序处理，不同分区并行
+	 */
+	@Test
+	public void keepsOrderWithinPartition() {
+		ParallelBatchProcessor processor = new ParallelBatchProcessor(4, ParallelBatchProcessor.OrderingScope.PARTITION);
+		List<ConsumerRecord<String, String>> records = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			records.add(new ConsumerRecord<>("t", i % 4, i / 4, "k" + i, "v"));
+		}
+		Map<Integer, List<Long>> offsets = new ConcurrentHashMap<>();
+		Map<Integer, Set<String>> threads = new ConcurrentHashMap<>();
+
+		processor.process(records, record -> {
+			offsets.computeIfAbsent(record.partition(), p -> Collections.synchronizedList(new ArrayList<>()))
+					.add(record.offset());
+			threads.computeIfAbsent(record.partition(), p -> ConcurrentHashMap.newKeySet())
+					.add(Thread.currentThread().getName());
+		});
+		processor.shutdown();
+
+		assertEquals(4, offsets.size());
+		offsets.forEach((partition, seen) -> {
+			assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), seen, "分区 " + partition);
+			assertEquals(1, threads.get(partition).size(), "分区 " + partition + " 跨线程处理");
+		});
+	}
+
+	/**
+	 * 按 key 分组：同分区同 key 的消息保持顺序，同分区不同 key 之间并行
+	 */
+	@Test
+	public void groupsByKeyWithinPartition() throws InterruptedException {
+		ParallelBatchProcessor processor = new ParallelBatchProcessor(4, ParallelBatchProcessor.OrderingScope.KEY);
+		List<ConsumerRecord<String, String>> records = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			records.add(new ConsumerRecord<>("t", 0, i, i % 2 == 0 ? "a" : "b", "v"));
+		}
+		Map<String, List<Long>> offsets = new ConcurrentHashMap<>();
+		// 两个 key 的第一条消息互相等待，只有两组同时运行时才能通过
+		CountDownLatch bothStarted = new CountDownLatch(2);
+
+		processor.process(records, record -> {
+			if (record.offset() < 2) {
+				bothStarted.countDown();
+				await(bothStarted);
+			}
+			offsets.computeIfAbsent(record.key(), k -> Collections.synchronizedList(new ArrayList<>()))
+					.add(record.offset());
+		});
+		processor.shutdown();
+
+		assertEquals(0, bothStarted.getCount());
+		assertEquals(Arrays.asList(0L, 2L, 4L, 6L, 8L, 10L, 12L, 14L, 16L, 18L), offsets.get("a"));
+		assertEquals(Arrays.asList(1L, 3L, 5L, 7L, 9L, 11L, 13L, 15L, 17L, 19L), offsets.get("b"));
+	}
+
+	/**
+	 * 多组失败时报告批内位置最靠前的失败消息，失败所在组的后续消息不再处理，其他组照常完成
+	 */
+	@Test
+	public void reportsEarliestFailedIndex() {
+		ParallelBatchProcessor processor = new ParallelBatchProcessor(4, ParallelBatchProcessor.OrderingScope.PARTITION);
+		List<ConsumerRecord<String, String>> records = new ArrayList<>();
+		for (int i = 0; i < 12; i++) {
+			records.add(new ConsumerRecord<>("t", i % 3, i / 3, null, "v"));
+		}
+		IllegalStateException early = new IllegalStateException("early");
+		Set<Integer> processed = ConcurrentHashMap.newKeySet();
+
+		BatchListenerFailedException e = assertThrows(BatchListenerFailedException.class, () ->
+				processor.process(records, record -> {
+					int index = records.indexOf(record);
+					if (index == 4) {
+						throw early;
+					}
+					if (index == 8) {
+						// 等分区 1 先失败，确认最终报告的不是后发生的那个
+						sleep(50);
+						throw new IllegalStateException("late");
+					}
+					processed.add(index);
+				}));
+		processor.shutdown();
+
+		assertEquals(4, e.getIndex());
+		assertSame(early, e.getCause());
+		// 分区 0 全部完成；分区 1 停在下标 4；分区 2 停在下标 8
+		assertTrue(processed.containsAll(Arrays.asList(0, 3, 6, 9, 1, 2, 5)), processed.toString());
+		assertTrue(!processed.contains(7) && !processed.contains(10) && !processed.contains(11), processed.toString());
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			assertTrue(latch.await(5, TimeUnit.SECONDS), "另一组没有并行运行");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
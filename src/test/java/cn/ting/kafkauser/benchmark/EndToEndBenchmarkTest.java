@@ -0,0 +1,300 @@
+package cn.ting.kafkauser.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import cn.ting.kafkauser.backpressure.AdaptiveBackpressureController;
+import cn.ting.kafkauser.config.KafkaClientFactories;
+import cn.ting.kafkauser.config.KafkaClientProperties;
+import cn.ting.kafkauser.config.KafkaConfig;
+import cn.ting.kafkauser.dispatch.KeyOrderedDispatcher;
+import cn.ting.kafkauser.executor.PlatformRecordExecutor;
+import cn.ting.kafkauser.executor.RecordExecutor;
+import cn.ting.kafkauser.offset.OffsetTracker;
+import cn.ting.kafkauser.retry.FailureRouter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.listener.AcknowledgingMessageListener;
+import org.springframework.kafka.listener.BatchMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListener;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+
+/**
+ * 嵌入式 broker 上的端到端吞吐/顺序基准
+ *
+ * 每种消费方式使用 {@link KafkaConfig} 里真实的容器工厂（只把地址换成嵌入式 broker），
+ * 用同一套生产者参数发送固定数量的消息，统计 msgs/s 和发送到处理的延迟分位数，
+ * 校验不丢消息，并对承诺顺序的消费方式校验同 key 顺序。结果写入 JSON 文件便于对比回归。
+ *
+ * 标记为 benchmark，默认的 mvn test 不运行；运行：mvn -Pbenchmark test -Dbenchmark.messages=200000
+ * 可调参数：benchmark.messages、benchmark.keys、benchmark.payload-bytes、benchmark.output
+ */
+@EmbeddedKafka(partitions = EndToEndBenchmarkTest.PARTITIONS,
+		topics = {"e2e-single", "e2e-batch", "e2e-manual", "e2e-sort-1", "e2e-sort-2"})
+@Tag("benchmark")
+@Slf4j
+class EndToEndBenchmarkTest {
+
+	static final int PARTITIONS = 4;
+
+	private static final int MESSAGES = Integer.getInteger("benchmark.messages", 20_000);
+	private static final int KEYS = Integer.getInteger("benchmark.keys", 100);
+	private static final int PAYLOAD_BYTES = Integer.getInteger("benchmark.payload-bytes", 100);
+	private static final String OUTPUT = System.getProperty("benchmark.output", "target/benchmark/e2e-results.json");
+	private static final long TIMEOUT_SECONDS = 120;
+
+	private static final List<Map<String, Object>> RESULTS = new CopyOnWriteArrayList<>();
+
+	// 地址在每次运行前换成嵌入式 broker
+	private final KafkaConfig config = new KafkaConfig(
+			new KafkaClientFactories(Collections.emptyMap(), new KafkaClientProperties()));
+
+	/**
+	 * 单条消费，容器默认参数（与 KafkaMsg1~4 使用的 Spring Boot 默认容器工厂一致）
+	 */
+	@Test
+	public void singleRecord(EmbeddedKafkaBroker broker) throws Exception {
+		ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+		factory.setConsumerFactory(defaultConsumerFactory());
+		factory.setConcurrency(PARTITIONS);
+		Run run = new Run("single-record", "e2e-single", true);
+		run.execute(broker, factory, (MessageListener<String, String>) run::handle, null);
+	}
+
+	/**
+	 * 批量消费，batchContainerFactory
+	 */
+	@Test
+	public void batch(EmbeddedKafkaBroker broker) throws Exception {
+		Run run = new Run("batch", "e2e-batch", true);
+		run.execute(broker, config.autoCommitBatchContainerFactory(),
+				(BatchMessageListener<String, String>) records -> records.forEach(run::handle), null);
+	}
+
+	/**
+	 * 手动提交 + 线程池，与 ManualCommitConsumerDemo 相同的位移水位线和背压配置
+	 * 线程池内不保证同 key 顺序，只统计不校验
+	 */
+	@Test
+	public void manualCommitWithExecutor(EmbeddedKafkaBroker broker) throws Exception {
+		Run run = new Run("manual-commit-executor", "e2e-manual", false);
+		int poolSize = 8;
+		RecordExecutor executor = new PlatformRecordExecutor(poolSize, "e2e-manual");
+		OffsetTracker offsetTracker = new OffsetTracker();
+		AtomicReference<ConcurrentMessageListenerContainer<String, String>> container = new AtomicReference<>();
+		AdaptiveBackpressureController backpressure = AdaptiveBackpressureController.builder(container::get)
+				.initialLimit(poolSize * 4)
+				.minLimit(poolSize)
+				.maxLimit(poolSize * 16)
+				.targetQueueWait(2, TimeUnit.SECONDS)
+				.build();
+		AcknowledgingMessageListener<String, String> listener = (record, acknowledgment) -> {
+			long dispatchNanos = backpressure.onDispatch(new TopicPartition(record.topic(), record.partition()));
+			OffsetTracker.Ticket ticket = offsetTracker.register(record, acknowledgment);
+			executor.execute(() -> {
+				backpressure.onStart(dispatchNanos);
+				try {
+					run.handle(record);
+					ticket.complete();
+				} finally {
+					backpressure.onComplete();
+				}
+			});
+		};
+		run.execute(broker, config.manualCommitContainerFactory(), listener, container::set);
+		executor.shutdown(10, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * 顺序消费，与 sort-1 监听器一致：单个消费线程
+	 */
+	@Test
+	public void orderedSingleThread(EmbeddedKafkaBroker broker) throws Exception {
+		ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+		factory.setConsumerFactory(defaultConsumerFactory());
+		factory.setConcurrency(1);
+		Run run = new Run("ordered-sort-1", "e2e-sort-1", true);
+		run.execute(broker, factory, (MessageListener<String, String>) run::handle, null);
+	}
+
+	/**
+	 * 同 key 有序并行消费，与 sort-2 监听器一致
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void keyOrdered(EmbeddedKafkaBroker broker) throws Exception {
+		KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher("e2e-sort-2",
+				Runtime.getRuntime().availableProcessors(), 100, FailureRouter.builder(mock(KafkaOperations.class)).build());
+		ConcurrentKafkaListenerContainerFactory<String, String> factory = config.keyOrderedContainerFactory();
+		factory.setConcurrency(2);
+		Run run = new Run("key-ordered-sort-2", "e2e-sort-2", true);
+		run.execute(broker, factory, (AcknowledgingMessageListener<String, String>) (record, acknowledgment) ->
+				dispatcher.dispatch(record, acknowledgment, run::handle), null);
+		dispatcher.shutdown(10, TimeUnit.SECONDS);
+	}
+
+	@AfterAll
+	public static void writeResults() throws IOException {
+		File file = new File(OUTPUT);
+		file.getParentFile().mkdirs();
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("timestamp", System.currentTimeMillis());
+		report.put("messages", MESSAGES);
+		report.put("keys", KEYS);
+		report.put("payloadBytes", PAYLOAD_BYTES);
+		report.put("partitions", PARTITIONS);
+		report.put("scenarios", new ArrayList<>(RESULTS));
+		new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, report);
+	}
+
+	private static ConsumerFactory<String, String> defaultConsumerFactory() {
+		Map<String, Object> props = new HashMap<>();
+		props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+		props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+		return new DefaultKafkaConsumerFactory<>(props);
+	}
+
+	/**
+	 * 一次基准运行：发送、计数、统计延迟
+	 * 消息体格式：序号,发送时的 nanoTime,填充；key 为 key-(序号 % KEYS)，同 key 的序号递增
+	 */
+	private final class Run {
+		private final String scenario;
+		private final String topic;
+		private final boolean assertOrdering;
+
+		private final Histogram latency = new ConcurrentHistogram(TimeUnit.SECONDS.toNanos(60), 3);
+		private final AtomicIntegerArray seen = new AtomicIntegerArray(MESSAGES);
+		private final AtomicIntegerArray lastSeqByKey = new AtomicIntegerArray(KEYS);
+		private final AtomicLong duplicates = new AtomicLong();
+		private final AtomicLong outOfOrder = new AtomicLong();
+		private final AtomicLong lastReceiveNanos = new AtomicLong();
+		private final CountDownLatch received = new CountDownLatch(MESSAGES);
+
+		Run(String scenario, String topic, boolean assertOrdering) {
+			this.scenario = scenario;
+			this.topic = topic;
+			this.assertOrdering = assertOrdering;
+			for (int i = 0; i < KEYS; i++) {
+				lastSeqByKey.set(i, -1);
+			}
+		}
+
+		void handle(ConsumerRecord<String, String> record) {
+			long now = System.nanoTime();
+			String value = record.value();
+			int first = value.indexOf(',');
+			int index = Integer.parseInt(value.substring(0, first));
+			long sentNanos = Long.parseLong(value.substring(first + 1, value.indexOf(',', first + 1)));
+			latency.recordValue(Math.max(0, now - sentNanos));
+
+			if (seen.getAndSet(index, 1) == 1) {
+				duplicates.incrementAndGet();
+				return;
+			}
+			int seq = index / KEYS;
+			if (lastSeqByKey.getAndSet(index % KEYS, seq) >= seq) {
+				outOfOrder.incrementAndGet();
+			}
+			lastReceiveNanos.accumulateAndGet(now, Math::max);
+			received.countDown();
+		}
+
+		void execute(EmbeddedKafkaBroker broker, ConcurrentKafkaListenerContainerFactory<String, String> factory,
+		             Object listener,
+		             Consumer<ConcurrentMessageListenerContainer<String, String>> beforeStart)
+				throws Exception {
+			Map<String, Object> consumerOverrides = new HashMap<>();
+			consumerOverrides.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+			consumerOverrides.put(ConsumerConfig.GROUP_ID_CONFIG, topic + "-group");
+			consumerOverrides.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+			((DefaultKafkaConsumerFactory<?, ?>) factory.getConsumerFactory()).updateConfigs(consumerOverrides);
+
+			ConcurrentMessageListenerContainer<String, String> container = factory.createContainer(topic);
+			container.getContainerProperties().setMessageListener(listener);
+			if (beforeStart != null) {
+				beforeStart.accept(container);
+			}
+			container.start();
+			ContainerTestUtils.waitForAssignment(container, PARTITIONS);
+
+			DefaultKafkaProducerFactory<String, String> producerFactory =
+					(DefaultKafkaProducerFactory<String, String>) config.throughputProducerFactory();
+			producerFactory.updateConfigs(Collections.singletonMap(
+					ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()));
+			char[] padding = new char[PAYLOAD_BYTES];
+			Arrays.fill(padding, 'x');
+			String pad = new String(padding);
+
+			long start = System.nanoTime();
+			try (Producer<String, String> producer = producerFactory.createProducer()) {
+				for (int i = 0; i < MESSAGES; i++) {
+					producer.send(new ProducerRecord<>(topic, "key-" + (i % KEYS), i + "," + System.nanoTime() + "," + pad));
+				}
+				producer.flush();
+			}
+			boolean completed = received.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			container.stop();
+			producerFactory.destroy();
+
+			long elapsedNanos = (completed ? lastReceiveNanos.get() : System.nanoTime()) - start;
+			long delivered = MESSAGES - received.getCount();
+			Map<String, Object> result = new LinkedHashMap<>();
+			result.put("scenario", scenario);
+			result.put("delivered", delivered);
+			result.put("elapsedMs", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+			result.put("msgsPerSec", Math.round(delivered / (elapsedNanos / 1e9)));
+			result.put("latencyP50Ms", latency.getValueAtPercentile(50) / 1e6);
+			result.put("latencyP99Ms", latency.getValueAtPercentile(99) / 1e6);
+			result.put("latencyP999Ms", latency.getValueAtPercentile(99.9) / 1e6);
+			result.put("latencyMaxMs", latency.getMaxValue() / 1e6);
+			result.put("duplicates", duplicates.get());
+			result.put("outOfOrder", outOfOrder.get());
+			result.put("orderingAsserted", assertOrdering);
+			RESULTS.add(result);
+			log.info("{}", result);
+
+			assertEquals(MESSAGES, delivered, scenario + " 丢失消息");
+			if (assertOrdering) {
+				assertEquals(0, outOfOrder.get(), scenario + " 同 key 消息乱序");
+			}
+		}
+	}
+}
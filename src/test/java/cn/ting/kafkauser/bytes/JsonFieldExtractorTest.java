@@ -0,0 +1,89 @@
+package cn.ting.kafkauser.bytes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class JsonFieldExtractorTest {
+
+	private static final byte[] CANAL = bytes("{\"data\":[{\"id\":\"1\",\"table\":\"fake\"}],\"database\":\"shop\","
+			+ "\"meta\":{\"table\":\"nested\",\"pos\":{\"offset\":42}},\"isDdl\":false,\"table\":\"user\","
+			+ "\"note\":\"a\\\"b\",\"ts\":1700000000000,\"type\":\"UPDATE\",\"empty\":null}");
+
+	/**
+	 * 跳过数组和嵌套对象里的同名字段，只匹配指定层级的字段
+	 */
+	@Test
+	public void extractsTopLevelAndNestedFields() {
+		assertEquals("user", JsonFieldExtractor.of("table").text(CANAL));
+		assertEquals("nested", JsonFieldExtractor.of("meta.table").text(CANAL));
+		assertEquals("42", JsonFieldExtractor.of("meta.pos.offset").text(CANAL));
+		assertEquals("1700000000000", JsonFieldExtractor.of("ts").text(CANAL));
+		assertEquals("false", JsonFieldExtractor.of("isDdl").text(CANAL));
+		assertEquals("a\"b", JsonFieldExtractor.of("note").text(CANAL));
+
+		assertNull(JsonFieldExtractor.of("missing").text(CANAL));
+		assertNull(JsonFieldExtractor.of("empty").text(CANAL));
+		assertNull(JsonFieldExtractor.of("meta").text(CANAL));
+		assertNull(JsonFieldExtractor.of("data.table").text(CANAL));
+		assertNull(JsonFieldExtractor.of("table").text(bytes("[1,2]")));
+		assertNull(JsonFieldExtractor.of("table").text(bytes("{\"table\":")));
+		assertNull(JsonFieldExtractor.of("table").text(null));
+		assertThrows(IllegalArgumentException.class, () -> JsonFieldExtractor.of("a..b"));
+	}
+
+	/**
+	 * 不解码字段值也能和期望值、候选值比较
+	 */
+	@Test
+	public void comparesWithoutDecoding() {
+		JsonFieldExtractor table = JsonFieldExtractor.of("table");
+		assertTrue(table.matches(CANAL, "user"));
+		assertFalse(table.matches(CANAL, "users"));
+		assertFalse(table.matches(CANAL, "fake"));
+		assertTrue(JsonFieldExtractor.of("note").matches(CANAL, "a\"b"));
+		assertTrue(JsonFieldExtractor.of("ts").matches(CANAL, "1700000000000"));
+		assertEquals(1, table.indexOf(CANAL, "order", "user"));
+		assertEquals(-1, table.indexOf(CANAL, "order"));
+		assertEquals(-1, JsonFieldExtractor.of("empty").indexOf(CANAL, "null"));
+	}
+
+	/**
+	 * RawValue 的视图和解码结果按需创建并缓存，reset 后清空
+	 */
+	@Test
+	public void rawValueCachesLazily() {
+		JsonFieldExtractor type = JsonFieldExtractor.of("type");
+		RawValue value = RawValue.of(CANAL);
+
+		assertTrue(value.startsWith(bytes("{\"data\"")));
+		assertFalse(value.startsWith(bytes("[")));
+		assertSame(value.asString(), value.asString());
+		assertSame(value.field(type), value.field(type));
+		assertEquals("UPDATE", value.field(type));
+		assertTrue(value.fieldEquals(type, "UPDATE"));
+		assertEquals(CANAL.length, value.buffer().remaining());
+		assertTrue(value.buffer().isReadOnly());
+		assertSame(CANAL, value.bytes().get());
+
+		value.reset(bytes("{\"type\":\"DELETE\"}"));
+		assertEquals("DELETE", value.field(type));
+		assertTrue(value.fieldEquals(type, "DELETE"));
+
+		value.reset(null);
+		assertTrue(value.isNull());
+		assertNull(value.asString());
+		assertNull(value.field(type));
+		assertFalse(value.startsWith(new byte[0]));
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,187 @@
+package cn.ting.kafkauser.bytes;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.alibaba.fastjson.JSON;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.ProducerFactory;
+
+class RawBatchForwarderTest {
+
+	private static final byte[] PREFIX = "keep".getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * 按路由结果转发，key、value 和消息头是同一份字节，不复制
+	 */
+	@Test
+	public void forwardsRoutedRecordsAsIs() {
+		MockProducer<byte[], byte[]> producer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+		RawBatchForwarder forwarder = new RawBatchForwarder(factory(producer),
+				(record, value) -> value.startsWith(PREFIX) ? "out" : null);
+		List<ConsumerRecord<byte[], byte[]>> records = records(10);
+		records.get(3).headers().add("trace", new byte[]{1});
+
+		assertEquals(5, forwarder.forward(records));
+
+		assertEquals(5, producer.history().size());
+		ProducerRecord<byte[], byte[]> first = producer.history().get(0);
+		assertEquals("out", first.topic());
+		assertSame(records.get(1).value(), first.value());
+		assertSame(records.get(1).key(), first.key());
+		assertArrayEquals(new byte[]{1}, producer.history().get(1).headers().lastHeader("trace").value());
+	}
+
+	/**
+	 * 有消息发送失败时整批抛出异常，交给容器重新投递
+	 */
+	@Test
+	public void failsBatchWhenSendFails() {
+		MockProducer<byte[], byte[]> producer = new MockProducer<byte[], byte[]>(false, new ByteArraySerializer(),
+				new ByteArraySerializer()) {
+			@Override
+			public synchronized void flush() {
+				completeNext();
+				errorNext(new KafkaException("broker down"));
+				super.flush();
+			}
+		};
+		RawBatchForwarder forwarder = new RawBatchForwarder(factory(producer), (record, value) -> "out");
+
+		KafkaException e = assertThrows(KafkaException.class, () -> forwarder.forward(records(2)));
+		assertTrue(e.getMessage().contains("1 条") && e.getMessage().contains("broker down"), e.getMessage());
+	}
+
+	/**
+	 * 按前缀过滤时被丢弃的消息几乎不分配对象，每条消息的平均分配远小于解码成字符串
+	 */
+	@Test
+	public void filteredRecordsAllocateAlmostNothing() {
+		com.sun.management.ThreadMXBean threads = allocationCounter();
+
+		MockProducer<byte[], byte[]> producer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+		RawBatchForwarder prefixOnly = new RawBatchForwarder(factory(producer),
+				(record, value) -> value.startsWith(PREFIX) ? "out" : null);
+		List<ConsumerRecord<byte[], byte[]>> dropped = new ArrayList<>();
+		for (int i = 0; i < 10_000; i++) {
+			dropped.add(new ConsumerRecord<>("in", 0, i, null,
+					("drop-" + i + "-padding-padding-padding-padding").getBytes(StandardCharsets.UTF_8)));
+		}
+
+		for (int i = 0; i < 20; i++) {
+			prefixOnly.forward(dropped);
+		}
+		long tid = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(tid);
+		prefixOnly.forward(dropped);
+		long rawBytes = threads.getThreadAllocatedBytes(tid) - before;
+
+		before = threads.getThreadAllocatedBytes(tid);
+		int kept = 0;
+		for (ConsumerRecord<byte[], byte[]> record : dropped) {
+			if (new String(record.value(), StandardCharsets.UTF_8).startsWith("keep")) {
+				kept++;
+			}
+		}
+		long stringBytes = threads.getThreadAllocatedBytes(tid) - before;
+
+		assertEquals(0, kept);
+		assertTrue(rawBytes / dropped.size() < 8, "每条分配 " + rawBytes / dropped.size() + " 字节");
+		assertTrue(stringBytes > rawBytes * 10, "字符串 " + stringBytes + " 字节, 原始字节 " + rawBytes + " 字节");
+		assertTrue(producer.history().isEmpty());
+	}
+
+	/**
+	 * 按流式读取的字段过滤时每条消息只分配解析器状态（一般不到 1KB），明显少于解码成字符串再解析整条 JSON
+	 */
+	@Test
+	public void streamingFieldLookupAllocatesLessThanFullParse() {
+		com.sun.management.ThreadMXBean threads = allocationCounter();
+
+		MockProducer<byte[], byte[]> producer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+		JsonFieldExtractor table = JsonFieldExtractor.of("table");
+		String[] tables = {"order", "payment"};
+		RawBatchForwarder byTable = new RawBatchForwarder(factory(producer),
+				(record, value) -> table.indexOf(value.array(), tables) < 0 ? null : "out");
+		List<ConsumerRecord<byte[], byte[]>> dropped = new ArrayList<>();
+		for (int i = 0; i < 2_000; i++) {
+			String json = "{\"data\":[{\"id\":\"" + i + "\",\"name\":\"ting\",\"age\":\"18\"}],\"database\":\"shop\","
+					+ "\"es\":1700000000000,\"id\":" + i + ",\"isDdl\":false,\"old\":[{\"age\":\"17\"}],"
+					+ "\"pkNames\":[\"id\"],\"table\":\"user\",\"ts\":1700000000001,\"type\":\"UPDATE\"}";
+			dropped.add(new ConsumerRecord<>("canal-test", 0, i, null, json.getBytes(StandardCharsets.UTF_8)));
+		}
+
+		for (int i = 0; i < 20; i++) {
+			byTable.forward(dropped);
+		}
+		long tid = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(tid);
+		byTable.forward(dropped);
+		long streamingBytes = threads.getThreadAllocatedBytes(tid) - before;
+
+		int kept = 0;
+		for (int i = 0; i < 20; i++) {
+			kept += parseAndFilter(dropped, tables);
+		}
+		before = threads.getThreadAllocatedBytes(tid);
+		kept += parseAndFilter(dropped, tables);
+		long parseBytes = threads.getThreadAllocatedBytes(tid) - before;
+
+		assertEquals(0, kept);
+		assertTrue(producer.history().isEmpty());
+		assertTrue(streamingBytes / dropped.size() < 2048, "每条分配 " + streamingBytes / dropped.size() + " 字节");
+		assertTrue(parseBytes > streamingBytes * 2, "完整解析 " + parseBytes + " 字节, 流式读取 " + streamingBytes + " 字节");
+	}
+
+	private static int parseAndFilter(List<ConsumerRecord<byte[], byte[]>> records, String[] tables) {
+		int kept = 0;
+		for (ConsumerRecord<byte[], byte[]> record : records) {
+			String table = JSON.parseObject(new String(record.value(), StandardCharsets.UTF_8)).getString("table");
+			if (Arrays.asList(tables).contains(table)) {
+				kept++;
+			}
+		}
+		return kept;
+	}
+
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+		return threads;
+	}
+
+	private static List<ConsumerRecord<byte[], byte[]>> records(int count) {
+		List<ConsumerRecord<byte[], byte[]>> records = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			String value = (i % 2 == 1 ? "keep-" : "drop-") + i;
+			records.add(new ConsumerRecord<>("in", 0, i, ("k" + i).getBytes(StandardCharsets.UTF_8),
+					value.getBytes(StandardCharsets.UTF_8)));
+		}
+		return records;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ProducerFactory<byte[], byte[]> factory(MockProducer<byte[], byte[]> producer) {
+		ProducerFactory<byte[], byte[]> factory = mock(ProducerFactory.class);
+		when(factory.createProducer()).thenReturn(producer);
+		return factory;
+	}
+}
@@ -0,0 +1,59 @@
+package cn.ting.kafkauser.canal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class CanalCacheApplierTest {
+
+	private final RowCache cache = new RowCache(1000, 10, TimeUnit.MINUTES);
+	private final CanalCacheApplier applier = new CanalCacheApplier(cache);
+
+	private static String message(String type, String data, String old) {
+		return "{\"database\":\"canal\",\"table\":\"user\",\"pkNames\":[\"id\"],\"isDdl\":false,\"type\":\"" + type + "\","
+				+ "\"data\":[" + data + "],\"old\":" + (old == null ? "null" : "[" + old + "]") + "}";
+	}
+
+	@Test
+	public void appliesInsertUpdateDelete() {
+		applier.apply(message("INSERT", "{\"id\":\"1\",\"name\":\"ting\"}", null));
+		assertEquals("ting", cache.get("canal", "user", Collections.singletonList("1")).get("name"));
+
+		applier.apply(message("UPDATE", "{\"id\":\"1\",\"name\":\"lv\"}", "{\"name\":\"ting\"}"));
+		assertEquals("lv", cache.get("canal", "user", Collections.singletonList("1")).get("name"));
+
+		applier.apply(message("DELETE", "{\"id\":\"1\",\"name\":\"lv\"}", null));
+		assertNull(cache.get("canal", "user", Collections.singletonList("1")));
+
+		RowCache.Stats stats = cache.stats();
+		assertEquals(2, stats.getHits());
+		assertEquals(1, stats.getMisses());
+	}
+
+	/**
+	 * 主键被修改时旧主键对应的行要删除
+	 */
+	@Test
+	public void primaryKeyChangeMovesRow() {
+		applier.apply(message("INSERT", "{\"id\":\"1\",\"name\":\"ting\"}", null));
+		applier.apply(message("UPDATE", "{\"id\":\"2\",\"name\":\"ting\"}", "{\"id\":\"1\"}"));
+
+		assertNull(cache.get("canal", "user", Collections.singletonList("1")));
+		assertEquals("ting", cache.get("canal", "user", Collections.singletonList("2")).get("name"));
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedBeyondCapacity() {
+		RowCache small = new RowCache(2, 0, TimeUnit.MINUTES);
+		small.put("a", Collections.emptyMap());
+		small.put("b", Collections.emptyMap());
+		small.get("a");
+		small.put("c", Collections.emptyMap());
+
+		assertNull(small.get("b"));
+		assertEquals(1, small.stats().getEvictions());
+	}
+}
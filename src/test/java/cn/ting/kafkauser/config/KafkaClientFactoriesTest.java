@@ -0,0 +1,65 @@
+package cn.ting.kafkauser.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.kafka.clients.CommonClientConfigs;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+
+class KafkaClientFactoriesTest {
+
+	/**
+	 * 基础配置、代码默认值、按用途覆盖依次合并，后者优先
+	 */
+	@Test
+	public void overridesApplyOnTopOfDefaultsAndBase() {
+		KafkaClientProperties properties = new KafkaClientProperties();
+		properties.getCommon().put(CommonClientConfigs.REQUEST_TIMEOUT_MS_CONFIG, "15000");
+		Map<String, String> manualCommit = new HashMap<>();
+		manualCommit.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, "100");
+		properties.getConsumer().put("manual-commit", manualCommit);
+
+		Map<String, Object> base = new HashMap<>();
+		base.put(CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG, "kafka-1:9093");
+		base.put(CommonClientConfigs.REQUEST_TIMEOUT_MS_CONFIG, "30000");
+		KafkaClientFactories factories = new KafkaClientFactories(base, properties);
+
+		Map<String, Object> defaults = new HashMap<>();
+		defaults.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 500);
+		defaults.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+
+		Map<String, Object> configs = factories.consumerConfigs("manual-commit", defaults);
+		assertEquals("kafka-1:9093", configs.get(CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG));
+		assertEquals("15000", configs.get(CommonClientConfigs.REQUEST_TIMEOUT_MS_CONFIG));
+		assertEquals("100", configs.get(ConsumerConfig.MAX_POLL_RECORDS_CONFIG));
+		assertEquals(false, configs.get(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG));
+
+		Map<String, Object> other = factories.consumerConfigs("auto-batch", defaults);
+		assertEquals(500, other.get(ConsumerConfig.MAX_POLL_RECORDS_CONFIG));
+		assertFalse(defaults.containsKey(CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG));
+	}
+
+	/**
+	 * 带点号的客户端配置名在 yml 里不用加方括号也能绑定到对应的用途
+	 */
+	@Test
+	public void bindsDottedClientKeys() {
+		Map<String, String> source = new HashMap<>();
+		source.put("kafka.clients.common.client.dns.lookup", "use_all_dns_ips");
+		source.put("kafka.clients.consumer.manual-commit.max.poll.records", "200");
+		source.put("kafka.clients.producer.throughput.linger.ms", "20");
+
+		KafkaClientProperties properties = new Binder(new MapConfigurationPropertySource(source))
+				.bind("kafka.clients", KafkaClientProperties.class).get();
+
+		assertEquals("use_all_dns_ips", properties.getCommon().get("client.dns.lookup"));
+		assertEquals("200", properties.getConsumer().get("manual-commit").get("max.poll.records"));
+		assertEquals("20", properties.getProducer().get("throughput").get(ProducerConfig.LINGER_MS_CONFIG));
+	}
+}
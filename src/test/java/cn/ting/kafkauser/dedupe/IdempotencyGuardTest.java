@@ -0,0 +1,161 @@
+package cn.ting.kafkauser.dedupe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+class IdempotencyGuardTest {
+
+	private static ConsumerRecord<String, String> record(int partition, long offset, String key) {
+		return new ConsumerRecord<>("manual-commit-demo-topic", partition, offset, key, "v");
+	}
+
+	/**
+	 * 处理中和处理完成的 key 都会被精确窗口拦下，失败释放后可以再次处理
+	 */
+	@Test
+	public void windowRejectsInFlightAndCompletedKeys() {
+		IdempotencyGuard guard = IdempotencyGuard.builder(DedupeKeyStrategy.OFFSET, "g").build();
+
+		IdempotencyGuard.Claim first = guard.tryClaim(record(0, 1, "a"));
+		assertNotNull(first);
+		assertNull(guard.tryClaim(record(0, 1, "a")));
+
+		first.release();
+		IdempotencyGuard.Claim retry = guard.tryClaim(record(0, 1, "a"));
+		assertNotNull(retry);
+		retry.commit();
+		assertNull(guard.tryClaim(record(0, 1, "a")));
+		assertNotNull(guard.tryClaim(record(0, 2, "a")));
+		assertEquals(2, guard.getWindowHits());
+	}
+
+	/**
+	 * 同一 key 正在处理时重复投递等它有结果：成功则以 null 完成，失败释放后由等待者接手处理权
+	 */
+	@Test
+	public void claimWaitsForInFlightKey() {
+		IdempotencyGuard guard = IdempotencyGuard.builder(DedupeKeyStrategy.RECORD_KEY, "g").build();
+
+		IdempotencyGuard.Claim first = guard.claim(record(0, 1, "order-1")).join();
+		assertNotNull(first);
+		CompletableFuture<IdempotencyGuard.Claim> duplicate = guard.claim(record(0, 2, "order-1"));
+		CompletableFuture<IdempotencyGuard.Claim> another = guard.claim(record(1, 5, "order-1"));
+		assertFalse(duplicate.isDone());
+		assertFalse(another.isDone());
+
+		first.release();
+		IdempotencyGuard.Claim taken = duplicate.join();
+		assertNotNull(taken);
+		// 另一个等待者改为等接手的这一次
+		assertFalse(another.isDone());
+
+		taken.commit();
+		assertNull(another.join());
+		assertNull(guard.claim(record(0, 3, "order-1")).join());
+	}
+
+	/**
+	 * 按业务 key 去重时不同位移的同一 key 视为重复，没有 key 的消息不参与去重
+	 */
+	@Test
+	public void recordKeyStrategyIgnoresNullKeys() {
+		IdempotencyGuard guard = IdempotencyGuard.builder(DedupeKeyStrategy.RECORD_KEY, "g").build();
+
+		guard.tryClaim(record(0, 1, "order-1")).commit();
+		assertNull(guard.tryClaim(record(1, 7, "order-1")));
+		assertNotNull(guard.tryClaim(record(0, 2, null)));
+		assertNotNull(guard.tryClaim(record(0, 3, null)));
+	}
+
+	/**
+	 * 新分配的分区先查库，连续未命中达到阈值后只有布隆过滤器可能命中时才查库
+	 */
+	@Test
+	public void verifiesNewlyAssignedPartitionsAgainstStore() {
+		DedupeStore store = mock(DedupeStore.class);
+		when(store.contains("g:manual-commit-demo-topic-0-1")).thenReturn(true);
+		IdempotencyGuard guard = IdempotencyGuard.builder(DedupeKeyStrategy.OFFSET, "g")
+				.store(store)
+				.verifyMisses(2)
+				.build();
+		guard.verify(Collections.singleton(new TopicPartition("manual-commit-demo-topic", 0)));
+
+		assertNull(guard.tryClaim(record(0, 1, null)));
+		assertNotNull(guard.tryClaim(record(0, 2, null)));
+		assertNotNull(guard.tryClaim(record(0, 3, null)));
+		assertEquals(3, guard.getStoreLookups());
+		assertEquals(1, guard.getStoreHits());
+
+		// 越过重放区间后，布隆过滤器确定没见过的 key 不再查库
+		assertNotNull(guard.tryClaim(record(0, 4, null)));
+		verify(store, never()).contains("g:manual-commit-demo-topic-0-4");
+		guard.close();
+	}
+
+	/**
+	 * 处理完成的 key 攒批写入存储
+	 */
+	@Test
+	public void flushesCommittedKeysToStore() {
+		DedupeStore store = mock(DedupeStore.class);
+		when(store.contains(anyString())).thenReturn(false);
+		IdempotencyGuard guard = IdempotencyGuard.builder(DedupeKeyStrategy.OFFSET, "g").store(store).build();
+
+		guard.tryClaim(record(0, 1, null)).commit();
+		guard.tryClaim(record(0, 2, null)).commit();
+		assertEquals(2, guard.getPendingWrites());
+
+		guard.flush();
+		verify(store).saveAll(Arrays.asList("g:manual-commit-demo-topic-0-1", "g:manual-commit-demo-topic-0-2"));
+		assertEquals(0, guard.getPendingWrites());
+		guard.close();
+	}
+
+	/**
+	 * 布隆过滤器没有漏判，轮换后最老一代的 key 被遗忘
+	 */
+	@Test
+	public void bloomFilterRotatesOutOldestGeneration() {
+		RotatingBloomFilter filter = new RotatingBloomFilter(1000, 0.001, 2);
+		for (int i = 0; i < 1000; i++) {
+			filter.put("old-" + i);
+		}
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(filter.mightContain("old-" + i));
+		}
+		int falsePositives = 0;
+		for (int i = 0; i < 10_000; i++) {
+			if (filter.mightContain("absent-" + i)) {
+				falsePositives++;
+			}
+		}
+		assertTrue(falsePositives < 50, "误判过多: " + falsePositives);
+
+		// 再写满两代，old-* 所在的一代被丢弃
+		for (int i = 0; i < 2000; i++) {
+			filter.put("new-" + i);
+		}
+		int remembered = 0;
+		for (int i = 0; i < 1000; i++) {
+			if (filter.mightContain("old-" + i)) {
+				remembered++;
+			}
+		}
+		assertFalse(remembered > 50, "轮换后仍记得 " + remembered + " 个旧 key");
+	}
+}
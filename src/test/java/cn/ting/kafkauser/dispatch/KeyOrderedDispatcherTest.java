@@ -0,0 +1,105 @@
+package cn.ting.kafkauser.dispatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import cn.ting.kafkauser.retry.FailureRouter;
+import cn.ting.kafkauser.retry.RetryTopology;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+class KeyOrderedDispatcherTest {
+
+	private final List<ProducerRecord<Object, Object>> forwarded = Collections.synchronizedList(new ArrayList<>());
+	private FailureRouter router;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		KafkaOperations<Object, Object> template = mock(KafkaOperations.class);
+		when(template.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+			ProducerRecord<Object, Object> record = invocation.getArgument(0);
+			forwarded.add(record);
+			SettableListenableFuture<SendResult<Object, Object>> future = new SettableListenableFuture<>();
+			future.set(new SendResult<>(record, null));
+			return future;
+		});
+		router = FailureRouter.builder(template).build();
+	}
+
+	/**
+	 * 通道队列很小、处理很慢时，同一个 key 的消息仍然按 offset 顺序处理，
+	 * 并且所有消息处理完后水位线提交到最后一条
+	 */
+	@Test
+	public void keepsPerKeyOrderWhenLanesSaturated() {
+		KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher("test", 4, 2, router);
+		Map<String, List<Long>> seen = new ConcurrentHashMap<>();
+		AtomicLong committed = new AtomicLong(-1);
+
+		int keys = 16;
+		int records = 2000;
+		for (long offset = 0; offset < records; offset++) {
+			String key = "key-" + (offset % keys);
+			ConsumerRecord<String, String> record = new ConsumerRecord<>("sort-2", 0, offset, key, "v");
+			long acked = offset;
+			dispatcher.dispatch(record, () -> committed.set(acked), r -> {
+				seen.computeIfAbsent(r.key(), k -> new ArrayList<>()).add(r.offset());
+				if (r.offset() % 97 == 0) {
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+		dispatcher.shutdown(10, TimeUnit.SECONDS);
+
+		assertEquals(keys, seen.size());
+		seen.forEach((key, offsets) -> {
+			for (int i = 1; i < offsets.size(); i++) {
+				assertEquals(offsets.get(i - 1) + keys, offsets.get(i).longValue(), "key 顺序被打乱: " + key);
+			}
+		});
+		assertEquals(records - 1, committed.get());
+	}
+
+	/**
+	 * 处理失败的消息转入死信主题后标记完成，水位线越过它继续推进
+	 */
+	@Test
+	public void forwardsFailedRecordAndAdvancesWatermark() {
+		KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher("test", 2, 10, router);
+		AtomicLong committed = new AtomicLong(-1);
+		for (long offset = 0; offset < 10; offset++) {
+			ConsumerRecord<String, String> record = new ConsumerRecord<>("sort-2", 0, offset, "key-" + offset, "v");
+			long acked = offset;
+			dispatcher.dispatch(record, () -> committed.set(acked), r -> {
+				if (r.offset() == 3) {
+					throw new IllegalStateException("boom");
+				}
+			});
+		}
+		dispatcher.shutdown(10, TimeUnit.SECONDS);
+
+		assertEquals(1, forwarded.size());
+		assertEquals(RetryTopology.deadLetterOnly().dltTopic("sort-2"), forwarded.get(0).topic());
+		assertEquals("key-3", forwarded.get(0).key());
+		assertEquals(9, committed.get());
+	}
+}
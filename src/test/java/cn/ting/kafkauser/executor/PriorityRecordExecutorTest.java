@@ -0,0 +1,193 @@
+package cn.ting.kafkauser.executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+class PriorityRecordExecutorTest {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	/**
+	 * 积压时按权重轮流取各道的任务，低优先级也能分到执行机会，某道取空后只在剩下的道之间分配
+	 */
+	@Test
+	public void dequeuesByWeight() throws InterruptedException {
+		PriorityRecordExecutor executor = executor(1);
+		CountDownLatch blocker = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		executor.execute("high", () -> {
+			started.countDown();
+			await(blocker);
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		for (int i = 0; i < 20; i++) {
+			executor.execute("low", () -> order.add("low"));
+			executor.execute("normal", () -> order.add("normal"));
+			executor.execute("high", () -> order.add("high"));
+		}
+		assertEquals(60, executor.getQueueSize());
+		assertEquals(20, executor.getQueueSize("low"));
+
+		blocker.countDown();
+		executor.shutdown(5, TimeUnit.SECONDS);
+
+		assertEquals(60, order.size());
+		List<String> firstRound = order.subList(0, 12);
+		assertEquals(8, Collections.frequency(firstRound, "high"));
+		assertEquals(3, Collections.frequency(firstRound, "normal"));
+		assertEquals(1, Collections.frequency(firstRound, "low"));
+		assertTrue(order.indexOf("low") < order.lastIndexOf("high") / 2, order.toString());
+		assertEquals("low", order.get(59));
+	}
+
+	/**
+	 * 按消息头选道，没有消息头或值不认识时进入默认道，排队时间按优先级分别记录
+	 */
+	@Test
+	public void routesByHeaderAndRecordsWaitPerPriority() {
+		PriorityRecordExecutor executor = executor(2);
+		AtomicInteger done = new AtomicInteger();
+		executor.execute(headers("high"), done::incrementAndGet);
+		executor.execute(headers("low"), done::incrementAndGet);
+		executor.execute(headers("urgent"), done::incrementAndGet);
+		executor.execute(new RecordHeaders(), done::incrementAndGet);
+		executor.execute((String) null, done::incrementAndGet);
+		executor.execute(done::incrementAndGet);
+		executor.shutdown(5, TimeUnit.SECONDS);
+
+		assertEquals(6, done.get());
+		assertEquals(1, waitTimer("high").count());
+		assertEquals(1, waitTimer("low").count());
+		assertEquals(4, waitTimer("normal").count());
+		assertThrows(RejectedExecutionException.class, () -> executor.execute("high", done::incrementAndGet));
+	}
+
+	/**
+	 * 大量低优先级积压时，新到的高优先级任务只需等待正在执行的任务
+	 */
+	@Test
+	public void highPriorityWaitIsIndependentOfBacklog() {
+		PriorityRecordExecutor executor = executor(2);
+		for (int i = 0; i < 400; i++) {
+			executor.execute("low", () -> sleep(1));
+		}
+		for (int i = 0; i < 10; i++) {
+			sleep(10);
+			executor.execute("high", () -> sleep(1));
+		}
+		executor.shutdown(10, TimeUnit.SECONDS);
+
+		Timer high = waitTimer("high");
+		Timer low = waitTimer("low");
+		assertEquals(10, high.count());
+		assertEquals(400, low.count());
+		assertTrue(high.max(TimeUnit.MILLISECONDS) < low.max(TimeUnit.MILLISECONDS) / 4,
+				"high " + high.max(TimeUnit.MILLISECONDS) + "ms, low " + low.max(TimeUnit.MILLISECONDS) + "ms");
+	}
+
+	/**
+	 * 扩容后立即为积压的任务补充工作任务，任务抛出异常不影响后续任务
+	 */
+	@Test
+	public void scalesAndSurvivesFailures() throws InterruptedException {
+		PriorityRecordExecutor executor = executor(1);
+		CountDownLatch blocker = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(3);
+		for (int i = 0; i < 3; i++) {
+			executor.execute("normal", () -> {
+				started.countDown();
+				await(blocker);
+			});
+		}
+		executor.execute("low", () -> {
+			throw new IllegalStateException("boom");
+		});
+		AtomicInteger done = new AtomicInteger();
+		executor.execute("low", done::incrementAndGet);
+
+		executor.setMaxConcurrency(3);
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertEquals(3, executor.getActiveCount());
+		blocker.countDown();
+		executor.shutdown(5, TimeUnit.SECONDS);
+		assertEquals(1, done.get());
+		assertThrows(IllegalArgumentException.class,
+				() -> PriorityRecordExecutor.builder(new PlatformRecordExecutor(1, "t")).lane("a", 1).lane("a", 2).build());
+		assertThrows(IllegalArgumentException.class,
+				() -> PriorityRecordExecutor.builder(new PlatformRecordExecutor(1, "t")).lane("a", 1).defaultLane("b").build());
+	}
+
+	/**
+	 * 任务抛出 Error 时工作任务退出并归还名额，之后提交的任务启动新的工作任务，排队的任务照常执行
+	 */
+	@Test
+	public void releasesWorkerKilledByError() {
+		PriorityRecordExecutor executor = executor(1);
+		AtomicInteger done = new AtomicInteger();
+		executor.execute("normal", () -> {
+			throw new AssertionError("boom");
+		});
+		// 名额归还前提交的任务会留在道里，等归还后的下一次提交一起执行
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (done.get() == 0 && System.nanoTime() < deadline) {
+			executor.execute("normal", done::incrementAndGet);
+			sleep(10);
+		}
+		executor.shutdown(5, TimeUnit.SECONDS);
+
+		assertTrue(done.get() > 0);
+		assertEquals(0, executor.getQueueSize());
+	}
+
+	private PriorityRecordExecutor executor(int threads) {
+		return PriorityRecordExecutor.builder(new PlatformRecordExecutor(threads, "priority-test"))
+				.lane("high", 8)
+				.lane("normal", 3)
+				.lane("low", 1)
+				.defaultLane("normal")
+				.meterRegistry(registry, "test")
+				.build();
+	}
+
+	private Timer waitTimer(String priority) {
+		return registry.get("kafka.executor.priority.wait").tag("priority", priority).timer();
+	}
+
+	private static RecordHeaders headers(String priority) {
+		RecordHeaders headers = new RecordHeaders();
+		headers.add("source", "mobile-app".getBytes(StandardCharsets.UTF_8));
+		headers.add("priority", priority.getBytes(StandardCharsets.UTF_8));
+		return headers;
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
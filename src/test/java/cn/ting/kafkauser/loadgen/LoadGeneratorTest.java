@@ -0,0 +1,144 @@
+package cn.ting.kafkauser.loadgen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.ProducerFactory;
+
+class LoadGeneratorTest {
+
+	/**
+	 * 按计划发送持续时间内应发的条数，消息体大小、key 和消息头符合配置
+	 */
+	@Test
+	public void sendsScheduledRecordsWithinDuration() throws Exception {
+		MockProducer<String, String> producer = new MockProducer<>(true, new StringSerializer(), new StringSerializer());
+		LoadProfile profile = LoadProfile.builder("load-topic")
+				.ratePerSecond(200)
+				.threads(2)
+				.duration(500, TimeUnit.MILLISECONDS)
+				.payloadSizes(PayloadSizes.uniform(10, 20))
+				.keys(KeySampler.uniform(5))
+				.headerSet(Collections.singletonMap("source", "loadgen"))
+				.build();
+
+		LoadReport report = new LoadGenerator("test", profile, factory(producer), null)
+				.start().get(5, TimeUnit.SECONDS);
+
+		assertEquals(100, report.getDue());
+		assertEquals(100, report.getSent());
+		assertEquals(100, report.getAcked());
+		assertEquals(0, report.getShortfall(), 1e-9);
+		assertEquals(100, producer.history().size());
+		for (ProducerRecord<String, String> record : producer.history()) {
+			assertEquals("load-topic", record.topic());
+			assertTrue(record.value().length() >= 10 && record.value().length() <= 20);
+			assertTrue(record.key().matches("key-[0-4]"), record.key());
+			assertEquals("loadgen", new String(record.headers().lastHeader("source").value(), StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * send 阻塞时后面的消息按原计划补发，延迟从计划时刻算起，包含被阻塞的时间
+	 */
+	@Test
+	public void latencyIncludesTimeBehindSchedule() throws Exception {
+		MockProducer<String, String> producer = new MockProducer<String, String>(true,
+				new StringSerializer(), new StringSerializer()) {
+			private boolean blocked;
+
+			@Override
+			public synchronized Future<RecordMetadata> send(ProducerRecord<String, String> record, Callback callback) {
+				if (!blocked) {
+					blocked = true;
+					try {
+						Thread.sleep(300);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return super.send(record, callback);
+			}
+		};
+		LoadProfile profile = LoadProfile.builder("load-topic")
+				.ratePerSecond(100)
+				.duration(1, TimeUnit.SECONDS)
+				.build();
+
+		LoadReport report = new LoadGenerator("blocked", profile, factory(producer), null)
+				.start().get(5, TimeUnit.SECONDS);
+
+		assertEquals(100, report.getSent());
+		assertTrue(report.getMaxScheduleLagMillis() >= 250, report.toString());
+		// 被阻塞期间到期的约 30 条消息都带着排队时间，服务时间的中位数仍然很小
+		assertTrue(report.getLatencyP99Millis() >= 250, report.toString());
+		assertTrue(report.getLatencyMaxMillis() >= 290, report.toString());
+		assertTrue(report.getServiceP50Millis() < 50, report.toString());
+	}
+
+	/**
+	 * stop 之后发送线程退出，最终报告给出目标速率下的缺口
+	 */
+	@Test
+	public void stopReportsShortfall() throws Exception {
+		MockProducer<String, String> producer = new MockProducer<>(true, new StringSerializer(), new StringSerializer());
+		LoadGenerator generator = new LoadGenerator("stop",
+				LoadProfile.builder("load-topic").ratePerSecond(50).build(), factory(producer), null);
+
+		generator.start();
+		assertThrows(IllegalStateException.class, generator::start);
+		Thread.sleep(200);
+		LoadReport report = generator.stop().get(5, TimeUnit.SECONDS);
+
+		assertTrue(report.getSent() > 0);
+		assertTrue(report.getShortfall() < 0.2, report.toString());
+		assertEquals(report.getSent(), report.getAcked());
+	}
+
+	/**
+	 * Zipf 分布下序号小的 key 明显更热，非法参数被拒绝
+	 */
+	@Test
+	public void zipfKeysAreSkewed() {
+		KeySampler zipf = KeySampler.zipf(1000, 1.0);
+		Random random = new Random(42);
+		Map<String, Integer> counts = new HashMap<>();
+		for (int i = 0; i < 100_000; i++) {
+			counts.merge(zipf.next(random), 1, Integer::sum);
+		}
+		int hottest = counts.get("key-0");
+		assertNotNull(counts.get("key-1"));
+		assertTrue(hottest > counts.get("key-1"));
+		// H(1000) ≈ 7.49，key-0 约占 13%
+		assertEquals(0.134, hottest / 100_000.0, 0.01);
+		assertTrue(counts.keySet().stream().allMatch(key -> Integer.parseInt(key.substring(4)) < 1000));
+
+		assertThrows(IllegalArgumentException.class, () -> KeySampler.zipf(0, 1.0));
+		assertThrows(IllegalArgumentException.class, () -> PayloadSizes.uniform(10, 5));
+		assertThrows(IllegalArgumentException.class, () -> LoadProfile.builder("t").ratePerSecond(0).build());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ProducerFactory<String, String> factory(MockProducer<String, String> producer) {
+		ProducerFactory<String, String> factory = mock(ProducerFactory.class);
+		when(factory.createProducer()).thenReturn(producer);
+		return factory;
+	}
+}
@@ -0,0 +1,117 @@
+package cn.ting.kafkauser.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerGroupMetadata;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.InvalidGroupIdException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.MicrometerConsumerListener;
+
+class ListenerMetricsInterceptorTest {
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+	private final ListenerMetricsInterceptor interceptor = new ListenerMetricsInterceptor(new ListenerMetrics(registry));
+
+	@SuppressWarnings("unchecked")
+	private static Consumer<Object, Object> consumer() {
+		Consumer<Object, Object> consumer = mock(Consumer.class);
+		when(consumer.groupMetadata()).thenReturn(new ConsumerGroupMetadata("g"));
+		return consumer;
+	}
+
+	@Test
+	public void recordsSuccessFailureAndProcessTime() {
+		Consumer<Object, Object> consumer = consumer();
+		ConsumerRecord<Object, Object> record = new ConsumerRecord<>("t", 0, 0, null, "v");
+
+		interceptor.intercept(record, consumer);
+		interceptor.success(record, consumer);
+		interceptor.intercept(record, consumer);
+		interceptor.failure(record, new IllegalStateException(), consumer);
+
+		assertEquals(1, registry.get("kafka.listener.records").tag("result", "success").counter().count());
+		assertEquals(1, registry.get("kafka.listener.records").tag("result", "failure").counter().count());
+		assertEquals(2, registry.get("kafka.listener.process").tags("group", "g", "topic", "t").timer().count());
+	}
+
+	@Test
+	public void recordsBatchSizePerTopic() {
+		Consumer<Object, Object> consumer = consumer();
+		Map<TopicPartition, List<ConsumerRecord<Object, Object>>> byPartition = new HashMap<>();
+		byPartition.put(new TopicPartition("t", 0), Arrays.asList(
+				new ConsumerRecord<>("t", 0, 0, null, "a"), new ConsumerRecord<>("t", 0, 1, null, "b")));
+		byPartition.put(new TopicPartition("t", 1), Collections.singletonList(new ConsumerRecord<>("t", 1, 0, null, "c")));
+		ConsumerRecords<Object, Object> records = new ConsumerRecords<>(byPartition);
+
+		interceptor.intercept(records, consumer);
+		interceptor.success(records, consumer);
+
+		assertEquals(3, registry.get("kafka.listener.records").tag("result", "success").counter().count());
+		assertEquals(2, registry.get("kafka.listener.batch.size").summary().count());
+	}
+
+	/**
+	 * 同一个消费者只读取一次消费组；没有消费组的消费者记为 none，不影响统计
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void resolvesGroupOncePerConsumer() {
+		Consumer<Object, Object> consumer = consumer();
+		ConsumerRecord<Object, Object> record = new ConsumerRecord<>("t", 0, 0, null, "v");
+		for (int i = 0; i < 3; i++) {
+			interceptor.intercept(record, consumer);
+			interceptor.success(record, consumer);
+		}
+		verify(consumer, times(1)).groupMetadata();
+
+		Consumer<Object, Object> groupless = mock(Consumer.class);
+		when(groupless.groupMetadata()).thenThrow(new InvalidGroupIdException("no group.id"));
+		interceptor.intercept(record, groupless);
+		interceptor.success(record, groupless);
+
+		assertEquals(3, registry.get("kafka.listener.process").tags("group", "g", "topic", "t").timer().count());
+		assertEquals(1, registry.get("kafka.listener.process").tags("group", "none", "topic", "t").timer().count());
+	}
+
+	/**
+	 * 消费者工厂被追加 poll 时间拦截器并绑定客户端指标，已有的拦截器保留
+	 */
+	@Test
+	public void postProcessorInstrumentsConsumerFactory() {
+		DefaultListableBeanFactory beans = new DefaultListableBeanFactory();
+		beans.registerSingleton("registry", registry);
+		beans.registerSingleton("metrics", new ListenerMetrics(registry));
+		ListenerMetricsPostProcessor postProcessor = new ListenerMetricsPostProcessor(
+				beans.getBeanProvider(ListenerMetrics.class), beans.getBeanProvider(MeterRegistry.class));
+
+		Map<String, Object> props = new HashMap<>();
+		props.put(ConsumerConfig.INTERCEPTOR_CLASSES_CONFIG, "com.example.Existing");
+		DefaultKafkaConsumerFactory<Object, Object> factory = new DefaultKafkaConsumerFactory<>(props);
+		postProcessor.postProcessAfterInitialization(factory, "consumerFactory");
+		postProcessor.postProcessAfterInitialization(factory, "consumerFactory");
+
+		List<?> classes = (List<?>) factory.getConfigurationProperties().get(ConsumerConfig.INTERCEPTOR_CLASSES_CONFIG);
+		assertEquals(Arrays.asList("com.example.Existing", PollTimestampInterceptor.class), classes);
+		assertEquals(1, factory.getListeners().size());
+		assertTrue(factory.getListeners().get(0) instanceof MicrometerConsumerListener);
+	}
+}
@@ -0,0 +1,142 @@
+package cn.ting.kafkauser.multiplex;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+
+class MultiplexedListenerRegistrarTest {
+
+	static class Listeners {
+		final List<String> received = new ArrayList<>();
+
+		@MultiplexedListener(topics = "a", groupId = "g")
+		public void onA(ConsumerRecord<?, ?> record) {
+			received.add("a:" + record.value());
+		}
+
+		@MultiplexedListener(topics = {"b", "c"}, groupId = "g")
+		public void onBc(ConsumerRecord<?, ?> record) {
+			if ("boom".equals(record.value())) {
+				throw new IllegalStateException("boom");
+			}
+			received.add("bc:" + record.value());
+		}
+
+		@MultiplexedListener(topics = "a", groupId = "g", isolated = true)
+		public void onAIsolated(ConsumerRecord<?, ?> record) {
+			received.add("isolated:" + record.value());
+		}
+
+		@MultiplexedListener(topics = "d", groupId = "other")
+		public void onD(ConsumerRecord<?, ?> record) {
+			received.add("d:" + record.value());
+		}
+	}
+
+	static class Duplicate {
+		@MultiplexedListener(topics = "a", groupId = "g")
+		public void onA(ConsumerRecord<?, ?> record) {
+		}
+	}
+
+	static class WrongSignature {
+		@MultiplexedListener(topics = "a", groupId = "g")
+		public void onA(String value) {
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static MultiplexedListenerRegistrar registrar(boolean enabled) {
+		ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+		factory.setConsumerFactory(mock(ConsumerFactory.class));
+		DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+		beanFactory.registerSingleton("kafkaListenerContainerFactory", factory);
+		MultiplexedListenerRegistrar registrar = new MultiplexedListenerRegistrar(enabled);
+		registrar.setBeanFactory(beanFactory);
+		return registrar;
+	}
+
+	private static Map<String, ConcurrentMessageListenerContainer<?, ?>> byName(MultiplexedListenerRegistrar registrar) {
+		return registrar.getContainers().stream()
+				.collect(Collectors.toMap(ConcurrentMessageListenerContainer::getBeanName, Function.identity()));
+	}
+
+	private static String[] topics(ConcurrentMessageListenerContainer<?, ?> container) {
+		return new TreeSet<>(Arrays.asList(container.getContainerProperties().getTopics())).toArray(new String[0]);
+	}
+
+	/**
+	 * 同组的监听方法合并成一个容器并按 topic 分发，isolated 的方法和其他消费组各自一个容器
+	 */
+	@Test
+	public void sharesOneContainerPerGroupAndDispatchesByTopic() {
+		MultiplexedListenerRegistrar registrar = registrar(true);
+		Listeners listeners = new Listeners();
+		registrar.postProcessAfterInitialization(listeners, "listeners");
+		registrar.createContainers();
+
+		Map<String, ConcurrentMessageListenerContainer<?, ?>> containers = byName(registrar);
+		assertEquals(3, containers.size());
+		ConcurrentMessageListenerContainer<?, ?> shared = containers.get("multiplex-g");
+		assertArrayEquals(new String[]{"a", "b", "c"}, topics(shared));
+		assertEquals("g", shared.getContainerProperties().getGroupId());
+		assertArrayEquals(new String[]{"a"}, topics(containers.get("listeners.onAIsolated")));
+		assertEquals("other", containers.get("multiplex-other").getContainerProperties().getGroupId());
+
+		TopicDispatcher dispatcher = (TopicDispatcher) shared.getContainerProperties().getMessageListener();
+		dispatcher.onMessage(new ConsumerRecord<>("c", 0, 1, null, "x"));
+		dispatcher.onMessage(new ConsumerRecord<>("a", 0, 2, null, "y"));
+		dispatcher.onMessage(new ConsumerRecord<>("unknown", 0, 3, null, "z"));
+		assertEquals(Arrays.asList("bc:x", "a:y"), listeners.received);
+
+		// 处理方法的异常原样抛给容器，由错误处理器处理
+		IllegalStateException thrown = assertThrows(IllegalStateException.class,
+				() -> dispatcher.onMessage(new ConsumerRecord<>("b", 0, 4, null, "boom")));
+		assertEquals("boom", thrown.getMessage());
+	}
+
+	/**
+	 * 关闭共用时每个监听方法单独一个容器
+	 */
+	@Test
+	public void isolatesEveryListenerWhenDisabled() {
+		MultiplexedListenerRegistrar registrar = registrar(false);
+		Listeners listeners = new Listeners();
+		registrar.postProcessAfterInitialization(listeners, "listeners");
+		registrar.createContainers();
+
+		Map<String, ConcurrentMessageListenerContainer<?, ?>> containers = byName(registrar);
+		assertEquals(4, containers.size());
+		assertArrayEquals(new String[]{"b", "c"}, topics(containers.get("listeners.onBc")));
+		assertEquals("g", containers.get("listeners.onA").getContainerProperties().getGroupId());
+	}
+
+	/**
+	 * 同一个共用容器里重复监听同一个 topic、参数不是 ConsumerRecord 时启动失败
+	 */
+	@Test
+	public void rejectsDuplicateTopicsAndWrongSignatures() {
+		MultiplexedListenerRegistrar registrar = registrar(true);
+		registrar.postProcessAfterInitialization(new Listeners(), "listeners");
+		registrar.postProcessAfterInitialization(new Duplicate(), "duplicate");
+		assertThrows(IllegalStateException.class, registrar::createContainers);
+
+		assertThrows(IllegalStateException.class,
+				() -> registrar(true).postProcessAfterInitialization(new WrongSignature(), "wrong"));
+	}
+}
@@ -0,0 +1,113 @@
+package cn.ting.kafkauser.offset;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+class DrainingRebalanceListenerTest {
+
+	private static final String TOPIC = "manual-commit-demo-topic";
+
+	private final TopicPartition p0 = new TopicPartition(TOPIC, 0);
+	private final TopicPartition p1 = new TopicPartition(TOPIC, 1);
+	private final OffsetTracker tracker = new OffsetTracker();
+
+	private OffsetTracker.Ticket register(TopicPartition partition, long offset) {
+		return tracker.register(new ConsumerRecord<>(TOPIC, partition.partition(), offset, null, "v"), () -> { });
+	}
+
+	/**
+	 * 回收时等待在途任务完成后提交被回收分区的水位线，其他分区不受影响
+	 */
+	@Test
+	public void waitsForInFlightTasksThenCommitsRevokedPartitions() throws InterruptedException {
+		PartitionDrainer drainer = new PartitionDrainer(tracker, 5, TimeUnit.SECONDS);
+		DrainingRebalanceListener listener = new DrainingRebalanceListener(drainer);
+		@SuppressWarnings("unchecked")
+		Consumer<String, String> consumer = mock(Consumer.class);
+
+		OffsetTracker.Ticket t10 = register(p0, 10);
+		PartitionDrainer.Lease lease = drainer.acquire(p0);
+		assertNotNull(drainer.acquire(p1));
+
+		Thread worker = new Thread(() -> {
+			try {
+				Thread.sleep(200);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			t10.complete();
+			lease.release();
+		});
+		worker.start();
+
+		long start = System.nanoTime();
+		listener.onPartitionsRevokedBeforeCommit(consumer, Collections.singletonList(p0));
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		worker.join();
+
+		assertTrue(elapsedMillis >= 150 && elapsedMillis < 5000, "等待时间 " + elapsedMillis);
+		verify(consumer).commitSync(Collections.singletonMap(p0, new OffsetAndMetadata(11)));
+		assertNull(drainer.acquire(p0));
+		assertNotNull(drainer.acquire(p1));
+
+		// 分区重新分配回来后恢复派发
+		listener.onPartitionsAssigned(consumer, Collections.singletonList(p0));
+		assertNotNull(drainer.acquire(p0));
+	}
+
+	/**
+	 * 等待超时后只提交已连续完成的部分，排队中的任务看到分区已回收
+	 */
+	@Test
+	public void commitsCompletedPrefixWhenDrainTimesOut() {
+		PartitionDrainer drainer = new PartitionDrainer(tracker, 50, TimeUnit.MILLISECONDS);
+		DrainingRebalanceListener listener = new DrainingRebalanceListener(drainer);
+		@SuppressWarnings("unchecked")
+		Consumer<String, String> consumer = mock(Consumer.class);
+
+		register(p0, 1).complete();
+		drainer.acquire(p0).release();
+		register(p0, 2);
+		PartitionDrainer.Lease stuck = drainer.acquire(p0);
+		assertFalse(stuck.isRevoked());
+
+		listener.onPartitionsRevokedBeforeCommit(consumer, Collections.singletonList(p0));
+
+		verify(consumer).commitSync(Collections.singletonMap(p0, new OffsetAndMetadata(2)));
+		assertTrue(stuck.isRevoked());
+	}
+
+	/**
+	 * 分区丢失时不再拥有分区，不等待也不提交
+	 */
+	@Test
+	public void skipsCommitForLostPartitions() {
+		PartitionDrainer drainer = new PartitionDrainer(tracker, 5, TimeUnit.SECONDS);
+		DrainingRebalanceListener listener = new DrainingRebalanceListener(drainer);
+		@SuppressWarnings("unchecked")
+		Consumer<String, String> consumer = mock(Consumer.class);
+
+		register(p0, 1).complete();
+		drainer.acquire(p0);
+
+		listener.onPartitionsLost(consumer, Collections.singletonList(p0));
+		listener.onPartitionsRevokedBeforeCommit(consumer, Collections.singletonList(p0));
+
+		verify(consumer, never()).commitSync(anyMap());
+		assertNull(drainer.acquire(p0));
+	}
+}
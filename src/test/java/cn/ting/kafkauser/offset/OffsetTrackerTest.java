@@ -0,0 +1,74 @@
+package cn.ting.kafkauser.offset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+class OffsetTrackerTest {
+
+	private static final String TOPIC = "manual-commit-demo-topic";
+
+	private final List<Long> acked = new ArrayList<>();
+
+	private OffsetTracker.Ticket register(OffsetTracker tracker, long offset) {
+		ConsumerRecord<String, String> record = new ConsumerRecord<>(TOPIC, 0, offset, null, "v" + offset);
+		return tracker.register(record, () -> acked.add(offset));
+	}
+
+	/**
+	 * 后面的消息先完成时不能越过前面未完成的消息提交
+	 */
+	@Test
+	public void outOfOrderCompletionWaitsForGap() {
+		OffsetTracker tracker = new OffsetTracker();
+		OffsetTracker.Ticket t101 = register(tracker, 101);
+		OffsetTracker.Ticket t102 = register(tracker, 102);
+		OffsetTracker.Ticket t105 = register(tracker, 105);
+
+		assertFalse(t105.complete());
+		assertFalse(t102.complete());
+		assertTrue(acked.isEmpty());
+
+		assertTrue(t101.complete());
+		assertEquals(Collections.singletonList(105L), acked);
+		assertEquals(106L, tracker.committableOffsets().get(new TopicPartition(TOPIC, 0)).offset());
+	}
+
+	/**
+	 * 在途数量超过初始容量时环形数组扩容后仍保持序号映射
+	 */
+	@Test
+	public void growsBeyondInitialCapacity() {
+		OffsetTracker tracker = new OffsetTracker();
+		List<OffsetTracker.Ticket> tickets = new ArrayList<>();
+		for (long offset = 0; offset < 1000; offset++) {
+			tickets.add(register(tracker, offset));
+		}
+		for (int i = tickets.size() - 1; i > 0; i--) {
+			assertFalse(tickets.get(i).complete());
+		}
+		assertTrue(tickets.get(0).complete());
+		assertEquals(Collections.singletonList(999L), acked);
+		assertEquals(0, tracker.pendingCount());
+	}
+
+	/**
+	 * 分区重置后旧任务完成不应再提交
+	 */
+	@Test
+	public void staleTicketsIgnoredAfterReset() {
+		OffsetTracker tracker = new OffsetTracker();
+		OffsetTracker.Ticket stale = register(tracker, 7);
+		tracker.reset(Collections.singletonList(new TopicPartition(TOPIC, 0)));
+
+		assertFalse(stale.complete());
+		assertTrue(acked.isEmpty());
+	}
+}
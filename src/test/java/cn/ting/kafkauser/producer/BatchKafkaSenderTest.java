@@ -0,0 +1,45 @@
+package cn.ting.kafkauser.producer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+
+class BatchKafkaSenderTest {
+
+	/**
+	 * 整批只在最后一条确认后完成，并汇总成功与失败
+	 */
+	@Test
+	public void aggregatesSuccessesAndFailures() {
+		MockProducer<String, String> producer = new MockProducer<>(false, new StringSerializer(), new StringSerializer());
+		BatchKafkaSender<String, String> sender = new BatchKafkaSender<>(() -> producer, 100);
+
+		CompletableFuture<BatchSendResult<String, String>> future =
+				sender.sendValues("auto-batch-topic", Arrays.asList("a", "b", "c"));
+		assertEquals(3, sender.getInFlightCount());
+
+		producer.completeNext();
+		producer.errorNext(new RuntimeException("broker down"));
+		assertFalse(future.isDone());
+		producer.completeNext();
+
+		BatchSendResult<String, String> result = future.join();
+		assertEquals(3, result.getTotal());
+		assertEquals(2, result.getSucceeded());
+		assertEquals("b", result.getFailures().get(0).getRecord().value());
+		assertEquals(0, sender.getInFlightCount());
+		assertFalse(result.isAllSucceeded());
+	}
+
+	@Test
+	public void emptyBatchCompletesImmediately() {
+		BatchKafkaSender<String, String> sender = new BatchKafkaSender<>(MockProducer::new, 10);
+		assertTrue(sender.sendValues("auto-batch-topic", Arrays.asList()).join().isAllSucceeded());
+	}
+}
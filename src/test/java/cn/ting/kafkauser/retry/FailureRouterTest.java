@@ -0,0 +1,140 @@
+package cn.ting.kafkauser.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+class FailureRouterTest {
+
+	private static final String TOPIC = "manual-commit-demo-topic";
+
+	private final List<ProducerRecord<Object, Object>> sent = new ArrayList<>();
+	private FailureRouter router;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		KafkaOperations<Object, Object> template = mock(KafkaOperations.class);
+		when(template.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+			ProducerRecord<Object, Object> record = invocation.getArgument(0);
+			sent.add(record);
+			SettableListenableFuture<SendResult<Object, Object>> future = new SettableListenableFuture<>();
+			future.set(new SendResult<>(record, null));
+			return future;
+		});
+		router = FailureRouter.builder(template)
+				.topology(TOPIC, RetryTopology.builder()
+						.attempts(2)
+						.initialDelay(1, TimeUnit.SECONDS)
+						.multiplier(5)
+						.maxDelay(3, TimeUnit.SECONDS)
+						.build())
+				.build();
+	}
+
+	private static String header(ProducerRecord<?, ?> record, String key) {
+		Header header = record.headers().lastHeader(key);
+		return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+	}
+
+	private static ConsumerRecord<Object, Object> redeliver(ProducerRecord<Object, Object> record, long offset) {
+		ConsumerRecord<Object, Object> next = new ConsumerRecord<>(record.topic(), 0, offset, record.key(), record.value());
+		record.headers().forEach(next.headers()::add);
+		return next;
+	}
+
+	/**
+	 * 逐层转发，原始位置只在第一次失败时记录，业务消息头原样保留，重试用完后进入死信主题
+	 */
+	@Test
+	public void routesThroughTiersThenDeadLetter() throws Exception {
+		ConsumerRecord<Object, Object> original = new ConsumerRecord<>(TOPIC, 2, 42, "k", "v");
+		original.headers().add("trace-id", "t-1".getBytes(StandardCharsets.UTF_8));
+
+		long before = System.currentTimeMillis();
+		router.route(original, new IllegalStateException("boom")).get();
+		ProducerRecord<Object, Object> tier1 = sent.get(0);
+		assertEquals(TOPIC + "-retry-1", tier1.topic());
+		assertEquals("k", tier1.key());
+		assertEquals("v", tier1.value());
+		assertEquals("t-1", header(tier1, "trace-id"));
+		assertEquals(TOPIC, header(tier1, FailureHeaders.ORIGINAL_TOPIC));
+		assertEquals("2", header(tier1, FailureHeaders.ORIGINAL_PARTITION));
+		assertEquals("42", header(tier1, FailureHeaders.ORIGINAL_OFFSET));
+		assertEquals(IllegalStateException.class.getName(), header(tier1, FailureHeaders.EXCEPTION));
+		assertEquals("boom", header(tier1, FailureHeaders.MESSAGE));
+		assertEquals(1, FailureHeaders.attempt(tier1.headers()));
+		assertTrue(FailureHeaders.dueAt(tier1.headers()) >= before + 1000);
+
+		router.route(redeliver(tier1, 7), new RuntimeException("again")).get();
+		ProducerRecord<Object, Object> tier2 = sent.get(1);
+		assertEquals(TOPIC + "-retry-2", tier2.topic());
+		assertEquals(2, FailureHeaders.attempt(tier2.headers()));
+		assertEquals("42", header(tier2, FailureHeaders.ORIGINAL_OFFSET));
+		assertEquals("again", header(tier2, FailureHeaders.MESSAGE));
+		assertEquals(1, countHeaders(tier2, FailureHeaders.ORIGINAL_TOPIC));
+		assertEquals(1, countHeaders(tier2, FailureHeaders.MESSAGE));
+		// 重试层的消息还原为第一次失败时的位置
+		ConsumerRecord<Object, Object> restored = FailureHeaders.original(redeliver(tier2, 3));
+		assertEquals(TOPIC, restored.topic());
+		assertEquals(2, restored.partition());
+		assertEquals(42, restored.offset());
+		assertEquals("k", restored.key());
+
+		router.route(redeliver(tier2, 3), new RuntimeException("final")).get();
+		ProducerRecord<Object, Object> dlt = sent.get(2);
+		assertEquals(TOPIC + "-dlt", dlt.topic());
+		assertEquals(2, FailureHeaders.attempt(dlt.headers()));
+		assertNull(dlt.headers().lastHeader(FailureHeaders.DUE_AT));
+		assertEquals("t-1", header(dlt, "trace-id"));
+		assertNotNull(header(dlt, FailureHeaders.STACKTRACE));
+	}
+
+	/**
+	 * 未登记的主题不经过重试层，直接进入死信主题
+	 */
+	@Test
+	public void unregisteredTopicGoesStraightToDeadLetter() {
+		router.accept(new ConsumerRecord<>("test-1", 0, 5, null, "v"), new RuntimeException("bad"));
+
+		assertEquals(1, sent.size());
+		assertEquals("test-1-dlt", sent.get(0).topic());
+		assertEquals("test-1", header(sent.get(0), FailureHeaders.ORIGINAL_TOPIC));
+	}
+
+	/**
+	 * 每层等待时间按倍数增长，不超过上限
+	 */
+	@Test
+	public void delayGrowsExponentiallyUpToMax() {
+		RetryTopology topology = router.topology(TOPIC);
+		assertEquals(1000, topology.delayMillis(1));
+		assertEquals(3000, topology.delayMillis(2));
+		assertEquals(0, RetryTopology.deadLetterOnly().retryTopics(TOPIC).length);
+	}
+
+	private static int countHeaders(ProducerRecord<?, ?> record, String key) {
+		int count = 0;
+		for (Header ignored : record.headers().headers(key)) {
+			count++;
+		}
+		return count;
+	}
+}
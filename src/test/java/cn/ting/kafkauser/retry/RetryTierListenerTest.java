@@ -0,0 +1,94 @@
+package cn.ting.kafkauser.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.Acknowledgment;
+
+class RetryTierListenerTest {
+
+	private static final String TOPIC = "manual-commit-demo-topic";
+	private static final TopicPartition TIER_1 = new TopicPartition(TOPIC + "-retry-1", 0);
+
+	private final List<Long> handled = new ArrayList<>();
+	private ConcurrentMessageListenerContainer<String, String> container;
+	private RetryTierListener<String, String> listener;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		ConcurrentKafkaListenerContainerFactory<String, String> factory = mock(ConcurrentKafkaListenerContainerFactory.class);
+		// start/stop 是 final 方法，用不自动启动的真实容器代替 mock
+		container = spy(new ConcurrentMessageListenerContainer<>(mock(ConsumerFactory.class),
+				new ContainerProperties(TIER_1.topic())));
+		container.setAutoStartup(false);
+		when(factory.createContainer(TIER_1.topic())).thenReturn(container);
+		FailureRouter router = FailureRouter.builder(mock(KafkaOperations.class))
+				.topology(TOPIC, RetryTopology.builder()
+						.attempts(1)
+						.initialDelay(1, TimeUnit.HOURS)
+						.maxDelay(1, TimeUnit.HOURS)
+						.build())
+				.build();
+		listener = new RetryTierListener<>(factory, TOPIC, "retry-group", record -> handled.add(record.offset()), router);
+		listener.start();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		listener.stop();
+	}
+
+	/**
+	 * 等待期间分区被回收又分回来：清除旧的 seek 位移并撤销暂停，之后到期的消息照常处理和确认
+	 */
+	@Test
+	public void clearsBackoffWhenPartitionIsRevokedAndReassigned() {
+		Consumer<?, ?> consumer = mock(Consumer.class);
+		listener.onMessage(record(5, System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)),
+				mock(Acknowledgment.class), consumer);
+		verify(consumer).seek(TIER_1, 5L);
+		verify(container).pausePartition(TIER_1);
+
+		ConsumerAwareRebalanceListener rebalance = (ConsumerAwareRebalanceListener) container.getContainerProperties()
+				.getConsumerRebalanceListener();
+		rebalance.onPartitionsRevokedBeforeCommit(consumer, Collections.singletonList(TIER_1));
+		doReturn(true).when(container).isPartitionPauseRequested(TIER_1);
+		rebalance.onPartitionsAssigned(consumer, Collections.singletonList(TIER_1));
+		verify(container).resumePartition(TIER_1);
+
+		// 其他成员在此期间处理了 offset 5，重新分到后从 6 开始
+		Acknowledgment acknowledgment = mock(Acknowledgment.class);
+		listener.onMessage(record(6, System.currentTimeMillis() - 1), acknowledgment, consumer);
+		assertEquals(Collections.singletonList(6L), handled);
+		verify(acknowledgment).acknowledge();
+	}
+
+	private static ConsumerRecord<String, String> record(long offset, long dueAt) {
+		ConsumerRecord<String, String> record = new ConsumerRecord<>(TIER_1.topic(), TIER_1.partition(), offset, "k", "v");
+		record.headers().add(FailureHeaders.ORIGINAL_TOPIC, TOPIC.getBytes(StandardCharsets.UTF_8));
+		record.headers().add(FailureHeaders.DUE_AT, String.valueOf(dueAt).getBytes(StandardCharsets.UTF_8));
+		return record;
+	}
+}
@@ -0,0 +1,89 @@
+package cn.ting.kafkauser.routing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+
+class HeaderRouterTest {
+
+	private static ConsumerRecord<String, String> record(String tableName, String traceId) {
+		ConsumerRecord<String, String> record = new ConsumerRecord<>("your-topic", 0, 0, null, "{}");
+		if (tableName != null) {
+			record.headers().add("tableName", tableName.getBytes(StandardCharsets.UTF_8));
+		}
+		if (traceId != null) {
+			record.headers().add("traceId", traceId.getBytes(StandardCharsets.UTF_8));
+		}
+		return record;
+	}
+
+	/**
+	 * 几百张表时每个表名都能路由到自己的处理器
+	 */
+	@Test
+	public void routesEveryRegisteredTable() {
+		List<String> routed = new ArrayList<>();
+		HeaderRouter.Builder<String, String> builder = HeaderRouter.builder("tableName");
+		for (int i = 0; i < 500; i++) {
+			String table = "table_" + i;
+			builder.route(table, (record, headers) -> routed.add(table));
+		}
+		builder.route("用户表", (record, headers) -> routed.add("用户表"));
+		HeaderRouter<String, String> router = builder.build();
+
+		assertEquals(501, router.size());
+		for (int i = 0; i < 500; i++) {
+			assertTrue(router.route(record("table_" + i, null)));
+			assertEquals("table_" + i, routed.get(i));
+		}
+		assertTrue(router.route(record("用户表", null)));
+		assertEquals("用户表", routed.get(500));
+	}
+
+	@Test
+	public void missingAndUnmatchedGoToFallbacks() {
+		List<String> events = new ArrayList<>();
+		HeaderRouter<String, String> router = HeaderRouter.<String, String>builder("tableName")
+				.route("user", (record, headers) -> events.add("user"))
+				.onMissing((record, headers) -> events.add("missing"))
+				.onUnmatched((record, headers) -> events.add("unmatched:" + headers.get("tableName")))
+				.build();
+
+		assertFalse(router.route(record(null, null)));
+		assertFalse(router.route(record("order", null)));
+		assertFalse(router.route(record("use", null)));
+		assertEquals("[missing, unmatched:order, unmatched:use]", events.toString());
+	}
+
+	/**
+	 * 其余消息头在处理器读取时才解码
+	 */
+	@Test
+	public void decodesOtherHeadersOnDemand() {
+		List<String> traceIds = new ArrayList<>();
+		HeaderRouter<String, String> router = HeaderRouter.<String, String>builder("tableName")
+				.route("user", (record, headers) -> {
+					traceIds.add(headers.get("traceId"));
+					assertNull(headers.get("absent"));
+				})
+				.build();
+
+		router.route(record("user", "t-1"));
+		assertEquals("t-1", traceIds.get(0));
+	}
+
+	@Test
+	public void rejectsDuplicateRoute() {
+		HeaderRouter.Builder<String, String> builder = HeaderRouter.<String, String>builder("tableName")
+				.route("user", (record, headers) -> { });
+		assertThrows(IllegalArgumentException.class, () -> builder.route("user", (record, headers) -> { }));
+	}
+}
@@ -0,0 +1,57 @@
+package cn.ting.kafkauser.serialization;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import cn.ting.kafkauser.entity.User;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+class UserBinaryCodecTest {
+
+	private final UserBinarySerializer serializer = new UserBinarySerializer();
+	private final UserBinaryDeserializer deserializer = new UserBinaryDeserializer();
+
+	@Test
+	public void roundTrip() {
+		for (User user : Arrays.asList(
+				new User("ting", 18),
+				new User("吕一婷😀", -1),
+				new User(null, null),
+				new User("", Integer.MIN_VALUE))) {
+			assertEquals(user, deserializer.deserialize("user-topic", serializer.serialize("user-topic", user)));
+		}
+	}
+
+	/**
+	 * 没有魔数的旧 JSON 消息回退到 JSON 解码
+	 */
+	@Test
+	public void fallsBackToJson() {
+		User user = new User("ting", 18);
+		byte[] json = new JsonSerializer<User>().serialize("user-topic", user);
+		assertEquals(user, deserializer.deserialize("user-topic", json));
+	}
+
+	/**
+	 * 更高版本在末尾追加的字段被旧消费者忽略
+	 */
+	@Test
+	public void ignoresFieldsAppendedByNewerVersions() {
+		byte[] v1 = serializer.serialize("user-topic", new User("ting", 18));
+		byte[] v2 = Arrays.copyOf(v1, v1.length + 3);
+		v2[1] = 2;
+		v2[v1.length] = 5;
+		assertEquals(new User("ting", 18), deserializer.deserialize("user-topic", v2));
+	}
+
+	@Test
+	public void smallerThanJson() {
+		User user = new User("ting", 18);
+		byte[] binary = serializer.serialize("user-topic", user);
+		byte[] json = "{\"name\":\"ting\",\"age\":18}".getBytes(StandardCharsets.UTF_8);
+		assertTrue(binary.length * 2 < json.length, "binary=" + binary.length + ", json=" + json.length);
+	}
+}
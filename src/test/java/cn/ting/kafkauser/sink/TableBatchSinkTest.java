@@ -0,0 +1,105 @@
+package cn.ting.kafkauser.sink;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+class TableBatchSinkTest {
+
+	private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+	private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+	private final TableBatchSink sink = new TableBatchSink(jdbcTemplate, transactionTemplate, 3, 60_000, 1000);
+
+	{
+		doAnswer(invocation -> {
+			Consumer<TransactionStatus> action = invocation.getArgument(0);
+			action.accept(mock(TransactionStatus.class));
+			return null;
+		}).when(transactionTemplate).executeWithoutResult(any());
+	}
+
+	private static ConsumerRecord<String, String> record(int partition, long offset) {
+		return new ConsumerRecord<>("your-topic", partition, offset, null, null);
+	}
+
+	private static Map<String, Object> row(Object id, Object name) {
+		Map<String, Object> row = new LinkedHashMap<>();
+		row.put("id", id);
+		row.put("name", name);
+		return row;
+	}
+
+	/**
+	 * 同一张表的行合并成一条 upsert 批量写入，事务提交后才确认位移
+	 */
+	@Test
+	public void flushesGroupedUpsertThenAcknowledges() {
+		Acknowledgment ack = mock(Acknowledgment.class);
+		sink.add(record(0, 10), "user", row(1, "a"));
+		sink.add(record(0, 11), "user", row(2, "b"));
+		sink.addAck(ack);
+		assertFalse(sink.shouldFlush());
+
+		sink.add(record(0, 12), "order", row(3, "c"));
+		assertTrue(sink.shouldFlush());
+		sink.flush();
+
+		verify(jdbcTemplate).batchUpdate(
+				eq("INSERT INTO `user` (`id`,`name`) VALUES (?,?) ON DUPLICATE KEY UPDATE `id`=VALUES(`id`),`name`=VALUES(`name`)"),
+				anyList());
+		verify(jdbcTemplate, times(2)).batchUpdate(any(String.class), anyList());
+		verify(ack).acknowledge();
+		assertFalse(sink.hasPending());
+	}
+
+	/**
+	 * 刷盘失败时不确认位移，丢弃后返回每个分区最早未落库的位移
+	 */
+	@Test
+	public void failedFlushKeepsOffsetsForSeek() {
+		doThrow(new DataAccessResourceFailureException("down")).when(jdbcTemplate).batchUpdate(any(String.class), anyList());
+		Acknowledgment ack = mock(Acknowledgment.class);
+		sink.add(record(0, 10), "user", row(1, "a"));
+		sink.skip(record(1, 5));
+		sink.add(record(0, 11), "user", row(2, "b"));
+		sink.addAck(ack);
+
+		assertThrows(DataAccessResourceFailureException.class, sink::flush);
+		verify(ack, never()).acknowledge();
+
+		Map<TopicPartition, Long> offsets = sink.discard();
+		assertEquals(10L, offsets.get(new TopicPartition("your-topic", 0)));
+		assertEquals(5L, offsets.get(new TopicPartition("your-topic", 1)));
+		assertFalse(sink.hasPending());
+	}
+
+	@Test
+	public void rejectsUnsafeIdentifiers() {
+		assertThrows(IllegalArgumentException.class, () -> sink.add(record(0, 1), "user`; drop table x", row(1, "a")));
+		Map<String, Object> bad = new LinkedHashMap<>();
+		bad.put("name) values (1); --", "x");
+		assertThrows(IllegalArgumentException.class, () -> sink.add(record(0, 1), "user", bad));
+	}
+}
@@ -0,0 +1,133 @@
+package cn.ting.kafkauser.startup;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+class ListenerStartupCoordinatorTest {
+
+	private final List<String> started = new ArrayList<>();
+
+	/**
+	 * 按批启动未运行的容器，跳过已运行和 lazy 的容器，每批耗时都记录下来
+	 */
+	@Test
+	public void startsContainersInWavesSkippingLazyOnes() {
+		MessageListenerContainer a = container("a", true);
+		MessageListenerContainer b = container("b", true);
+		MessageListenerContainer c = container("c", true);
+		MessageListenerContainer lazy = container("lazy", true);
+		MessageListenerContainer running = container("running", true);
+		running.start();
+		started.clear();
+
+		StartupProperties properties = properties(StartupMode.STAGGERED);
+		properties.setLazyListeners(Collections.singletonList("lazy"));
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		ListenerStartupCoordinator coordinator = coordinator(properties, registry, a, b, c, lazy, running);
+
+		coordinator.startUp();
+
+		assertEquals(Arrays.asList("a", "b", "c"), started);
+		verify(lazy, never()).start();
+		String report = coordinator.getReport();
+		assertTrue(report.contains("wave-1="), report);
+		assertTrue(report.contains("wave-2="), report);
+		assertFalse(report.contains("wave-3="), report);
+		assertTrue(report.contains("listeners="), report);
+		assertNotNull(registry.find("kafka.startup.phase").tag("phase", "wave-2").timer());
+	}
+
+	/**
+	 * 一批超时没有分到分区时继续启动下一批，不会卡住后面的容器
+	 */
+	@Test
+	public void continuesAfterWaveTimeout() {
+		MessageListenerContainer stuck = container("stuck", false);
+		MessageListenerContainer next = container("next", true);
+		StartupProperties properties = properties(StartupMode.STAGGERED);
+		properties.setWaveSize(1);
+		properties.setWaveTimeoutMs(100);
+
+		coordinator(properties, new SimpleMeterRegistry(), stuck, next).startUp();
+
+		assertEquals(Arrays.asList("stuck", "next"), started);
+	}
+
+	/**
+	 * LAZY 模式下不自动启动，通过 startListener 按需启动并记录耗时
+	 */
+	@Test
+	public void lazyModeStartsOnDemand() {
+		MessageListenerContainer a = container("a", true);
+		MessageListenerContainer b = container("b", true);
+		ListenerStartupCoordinator coordinator =
+				coordinator(properties(StartupMode.LAZY), new SimpleMeterRegistry(), a, b);
+
+		coordinator.startUp();
+		assertTrue(started.isEmpty());
+
+		assertTrue(coordinator.startListener("b").contains("已分到分区"));
+		assertEquals(Collections.singletonList("b"), started);
+		assertTrue(coordinator.getReport().contains("start-b="));
+		assertTrue(coordinator.startListener("b").contains("已在运行"));
+		assertTrue(coordinator.startListener("missing").contains("没有监听容器"));
+	}
+
+	private static StartupProperties properties(StartupMode mode) {
+		StartupProperties properties = new StartupProperties();
+		properties.setMode(mode);
+		properties.setWaveSize(2);
+		properties.setWaveIntervalMs(0);
+		properties.setWaveTimeoutMs(1000);
+		return properties;
+	}
+
+	private static ListenerStartupCoordinator coordinator(StartupProperties properties, SimpleMeterRegistry registry,
+	                                                      MessageListenerContainer... containers) {
+		List<MessageListenerContainer> all = Arrays.asList(containers);
+		return new ListenerStartupCoordinator(() -> all, Collections.emptyMap(), Collections.emptyMap(),
+				properties, registry);
+	}
+
+	/**
+	 * @param assigns 启动后是否分到分区
+	 */
+	private MessageListenerContainer container(String id, boolean assigns) {
+		MessageListenerContainer container = mock(MessageListenerContainer.class);
+		AtomicBoolean running = new AtomicBoolean();
+		when(container.getListenerId()).thenReturn(id);
+		when(container.getContainerProperties()).thenReturn(new ContainerProperties(id + "-topic"));
+		when(container.isRunning()).thenAnswer(invocation -> running.get());
+		doAnswer(invocation -> {
+			running.set(true);
+			started.add(id);
+			return null;
+		}).when(container).start();
+		when(container.getAssignedPartitions()).thenAnswer(invocation -> {
+			Collection<TopicPartition> assigned = running.get() && assigns
+					? Collections.singletonList(new TopicPartition(id + "-topic", 0))
+					: Collections.emptyList();
+			return assigned;
+		});
+		return container;
+	}
+}
@@ -0,0 +1,157 @@
+package cn.ting.kafkauser.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import cn.ting.kafkauser.entity.User;
+import cn.ting.kafkauser.serialization.UserBinaryDeserializer;
+import cn.ting.kafkauser.serialization.UserBinarySerializer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties;
+
+class CompactedTopicStoreTest {
+
+	private static final TopicPartition P0 = new TopicPartition("user-topic", 0);
+	private static final TopicPartition P1 = new TopicPartition("user-topic", 1);
+
+	@TempDir
+	Path directory;
+
+	private final UserBinarySerializer serializer = new UserBinarySerializer();
+	private final List<String> changes = new ArrayList<>();
+	private ConcurrentKafkaListenerContainerFactory<byte[], byte[]> factory;
+	private ContainerProperties properties;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	void setUp() {
+		factory = mock(ConcurrentKafkaListenerContainerFactory.class);
+		// 不启动容器，直接调用监听方法
+		ConcurrentMessageListenerContainer<byte[], byte[]> container =
+				new ConcurrentMessageListenerContainer<>(mock(ConsumerFactory.class), new ContainerProperties("user-topic"));
+		container.setAutoStartup(false);
+		properties = container.getContainerProperties();
+		when(factory.createContainer("user-topic")).thenReturn(container);
+	}
+
+	/**
+	 * 按 key 保存最新值，墓碑消息删除，没有 key 或值不变的消息不回调
+	 */
+	@Test
+	public void materializesLatestValuePerKey() {
+		CompactedTopicStore<String, User> store = store(100);
+		store.start();
+
+		store.onMessage(Arrays.asList(
+				record(P0, 0, "ting", new User("ting", 18)),
+				record(P0, 1, "li", new User("li", 20)),
+				record(P1, 0, null, new User("anonymous", 1)),
+				record(P0, 2, "ting", new User("ting", 19)),
+				record(P0, 3, "ting", new User("ting", 19)),
+				record(P1, 1, "li", null)));
+
+		assertEquals(new User("ting", 19), store.get("ting"));
+		assertNull(store.get("li"));
+		assertNull(store.get("anonymous"));
+		assertEquals(1, store.size());
+		assertEquals(Arrays.asList("ting:null->18", "li:null->20", "ting:18->19", "li:20->null"), changes);
+		assertEquals(ContainerProperties.AckMode.MANUAL, properties.getAckMode());
+		store.stop();
+		assertThrows(IllegalStateException.class, () -> store.get("ting"));
+	}
+
+	/**
+	 * 生产者不带 key 发送时按 keyExtractor 从值里取 key，没有 key 的墓碑消息忽略
+	 */
+	@Test
+	public void keysRecordsWithoutKeyByExtractor() {
+		CompactedTopicStore<String, User> store = builder(100).keyExtractor(User::getName).build();
+		store.start();
+
+		store.onMessage(Arrays.asList(
+				record(P0, 0, null, new User("ting", 18)),
+				record(P1, 0, null, new User("li", 20)),
+				record(P0, 1, null, new User("ting", 19)),
+				record(P1, 1, null, new User(null, 1)),
+				record(P1, 2, null, null)));
+
+		assertEquals(new User("ting", 19), store.get("ting"));
+		assertEquals(new User("li", 20), store.get("li"));
+		assertEquals(2, store.size());
+		assertEquals(Arrays.asList("ting:null->18", "li:null->20", "ting:18->19"), changes);
+		store.stop();
+	}
+
+	/**
+	 * 重启后从检查点恢复数据，分到分区时 seek 到检查点位移，检查点里没有的分区从头消费
+	 */
+	@Test
+	public void resumesFromCheckpointAfterRestart() {
+		CompactedTopicStore<String, User> store = store(2);
+		store.start();
+		store.onMessage(Arrays.asList(record(P0, 10, "ting", new User("ting", 18)),
+				record(P0, 11, "li", new User("li", 20))));
+		// 未满检查点条数，停止时保存
+		store.onMessage(Collections.singletonList(record(P0, 12, "wang", new User("wang", 30))));
+		store.stop();
+
+		CompactedTopicStore<String, User> restarted = store(2);
+		restarted.start();
+		assertEquals(new User("wang", 30), restarted.get("wang"));
+		assertEquals(3, restarted.size());
+
+		Consumer<?, ?> consumer = mock(Consumer.class);
+		((ConsumerAwareRebalanceListener) properties.getConsumerRebalanceListener())
+				.onPartitionsAssigned(consumer, Arrays.asList(P0, P1));
+		verify(consumer).seek(P0, 13L);
+		verify(consumer).seekToBeginning(Collections.singletonList(P1));
+		verify(consumer, never()).seek(eq(P1), anyLong());
+		restarted.stop();
+	}
+
+	private CompactedTopicStore<String, User> store(int checkpointRecords) {
+		return builder(checkpointRecords).build();
+	}
+
+	private CompactedTopicStore.Builder<String, User> builder(int checkpointRecords) {
+		return CompactedTopicStore.builder("user", "user-topic", factory, directory,
+						new StringSerializer(), new StringDeserializer(), new UserBinaryDeserializer())
+				.checkpointRecords(checkpointRecords)
+				.checkpointInterval(1, TimeUnit.HOURS)
+				.listener((key, oldValue, newValue) -> changes.add(key + ":" + age(oldValue) + "->" + age(newValue)));
+	}
+
+	private static Integer age(User user) {
+		return user == null ? null : user.getAge();
+	}
+
+	private ConsumerRecord<byte[], byte[]> record(TopicPartition partition, long offset, String key, User user) {
+		return new ConsumerRecord<>(partition.topic(), partition.partition(), offset,
+				key == null ? null : key.getBytes(StandardCharsets.UTF_8), serializer.serialize("user-topic", user));
+	}
+}
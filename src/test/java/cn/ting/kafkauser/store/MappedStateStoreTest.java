@@ -0,0 +1,186 @@
+package cn.ting.kafkauser.store;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedStateStoreTest {
+
+	private static final TopicPartition P0 = new TopicPartition("user-topic", 0);
+	private static final TopicPartition P1 = new TopicPartition("user.topic", 1);
+
+	@TempDir
+	Path directory;
+
+	/**
+	 * 覆盖、删除和相同值的写入
+	 */
+	@Test
+	public void putsOverwritesAndDeletes() {
+		try (MappedStateStore store = MappedStateStore.open(directory)) {
+			assertTrue(store.put(bytes("a"), bytes("1")));
+			assertTrue(store.put(bytes("b"), bytes("2")));
+			assertFalse(store.put(bytes("a"), bytes("1")));
+			assertTrue(store.put(bytes("a"), bytes("11")));
+			assertTrue(store.put(bytes("b"), null));
+			assertFalse(store.put(bytes("b"), null));
+			assertFalse(store.put(bytes("c"), null));
+			assertTrue(store.put(bytes("empty"), new byte[0]));
+
+			assertArrayEquals(bytes("11"), store.get(bytes("a")));
+			assertNull(store.get(bytes("b")));
+			assertNull(store.get(bytes("c")));
+			assertArrayEquals(new byte[0], store.get(bytes("empty")));
+			assertEquals(2, store.size());
+
+			assertTrue(store.put(bytes("b"), bytes("3")));
+			assertArrayEquals(bytes("3"), store.get(bytes("b")));
+			assertEquals(3, store.size());
+		}
+	}
+
+	/**
+	 * 索引扩容后所有 key 仍然能查到
+	 */
+	@Test
+	public void growsIndexAndData() {
+		byte[] value = new byte[600];
+		try (MappedStateStore store = MappedStateStore.open(directory)) {
+			for (int i = 0; i < 5000; i++) {
+				value[0] = (byte) i;
+				store.put(bytes("user-" + i), value);
+			}
+			assertEquals(5000, store.size());
+			for (int i = 0; i < 5000; i++) {
+				byte[] stored = store.get(bytes("user-" + i));
+				assertEquals(600, stored.length);
+				assertEquals((byte) i, stored[0]);
+			}
+			assertNull(store.get(bytes("user-5000")));
+		}
+	}
+
+	/**
+	 * 重新打开时恢复到检查点：检查点之后的写入丢弃，位移按分区恢复
+	 */
+	@Test
+	public void restoresFromCheckpoint() {
+		Map<TopicPartition, Long> offsets = new HashMap<>();
+		offsets.put(P0, 42L);
+		offsets.put(P1, 7L);
+		try (MappedStateStore store = MappedStateStore.open(directory)) {
+			assertTrue(store.offsets().isEmpty());
+			for (int i = 0; i < 3000; i++) {
+				store.put(bytes("user-" + i), bytes("v" + i));
+			}
+			store.put(bytes("user-1"), null);
+			store.checkpoint(offsets);
+
+			store.put(bytes("user-2"), bytes("after"));
+			store.put(bytes("user-1"), bytes("after"));
+			store.put(bytes("late"), bytes("after"));
+		}
+
+		try (MappedStateStore store = MappedStateStore.open(directory)) {
+			assertEquals(offsets, store.offsets());
+			assertEquals(2999, store.size());
+			assertArrayEquals(bytes("v2"), store.get(bytes("user-2")));
+			assertNull(store.get(bytes("user-1")));
+			assertNull(store.get(bytes("late")));
+			assertArrayEquals(bytes("v2999"), store.get(bytes("user-2999")));
+
+			store.put(bytes("late"), bytes("again"));
+			store.checkpoint(Collections.singletonMap(P0, 50L));
+		}
+
+		try (MappedStateStore store = MappedStateStore.open(directory)) {
+			assertEquals(Collections.singletonMap(P0, 50L), store.offsets());
+			assertArrayEquals(bytes("again"), store.get(bytes("late")));
+		}
+	}
+
+	/**
+	 * 有效数据不足一半时检查点重写数据文件，旧文件删除，重新打开后数据不变
+	 */
+	@Test
+	public void compactsOnCheckpoint() throws IOException {
+		byte[] value = new byte[1024];
+		try (MappedStateStore store = MappedStateStore.open(directory)) {
+			for (int round = 0; round < 20; round++) {
+				for (int i = 0; i < 500; i++) {
+					value[0] = (byte) round;
+					store.put(bytes("user-" + i), value);
+				}
+			}
+			for (int i = 0; i < 100; i++) {
+				store.put(bytes("user-" + i), null);
+			}
+			store.checkpoint(Collections.singletonMap(P0, 10_000L));
+			assertEquals(400, store.size());
+		}
+
+		List<String> files = files();
+		assertTrue(files.contains("data-1"), files.toString());
+		assertFalse(files.contains("data-0"), files.toString());
+		assertEquals(1, files.stream().filter(name -> name.endsWith(".snap")).count(), files.toString());
+		assertTrue(Files.size(directory.resolve("data-1")) < 4 << 20);
+
+		try (MappedStateStore store = MappedStateStore.open(directory)) {
+			assertEquals(400, store.size());
+			assertNull(store.get(bytes("user-0")));
+			assertEquals(19, store.get(bytes("user-499"))[0]);
+			assertTrue(store.put(bytes("user-0"), bytes("back")));
+			assertArrayEquals(bytes("back"), store.get(bytes("user-0")));
+		}
+	}
+
+	/**
+	 * 检查点引用的文件缺失时丢弃检查点，从空存储开始
+	 */
+	@Test
+	public void startsEmptyWhenCheckpointIsBroken() throws IOException {
+		try (MappedStateStore store = MappedStateStore.open(directory)) {
+			store.put(bytes("a"), bytes("1"));
+			store.checkpoint(Collections.singletonMap(P0, 1L));
+		}
+		Files.write(directory.resolve("unrelated.txt"), bytes("keep"));
+		for (String name : files()) {
+			if (name.endsWith(".snap")) {
+				Files.delete(directory.resolve(name));
+			}
+		}
+
+		try (MappedStateStore store = MappedStateStore.open(directory)) {
+			assertTrue(store.offsets().isEmpty());
+			assertEquals(0, store.size());
+			assertNull(store.get(bytes("a")));
+		}
+		assertTrue(Files.exists(directory.resolve("unrelated.txt")));
+	}
+
+	private List<String> files() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+		}
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+}
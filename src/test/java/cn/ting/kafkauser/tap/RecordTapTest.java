@@ -0,0 +1,92 @@
+package cn.ting.kafkauser.tap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+
+class RecordTapTest {
+
+	private static TapEvent event(long offset) {
+		return new TapEvent("test", "topic", 0, offset, null, "v");
+	}
+
+	/**
+	 * 多个生产者并发写入，单个消费者按顺序取出且不丢不重
+	 */
+	@Test
+	public void ringBufferDeliversAllEventsFromConcurrentProducers() throws InterruptedException {
+		TapRingBuffer buffer = new TapRingBuffer(1024);
+		int producers = 4;
+		int perProducer = 50_000;
+		ExecutorService pool = Executors.newFixedThreadPool(producers);
+		CountDownLatch done = new CountDownLatch(producers);
+		for (int p = 0; p < producers; p++) {
+			long base = (long) p * perProducer;
+			pool.execute(() -> {
+				for (int i = 0; i < perProducer; i++) {
+					while (!buffer.offer(event(base + i))) {
+						Thread.yield();
+					}
+				}
+				done.countDown();
+			});
+		}
+
+		Set<Long> seen = new HashSet<>();
+		while (seen.size() < producers * perProducer) {
+			TapEvent e = buffer.poll();
+			if (e != null) {
+				assertTrue(seen.add(e.offset));
+			}
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		pool.shutdown();
+		assertNull(buffer.poll());
+	}
+
+	@Test
+	public void ringBufferDropsWhenFull() {
+		TapRingBuffer buffer = new TapRingBuffer(4);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(buffer.offer(event(i)));
+		}
+		assertFalse(buffer.offer(event(4)));
+		assertEquals(1, buffer.dropped());
+
+		assertEquals(0, buffer.poll().offset);
+		assertTrue(buffer.offer(event(5)));
+	}
+
+	/**
+	 * 采样率和 topic 过滤在入队前生效，运行时修改立即起作用
+	 */
+	@Test
+	public void samplingAndTopicFilterApplyBeforeEnqueue() {
+		RecordTap tap = new RecordTap(16, 1.0, Collections.singletonList("a"), 8);
+		tap.record("test", new ConsumerRecord<>("a", 0, 0, null, "v"));
+		tap.record("test", new ConsumerRecord<>("b", 0, 0, null, "v"));
+		assertEquals(1, tap.getPendingCount());
+
+		tap.setTopicFilter("");
+		tap.setSampleRate(0);
+		tap.record("test", new ConsumerRecord<>("b", 0, 1, null, "v"));
+		assertEquals(1, tap.getPendingCount());
+
+		tap.setSampleRate(1);
+		tap.sent("test", "b", null, "0123456789");
+		assertEquals(2, tap.drainOnce());
+		assertThrows(IllegalArgumentException.class, () -> tap.setSampleRate(2));
+	}
+}
@@ -0,0 +1,185 @@
+package cn.ting.kafkauser.transaction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerGroupMetadata;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+
+class TransactionalPipelineTest {
+
+	private static final TopicPartition P0 = new TopicPartition("in", 0);
+	private static final TopicPartition P1 = new TopicPartition("in", 1);
+
+	private final List<MockProducer<String, String>> producers = new ArrayList<>();
+	private ProducerFactory<String, String> producerFactory;
+	private Consumer<?, ?> consumer;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	void setUp() {
+		producerFactory = mock(ProducerFactory.class);
+		when(producerFactory.transactionCapable()).thenReturn(true);
+		when(producerFactory.createProducer()).thenAnswer(invocation -> {
+			MockProducer<String, String> producer =
+					new MockProducer<>(true, new StringSerializer(), new StringSerializer());
+			producer.initTransactions();
+			producers.add(producer);
+			return producer;
+		});
+		consumer = mock(Consumer.class);
+		when(consumer.groupMetadata()).thenReturn(new ConsumerGroupMetadata("enrich-group"));
+	}
+
+	/**
+	 * 满 maxRecords 条提交一个事务，剩下不足的部分等到空闲事件再提交，输出和位移在同一个事务里
+	 */
+	@Test
+	public void groupsRecordsIntoTransactions() {
+		TransactionalPipeline<String, String, String, String> pipeline = pipeline(3, TransactionConfig::enrich);
+
+		pipeline.onMessage(Arrays.asList(record(P0, 0), record(P0, 1), record(P1, 7), record(P0, 2), record(P1, 8)),
+				consumer);
+
+		assertEquals(2, producers.size());
+		MockProducer<String, String> first = producers.get(0);
+		assertTrue(first.transactionCommitted());
+		assertEquals(3, first.history().size());
+		assertEquals(offsets(P0, 2L, P1, 8L), first.consumerGroupOffsetsHistory().get(0).get("enrich-group"));
+		ProducerRecord<String, String> output = first.history().get(2);
+		assertEquals(TransactionConfig.ENRICHED_TOPIC, output.topic());
+		assertEquals("in", header(output, "sourceTopic"));
+		assertEquals("1", header(output, "sourcePartition"));
+		assertEquals("7", header(output, "sourceOffset"));
+
+		MockProducer<String, String> second = producers.get(1);
+		assertTrue(second.transactionInFlight());
+		assertEquals(2, second.uncommittedRecords().size());
+
+		pipeline.onApplicationEvent(idle("tx-enrich-0"));
+		assertTrue(second.transactionCommitted());
+		assertEquals(offsets(P0, 3L, P1, 9L), second.consumerGroupOffsetsHistory().get(0).get("enrich-group"));
+		verify(consumer, never()).seek(P0, 0L);
+	}
+
+	/**
+	 * 提交失败时中止事务，把事务涉及的分区和本批还没处理的分区 seek 回去
+	 */
+	@Test
+	public void abortsAndRewindsWhenCommitFails() {
+		TransactionalPipeline<String, String, String, String> pipeline = pipeline(2, TransactionConfig::enrich);
+		doAnswer(invocation -> {
+			MockProducer<String, String> producer =
+					new MockProducer<>(true, new StringSerializer(), new StringSerializer());
+			producer.initTransactions();
+			producer.commitTransactionException = new KafkaException("coordinator unavailable");
+			producers.add(producer);
+			return producer;
+		}).when(producerFactory).createProducer();
+
+		pipeline.onMessage(Arrays.asList(record(P0, 5), record(P0, 6), record(P1, 3), record(P0, 7)), consumer);
+
+		assertEquals(1, producers.size());
+		assertTrue(producers.get(0).transactionAborted());
+		assertTrue(producers.get(0).closed());
+		verify(consumer).seek(P0, 5L);
+		verify(consumer).seek(P1, 3L);
+	}
+
+	/**
+	 * 无法转换的消息被跳过，位移照常随事务提交
+	 */
+	@Test
+	public void skipsRecordsThatFailToTransform() {
+		TransactionalPipeline<String, String, String, String> pipeline = pipeline(2, record -> {
+			if ("bad".equals(record.value())) {
+				throw new IllegalArgumentException("bad");
+			}
+			return TransactionConfig.enrich(record);
+		});
+
+		pipeline.onMessage(Arrays.asList(
+				new ConsumerRecord<>("in", 0, 0L, "k", "bad"), new ConsumerRecord<>("in", 0, 1L, "k", "good")), consumer);
+
+		MockProducer<String, String> producer = producers.get(0);
+		assertTrue(producer.transactionCommitted());
+		assertEquals(1, producer.history().size());
+		assertEquals(Collections.singletonMap(P0, new OffsetAndMetadata(2)),
+				producer.consumerGroupOffsetsHistory().get(0).get("enrich-group"));
+	}
+
+	/**
+	 * 空闲事件只处理自己容器的，生产者工厂必须支持事务
+	 */
+	@Test
+	public void ignoresOtherContainersAndRequiresTransactionalFactory() {
+		TransactionalPipeline<String, String, String, String> pipeline = pipeline(10, TransactionConfig::enrich);
+		pipeline.onMessage(Collections.singletonList(record(P0, 0)), consumer);
+
+		pipeline.onApplicationEvent(idle("tx-enrich-other-0"));
+		assertFalse(producers.get(0).transactionCommitted());
+
+		when(producerFactory.transactionCapable()).thenReturn(false);
+		assertThrows(IllegalArgumentException.class, () -> pipeline(10, TransactionConfig::enrich));
+	}
+
+	private TransactionalPipeline<String, String, String, String> pipeline(int maxRecords,
+	                                                                       RecordTransformer<String, String, String, String> transformer) {
+		return TransactionalPipeline.builder("enrich", new ConcurrentKafkaListenerContainerFactory<String, String>(),
+						producerFactory, transformer)
+				.topics("in")
+				.groupId("enrich-group")
+				.maxRecords(maxRecords)
+				.maxDelay(1, TimeUnit.HOURS)
+				.meterRegistry(new SimpleMeterRegistry())
+				.build();
+	}
+
+	private ListenerContainerIdleEvent idle(String listenerId) {
+		return new ListenerContainerIdleEvent(this, this, 1000L, listenerId, Collections.emptyList(), consumer, false);
+	}
+
+	private static ConsumerRecord<String, String> record(TopicPartition partition, long offset) {
+		return new ConsumerRecord<>(partition.topic(), partition.partition(), offset, "k" + offset, "v" + offset);
+	}
+
+	private static Map<TopicPartition, OffsetAndMetadata> offsets(TopicPartition first, long firstOffset,
+	                                                              TopicPartition second, long secondOffset) {
+		Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+		offsets.put(first, new OffsetAndMetadata(firstOffset));
+		offsets.put(second, new OffsetAndMetadata(secondOffset));
+		return offsets;
+	}
+
+	private static String header(ProducerRecord<?, ?> record, String key) {
+		return new String(record.headers().lastHeader(key).value(), StandardCharsets.UTF_8);
+	}
+}
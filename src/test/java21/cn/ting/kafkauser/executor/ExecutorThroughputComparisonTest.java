@@ -0,0 +1,52 @@
+package cn.ting.kafkauser.executor;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 模拟 I/O 延迟下平台线程池与虚拟线程的吞吐对比，仅在 jdk21 profile 下编译运行
+ *
+ * 运行：mvn -Pjdk21 test -Dtest=ExecutorThroughputComparisonTest
+ */
+class ExecutorThroughputComparisonTest {
+
+	// 模拟一次数据库/HTTP 调用的阻塞时间
+	private static final long IO_LATENCY_MS = 20;
+	private static final int TASKS = 5000;
+
+	/**
+	 * 平台线程池与现有配置一致（8 个线程），虚拟线程的在途上限为 500
+	 * 纯 I/O 等待时吞吐量大致与并发数成正比，虚拟线程应明显更快
+	 */
+	@Test
+	public void virtualThreadsOutperformPlatformPoolOnBlockingIo() throws InterruptedException {
+		double platform = measure(new PlatformRecordExecutor(8, "platform"));
+		double virtual = measure(new VirtualThreadRecordExecutor(500, "virtual"));
+
+		System.out.printf("模拟 I/O %dms, %d 条消息: 平台线程池(8) %.0f 条/秒, 虚拟线程(信号量 500) %.0f 条/秒, 提升 %.1f 倍%n",
+				IO_LATENCY_MS, TASKS, platform, virtual, virtual / platform);
+		assertTrue(virtual > platform * 10, "虚拟线程吞吐量应显著高于 8 线程的平台线程池");
+	}
+
+	private double measure(RecordExecutor executor) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(TASKS);
+		long start = System.nanoTime();
+		for (int i = 0; i < TASKS; i++) {
+			executor.execute(() -> {
+				try {
+					Thread.sleep(IO_LATENCY_MS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				done.countDown();
+			});
+		}
+		done.await(5, TimeUnit.MINUTES);
+		long elapsed = System.nanoTime() - start;
+		executor.shutdown(10, TimeUnit.SECONDS);
+		return TASKS / (elapsed / 1_000_000_000.0);
+	}
+}